@@ -22,6 +22,7 @@
 package io.crate.blob;
 
 import io.crate.blob.exceptions.DigestNotFoundException;
+import io.crate.blob.stats.BlobContainerStats;
 import io.crate.common.Hex;
 import org.elasticsearch.ElasticsearchIllegalStateException;
 import org.elasticsearch.common.io.FileSystemUtils;
@@ -31,6 +32,7 @@ import org.elasticsearch.common.logging.Loggers;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
@@ -44,6 +46,18 @@ public class BlobContainer {
 
     public static final byte[] PREFIXES = new byte[256];
 
+    public static final String STATS_CHECKPOINT_FILE = "stats.ckp";
+
+    /**
+     * matches the files of complete blobs, incomplete files of a transfer have a .X suffix
+     */
+    private static final FilenameFilter COMPLETE_BLOBS_FILTER = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return !name.contains(".");
+        }
+    };
+
     private final File[] subDirs = new File[256];
 
     static {
@@ -56,6 +70,7 @@ public class BlobContainer {
     private final File baseDirectory;
     private final File tmpDirectory;
     private final File varDirectory;
+    private final BlobContainerStats stats = new BlobContainerStats();
 
     public BlobContainer(File baseDirectory) {
         this.baseDirectory = baseDirectory;
@@ -65,6 +80,9 @@ public class BlobContainer {
         FileSystemUtils.mkdirs(this.tmpDirectory);
 
         createSubDirectories(this.varDirectory);
+        if (!stats.readCheckpoint(statsCheckpointFile())) {
+            logger.debug("no valid blob stats checkpoint found in {}", baseDirectory);
+        }
     }
 
     /**
@@ -88,17 +106,29 @@ public class BlobContainer {
     }
 
     public void walkFiles(FilenameFilter filter, FileVisitor visitor) {
-        for (File dir : subDirs) {
-            File[] files = dir.listFiles(filter);
-            if (files == null) {
-                continue;
+        for (byte prefix : PREFIXES) {
+            if (!walkFiles(prefix, filter, visitor)) {
+                return;
             }
-            for (File file : files) {
-                if (!visitor.visit(file)) {
-                    return;
-                }
+        }
+    }
+
+    /**
+     * walk the files of one sub directory
+     *
+     * @return false if the visitor stopped the walk
+     */
+    public boolean walkFiles(byte prefix, FilenameFilter filter, FileVisitor visitor) {
+        File[] files = subDirs[prefix & 0xFF].listFiles(filter);
+        if (files == null) {
+            return true;
+        }
+        for (File file : files) {
+            if (!visitor.visit(file)) {
+                return false;
             }
         }
+        return true;
     }
 
     /**
@@ -147,6 +177,92 @@ public class BlobContainer {
         return newNames.toArray(new String[newNames.size()]);
     }
 
+    public BlobContainerStats stats() {
+        return stats;
+    }
+
+    private File statsCheckpointFile() {
+        return new File(baseDirectory, STATS_CHECKPOINT_FILE);
+    }
+
+    /**
+     * save the current stats, they are restored when the container is created again
+     */
+    public void writeStatsCheckpoint() throws IOException {
+        stats.writeCheckpoint(statsCheckpointFile());
+    }
+
+    /**
+     * count the blobs of every prefix on disk and correct the stats if they differ,
+     * e.g. because the checkpoint was missing or outdated after a crash.
+     *
+     * @return true if the stats were already correct
+     */
+    public boolean verifyStats() {
+        boolean correct = true;
+        for (int i = 0; i < subDirs.length; i++) {
+            synchronized (stats.lock(i)) {
+                File[] files = subDirs[i].listFiles(COMPLETE_BLOBS_FILTER);
+                correct &= stats.recount(i, files == null ? new File[0] : files);
+            }
+        }
+        return correct;
+    }
+
+    /**
+     * move a complete blob file into this container,
+     * an existing file of the same digest is replaced.
+     *
+     * @return false if the file couldn't be moved
+     */
+    public boolean moveBlob(File source, File target) {
+        int prefix = prefix(target.getName());
+        if (prefix < 0) {
+            return source.renameTo(target);
+        }
+        synchronized (stats.lock(prefix)) {
+            boolean existed = target.exists();
+            long size = source.length();
+            if (!source.renameTo(target)) {
+                return false;
+            }
+            if (!existed) {
+                stats.added(prefix, size);
+            }
+            return true;
+        }
+    }
+
+    public boolean delete(String digest) {
+        int prefix = prefix(digest);
+        File file = getFile(digest);
+        if (prefix < 0) {
+            return file.delete();
+        }
+        synchronized (stats.lock(prefix)) {
+            long size = file.length();
+            if (!file.delete()) {
+                return false;
+            }
+            stats.removed(prefix, size);
+            return true;
+        }
+    }
+
+    /**
+     * @return the index of the sub directory of a blob, -1 if the name isn't a digest
+     */
+    private static int prefix(String name) {
+        if (name.length() < 2 || name.contains(".")) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(0, 2), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public File getBaseDirectory() {
         return baseDirectory;
     }
@@ -53,6 +53,10 @@ public abstract class BlobTransferRequest<T extends ShardReplicationOperationReq
         return last;
     }
 
+    protected void clearContent() {
+        content = BytesArray.EMPTY;
+    }
+
     public BlobTransferRequest(String index, UUID transferId, BytesArray content, boolean last) {
         this.index = index;
         this.transferId = transferId;
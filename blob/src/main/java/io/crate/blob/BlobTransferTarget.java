@@ -87,6 +87,12 @@ public class BlobTransferTarget extends AbstractComponent {
 
     public void startTransfer(int shardId, StartBlobRequest request, StartBlobResponse response) {
         logger.debug("startTransfer {} {}", request.transferId(), request.isLast());
+        if (request.isExistingOnPrimary()) {
+            // the replica has received the blob from the primary already, there is nothing to transfer
+            logger.trace("blob {} exists on primary, skipping transfer", request.id());
+            response.status(RemoteDigestBlob.Status.EXISTS);
+            return;
+        }
 
         BlobShard blobShard = blobIndices.blobShardSafe(request.index(), shardId);
         File existing = blobShard.blobContainer().getFile(request.id());
@@ -169,7 +169,7 @@ public class DigestBlob {
             headFileChannel = null;
         }
         File newFile = container.getFile(digest);
-        file.renameTo(newFile);
+        container.moveBlob(file, newFile);
         return newFile;
     }
 
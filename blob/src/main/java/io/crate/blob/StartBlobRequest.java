@@ -32,6 +32,7 @@ import java.util.UUID;
 public class StartBlobRequest extends BlobTransferRequest<StartBlobRequest> {
 
     private byte[] digest;
+    private boolean existsOnPrimary = false;
 
     public StartBlobRequest() {
     }
@@ -45,17 +46,32 @@ public class StartBlobRequest extends BlobTransferRequest<StartBlobRequest> {
         return Hex.encodeHexString(digest);
     }
 
+    /**
+     * the blob already exists on the primary shard, so the content is dropped
+     * before the request is sent to the replicas.
+     */
+    public void existsOnPrimary() {
+        existsOnPrimary = true;
+        clearContent();
+    }
+
+    public boolean isExistingOnPrimary() {
+        return existsOnPrimary;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         digest = new byte[20];
         in.read(digest);
+        existsOnPrimary = in.readBoolean();
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.write(digest);
+        out.writeBoolean(existsOnPrimary);
     }
 
 }
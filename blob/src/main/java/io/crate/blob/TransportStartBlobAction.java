@@ -84,6 +84,9 @@ public class TransportStartBlobAction
         final StartBlobRequest request = shardRequest.request;
         final StartBlobResponse response = newResponseInstance();
         transferTarget.startTransfer(shardRequest.shardId.id(), request, response);
+        if (response.status() == RemoteDigestBlob.Status.EXISTS) {
+            request.existsOnPrimary();
+        }
         return new PrimaryResponse<>(request, response, null);
 
     }
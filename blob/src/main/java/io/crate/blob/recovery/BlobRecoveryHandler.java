@@ -26,6 +26,7 @@ import io.crate.blob.BlobTransferTarget;
 import io.crate.blob.v2.BlobIndices;
 import io.crate.blob.v2.BlobShard;
 import io.crate.common.Hex;
+import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.StopWatch;
 import org.elasticsearch.common.bytes.BytesArray;
@@ -35,15 +36,22 @@ import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardClosedException;
 import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.indices.recovery.*;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.*;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class BlobRecoveryHandler {
@@ -57,6 +65,16 @@ public class BlobRecoveryHandler {
     private final BlobTransferTarget blobTransferTarget;
     private final int GET_HEAD_TIMEOUT;
 
+    private static final int MAX_FILES_IN_FLIGHT_PER_STREAM = 2;
+    private static final int MAX_CHUNKS_IN_FLIGHT_PER_STREAM = 4;
+    private final int chunkSize;
+    private final Semaphore chunksInFlight;
+    // the buffers of chunks which are not in flight, reused for all files
+    private final Queue<ByteBuffer> chunkBuffers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bytesSinceLastPause = new AtomicLong();
+    private final AtomicLong transferredFiles = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+
     public BlobRecoveryHandler(TransportService transportService,
                                RecoverySettings recoverySettings,
                                BlobTransferTarget blobTransferTarget,
@@ -69,6 +87,9 @@ public class BlobRecoveryHandler {
         this.transportService = transportService;
         this.blobTransferTarget = blobTransferTarget;
         this.shard = shard;
+        this.chunkSize = (int) recoverySettings.fileChunkSize().bytes();
+        this.chunksInFlight = new Semaphore(
+            MAX_CHUNKS_IN_FLIGHT_PER_STREAM * recoverySettings.concurrentStreamPool().getMaximumPoolSize());
         String property = System.getProperty("tests.short_timeouts");
         if (property == null) {
             GET_HEAD_TIMEOUT = 30;
@@ -153,8 +174,14 @@ public class BlobRecoveryHandler {
     }
 
     private void syncVarFiles(AtomicReference<Exception> lastException) throws InterruptedException {
+        // the transfers of all prefixes are pipelined, only the number of files in flight is limited
+        final int maxFilesInFlight = MAX_FILES_IN_FLIGHT_PER_STREAM * recoverySettings.concurrentStreamPool().getMaximumPoolSize();
+        final Semaphore filesInFlight = new Semaphore(maxFilesInFlight);
 
         for (byte prefix : BlobContainer.PREFIXES) {
+            if (lastException.get() != null) {
+                break;
+            }
             // byte[1] and byte[1] have different hashCodes
             // so setA.removeAll(setB) wouldn't work with byte[], that's why BytesArray is used here
             Set<BytesArray> remoteDigests = getExistingDigestsFromTarget(prefix);
@@ -166,25 +193,35 @@ public class BlobRecoveryHandler {
             Set<BytesArray> localButNotRemoteDigests = new HashSet<BytesArray>(localDigests);
             localButNotRemoteDigests.removeAll(remoteDigests);
 
-            final CountDownLatch latch = new CountDownLatch(localButNotRemoteDigests.size());
             for (BytesArray digestBytes : localButNotRemoteDigests) {
                 final String digest = Hex.encodeHexString(digestBytes.toBytes());
                 logger.trace("[{}][{}] start to transfer file var/{} to {}",
                     request.shardId().index().name(), request.shardId().id(), digest,
                     request.targetNode().getName());
 
-                recoverySettings.concurrentStreamPool().execute(
-                    new TransferFileRunnable(blobShard.blobContainer().getFile(digest),
-                        lastException, latch)
-                );
+                filesInFlight.acquire();
+                try {
+                    recoverySettings.concurrentStreamPool().execute(
+                        new TransferFileRunnable(blobShard.blobContainer().getFile(digest),
+                            lastException, filesInFlight)
+                    );
+                } catch (RejectedExecutionException e) {
+                    filesInFlight.release();
+                    lastException.set(e);
+                    break;
+                }
             }
-            latch.await();
 
             remoteDigests.removeAll(localDigests);
             if (!remoteDigests.isEmpty()) {
                 deleteFilesRequest(remoteDigests.toArray(new BytesArray[remoteDigests.size()]));
             }
         }
+        // wait for the transfers which are still running
+        filesInFlight.acquire(maxFilesInFlight);
+        logger.debug("[{}][{}] recovery [phase1] to {}: transferred [{}] files with [{}] bytes",
+            request.shardId().index().name(), request.shardId().id(), request.targetNode().getName(),
+            transferredFiles.get(), transferredBytes.get());
     }
 
     private void deleteFilesRequest(BytesArray[] digests) {
@@ -215,17 +252,89 @@ public class BlobRecoveryHandler {
         ).txGet();
     }
 
+    /**
+     * @return a buffer of the size of a chunk from the pool of chunk buffers,
+     *         waits until a chunk is acknowledged if the maximum number of chunks is in flight
+     */
+    private ByteBuffer acquireChunkBuffer() throws InterruptedException {
+        chunksInFlight.acquire();
+        ByteBuffer buffer = chunkBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(chunkSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void releaseChunkBuffer(ByteBuffer buffer) {
+        chunkBuffers.offer(buffer);
+        chunksInFlight.release();
+    }
+
+    /**
+     * reads the chunk of the file at the given position into the buffer
+     *
+     * @return the number of bytes read, which is less than the buffer size only at the end of the file
+     */
+    private static int readChunk(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        int bytesRead = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + bytesRead);
+            if (read < 0) {
+                break;
+            }
+            bytesRead += read;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * gives back the buffer of a chunk and counts the chunk as acknowledged once the target answered
+     */
+    private class ChunkResponseHandler extends EmptyTransportResponseHandler {
+
+        private final ByteBuffer buffer;
+        private final Semaphore acknowledgedChunks;
+        private final AtomicReference<Exception> lastException;
+
+        ChunkResponseHandler(ByteBuffer buffer, Semaphore acknowledgedChunks,
+                             AtomicReference<Exception> lastException) {
+            super(ThreadPool.Names.SAME);
+            this.buffer = buffer;
+            this.acknowledgedChunks = acknowledgedChunks;
+            this.lastException = lastException;
+        }
+
+        @Override
+        public void handleResponse(TransportResponse.Empty response) {
+            done();
+        }
+
+        @Override
+        public void handleException(TransportException exp) {
+            logger.error("exception while transferring a chunk", exp);
+            lastException.set(exp);
+            done();
+        }
+
+        private void done() {
+            releaseChunkBuffer(buffer);
+            acknowledgedChunks.release();
+        }
+    }
+
     private class TransferFileRunnable implements Runnable {
         private final AtomicReference<Exception> lastException;
         private final String baseDir;
         private final File file;
-        private final CountDownLatch latch;
+        private final Semaphore filesInFlight;
 
         public TransferFileRunnable(File filePath, AtomicReference<Exception> lastException,
-                                    CountDownLatch latch) {
+                                    Semaphore filesInFlight) {
             this.file = filePath;
             this.lastException = lastException;
-            this.latch = latch;
+            this.filesInFlight = filesInFlight;
             this.baseDir = blobShard.blobContainer().getBaseDirectory().getAbsolutePath();
         }
 
@@ -233,7 +342,13 @@ public class BlobRecoveryHandler {
         public void run() {
 
             try {
-                final int BUFFER_SIZE = 4 * 4096;
+                if (lastException.get() != null) {
+                    // another transfer failed already, the recovery is aborted
+                    return;
+                }
+                final TransportRequestOptions requestOptions = TransportRequestOptions.options()
+                    .withType(TransportRequestOptions.Type.RECOVERY)
+                    .withTimeout(recoverySettings.internalActionTimeout());
 
                 long fileSize = file.length();
 
@@ -242,20 +357,20 @@ public class BlobRecoveryHandler {
                         request.shardId().index().name(), request.shardId().id(), file.getName());
                 }
 
-                try (FileInputStream fileStream = new FileInputStream(file)) {
+                try (FileChannel channel = new FileInputStream(file).getChannel()) {
                     String filePath = file.getAbsolutePath();
                     String relPath = filePath.substring(baseDir.length(), filePath.length());
-                    byte[] buf = new byte[BUFFER_SIZE];
-                    int bytesRead = fileStream.read(buf, 0, BUFFER_SIZE);
-                    long bytesReadTotal = 0;
-                    BytesArray content = new BytesArray(buf, 0, bytesRead);
-                    BlobRecoveryStartTransferRequest startTransferRequest =
-                        new BlobRecoveryStartTransferRequest(request.recoveryId(), relPath, content,
-                            fileSize
-                        );
-
-                    if (bytesRead > 0) {
-                        bytesReadTotal += bytesRead;
+                    BlobRecoveryStartTransferRequest startTransferRequest;
+                    int bytesRead;
+                    ByteBuffer buffer = acquireChunkBuffer();
+                    try {
+                        bytesRead = readChunk(channel, buffer, 0);
+                        if (bytesRead == 0) {
+                            return;
+                        }
+                        throttle(bytesRead);
+                        startTransferRequest = new BlobRecoveryStartTransferRequest(request.recoveryId(), relPath,
+                            new BytesArray(buffer.array(), 0, bytesRead), fileSize);
 
                         logger.trace("[{}][{}] send BlobRecoveryStartTransferRequest to {} for file {} with size {}",
                             request.shardId().index().name(), request.shardId().id(),
@@ -263,59 +378,88 @@ public class BlobRecoveryHandler {
                             relPath,
                             fileSize
                         );
+                        // the target creates the file, so the chunks are only sent once it answered
                         transportService.submitRequest(
                             request.targetNode(),
                             BlobRecoveryTarget.Actions.START_TRANSFER,
                             startTransferRequest,
-                            TransportRequestOptions.options(),
+                            requestOptions,
                             EmptyTransportResponseHandler.INSTANCE_SAME
                         ).txGet();
+                    } finally {
+                        releaseChunkBuffer(buffer);
+                    }
 
-                        boolean isLast = false;
-                        boolean sentChunks = false;
-                        while ((bytesRead = fileStream.read(buf, 0, BUFFER_SIZE)) > 0) {
-
-                            sentChunks = true;
-                            bytesReadTotal += bytesRead;
-
+                    // the chunks of the file are written at their offset by the target,
+                    // so they are sent without waiting for the previous ones to be acknowledged
+                    Semaphore acknowledgedChunks = new Semaphore(0);
+                    int sentChunks = 0;
+                    long position = bytesRead;
+                    try {
+                        while (position < fileSize && lastException.get() == null) {
                             if (shard.state() == IndexShardState.CLOSED) { // check if the shard got closed on us
                                 throw new IndexShardClosedException(shard.shardId());
                             }
-                            if (bytesReadTotal == fileSize) {
-                                isLast = true;
+                            ByteBuffer chunkBuffer = acquireChunkBuffer();
+                            int chunkLength;
+                            try {
+                                chunkLength = readChunk(channel, chunkBuffer, position);
+                            } catch (IOException e) {
+                                releaseChunkBuffer(chunkBuffer);
+                                throw e;
                             }
-                            content = new BytesArray(buf, 0, bytesRead);
-
-                            transportService.submitRequest(request.targetNode(),
-                                BlobRecoveryTarget.Actions.TRANSFER_CHUNK,
-                                new BlobRecoveryChunkRequest(request.recoveryId(),
-                                    startTransferRequest.transferId(), content, isLast),
-                                TransportRequestOptions.options(),
-                                EmptyTransportResponseHandler.INSTANCE_SAME
-                            ).txGet();
-                        }
-
-                        if (!isLast && sentChunks) {
-                            logger.error("Sending isLast because it wasn't sent before for {}", relPath);
-                            transportService.submitRequest(request.targetNode(),
+                            if (chunkLength == 0) {
+                                releaseChunkBuffer(chunkBuffer);
+                                throw new IOException("file " + relPath + " is shorter than " + fileSize + " bytes");
+                            }
+                            throttle(chunkLength);
+                            ChunkResponseHandler responseHandler =
+                                new ChunkResponseHandler(chunkBuffer, acknowledgedChunks, lastException);
+                            sentChunks++;
+                            // failures to send the request are passed to the response handler as well
+                            transportService.sendRequest(request.targetNode(),
                                 BlobRecoveryTarget.Actions.TRANSFER_CHUNK,
                                 new BlobRecoveryChunkRequest(request.recoveryId(),
-                                    startTransferRequest.transferId(), BytesArray.EMPTY, true),
-                                TransportRequestOptions.options(),
-                                EmptyTransportResponseHandler.INSTANCE_SAME
-                            ).txGet();
+                                    startTransferRequest.transferId(), position,
+                                    new BytesArray(chunkBuffer.array(), 0, chunkLength)),
+                                requestOptions,
+                                responseHandler
+                            );
+                            position += chunkLength;
                         }
+                    } finally {
+                        // wait for the chunks which are still in flight
+                        acknowledgedChunks.acquire(sentChunks);
                     }
+                    if (lastException.get() != null) {
+                        return;
+                    }
+                    transferredFiles.incrementAndGet();
+                    transferredBytes.addAndGet(position);
 
                     logger.trace("[{}][{}] completed to transfer file {} to {}",
                         request.shardId().index().name(), request.shardId().id(), file.getName(),
                         request.targetNode().getName());
                 }
-            } catch (IOException ex) {
+            } catch (Exception ex) {
                 logger.error("exception while file transfer", ex);
                 lastException.set(ex);
             } finally {
-                latch.countDown();
+                filesInFlight.release();
+            }
+        }
+    }
+
+    /**
+     * pause using the rate limiter of the recovery settings, if set, which is shared with all other recoveries
+     */
+    private void throttle(int bytes) {
+        RateLimiter rl = recoverySettings.rateLimiter();
+        if (rl != null) {
+            long bytesSincePause = bytesSinceLastPause.addAndGet(bytes);
+            if (bytesSincePause > rl.getMinPauseCheckBytes()) {
+                bytesSinceLastPause.addAndGet(-bytesSincePause);
+                shard.recoveryStats().addThrottleTime(rl.pause(bytesSincePause));
             }
         }
     }
@@ -0,0 +1,196 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob.stats;
+
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+import java.io.*;
+import java.util.zip.CRC32;
+
+/**
+ * Number and total size of the blobs of a BlobContainer, kept per digest prefix.
+ *
+ * The counters are updated whenever a blob is added or deleted and may be saved to and
+ * restored from a checkpoint file, so that no directory walk is needed to get the stats.
+ * The container holds the {@link #lock(int)} of a prefix while changing its files,
+ * so that a {@link #recount(int, File[])} of the prefix doesn't race with it.
+ */
+public class BlobContainerStats {
+
+    private static final ESLogger logger = Loggers.getLogger(BlobContainerStats.class);
+
+    public static final int NUM_PREFIXES = 256;
+    private static final int CHECKPOINT_VERSION = 1;
+    // version, followed by count and size of every prefix
+    private static final int CHECKPOINT_PAYLOAD_SIZE = 4 + NUM_PREFIXES * 16;
+
+    private final long[] counts = new long[NUM_PREFIXES];
+    private final long[] sizes = new long[NUM_PREFIXES];
+    private final Object[] locks = new Object[NUM_PREFIXES];
+
+    public BlobContainerStats() {
+        for (int i = 0; i < NUM_PREFIXES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public Object lock(int prefix) {
+        return locks[prefix];
+    }
+
+    public void added(int prefix, long size) {
+        synchronized (locks[prefix]) {
+            counts[prefix]++;
+            sizes[prefix] += size;
+        }
+    }
+
+    public void removed(int prefix, long size) {
+        synchronized (locks[prefix]) {
+            counts[prefix]--;
+            sizes[prefix] -= size;
+        }
+    }
+
+    public long count(int prefix) {
+        synchronized (locks[prefix]) {
+            return counts[prefix];
+        }
+    }
+
+    public long totalUsage(int prefix) {
+        synchronized (locks[prefix]) {
+            return sizes[prefix];
+        }
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < NUM_PREFIXES; i++) {
+            count += count(i);
+        }
+        return count;
+    }
+
+    public long totalUsage() {
+        long totalUsage = 0;
+        for (int i = 0; i < NUM_PREFIXES; i++) {
+            totalUsage += totalUsage(i);
+        }
+        return totalUsage;
+    }
+
+    /**
+     * replace the counters of a prefix with the given files
+     *
+     * @return true if the counters were already correct
+     */
+    public boolean recount(int prefix, File[] files) {
+        long count = 0;
+        long size = 0;
+        for (File file : files) {
+            count++;
+            size += file.length();
+        }
+        synchronized (locks[prefix]) {
+            boolean correct = counts[prefix] == count && sizes[prefix] == size;
+            counts[prefix] = count;
+            sizes[prefix] = size;
+            return correct;
+        }
+    }
+
+    /**
+     * restore the counters from a checkpoint file
+     *
+     * @return false if the checkpoint is missing or corrupted, the counters are left unchanged then
+     */
+    public boolean readCheckpoint(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        long[] readCounts = new long[NUM_PREFIXES];
+        long[] readSizes = new long[NUM_PREFIXES];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] payload = new byte[CHECKPOINT_PAYLOAD_SIZE];
+            in.readFully(payload);
+            if (in.readLong() != checksum(payload)) {
+                logger.warn("checksum of blob stats checkpoint {} doesn't match", file);
+                return false;
+            }
+            DataInputStream payloadIn = new DataInputStream(new ByteArrayInputStream(payload));
+            if (payloadIn.readInt() != CHECKPOINT_VERSION) {
+                return false;
+            }
+            for (int i = 0; i < NUM_PREFIXES; i++) {
+                readCounts[i] = payloadIn.readLong();
+                readSizes[i] = payloadIn.readLong();
+            }
+        } catch (IOException e) {
+            logger.warn("could not read blob stats checkpoint {}", e, file);
+            return false;
+        }
+        for (int i = 0; i < NUM_PREFIXES; i++) {
+            synchronized (locks[i]) {
+                counts[i] = readCounts[i];
+                sizes[i] = readSizes[i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * save the counters to a checkpoint file, the file is replaced atomically
+     */
+    public void writeCheckpoint(File file) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(CHECKPOINT_PAYLOAD_SIZE);
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        payloadOut.writeInt(CHECKPOINT_VERSION);
+        for (int i = 0; i < NUM_PREFIXES; i++) {
+            synchronized (locks[i]) {
+                payloadOut.writeLong(counts[i]);
+                payloadOut.writeLong(sizes[i]);
+            }
+        }
+        byte[] bytes = payload.toByteArray();
+
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tmpFile)) {
+            DataOutputStream out = new DataOutputStream(fileOut);
+            out.write(bytes);
+            out.writeLong(checksum(bytes));
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("could not rename " + tmpFile + " to " + file);
+        }
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of files and bytes a blob shard received in its current or last recovery.
+ * The counters are reset whenever a new recovery of the shard starts.
+ */
+public class BlobRecoveryStats {
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public void reset() {
+        files.set(0);
+        bytes.set(0);
+    }
+
+    public void addFile() {
+        files.incrementAndGet();
+    }
+
+    public void addBytes(long numBytes) {
+        bytes.addAndGet(numBytes);
+    }
+
+    public long files() {
+        return files.get();
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+}
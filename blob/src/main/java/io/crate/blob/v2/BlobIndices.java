@@ -42,6 +42,7 @@ import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterStateListener;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Injector;
@@ -52,6 +53,8 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.IndexShardMissingException;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesLifecycle;
 import org.elasticsearch.indices.IndicesService;
@@ -102,6 +105,18 @@ public class BlobIndices extends AbstractComponent implements ClusterStateListen
         this.indicesLifecycle = indicesLifecycle;
         this.blobEnvironment = blobEnvironment;
         clusterService.addFirst(this);
+        indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard,
+                                               @IndexSettings Settings indexSettings) {
+                if (indexSettings.getAsBoolean(SETTING_INDEX_BLOBS_ENABLED, false)) {
+                    BlobShard blobShard = blobShard(shardId.getIndex(), shardId.id());
+                    if (blobShard != null) {
+                        blobShard.close();
+                    }
+                }
+            }
+        });
         logger.setLevel("debug");
     }
 
@@ -204,6 +219,22 @@ public class BlobIndices extends AbstractComponent implements ClusterStateListen
         return blobShardSafe(localShardId(index, digest));
     }
 
+    /**
+     * @return true if the blob exists on a copy of its shard that is allocated on this node
+     */
+    public boolean existsLocally(String index, String digest) {
+        if (!isBlobIndex(index)) {
+            return false;
+        }
+        IndexService indexService = indicesService.indexService(index);
+        if (indexService == null) {
+            return false;
+        }
+        ShardId shardId = indexService.injector().getInstance(BlobIndex.class).shardId(digest);
+        BlobShard blobShard = blobShard(index, shardId.id());
+        return blobShard != null && blobShard.blobContainer().getFile(digest).exists();
+    }
+
     public BlobShardFuture blobShardFuture(String index, int shardId) {
         return new BlobShardFuture(this, indicesLifecycle, index, shardId);
 
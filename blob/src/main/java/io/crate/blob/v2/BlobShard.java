@@ -23,6 +23,7 @@ package io.crate.blob.v2;
 
 import io.crate.blob.BlobContainer;
 import io.crate.blob.BlobEnvironment;
+import io.crate.blob.stats.BlobRecoveryStats;
 import io.crate.blob.stats.BlobStats;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.inject.Inject;
@@ -31,23 +32,36 @@ import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.shard.AbstractIndexShardComponent;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.File;
+import java.io.IOException;
 
 public class BlobShard extends AbstractIndexShardComponent {
 
     private final BlobContainer blobContainer;
     private final IndexShard indexShard;
+    private final BlobRecoveryStats recoveryStats = new BlobRecoveryStats();
 
     @Inject
     protected BlobShard(ShardId shardId, @IndexSettings Settings indexSettings,
                         BlobEnvironment blobEnvironment,
-                        IndexShard indexShard) {
+                        IndexShard indexShard,
+                        ThreadPool threadPool) {
         super(shardId, indexSettings);
         this.indexShard = indexShard;
         File blobDir = blobDir(blobEnvironment);
         logger.info("creating BlobContainer at {}", blobDir);
         this.blobContainer = new BlobContainer(blobDir);
+        threadPool.executor(ThreadPool.Names.GENERIC).execute(new Runnable() {
+            @Override
+            public void run() {
+                // the stats restored from the checkpoint may be outdated if the node wasn't shut down properly
+                if (!blobContainer.verifyStats()) {
+                    logger.info("corrected blob stats of {}", blobContainer.getBaseDirectory());
+                }
+            }
+        });
     }
 
     public byte[][] currentDigests(byte prefix) {
@@ -55,7 +69,7 @@ public class BlobShard extends AbstractIndexShardComponent {
     }
 
     public boolean delete(String digest) {
-        return blobContainer.getFile(digest).delete();
+        return blobContainer.delete(digest);
     }
 
     public BlobContainer blobContainer() {
@@ -71,18 +85,31 @@ public class BlobShard extends AbstractIndexShardComponent {
 
         stats.location(blobContainer().getBaseDirectory().getAbsolutePath());
         stats.availableSpace(blobContainer().getBaseDirectory().getFreeSpace());
-        blobContainer().walkFiles(null, new BlobContainer.FileVisitor() {
-            @Override
-            public boolean visit(File file) {
-                stats.totalUsage(stats.totalUsage() + file.length());
-                stats.count(stats.count() + 1);
-                return true;
-            }
-        });
+        stats.count(blobContainer().stats().count());
+        stats.totalUsage(blobContainer().stats().totalUsage());
 
         return stats;
     }
 
+    public BlobRecoveryStats recoveryStats() {
+        return recoveryStats;
+    }
+
+    /**
+     * called before the shard is closed, saves the blob stats so they don't need to be counted again
+     */
+    public void close() {
+        if (!blobContainer.getBaseDirectory().exists()) {
+            // the blob directory of a dropped table is already deleted
+            return;
+        }
+        try {
+            blobContainer.writeStatsCheckpoint();
+        } catch (IOException e) {
+            logger.warn("could not write blob stats checkpoint", e);
+        }
+    }
+
     private File blobDir(BlobEnvironment blobEnvironment) {
         if (indexSettings.get(BlobIndices.SETTING_INDEX_BLOBS_PATH) != null) {
             File blobPath = new File(indexSettings.get(BlobIndices.SETTING_INDEX_BLOBS_PATH));
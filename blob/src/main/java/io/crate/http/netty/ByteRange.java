@@ -0,0 +1,113 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.http.netty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A satisfiable byte range of a HTTP Range header, see RFC 7233
+ */
+class ByteRange {
+
+    static final int MAX_RANGES = 100;
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^(\\d*)-(\\d*)$");
+    private static final String BYTES_UNIT = "bytes=";
+
+    final long start;
+    final long end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    long length() {
+        return end - start + 1;
+    }
+
+    String contentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    /**
+     * parse the value of a range header, e.g. bytes=0-10,20-,-5
+     *
+     * @param totalLength the length of the content
+     * @return the satisfiable ranges, which is empty if none of the ranges can be satisfied.
+     *         null if the header is invalid or contains too many ranges, the header is ignored then.
+     */
+    static List<ByteRange> parse(String header, long totalLength) {
+        if (!header.startsWith(BYTES_UNIT)) {
+            return null;
+        }
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            Matcher matcher = RANGE_PATTERN.matcher(spec.trim());
+            if (!matcher.matches()) {
+                return null;
+            }
+            String first = matcher.group(1);
+            String last = matcher.group(2);
+            long start;
+            long end;
+            try {
+                if (first.isEmpty()) {
+                    if (last.isEmpty()) {
+                        return null;
+                    }
+                    // suffix range, the last N bytes
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, totalLength - suffixLength);
+                    end = totalLength - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = totalLength - 1;
+                    if (!last.isEmpty()) {
+                        long lastPos = Long.parseLong(last);
+                        if (lastPos < start) {
+                            return null;
+                        }
+                        end = Math.min(lastPos, end);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (start < totalLength) {
+                ranges.add(new ByteRange(start, end));
+            }
+        }
+        return ranges;
+    }
+}
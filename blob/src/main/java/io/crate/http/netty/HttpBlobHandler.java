@@ -38,6 +38,9 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.http.*;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.handler.stream.ChunkedNioFile;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
 import org.jboss.netty.util.CharsetUtil;
 
 import java.io.IOException;
@@ -45,12 +48,16 @@ import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static org.jboss.netty.channel.Channels.succeededFuture;
 import static org.jboss.netty.channel.Channels.write;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.PARTIAL_CONTENT;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
@@ -64,6 +71,9 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
     public static final Pattern pattern = Pattern.compile("^/_blobs/([^_/][^/]*)/([0-9a-f]{40})$");
     private static final ESLogger logger = Loggers.getLogger(HttpBlobHandler.class);
 
+    private static final String CHUNKED_WRITER_NAME = "blob_chunked_writer";
+    private static final int CHUNK_SIZE = 8192;
+
     private static final ChannelBuffer CONTINUE = ChannelBuffers.copiedBuffer(
             "HTTP/1.1 100 Continue\r\n\r\n", CharsetUtil.US_ASCII);
 
@@ -71,9 +81,13 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
     private final BlobIndices blobIndices;
     private HttpMessage currentMessage;
     private ChannelHandlerContext ctx;
-    private static final Pattern contentRangePattern = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
 
     private RemoteDigestBlob digestBlob;
+    /**
+     * set if a 409 has been sent while the client is still sending the body,
+     * the remaining chunks are discarded and the channel is closed afterwards
+     */
+    private ChannelFuture conflictFuture;
 
     public HttpBlobHandler(BlobService blobService, BlobIndices blobIndices) {
         this.blobService = blobService;
@@ -113,6 +127,7 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
         if (msg instanceof HttpRequest) {
 
             digestBlob = null;
+            conflictFuture = null;
             HttpRequest request = (HttpRequest) msg;
             URI uri;
             try {
@@ -165,6 +180,14 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
                 ctx.sendUpstream(e);
                 return;
             }
+            if (conflictFuture != null) {
+                // the response has been sent already, the rest of the body isn't needed
+                if (chunk.isLast()) {
+                    conflictFuture.addListener(ChannelFutureListener.CLOSE);
+                    reset();
+                }
+                return;
+            }
 
             // write chunk to file
             writeToFile(chunk.getContent(), chunk.isLast(), false);
@@ -180,6 +203,7 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
 
     private void reset() {
         currentMessage = null;
+        conflictFuture = null;
     }
 
     private void sendRedirect(HttpRequest request, String newUri) {
@@ -257,9 +281,12 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
             simpleResponse(HttpResponseStatus.NOT_FOUND, null);
             return;
         }
+        if (notModified(request, digest)) {
+            return;
+        }
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
         HttpHeaders.setContentLength(response, length);
-        setDefaultGetHeaders(response);
+        setDefaultGetHeaders(response, digest);
         ChannelFuture cf = ctx.getChannel().write(response);
         if (!HttpHeaders.isKeepAlive(request)) {
             cf.addListener(ChannelFutureListener.CLOSE);
@@ -267,6 +294,11 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
     }
 
     private void get(HttpRequest request, String index, final String digest) throws IOException {
+        if (request.headers().contains(IF_NONE_MATCH)
+            && localBlobShard(index, digest).blobContainer().getFile(digest).exists()
+            && notModified(request, digest)) {
+            return;
+        }
         String range = request.headers().get(RANGE);
         if (range != null) {
             partialContentResponse(range, request, index, digest);
@@ -275,6 +307,43 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
         }
     }
 
+    /**
+     * blobs are immutable and addressed by their digest, so if the client
+     * already has a blob with a matching etag it can be used as it is.
+     *
+     * @return true if a 304 response has been written
+     */
+    private boolean notModified(HttpRequest request, String digest) {
+        String ifNoneMatch = request.headers().get(IF_NONE_MATCH);
+        if (ifNoneMatch == null || !etagMatches(ifNoneMatch, digest)) {
+            return false;
+        }
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, NOT_MODIFIED);
+        setDefaultGetHeaders(response, digest);
+        ChannelFuture cf = ctx.getChannel().write(response);
+        if (!HttpHeaders.isKeepAlive(request)) {
+            cf.addListener(ChannelFutureListener.CLOSE);
+        }
+        return true;
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String digest) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag(digest))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String etag(String digest) {
+        return "\"" + digest + "\"";
+    }
+
     private BlobShard localBlobShard(String index, String digest){
         return blobIndices.localBlobShard(index, digest);
     }
@@ -283,42 +352,83 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
         throws  IOException
     {
         assert(range != null);
-        Matcher matcher = contentRangePattern.matcher(range);
-        if (!matcher.matches()) {
+        BlobShard blobShard = localBlobShard(index, digest);
+
+        final RandomAccessFile raf = blobShard.blobContainer().getRandomAccessFile(digest);
+        long length = raf.length();
+        List<ByteRange> ranges = ByteRange.parse(range, length);
+        if (ranges == null) {
+            raf.close();
             logger.warn("Invalid byte-range: {}; returning full content", range);
             fullContentResponse(request, index, digest);
             return;
         }
-        BlobShard blobShard = localBlobShard(index, digest);
-
-        final RandomAccessFile raf = blobShard.blobContainer().getRandomAccessFile(digest);
-        long start;
-        long end;
-        try {
-            start = Long.parseLong(matcher.group(1));
-            if (start > raf.length()) {
-                logger.warn("416 Requested Range not satisfiable");
-                simpleResponse(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, null);
-                raf.close();
-                return;
-            }
-            end = raf.length() - 1 ;
-            if (!matcher.group(2).equals("")) {
-                end = Long.parseLong(matcher.group(2));
-            }
-        } catch (NumberFormatException ex) {
-            logger.error("Couldn't parse Range Header", ex);
-            start = 0;
-            end = raf.length();
+        if (ranges.isEmpty()) {
+            raf.close();
+            logger.warn("416 Requested Range not satisfiable");
+            simpleResponse(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, null);
+            return;
+        }
+        if (ranges.size() > 1) {
+            multiRangeResponse(ranges, request, blobShard, digest, raf);
+            return;
         }
 
+        ByteRange byteRange = ranges.get(0);
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, PARTIAL_CONTENT);
-        HttpHeaders.setContentLength(response, end - start + 1);
-        response.headers().set(CONTENT_RANGE, "bytes " + start + "-" + end + "/" + raf.length());
-        setDefaultGetHeaders(response);
+        HttpHeaders.setContentLength(response, byteRange.length());
+        response.headers().set(CONTENT_RANGE, byteRange.contentRange(length));
+        setDefaultGetHeaders(response, digest);
 
         ctx.getChannel().write(response);
-        ChannelFuture writeFuture = transferFile(digest, raf, start, end - start + 1);
+        ChannelFuture writeFuture = transferFile(digest, blobShard, raf, byteRange.start, byteRange.length());
+        writeFuture.addListener(closeFile(raf));
+        if (!HttpHeaders.isKeepAlive(request)) {
+            writeFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * writes a multipart/byteranges response, the part headers are written as buffers
+     * in between the file regions so the ranges itself are still transferred zero-copy.
+     */
+    private void multiRangeResponse(List<ByteRange> ranges,
+                                    HttpRequest request,
+                                    BlobShard blobShard,
+                                    String digest,
+                                    RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<ChannelBuffer> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange byteRange = ranges.get(i);
+            ChannelBuffer partHeader = ChannelBuffers.copiedBuffer(
+                (i == 0 ? "" : "\r\n") +
+                "--" + boundary + "\r\n" +
+                CONTENT_TYPE + ": application/octet-stream\r\n" +
+                CONTENT_RANGE + ": " + byteRange.contentRange(length) + "\r\n\r\n",
+                CharsetUtil.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.readableBytes() + byteRange.length();
+        }
+        ChannelBuffer trailer = ChannelBuffers.copiedBuffer("\r\n--" + boundary + "--\r\n", CharsetUtil.US_ASCII);
+        contentLength += trailer.readableBytes();
+
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, PARTIAL_CONTENT);
+        HttpHeaders.setContentLength(response, contentLength);
+        response.headers().set(CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        setDefaultGetHeaders(response, digest);
+
+        Channel channel = ctx.getChannel();
+        channel.write(response);
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange byteRange = ranges.get(i);
+            channel.write(partHeaders.get(i));
+            transferFile(digest, blobShard, raf, byteRange.start, byteRange.length());
+        }
+        ChannelFuture writeFuture = channel.write(trailer);
+        writeFuture.addListener(closeFile(raf));
         if (!HttpHeaders.isKeepAlive(request)) {
             writeFuture.addListener(ChannelFutureListener.CLOSE);
         }
@@ -329,20 +439,41 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
         final RandomAccessFile raf = blobShard.blobContainer().getRandomAccessFile(digest);
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
         HttpHeaders.setContentLength(response, raf.length());
-        setDefaultGetHeaders(response);
+        setDefaultGetHeaders(response, digest);
         logger.trace("HttpResponse: {}", response);
         ctx.getChannel().write(response);
-        ChannelFuture writeFuture = transferFile(digest, raf, 0, raf.length());
+        ChannelFuture writeFuture = transferFile(digest, blobShard, raf, 0, raf.length());
+        writeFuture.addListener(closeFile(raf));
         if (!HttpHeaders.isKeepAlive(request)) {
             writeFuture.addListener(ChannelFutureListener.CLOSE);
         }
     }
 
-    private ChannelFuture transferFile(final String digest, RandomAccessFile raf, long position, long count)
+    /**
+     * transfers a region of the file without copying it into user space if possible.
+     * If the data has to pass through the pipeline (e.g. to be encrypted by a SslHandler)
+     * a file region can't be used, the region is written as a chunked input instead.
+     *
+     * The caller is responsible to close the given file once the transfer is done.
+     */
+    private ChannelFuture transferFile(final String digest, BlobShard blobShard, RandomAccessFile raf,
+                                       long position, long count)
         throws IOException
     {
-        final FileRegion region = new DefaultFileRegion(raf.getChannel(), position, count);
-        ChannelFuture writeFuture = ctx.getChannel().write(region);
+        Object content;
+        ChannelPipeline pipeline = ctx.getPipeline();
+        if (pipeline.get(SslHandler.class) != null) {
+            if (pipeline.get(ChunkedWriteHandler.class) == null) {
+                pipeline.addAfter(pipeline.getContext(SslHandler.class).getName(),
+                    CHUNKED_WRITER_NAME, new ChunkedWriteHandler());
+            }
+            // the chunked input is closed by the ChunkedWriteHandler, so it needs a channel on its own
+            content = new ChunkedNioFile(blobShard.blobContainer().getRandomAccessFile(digest).getChannel(),
+                position, count, CHUNK_SIZE);
+        } else {
+            content = new DefaultFileRegion(raf.getChannel(), position, count, false);
+        }
+        ChannelFuture writeFuture = ctx.getChannel().write(content);
         writeFuture.addListener(new ChannelFutureProgressListener() {
             @Override
             public void operationProgressed(ChannelFuture future, long amount, long current, long total) throws Exception {
@@ -351,15 +482,24 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
 
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
-                region.releaseExternalResources();
                 logger.trace("file transfer completed");
             }
         });
         return writeFuture;
     }
 
-    private void setDefaultGetHeaders(HttpResponse response) {
+    private static ChannelFutureListener closeFile(final RandomAccessFile raf) {
+        return new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                raf.close();
+            }
+        };
+    }
+
+    private void setDefaultGetHeaders(HttpResponse response, String digest) {
         response.headers().set(ACCEPT_RANGES, "bytes");
+        response.headers().set(ETAG, etag(digest));
         response.headers().set(EXPIRES, EXPIRES_VALUE);
         response.headers().set(CACHE_CONTROL, CACHE_CONTROL_VALUE);
     }
@@ -372,15 +512,18 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
                             "with existing " + DigestBlob.class.getSimpleName());
         }
 
-        // shortcut check if the file existsLocally locally, so we can immediatly return
-        // if (blobService.existsLocally(digest)) {
-        //    simpleResponse(HttpResponseStatus.CONFLICT, null);
-        //}
-
         // TODO: Respond with 413 Request Entity Too Large
 
-        digestBlob = blobService.newBlob(index, digest);
         currentMessage = request;
+        // blobs are content addressed, so if the digest exists locally there is no need
+        // to start a transfer and the body can be dropped without being hashed or replicated
+        if (blobIndices.existsLocally(index, digest)) {
+            logger.trace("blob {} exists already, discarding content", digest);
+            conflictResponse(request, request.isChunked());
+            return;
+        }
+
+        digestBlob = blobService.newBlob(index, digest);
 
         if (request.isChunked()) {
             writeToFile(request.getContent(), false, HttpHeaders.is100ContinueExpected(request));
@@ -422,6 +565,10 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
                 exitStatus = HttpResponseStatus.BAD_REQUEST;
                 break;
             case EXISTS:
+                if (currentMessage != null) {
+                    conflictResponse(currentMessage, !last);
+                    return;
+                }
                 exitStatus = HttpResponseStatus.CONFLICT;
                 break;
             case FAILED:
@@ -439,6 +586,36 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
         }
     }
 
+    /**
+     * answers with 409 Conflict. If the body hasn't been received completely the
+     * connection can't be used for further requests and is closed.
+     *
+     * @param contentPending true if there are chunks of the body still to be received
+     */
+    private void conflictResponse(HttpMessage message, boolean contentPending) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONFLICT);
+        HttpHeaders.setContentLength(response, 0);
+        if (contentPending) {
+            response.headers().set(CONNECTION, HttpHeaders.Values.CLOSE);
+        }
+        ChannelFuture cf = ctx.getChannel().write(response);
+        if (!contentPending) {
+            reset();
+            if (!HttpHeaders.isKeepAlive(message)) {
+                cf.addListener(ChannelFutureListener.CLOSE);
+            }
+            return;
+        }
+        // chunks which arrive until the channel is closed are discarded
+        conflictFuture = cf;
+        if (HttpHeaders.is100ContinueExpected(message)) {
+            // the client waits for the 100 Continue and won't send the body
+            cf.addListener(ChannelFutureListener.CLOSE);
+        }
+        // otherwise the client is sending the body already, the channel is closed
+        // after the last chunk so that the client gets to read the response
+    }
+
     public void beforeAdd(ChannelHandlerContext ctx) throws Exception {
         this.ctx = ctx;
     }
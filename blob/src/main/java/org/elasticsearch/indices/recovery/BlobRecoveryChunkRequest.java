@@ -28,21 +28,26 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 
 import java.io.IOException;
 
+/**
+ * a chunk of a file transferred during a blob recovery.
+ * Several chunks of a file may be in flight, so they are written at their offset
+ * and may arrive in any order.
+ */
 public class BlobRecoveryChunkRequest extends BlobRecoveryRequest {
 
     private long transferId;
+    private long offset;
     private BytesReference content;
-    private boolean isLast;
 
     public BlobRecoveryChunkRequest() {
 
     }
 
-    public BlobRecoveryChunkRequest(long requestId, long transferId, BytesArray content, boolean isLast) {
+    public BlobRecoveryChunkRequest(long requestId, long transferId, long offset, BytesArray content) {
         super(requestId);
         this.transferId = transferId;
+        this.offset = offset;
         this.content = content;
-        this.isLast = isLast;
     }
 
     public BytesReference content() {
@@ -53,23 +58,23 @@ public class BlobRecoveryChunkRequest extends BlobRecoveryRequest {
         return transferId;
     }
 
-    public boolean isLast() {
-        return isLast;
+    public long offset() {
+        return offset;
     }
 
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         transferId = in.readVLong();
+        offset = in.readVLong();
         content = in.readBytesReference();
-        isLast = in.readBoolean();
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeVLong(transferId);
+        out.writeVLong(offset);
         out.writeBytesReference(content);
-        out.writeBoolean(isLast);
     }
 }
@@ -40,6 +40,8 @@ import org.elasticsearch.transport.*;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 
 public class BlobRecoveryTarget extends AbstractComponent {
@@ -133,6 +135,7 @@ public class BlobRecoveryTarget extends AbstractComponent {
                     onGoingIndexRecovery.shardId().getIndex()).shardInjectorSafe(
                     onGoingIndexRecovery.shardId().id()).getInstance(BlobShard.class);
 
+            blobShard.recoveryStats().reset();
             BlobRecoveryStatus status = new BlobRecoveryStatus(onGoingIndexRecovery, blobShard);
             onGoingRecoveries.put(request.recoveryId(), status);
             channel.sendResponse(TransportResponse.Empty.INSTANCE);
@@ -171,11 +174,16 @@ public class BlobRecoveryTarget extends AbstractComponent {
             if (!content.hasArray()) {
                 content = content.toBytesArray();
             }
-            transferStatus.outputStream().write(
-                content.array(), content.arrayOffset(), content.length()
-            );
+            // chunks of a file may arrive in any order, each is written at its offset
+            ByteBuffer buffer = ByteBuffer.wrap(content.array(), content.arrayOffset(), content.length());
+            FileChannel fileChannel = transferStatus.outputStream().getChannel();
+            long position = request.offset();
+            while (buffer.hasRemaining()) {
+                position += fileChannel.write(buffer, position);
+            }
+            shard.recoveryStats().addBytes(content.length());
 
-            if (request.isLast()) {
+            if (transferStatus.addWrittenBytes(content.length()) == transferStatus.size()) {
                 transferStatus.outputStream().close();
                 File source = new File(shard.blobContainer().getBaseDirectory(),
                     transferStatus.sourcePath()
@@ -189,12 +197,13 @@ public class BlobRecoveryTarget extends AbstractComponent {
                     // this might happen on bad timing while recovering/relocating.
                     // noop
                 } else {
-                    if (!source.renameTo(target)) {
+                    if (!shard.blobContainer().moveBlob(source, target)) {
                         throw new BlobWriteException(target.getName(), target.length(), null);
                     }
                 }
 
                 onGoingRecovery.onGoingTransfers().remove(request.transferId());
+                shard.recoveryStats().addFile();
             }
 
             channel.sendResponse(TransportResponse.Empty.INSTANCE);
@@ -258,21 +267,24 @@ public class BlobRecoveryTarget extends AbstractComponent {
                 content = content.toBytesArray();
             }
             outputStream.write(content.array(), content.arrayOffset(), content.length());
+            shard.recoveryStats().addBytes(content.length());
 
             if (request.size() == request.content().length()) {  // start request contains the whole file.
                 outputStream.close();
                 File source = new File(shard.blobContainer().getBaseDirectory(), tmpPath);
                 File target = new File(shard.blobContainer().getBaseDirectory(), request.path());
                 if (!target.exists()) {
-                    if (!source.renameTo(target)) {
+                    if (!shard.blobContainer().moveBlob(source, target)) {
                         throw new IllegalBlobRecoveryStateException(
                             "couldn't rename file to " + request.path()
                         );
                     }
                 }
+                shard.recoveryStats().addFile();
             } else {
                 BlobRecoveryTransferStatus transferStatus= new BlobRecoveryTransferStatus(
-                    request.transferId(), outputStream, tmpPath, request.path()
+                    request.transferId(), outputStream, tmpPath, request.path(),
+                    request.size(), content.length()
                 );
                 status.onGoingTransfers().put(request.transferId(), transferStatus);
             }
@@ -23,6 +23,7 @@ package org.elasticsearch.indices.recovery;
 
 import java.io.FileOutputStream;
 import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BlobRecoveryTransferStatus {
 
@@ -30,13 +31,30 @@ public class BlobRecoveryTransferStatus {
     private final FileOutputStream outputStream;
     private final String sourcePath;
     private final String targetPath;
+    private final long size;
+    private final AtomicLong writtenBytes;
 
     public BlobRecoveryTransferStatus(long transferId, FileOutputStream outputStream,
-                                      String sourcePath, String targetPath) {
+                                      String sourcePath, String targetPath,
+                                      long size, long writtenBytes) {
         this.transferId = transferId;
         this.outputStream = outputStream;
         this.sourcePath = sourcePath;
         this.targetPath = targetPath;
+        this.size = size;
+        this.writtenBytes = new AtomicLong(writtenBytes);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes written after adding the bytes of a chunk,
+     *         the file is complete once it equals the size
+     */
+    public long addWrittenBytes(long bytes) {
+        return writtenBytes.addAndGet(bytes);
     }
 
     public String sourcePath() {
@@ -22,13 +22,27 @@
 package io.crate;
 
 import com.google.common.collect.ImmutableList;
+import io.crate.blob.BlobService;
+import io.crate.blob.RemoteDigestBlob;
+import io.crate.blob.v2.BlobIndices;
 import io.crate.http.netty.HttpBlobHandler;
 import io.crate.test.integration.CrateUnitTest;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.*;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.util.List;
 
 import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
 
 public class BlobHandlerTest extends CrateUnitTest {
 
@@ -46,6 +60,97 @@ public class BlobHandlerTest extends CrateUnitTest {
             .add("/blobs/bb/ab08643dd7fc5a3c0d8ebbd032a0b3605dd295a6")
             .build();
 
+    private static final String DIGEST = "f3b4df9c032a14ad415455354798fa2fc3bf1df7";
+    private static final String OTHER_DIGEST = "ab08643dd7fc5a3c0d8ebbd032a0b3605dd295a6";
+
+    private BlobService blobService;
+    private BlobIndices blobIndices;
+    private Channel channel;
+    private ChannelFuture writeFuture;
+    private ChannelHandlerContext ctx;
+    private HttpBlobHandler handler;
+
+    @Before
+    public void prepare() throws Exception {
+        blobService = mock(BlobService.class);
+        blobIndices = mock(BlobIndices.class);
+        when(blobIndices.existsLocally(BlobIndices.fullIndexName("b"), DIGEST)).thenReturn(true);
+
+        channel = mock(Channel.class);
+        writeFuture = mock(ChannelFuture.class);
+        when(channel.write(any())).thenReturn(writeFuture);
+        ctx = mock(ChannelHandlerContext.class);
+        when(ctx.getChannel()).thenReturn(channel);
+
+        handler = new HttpBlobHandler(blobService, blobIndices);
+        handler.beforeAdd(ctx);
+    }
+
+    private void receive(Object message) throws Exception {
+        MessageEvent event = mock(MessageEvent.class);
+        when(event.getMessage()).thenReturn(message);
+        handler.messageReceived(ctx, event);
+    }
+
+    private static HttpRequest putRequest(String digest) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.PUT, "/_blobs/b/" + digest);
+        request.setChunked(true);
+        return request;
+    }
+
+    private HttpResponse writtenResponse() {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(channel, atLeastOnce()).write(captor.capture());
+        return (HttpResponse) captor.getValue();
+    }
+
+    @Test
+    public void testPutExistingBlobWithExpectContinueIsRejectedBeforeTransfer() throws Exception {
+        HttpRequest request = putRequest(DIGEST);
+        HttpHeaders.set100ContinueExpected(request);
+        receive(request);
+
+        HttpResponse response = writtenResponse();
+        assertThat(response.getStatus(), is(HttpResponseStatus.CONFLICT));
+        assertThat(response.headers().get(HttpHeaders.Names.CONNECTION), is(HttpHeaders.Values.CLOSE));
+        // the client waits for 100 Continue, so the channel is closed right away
+        verify(writeFuture).addListener(ChannelFutureListener.CLOSE);
+        // no 100 Continue has been sent and no transfer has been started
+        verify(channel, times(1)).write(any());
+        verify(blobService, never()).newBlob(anyString(), anyString());
+    }
+
+    @Test
+    public void testContentOfExistingBlobIsDiscarded() throws Exception {
+        receive(putRequest(DIGEST));
+        verify(writeFuture, never()).addListener(ChannelFutureListener.CLOSE);
+
+        receive(new DefaultHttpChunk(ChannelBuffers.copiedBuffer("abc", CharsetUtil.UTF_8)));
+        receive(HttpChunk.LAST_CHUNK);
+
+        assertThat(writtenResponse().getStatus(), is(HttpResponseStatus.CONFLICT));
+        verify(channel, times(1)).write(any());
+        // closed once the body has been received so the client is able to read the response
+        verify(writeFuture).addListener(ChannelFutureListener.CLOSE);
+        verify(blobService, never()).newBlob(anyString(), anyString());
+    }
+
+    @Test
+    public void testNextRequestAfterConflictIsNotDiscarded() throws Exception {
+        RemoteDigestBlob digestBlob = mock(RemoteDigestBlob.class);
+        when(digestBlob.addContent(any(ChannelBuffer.class), anyBoolean())).thenReturn(RemoteDigestBlob.Status.PARTIAL);
+        when(blobService.newBlob(BlobIndices.fullIndexName("b"), OTHER_DIGEST)).thenReturn(digestBlob);
+
+        // conflict without any chunk of the body being received
+        receive(putRequest(DIGEST));
+
+        receive(putRequest(OTHER_DIGEST));
+        ChannelBuffer content = ChannelBuffers.copiedBuffer("abc", CharsetUtil.UTF_8);
+        receive(new DefaultHttpChunk(content));
+
+        verify(digestBlob).addContent(content, false);
+    }
+
     @Test
     public void testBlobHandlerRegex() throws Exception {
         for (String validUrl : validUrls) {
@@ -22,6 +22,8 @@
 package io.crate;
 
 import io.crate.blob.PutChunkReplicaRequest;
+import io.crate.blob.StartBlobRequest;
+import io.crate.common.Hex;
 import io.crate.test.integration.CrateUnitTest;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.io.stream.BytesStreamInput;
@@ -59,4 +61,24 @@ public class SerializationTests extends CrateUnitTest {
         assertEquals(requestOut.transferId, requestIn.transferId);
         assertEquals(requestOut.index(), requestIn.index());
     }
+
+    @Test
+    public void testStartBlobRequestExistingOnPrimarySerialization() throws Exception {
+        BytesStreamOutput outputStream = new BytesStreamOutput();
+
+        StartBlobRequest requestOut = new StartBlobRequest("foo",
+                Hex.decodeHex("f3b4df9c032a14ad415455354798fa2fc3bf1df7"),
+                new BytesArray(new byte[] { 0x65, 0x66 }), false);
+        requestOut.existsOnPrimary();
+        requestOut.writeTo(outputStream);
+        BytesStreamInput inputStream = new BytesStreamInput(outputStream.bytes().copyBytesArray());
+
+        StartBlobRequest requestIn = new StartBlobRequest();
+        requestIn.readFrom(inputStream);
+
+        assertTrue(requestIn.isExistingOnPrimary());
+        assertEquals(0, requestIn.content().length());
+        assertEquals(requestOut.id(), requestIn.id());
+        assertEquals(requestOut.transferId(), requestIn.transferId());
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob;
+
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.Matchers.is;
+
+public class BlobContainerTest extends CrateUnitTest {
+
+    private static final String DIGEST_A = "417de3231e23dcd6d224ff60918024bc6c59aa58";
+    private static final String DIGEST_B = "41ab3231e23dcd6d224ff60918024bc6c59aa581";
+    private static final String DIGEST_C = "c1ab3231e23dcd6d224ff60918024bc6c59aa581";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File baseDirectory;
+
+    @Before
+    public void prepare() throws Exception {
+        baseDirectory = folder.newFolder("blobs");
+    }
+
+    private void addBlob(BlobContainer container, String digest, int size) throws IOException {
+        File tmpFile = new File(container.getTmpDirectory(), digest + ".transfer");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(new byte[size]);
+        }
+        assertTrue(container.moveBlob(tmpFile, container.getFile(digest)));
+    }
+
+    @Test
+    public void testStatsAreUpdatedOnMoveAndDelete() throws Exception {
+        BlobContainer container = new BlobContainer(baseDirectory);
+        addBlob(container, DIGEST_A, 10);
+        addBlob(container, DIGEST_B, 20);
+        addBlob(container, DIGEST_C, 5);
+        // the same blob uploaded again doesn't change the stats
+        addBlob(container, DIGEST_A, 10);
+
+        assertThat(container.stats().count(), is(3L));
+        assertThat(container.stats().totalUsage(), is(35L));
+        assertThat(container.stats().count(0x41), is(2L));
+        assertThat(container.stats().totalUsage(0xc1), is(5L));
+
+        assertTrue(container.delete(DIGEST_B));
+        assertFalse(container.delete(DIGEST_B));
+        assertThat(container.stats().count(), is(2L));
+        assertThat(container.stats().totalUsage(), is(15L));
+        assertTrue(container.verifyStats());
+    }
+
+    @Test
+    public void testStatsAreRestoredFromCheckpoint() throws Exception {
+        BlobContainer container = new BlobContainer(baseDirectory);
+        addBlob(container, DIGEST_A, 10);
+        addBlob(container, DIGEST_C, 5);
+        container.writeStatsCheckpoint();
+
+        container = new BlobContainer(baseDirectory);
+        assertThat(container.stats().count(), is(2L));
+        assertThat(container.stats().totalUsage(), is(15L));
+    }
+
+    @Test
+    public void testVerifyCorrectsOutdatedCheckpoint() throws Exception {
+        BlobContainer container = new BlobContainer(baseDirectory);
+        addBlob(container, DIGEST_A, 10);
+        container.writeStatsCheckpoint();
+        addBlob(container, DIGEST_C, 5);
+        // an incomplete file of a recovery isn't counted
+        assertTrue(new File(container.getFile(DIGEST_B).getParentFile(), DIGEST_B + ".1").createNewFile());
+
+        container = new BlobContainer(baseDirectory);
+        assertThat(container.stats().count(), is(1L));
+
+        assertFalse(container.verifyStats());
+        assertThat(container.stats().count(), is(2L));
+        assertThat(container.stats().totalUsage(), is(15L));
+    }
+
+    @Test
+    public void testCorruptedCheckpointIsIgnored() throws Exception {
+        BlobContainer container = new BlobContainer(baseDirectory);
+        addBlob(container, DIGEST_A, 10);
+        container.writeStatsCheckpoint();
+
+        File checkpoint = new File(baseDirectory, BlobContainer.STATS_CHECKPOINT_FILE);
+        try (RandomAccessFile raf = new RandomAccessFile(checkpoint, "rw")) {
+            raf.seek(10);
+            raf.write(42);
+        }
+
+        container = new BlobContainer(baseDirectory);
+        assertThat(container.stats().count(), is(0L));
+        assertFalse(container.verifyStats());
+        assertThat(container.stats().count(), is(1L));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob;
+
+import io.crate.blob.v2.BlobIndices;
+import io.crate.common.Hex;
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class BlobTransferTargetTest extends CrateUnitTest {
+
+    @Test
+    public void testReplicaSkipsBlobExistingOnPrimary() throws Exception {
+        BlobIndices blobIndices = mock(BlobIndices.class);
+        BlobTransferTarget transferTarget = new BlobTransferTarget(ImmutableSettings.EMPTY,
+                blobIndices, mock(ThreadPool.class), mock(TransportService.class), mock(ClusterService.class));
+
+        StartBlobRequest request = new StartBlobRequest(BlobIndices.fullIndexName("b"),
+                Hex.decodeHex("f3b4df9c032a14ad415455354798fa2fc3bf1df7"), new BytesArray(new byte[]{0x65}), false);
+        // done on the primary after it found the blob
+        request.existsOnPrimary();
+        assertThat(request.content().length(), is(0));
+
+        StartBlobResponse response = new StartBlobResponse();
+        transferTarget.startTransfer(0, request, response);
+
+        assertThat(response.status(), is(RemoteDigestBlob.Status.EXISTS));
+        assertThat(transferTarget.getActiveTransfer(request.transferId()), nullValue());
+        verifyZeroInteractions(blobIndices);
+    }
+}
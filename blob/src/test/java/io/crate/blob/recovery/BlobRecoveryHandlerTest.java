@@ -0,0 +1,274 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob.recovery;
+
+import io.crate.blob.BlobContainer;
+import io.crate.blob.BlobTransferTarget;
+import io.crate.blob.v2.BlobIndices;
+import io.crate.blob.v2.BlobShard;
+import io.crate.common.Hex;
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.IndexShardState;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.recovery.*;
+import org.elasticsearch.transport.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyByte;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class BlobRecoveryHandlerTest extends CrateUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, byte[]> blobs = new HashMap<>();
+    private ThreadPoolExecutor streamPool;
+    private BlobContainer blobContainer;
+    private TargetNode targetNode;
+    private BlobRecoveryHandler handler;
+
+    @Before
+    public void prepare() throws Exception {
+        blobContainer = new BlobContainer(folder.newFolder("blobs"));
+        streamPool = new ThreadPoolExecutor(3, 3, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+        RecoverySettings recoverySettings = mock(RecoverySettings.class);
+        when(recoverySettings.concurrentStreamPool()).thenReturn(streamPool);
+        // files are sent in several chunks
+        when(recoverySettings.fileChunkSize()).thenReturn(new ByteSizeValue(8));
+        when(recoverySettings.internalActionTimeout()).thenReturn(TimeValue.timeValueSeconds(10));
+
+        final BlobShard blobShard = mock(BlobShard.class);
+        when(blobShard.blobContainer()).thenReturn(blobContainer);
+        when(blobShard.currentDigests(anyByte())).thenAnswer(new Answer<byte[][]>() {
+            @Override
+            public byte[][] answer(InvocationOnMock invocation) throws Throwable {
+                byte prefix = (Byte) invocation.getArguments()[0];
+                List<byte[]> digests = new ArrayList<>();
+                for (String digest : blobs.keySet()) {
+                    byte[] digestBytes = Hex.decodeHex(digest);
+                    if (digestBytes[0] == prefix) {
+                        digests.add(digestBytes);
+                    }
+                }
+                return digests.toArray(new byte[digests.size()][]);
+            }
+        });
+        BlobIndices blobIndices = mock(BlobIndices.class);
+        when(blobIndices.blobShardSafe(anyString(), anyInt())).thenReturn(blobShard);
+
+        IndexShard shard = mock(IndexShard.class);
+        when(shard.state()).thenReturn(IndexShardState.STARTED);
+        StartRecoveryRequest request = mock(StartRecoveryRequest.class);
+        when(request.shardId()).thenReturn(new ShardId(BlobIndices.fullIndexName("test"), 0));
+        when(request.targetNode()).thenReturn(mock(DiscoveryNode.class));
+
+        targetNode = new TargetNode();
+        TransportService transportService = mock(TransportService.class);
+        doAnswer(targetNode).when(transportService).submitRequest(
+                any(DiscoveryNode.class),
+                anyString(),
+                any(TransportRequest.class),
+                any(TransportRequestOptions.class),
+                any(TransportResponseHandler.class));
+        doAnswer(targetNode).when(transportService).sendRequest(
+                any(DiscoveryNode.class),
+                anyString(),
+                any(TransportRequest.class),
+                any(TransportRequestOptions.class),
+                any(TransportResponseHandler.class));
+
+        handler = new BlobRecoveryHandler(transportService, recoverySettings,
+                mock(BlobTransferTarget.class), blobIndices, shard, request);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        streamPool.shutdownNow();
+        streamPool.awaitTermination(5, TimeUnit.SECONDS);
+        targetNode.responses.shutdownNow();
+        targetNode.responses.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void addBlobs(int numBlobs) throws Exception {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        for (int i = 0; i < numBlobs; i++) {
+            byte[] content = ("content of blob number " + i).getBytes("UTF-8");
+            String digest = Hex.encodeHexString(sha1.digest(content));
+            File file = blobContainer.getFile(digest);
+            file.getParentFile().mkdirs();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(content);
+            }
+            blobs.put(digest, content);
+        }
+    }
+
+    @Test
+    public void testFilesOfAllPrefixesAreTransferred() throws Exception {
+        addBlobs(1000);
+        Set<String> prefixes = new HashSet<>();
+        for (String digest : blobs.keySet()) {
+            prefixes.add(digest.substring(0, 2));
+        }
+        assertThat(prefixes.size(), greaterThan(200));
+
+        handler.phase1();
+
+        assertThat(targetNode.transfers.size(), is(blobs.size()));
+        for (Map.Entry<String, byte[]> blob : blobs.entrySet()) {
+            Transfer transfer = targetNode.transfers.get(blob.getKey());
+            assertNotNull("blob " + blob.getKey() + " was not transferred", transfer);
+            assertThat(transfer.complete, is(true));
+            assertThat(transfer.content, is(blob.getValue()));
+        }
+    }
+
+    @Test
+    public void testFailingChunkTransferFailsRecovery() throws Exception {
+        addBlobs(100);
+        targetNode.failChunks = true;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> recovery = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    handler.phase1();
+                    return null;
+                }
+            });
+            // must not wait for the transfers which will never finish
+            recovery.get(30, TimeUnit.SECONDS);
+            fail("the recovery should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), is("chunk transfer failed"));
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class Transfer {
+        private final byte[] content;
+        private long received = 0;
+        private boolean complete;
+
+        Transfer(long size) {
+            this.content = new byte[(int) size];
+        }
+
+        synchronized void add(byte[] bytes, long offset) {
+            System.arraycopy(bytes, 0, content, (int) offset, bytes.length);
+            received += bytes.length;
+            complete = received == content.length;
+        }
+    }
+
+    /**
+     * answers the requests of the recovery like the target node would,
+     * chunks are acknowledged asynchronously and possibly out of order
+     */
+    private static class TargetNode implements Answer<TransportFuture<TransportResponse>> {
+
+        // transfers by digest
+        private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+        private final Map<Long, Transfer> transfersById = new ConcurrentHashMap<>();
+        private final ExecutorService responses = Executors.newFixedThreadPool(2);
+        // the futures are created up front, stubbing isn't thread safe
+        private final TransportFuture<TransportResponse> emptyResponse = responseFuture(TransportResponse.Empty.INSTANCE);
+        private final TransportFuture<TransportResponse> noExistingDigests;
+        private volatile boolean failChunks = false;
+
+        TargetNode() {
+            BlobStartPrefixResponse prefixResponse = new BlobStartPrefixResponse();
+            prefixResponse.existingDigests = new byte[0][];
+            noExistingDigests = responseFuture(prefixResponse);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static TransportFuture<TransportResponse> responseFuture(TransportResponse response) {
+            TransportFuture<TransportResponse> future = mock(TransportFuture.class);
+            when(future.txGet()).thenReturn(response);
+            return future;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public TransportFuture<TransportResponse> answer(InvocationOnMock invocation) throws Throwable {
+            String action = (String) invocation.getArguments()[1];
+            Object request = invocation.getArguments()[2];
+            if (action.equals(BlobRecoveryTarget.Actions.START_PREFIX)) {
+                return noExistingDigests;
+            }
+            if (action.equals(BlobRecoveryTarget.Actions.START_TRANSFER)) {
+                BlobRecoveryStartTransferRequest startRequest = (BlobRecoveryStartTransferRequest) request;
+                Transfer transfer = new Transfer(startRequest.size());
+                transfer.add(startRequest.content().copyBytesArray().toBytes(), 0);
+                String path = startRequest.path();
+                transfers.put(path.substring(path.lastIndexOf(File.separatorChar) + 1), transfer);
+                transfersById.put(startRequest.transferId(), transfer);
+            } else if (action.equals(BlobRecoveryTarget.Actions.TRANSFER_CHUNK)) {
+                final BlobRecoveryChunkRequest chunkRequest = (BlobRecoveryChunkRequest) request;
+                // the content is backed by a buffer which is reused once the chunk is acknowledged
+                final byte[] content = chunkRequest.content().copyBytesArray().toBytes();
+                final TransportResponseHandler<TransportResponse.Empty> responseHandler =
+                        (TransportResponseHandler<TransportResponse.Empty>) invocation.getArguments()[4];
+                responses.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failChunks) {
+                            responseHandler.handleException(new TransportException("chunk transfer failed"));
+                            return;
+                        }
+                        transfersById.get(chunkRequest.transferId()).add(content, chunkRequest.offset());
+                        responseHandler.handleResponse(TransportResponse.Empty.INSTANCE);
+                    }
+                });
+            }
+            return emptyResponse;
+        }
+    }
+}
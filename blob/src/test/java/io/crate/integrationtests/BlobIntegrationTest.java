@@ -16,8 +16,17 @@ import org.elasticsearch.common.settings.Settings;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
 @CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.SUITE, numNodes = 2)
 public class BlobIntegrationTest extends BlobHttpIntegrationTest {
 
@@ -77,6 +86,48 @@ public class BlobIntegrationTest extends BlobHttpIntegrationTest {
         assertEquals(409, conflictRes.getStatusLine().getStatusCode());
     }
 
+    @Test
+    public void testUploadExistingBlobWithExpectContinue() throws IOException {
+        String digest = uploadTinyBlob();
+        boolean answered = false;
+        // the node without the shard answers with a redirect
+        for (InetSocketAddress nodeAddress : new InetSocketAddress[]{address, address2}) {
+            try (Socket socket = new Socket(nodeAddress.getAddress(), nodeAddress.getPort())) {
+                socket.setSoTimeout(5000);
+                // only the headers are sent, the server has to answer without receiving the body
+                OutputStream out = socket.getOutputStream();
+                out.write(("PUT /_blobs/test/" + digest + " HTTP/1.1\r\n" +
+                           "Host: " + nodeAddress.getHostName() + "\r\n" +
+                           "Expect: 100-continue\r\n" +
+                           "Content-Length: 26\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                InputStream in = socket.getInputStream();
+                String responseHead = readResponseHead(in);
+                if (responseHead.startsWith("HTTP/1.1 307")) {
+                    continue;
+                }
+                assertThat(responseHead, startsWith("HTTP/1.1 409 Conflict"));
+                assertThat(responseHead, containsString("Connection: close"));
+                // the connection is closed by the server
+                assertThat(in.read(), is(-1));
+                answered = true;
+            }
+        }
+        assertTrue(answered);
+    }
+
+    private static String readResponseHead(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            sb.append((char) b);
+            if (sb.length() >= 4 && sb.substring(sb.length() - 4).equals("\r\n\r\n")) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
     @Test
     public void testUploadToUnknownBlobTable() throws IOException {
         String digest = "c520e6109835c876fd98636efec43dd61634b7d3";
@@ -148,6 +199,67 @@ public class BlobIntegrationTest extends BlobHttpIntegrationTest {
         assertEquals("z", EntityUtils.toString(res.getEntity()));
     }
 
+    @Test
+    public void testSuffixByteRange() throws IOException {
+        String digest = uploadTinyBlob();
+        CloseableHttpResponse res = get(blobUri(digest), new Header[]{
+                new BasicHeader("Range", "bytes=-3")
+        });
+        assertEquals(206, res.getStatusLine().getStatusCode());
+        assertEquals("bytes 23-25/26", res.getFirstHeader("Content-Range").getValue());
+        assertEquals("xyz", EntityUtils.toString(res.getEntity()));
+
+        res = get(blobUri(digest), new Header[]{
+                new BasicHeader("Range", "bytes=20-100")
+        });
+        assertEquals("bytes 20-25/26", res.getFirstHeader("Content-Range").getValue());
+        assertEquals("uvwxyz", EntityUtils.toString(res.getEntity()));
+    }
+
+    @Test
+    public void testMultipleByteRanges() throws IOException {
+        String digest = uploadTinyBlob();
+        CloseableHttpResponse res = get(blobUri(digest), new Header[]{
+                new BasicHeader("Range", "bytes=0-1,-2")
+        });
+        assertEquals(206, res.getStatusLine().getStatusCode());
+        String contentType = res.getFirstHeader("Content-Type").getValue();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring("multipart/byteranges; boundary=".length());
+        String body = EntityUtils.toString(res.getEntity());
+        assertEquals(
+                "--" + boundary + "\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "Content-Range: bytes 0-1/26\r\n\r\n" +
+                "ab\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Type: application/octet-stream\r\n" +
+                "Content-Range: bytes 24-25/26\r\n\r\n" +
+                "yz\r\n" +
+                "--" + boundary + "--\r\n", body);
+        assertEquals(Integer.toString(body.length()), res.getFirstHeader("Content-Length").getValue());
+    }
+
+    @Test
+    public void testIfNoneMatch() throws IOException {
+        String digest = uploadTinyBlob();
+        CloseableHttpResponse res = get(blobUri(digest));
+        assertEquals("\"" + digest + "\"", res.getFirstHeader("ETag").getValue());
+        EntityUtils.consume(res.getEntity());
+
+        res = get(blobUri(digest), new Header[]{
+                new BasicHeader("If-None-Match", "\"" + digest + "\"")
+        });
+        assertEquals(304, res.getStatusLine().getStatusCode());
+        assertEquals("\"" + digest + "\"", res.getFirstHeader("ETag").getValue());
+
+        res = get(blobUri(digest), new Header[]{
+                new BasicHeader("If-None-Match", "\"0000000000000000000000000000000000000000\"")
+        });
+        assertEquals(200, res.getStatusLine().getStatusCode());
+        assertEquals("abcdefghijklmnopqrstuvwxyz", EntityUtils.toString(res.getEntity()));
+    }
+
     @Test
     public void testInvalidByterange() throws IOException {
         String digest = uploadTinyBlob();
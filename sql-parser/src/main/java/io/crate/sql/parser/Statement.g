@@ -120,6 +120,9 @@ tokens {
     MATCH;
     MATCH_PREDICATE_IDENT;
     MATCH_PREDICATE_IDENT_LIST;
+    DECLARE_CURSOR;
+    FETCH_CURSOR;
+    CLOSE_CURSOR;
 }
 
 @header {
@@ -205,6 +208,9 @@ statement
     | refreshStmt
     | setStmt
     | resetStmt
+    | declareCursorStmt
+    | fetchStmt
+    | closeStmt
     ;
 
 query
@@ -1012,6 +1018,18 @@ resetStmt
     : RESET GLOBAL columnList -> ^(RESET columnList)
     ;
 
+declareCursorStmt
+    : DECLARE ident CURSOR FOR query -> ^(DECLARE_CURSOR ident query)
+    ;
+
+fetchStmt
+    : FETCH integer? FROM ident -> ^(FETCH_CURSOR ident integer?)
+    ;
+
+closeStmt
+    : CLOSE ident -> ^(CLOSE_CURSOR ident)
+    ;
+
 settingsType
     : TRANSIENT
     | PERSISTENT
@@ -1026,7 +1044,7 @@ nonReserved
     | PRECEDING | RANGE | REFRESH | ROW | ROWS | SCHEMAS | SECOND
     | SHARDS | SHOW | STRICT | SYSTEM | TABLES | TABLESAMPLE | TEXT | TIME
     | TIMESTAMP | TO | TOKENIZER | TOKEN_FILTERS | TYPE | VIEW | YEAR
-    | DUPLICATE | KEY | VALUES
+    | DUPLICATE | KEY | VALUES | DECLARE | CURSOR | FETCH | CLOSE
     ;
 
 SELECT: 'SELECT';
@@ -1167,6 +1185,10 @@ KEY: 'KEY';
 DUPLICATE: 'DUPLICATE';
 SET: 'SET';
 RESET: 'RESET';
+DECLARE: 'DECLARE';
+CURSOR: 'CURSOR';
+FETCH: 'FETCH';
+CLOSE: 'CLOSE';
 COPY: 'COPY';
 CLUSTERED: 'CLUSTERED';
 SHARDS: 'SHARDS';
@@ -95,6 +95,9 @@ statement returns [Statement value]
     | refresh                   { $value = $refresh.value; }
     | set                       { $value = $set.value; }
     | resetStatement            { $value = $resetStatement.value; }
+    | declareCursor             { $value = $declareCursor.value; }
+    | fetchFromCursor           { $value = $fetchFromCursor.value; }
+    | closeCursor               { $value = $closeCursor.value; }
     ;
 
 query returns [Query value]
@@ -970,3 +973,16 @@ set returns [SetStatement value]
 resetStatement returns [ResetStatement value]
     : ^(RESET columns=columnList) { $value = new ResetStatement($columns.value); }
     ;
+
+declareCursor returns [DeclareCursor value]
+    : ^(DECLARE_CURSOR ident query) { $value = new DeclareCursor($ident.value, $query.value); }
+    ;
+
+fetchFromCursor returns [FetchFromCursor value]
+    : ^(FETCH_CURSOR ident integer?)
+        { $value = new FetchFromCursor($ident.value, $integer.value == null ? 1L : Long.parseLong($integer.value)); }
+    ;
+
+closeCursor returns [CloseCursor value]
+    : ^(CLOSE_CURSOR ident) { $value = new CloseCursor($ident.value); }
+    ;
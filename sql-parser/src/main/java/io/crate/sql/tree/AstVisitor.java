@@ -557,6 +557,18 @@ public abstract class AstVisitor<R, C>
         return visitStatement(node, context);
     }
 
+    public R visitDeclareCursor(DeclareCursor node, C context) {
+        return visitStatement(node, context);
+    }
+
+    public R visitFetchFromCursor(FetchFromCursor node, C context) {
+        return visitStatement(node, context);
+    }
+
+    public R visitCloseCursor(CloseCursor node, C context) {
+        return visitStatement(node, context);
+    }
+
     public R visitAlterTableAddColumnStatement(AlterTableAddColumn node, C context) {
         return visitStatement(node, context);
     }
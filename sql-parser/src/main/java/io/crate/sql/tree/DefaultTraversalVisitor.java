@@ -459,6 +459,12 @@ public abstract class DefaultTraversalVisitor<R, C>
         return null;
     }
 
+    @Override
+    public R visitDeclareCursor(DeclareCursor node, C context) {
+        process(node.query(), context);
+        return null;
+    }
+
     @Override
     public R visitDropTable(DropTable node, C context) {
         process(node.table(), context);
@@ -316,6 +316,21 @@ public class TestStatementBuilder
         printStatement("reset global some_setting['nested'], other_setting");
     }
 
+    @Test
+    public void testCursorStmtBuilder() throws Exception {
+        printStatement("declare c cursor for select * from foo where x = ? order by y desc");
+        printStatement("fetch 100 from c");
+        printStatement("fetch from c");
+        printStatement("close c");
+
+        FetchFromCursor fetch = (FetchFromCursor) SqlParser.createStatement("fetch from \"myCursor\"");
+        assertThat(fetch.name(), is("myCursor"));
+        assertThat(fetch.count(), is(1L));
+
+        // the new keywords are not reserved
+        printStatement("select close, fetch, cursor, declare from foo");
+    }
+
     @Test
     public void testParameterExpressionLimitOffset() throws Exception {
         // ORMs like SQLAlchemy generate these kind of queries.
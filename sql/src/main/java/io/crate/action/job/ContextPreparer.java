@@ -40,6 +40,7 @@ import io.crate.operation.collect.JobCollectContext;
 import io.crate.operation.collect.MapSideDataCollectOperation;
 import io.crate.operation.collect.StatsTables;
 import io.crate.operation.count.CountOperation;
+import io.crate.operation.join.HashJoinOperation;
 import io.crate.operation.projectors.ResultProvider;
 import io.crate.operation.projectors.ResultProviderFactory;
 import io.crate.planner.node.ExecutionNode;
@@ -48,7 +49,9 @@ import io.crate.planner.node.ExecutionNodes;
 import io.crate.planner.node.StreamerVisitor;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.CountNode;
+import io.crate.planner.node.dql.HashJoinNode;
 import io.crate.planner.node.dql.MergeNode;
+import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.breaker.CircuitBreaker;
@@ -175,6 +178,30 @@ public class ContextPreparer {
             return null;
         }
 
+        @Override
+        public Void visitHashJoinNode(HashJoinNode node, PreparerContext context) {
+            ResultProvider downstream = resultProviderFactory.createDownstream(node, node.jobId());
+            HashJoinOperation hashJoinOperation = pageDownstreamFactory.createHashJoinOperation(
+                    node,
+                    downstream,
+                    context.ramAccountingContext,
+                    Optional.of(threadPool.executor(ThreadPool.Names.SEARCH))
+            );
+            // each side is pushed to its own context, the left side uses the id of the node
+            PageDownstreamContext leftContext = new PageDownstreamContext(
+                    hashJoinOperation.leftSide(), streamers(node.leftInputTypes()), node.numLeftUpstreams());
+            PageDownstreamContext rightContext = new PageDownstreamContext(
+                    hashJoinOperation.rightSide(), streamers(node.rightInputTypes()), node.numRightUpstreams());
+
+            statsTables.operationStarted(node.executionNodeId(), context.jobId, node.name());
+            Futures.addCallback(downstream.result(), new OperationFinishedStatsTablesCallback<Bucket>(
+                    node.executionNodeId(), statsTables, context.ramAccountingContext));
+
+            context.contextBuilder.addSubContext(node.executionNodeId(), leftContext);
+            context.contextBuilder.addSubContext(node.rightExecutionNodeId(), rightContext);
+            return null;
+        }
+
         @Override
         public Void visitCollectNode(final CollectNode node, final PreparerContext context) {
             ResultProvider downstream = collectOperationHandler.createDownstream(node);
@@ -204,4 +231,12 @@ public class ContextPreparer {
             return null;
         }
     }
+
+    private static Streamer<?>[] streamers(List<DataType> types) {
+        Streamer<?>[] streamers = new Streamer[types.size()];
+        for (int i = 0; i < types.size(); i++) {
+            streamers[i] = types.get(i).streamer();
+        }
+        return streamers;
+    }
 }
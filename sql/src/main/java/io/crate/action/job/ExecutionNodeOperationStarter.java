@@ -32,6 +32,7 @@ import io.crate.planner.node.ExecutionNode;
 import io.crate.planner.node.ExecutionNodeVisitor;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.CountNode;
+import io.crate.planner.node.dql.HashJoinNode;
 import io.crate.planner.node.dql.MergeNode;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
@@ -76,6 +77,12 @@ public class ExecutionNodeOperationStarter implements RowUpstream {
             return null;
         }
 
+        @Override
+        public Void visitHashJoinNode(HashJoinNode node, JobExecutionContext context) {
+            // nothing to do; like a merge the rows of both sides are pushed into the contexts of the join
+            return null;
+        }
+
         @Override
         public Void visitCountNode(CountNode countNode, JobExecutionContext context) {
             CountContext countContext = context.getSubContext(countNode.executionNodeId());
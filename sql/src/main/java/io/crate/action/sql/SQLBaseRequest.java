@@ -51,6 +51,7 @@ import java.io.IOException;
 public abstract class SQLBaseRequest extends ActionRequest<SQLBaseRequest> {
 
     private static final String SCHEMA_HEADER_KEY = "_s";
+    private static final String SESSION_HEADER_KEY = "_session";
 
     protected String stmt;
     protected long creationTime;
@@ -118,6 +119,25 @@ public abstract class SQLBaseRequest extends ActionRequest<SQLBaseRequest> {
         return getHeader(SCHEMA_HEADER_KEY);
     }
 
+    /**
+     * set the session of the client, cursors are only visible to requests of the same session.
+     * Requests without a session share their cursors.
+     */
+    public void session(@Nullable String session) {
+        if (session == null) {
+            if (hasHeader(SESSION_HEADER_KEY)) {
+                putHeader(SESSION_HEADER_KEY, null);
+            }
+            return;
+        }
+        putHeader(SESSION_HEADER_KEY, session);
+    }
+
+    @Nullable
+    public String session() {
+        return getHeader(SESSION_HEADER_KEY);
+    }
+
     @Override
     public ActionRequestValidationException validate() {
         if (stmt == null) {
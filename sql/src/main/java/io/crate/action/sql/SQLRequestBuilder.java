@@ -51,4 +51,8 @@ public class SQLRequestBuilder extends ActionRequestBuilder<SQLRequest, SQLRespo
         request.includeTypesOnResponse(includeTypes);
     }
 
+    public void session(String session) {
+        request.session(session);
+    }
+
 }
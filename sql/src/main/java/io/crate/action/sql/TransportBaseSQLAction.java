@@ -24,6 +24,7 @@ package io.crate.action.sql;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -33,6 +34,8 @@ import io.crate.analyze.Analyzer;
 import io.crate.exceptions.*;
 import io.crate.executor.Executor;
 import io.crate.executor.Job;
+import io.crate.executor.StreamingTask;
+import io.crate.executor.Task;
 import io.crate.executor.TaskResult;
 import io.crate.metadata.PartitionName;
 import io.crate.metadata.TableIdent;
@@ -74,8 +77,8 @@ import static com.google.common.base.MoreObjects.firstNonNull;
 public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TResponse extends SQLBaseResponse>
         extends TransportAction<TRequest, TResponse> {
 
-    private static final DataType[] EMPTY_TYPES = new DataType[0];
-    private static final String[] EMPTY_NAMES = new String[0];
+    protected static final DataType[] EMPTY_TYPES = new DataType[0];
+    protected static final String[] EMPTY_NAMES = new String[0];
 
 
     private final LoadingCache<String, Statement> statementCache = CacheBuilder.newBuilder()
@@ -89,11 +92,11 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
                     }
             );
 
-    private final ClusterService clusterService;
+    protected final ClusterService clusterService;
     protected final Analyzer analyzer;
     protected final Planner planner;
     private final Provider<Executor> executorProvider;
-    private final StatsTables statsTables;
+    protected final StatsTables statsTables;
     private volatile boolean disabled;
 
     public TransportBaseSQLAction(ClusterService clusterService,
@@ -149,21 +152,8 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
      * @param request  the request that created which issued the execution
      */
     private TResponse createResponseFromResult(@Nullable List<TaskResult> result, Analysis analysis, TRequest request) {
-        String[] outputNames;
-        DataType[] outputTypes;
-        if (analysis.expectsAffectedRows()) {
-            outputNames = EMPTY_NAMES;
-            outputTypes = EMPTY_TYPES;
-        } else {
-            assert analysis.rootRelation() != null;
-            outputNames = new String[analysis.rootRelation().fields().size()];
-            outputTypes = new DataType[analysis.rootRelation().fields().size()];
-            for (int i = 0; i < analysis.rootRelation().fields().size(); i++) {
-                Field field = analysis.rootRelation().fields().get(i);
-                outputNames[i] = field.path().outputName();
-                outputTypes[i] = field.valueType();
-            }
-        }
+        String[] outputNames = outputNames(analysis);
+        DataType[] outputTypes = outputTypes(analysis);
         if (result == null) {
             return emptyResponse(request, outputNames, outputTypes);
         } else {
@@ -172,8 +162,50 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
 
     }
 
+    private static String[] outputNames(Analysis analysis) {
+        if (analysis.expectsAffectedRows()) {
+            return EMPTY_NAMES;
+        }
+        assert analysis.rootRelation() != null;
+        List<Field> fields = analysis.rootRelation().fields();
+        String[] outputNames = new String[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            outputNames[i] = fields.get(i).path().outputName();
+        }
+        return outputNames;
+    }
+
+    private static DataType[] outputTypes(Analysis analysis) {
+        if (analysis.expectsAffectedRows()) {
+            return EMPTY_TYPES;
+        }
+        assert analysis.rootRelation() != null;
+        List<Field> fields = analysis.rootRelation().fields();
+        DataType[] outputTypes = new DataType[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            outputTypes[i] = fields.get(i).valueType();
+        }
+        return outputTypes;
+    }
+
     @Override
     protected void doExecute(TRequest request, ActionListener<TResponse> listener) {
+        doExecute(request, null, listener);
+    }
+
+    /**
+     * Execute the request and push the result rows into the given stream while they are computed,
+     * so that the result doesn't have to be held in memory as a whole.
+     *
+     * Once all rows have been pushed into the stream the listener receives a response without rows.
+     * If the result of the statement can't be streamed, {@link SQLResultStream#start(String[], DataType[])}
+     * isn't called and the listener receives the complete response.
+     */
+    public void executeStreaming(TRequest request, SQLResultStream resultStream, ActionListener<TResponse> listener) {
+        doExecute(request, resultStream, listener);
+    }
+
+    private void doExecute(TRequest request, @Nullable SQLResultStream resultStream, ActionListener<TResponse> listener) {
         logger.debug("{}", request);
         statsTables.activeRequestsInc();
         if (disabled) {
@@ -182,36 +214,54 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
         }
         try {
             Statement statement = statementCache.get(request.stmt());
-            Analysis analysis = getAnalysis(statement, request);
-            processAnalysis(analysis, request, listener);
+            executeStatement(statement, request, resultStream, listener);
         } catch (Throwable e) {
             logger.debug("Error executing SQLRequest", e);
             sendResponse(listener, buildSQLActionException(e));
         }
     }
 
-    private void sendResponse(ActionListener<TResponse> listener, Throwable throwable) {
+    /**
+     * analyze, plan and execute the statement.
+     * The response has to be sent using one of the <code>sendResponse</code> methods.
+     */
+    protected void executeStatement(Statement statement,
+                                    TRequest request,
+                                    @Nullable SQLResultStream resultStream,
+                                    ActionListener<TResponse> listener) {
+        Analysis analysis = getAnalysis(statement, request);
+        processAnalysis(analysis, request, resultStream, listener);
+    }
+
+    protected void sendResponse(ActionListener<TResponse> listener, Throwable throwable) {
         listener.onFailure(throwable);
         statsTables.activeRequestsDec();
     }
 
-    private void sendResponse(ActionListener<TResponse> listener, TResponse response) {
+    protected void sendResponse(ActionListener<TResponse> listener, TResponse response) {
         listener.onResponse(response);
         statsTables.activeRequestsDec();
     }
 
-    private void processAnalysis(Analysis analysis, TRequest request, ActionListener<TResponse> listener) {
+    protected void processAnalysis(Analysis analysis,
+                                   TRequest request,
+                                   @Nullable SQLResultStream resultStream,
+                                   ActionListener<TResponse> listener) {
         final Plan plan = planner.plan(analysis);
         tracePlan(plan);
-        executePlan(analysis, plan, listener, request);
+        executePlan(analysis, plan, listener, request, resultStream);
     }
 
-    private void executePlan(final Analysis analysis,
-                             final Plan plan,
-                             final ActionListener<TResponse> listener,
-                             final TRequest request) {
+    protected void executePlan(final Analysis analysis,
+                               final Plan plan,
+                               final ActionListener<TResponse> listener,
+                               final TRequest request,
+                               @Nullable SQLResultStream resultStream) {
         Executor executor = executorProvider.get();
         Job job = executor.newJob(plan);
+        if (resultStream != null && !analysis.expectsAffectedRows()) {
+            streamResult(job, analysis, resultStream);
+        }
 
         final UUID jobId = job.id();
         assert jobId != null;
@@ -242,6 +292,13 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
         );
     }
 
+    private static void streamResult(Job job, Analysis analysis, SQLResultStream resultStream) {
+        Task lastTask = Iterables.getLast(job.tasks());
+        if (lastTask instanceof StreamingTask && ((StreamingTask) lastTask).streamResult(resultStream)) {
+            resultStream.start(outputNames(analysis), outputTypes(analysis));
+        }
+    }
+
     private void tracePlan(Plan plan) {
         if (logger.isTraceEnabled()) {
             PlanPrinter printer = new PlanPrinter();
@@ -21,9 +21,12 @@
 
 package io.crate.action.sql;
 
-import io.crate.analyze.Analysis;
-import io.crate.analyze.Analyzer;
-import io.crate.analyze.ParameterContext;
+import com.google.common.collect.ImmutableList;
+import io.crate.action.sql.cache.PlanTemplateCache;
+import io.crate.action.sql.cache.QueryResultCache;
+import io.crate.action.sql.cursor.Cursor;
+import io.crate.action.sql.cursor.CursorService;
+import io.crate.analyze.*;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Buckets;
 import io.crate.core.collections.Row;
@@ -31,13 +34,32 @@ import io.crate.executor.BytesRefUtils;
 import io.crate.executor.Executor;
 import io.crate.executor.TaskResult;
 import io.crate.executor.transport.ResponseForwarder;
+import io.crate.executor.transport.TransportShardVersionsNodeAction;
+import io.crate.exceptions.ConflictException;
+import io.crate.exceptions.UnsupportedFeatureException;
+import io.crate.metadata.ColumnIdent;
+import io.crate.metadata.Routing;
+import io.crate.metadata.doc.DocSysColumns;
+import io.crate.metadata.doc.DocTableInfo;
+import io.crate.metadata.table.TableInfo;
 import io.crate.operation.collect.StatsTables;
+import io.crate.planner.Plan;
 import io.crate.planner.Planner;
+import io.crate.planner.symbol.Reference;
+import io.crate.planner.symbol.Symbol;
+import io.crate.sql.tree.CloseCursor;
+import io.crate.sql.tree.DeclareCursor;
+import io.crate.sql.tree.FetchFromCursor;
+import io.crate.sql.tree.Query;
 import io.crate.sql.tree.Statement;
 import io.crate.types.DataType;
+import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.collect.Tuple;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Provider;
 import org.elasticsearch.common.settings.Settings;
@@ -47,11 +69,25 @@ import org.elasticsearch.transport.TransportChannel;
 import org.elasticsearch.transport.TransportService;
 
 import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 
 public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLResponse> {
 
+    private final CursorService cursorService;
+    private final QueryResultCache resultCache;
+    private final PlanTemplateCache planTemplates;
+    private final TransportShardVersionsNodeAction shardVersionsNodeAction;
+
     @Inject
     protected TransportSQLAction(
             ClusterService clusterService,
@@ -62,9 +98,17 @@ public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLRe
             Provider<Executor> executor,
             TransportService transportService,
             StatsTables statsTables,
-            ActionFilters actionFilters) {
+            ActionFilters actionFilters,
+            CursorService cursorService,
+            QueryResultCache resultCache,
+            PlanTemplateCache planTemplates,
+            TransportShardVersionsNodeAction shardVersionsNodeAction) {
         super(clusterService, settings, SQLAction.NAME, threadPool,
                 analyzer, planner, executor, statsTables, actionFilters);
+        this.cursorService = cursorService;
+        this.resultCache = resultCache;
+        this.planTemplates = planTemplates;
+        this.shardVersionsNodeAction = shardVersionsNodeAction;
         transportService.registerHandler(SQLAction.NAME, new TransportHandler());
     }
 
@@ -74,6 +118,222 @@ public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLRe
                 request.args(), SQLBulkRequest.EMPTY_BULK_ARGS, request.getDefaultSchema()));
     }
 
+    @Override
+    protected void executeStatement(Statement statement,
+                                    SQLRequest request,
+                                    @Nullable SQLResultStream resultStream,
+                                    ActionListener<SQLResponse> listener) {
+        if (statement instanceof DeclareCursor) {
+            declareCursor((DeclareCursor) statement, request);
+            sendResponse(listener, emptyResponse(request, EMPTY_NAMES, EMPTY_TYPES));
+        } else if (statement instanceof FetchFromCursor) {
+            fetchFromCursor((FetchFromCursor) statement, request, listener);
+        } else if (statement instanceof CloseCursor) {
+            cursorService.close(request.session(), ((CloseCursor) statement).name());
+            sendResponse(listener, emptyResponse(request, EMPTY_NAMES, EMPTY_TYPES));
+        } else if (planTemplates.accepts(statement, request.args(), request.getDefaultSchema())) {
+            executeTemplate(statement, request, resultStream, listener);
+        } else if (statement instanceof Query && resultStream == null && resultCache.enabled()) {
+            executeCached(statement, request, listener);
+        } else {
+            super.executeStatement(statement, request, resultStream, listener);
+        }
+    }
+
+    /**
+     * execute a statement on a single row using a plan template.
+     * Only the first execution of the statement is analyzed and planned,
+     * following executions bind their arguments to the template.
+     */
+    private void executeTemplate(Statement statement,
+                                 SQLRequest request,
+                                 @Nullable SQLResultStream resultStream,
+                                 ActionListener<SQLResponse> listener) {
+        Tuple<Analysis, Plan> bound = planTemplates.bind(statement, request.args(), request.getDefaultSchema());
+        if (bound == null) {
+            long metaDataGeneration = planTemplates.metaDataGeneration();
+            Analysis analysis = getAnalysis(statement, request);
+            Plan plan = planner.plan(analysis);
+            planTemplates.put(statement, request.args(), request.getDefaultSchema(),
+                    metaDataGeneration, analysis, plan);
+            bound = new Tuple<>(analysis, plan);
+        }
+        executePlan(bound.v1(), bound.v2(), listener, request, resultStream);
+    }
+
+    /**
+     * execute a query using the result cache.
+     * The reader versions of all copies of the shards the query is executed on are retrieved first
+     * to look up the cached response. If there is none, the plan is executed and the response is cached.
+     * Responses from the cache are logged as jobs as well.
+     */
+    private void executeCached(Statement statement,
+                               final SQLRequest request,
+                               final ActionListener<SQLResponse> listener) {
+        final Analysis analysis = getAnalysis(statement, request);
+        if (!QueryResultCache.isCacheable(statement, analysis)) {
+            processAnalysis(analysis, request, null, listener);
+            return;
+        }
+        final Plan plan = planner.plan(analysis);
+        Routing routing = QueryResultCache.routing(plan);
+        if (routing == null) {
+            executePlan(analysis, plan, listener, request, null);
+            return;
+        }
+        final QueryResultCache.Key key = new QueryResultCache.Key(
+                request.stmt(), request.args(), request.getDefaultSchema());
+        // read before the execution, so that a change during the execution invalidates the entry
+        final Map<String, IndexMetaData> indices = indexMetaData(routing);
+        shardVersionsNodeAction.execute(routing, new ActionListener<Map<String, Long>>() {
+            @Override
+            public void onResponse(final Map<String, Long> shardVersions) {
+                try {
+                    SQLResponse response = resultCache.get(
+                            key, shardVersions, indices, request.creationTime(), request.includeTypesOnResponse());
+                    if (response != null) {
+                        UUID jobId = UUID.randomUUID();
+                        statsTables.jobStarted(jobId, request.stmt());
+                        statsTables.jobFinished(jobId, null);
+                        sendResponse(listener, response);
+                        return;
+                    }
+                    executePlan(analysis, plan, new ActionListener<SQLResponse>() {
+                        @Override
+                        public void onResponse(SQLResponse response) {
+                            resultCache.put(key, shardVersions, indices, response);
+                            listener.onResponse(response);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            listener.onFailure(e);
+                        }
+                    }, request, null);
+                } catch (Throwable t) {
+                    sendResponse(listener, buildSQLActionException(t));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                // the shard versions are unknown, so the result can't be cached
+                logger.debug("Failed to retrieve shard versions for the result cache", e);
+                try {
+                    executePlan(analysis, plan, listener, request, null);
+                } catch (Throwable t) {
+                    sendResponse(listener, buildSQLActionException(t));
+                }
+            }
+        });
+    }
+
+    private Map<String, IndexMetaData> indexMetaData(Routing routing) {
+        MetaData metaData = clusterService.state().metaData();
+        Map<String, IndexMetaData> indices = new HashMap<>();
+        for (Map<String, List<Integer>> nodeIndices : routing.locations().values()) {
+            if (nodeIndices == null) {
+                continue;
+            }
+            for (String index : nodeIndices.keySet()) {
+                indices.put(index, metaData.index(index));
+            }
+        }
+        return indices;
+    }
+
+    private void declareCursor(DeclareCursor statement, SQLRequest request) {
+        Analysis analysis = getAnalysis(statement.query(), request);
+        if (!(analysis.rootRelation() instanceof QueriedTable)) {
+            throw new UnsupportedFeatureException("Cursors are only supported for queries on a single table");
+        }
+        QueriedTable relation = (QueriedTable) analysis.rootRelation();
+        TableInfo tableInfo = relation.tableRelation().tableInfo();
+        if (!(tableInfo instanceof DocTableInfo)) {
+            throw new UnsupportedFeatureException(String.format(Locale.ENGLISH,
+                    "Cursors are not supported for queries on the system table '%s'", tableInfo.ident().fqn()));
+        }
+        if (relation.querySpec().hasAggregates()) {
+            throw new UnsupportedFeatureException("Aggregations are not supported in the query of a cursor");
+        }
+        cursorService.declare(request.session(), new Cursor(
+                statement.name(),
+                statement.query(),
+                request.args(),
+                request.getDefaultSchema(),
+                tieBreakers((DocTableInfo) tableInfo, relation.querySpec().orderBy()),
+                cursorService.keepAlive(),
+                cursorService.currentTime()));
+    }
+
+    /**
+     * @return the primary key columns which are missing in the ORDER BY clause,
+     *         <code>_uid</code> if the table has no primary key
+     */
+    private static List<ColumnIdent> tieBreakers(DocTableInfo tableInfo, @Nullable OrderBy orderBy) {
+        Set<ColumnIdent> sortColumns = new HashSet<>();
+        if (orderBy != null) {
+            for (Symbol symbol : orderBy.orderBySymbols()) {
+                if (symbol instanceof Reference) {
+                    sortColumns.add(((Reference) symbol).info().ident().columnIdent());
+                }
+            }
+        }
+        if (tableInfo.hasAutoGeneratedPrimaryKey()) {
+            // _id can't be sorted on
+            return sortColumns.contains(DocSysColumns.UID)
+                    ? ImmutableList.<ColumnIdent>of() : ImmutableList.of(DocSysColumns.UID);
+        }
+        List<ColumnIdent> tieBreakers = new ArrayList<>();
+        for (ColumnIdent pkColumn : tableInfo.primaryKey()) {
+            if (!sortColumns.contains(pkColumn)) {
+                tieBreakers.add(pkColumn);
+            }
+        }
+        return tieBreakers;
+    }
+
+    private void fetchFromCursor(FetchFromCursor statement,
+                                 SQLRequest request,
+                                 final ActionListener<SQLResponse> listener) {
+        final Cursor cursor = cursorService.get(request.session(), statement.name());
+        if (!cursor.startFetch()) {
+            throw new ConflictException(String.format(Locale.ENGLISH,
+                    "Cursor '%s' is already being fetched from", cursor.name()));
+        }
+        try {
+            Analysis analysis = analyzer.analyze(cursor.nextPageQuery(statement.count()), new ParameterContext(
+                    cursor.nextPageArgs(), SQLBulkRequest.EMPTY_BULK_ARGS, cursor.defaultSchema()));
+            processAnalysis(analysis, request, null, new ActionListener<SQLResponse>() {
+                @Override
+                public void onResponse(SQLResponse response) {
+                    cursor.finishFetch(response.rows(), cursorService.currentTime());
+                    listener.onResponse(removeHiddenColumns(response, cursor.numHiddenColumns()));
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    cursor.finishFetch(null, cursorService.currentTime());
+                    listener.onFailure(e);
+                }
+            });
+        } catch (Throwable t) {
+            cursor.finishFetch(null, cursorService.currentTime());
+            throw t;
+        }
+    }
+
+    private static SQLResponse removeHiddenColumns(SQLResponse response, int numHiddenColumns) {
+        int numColumns = response.cols().length - numHiddenColumns;
+        response.cols(Arrays.copyOf(response.cols(), numColumns));
+        response.colTypes(Arrays.copyOf(response.columnTypes(), numColumns));
+        Object[][] rows = response.rows();
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = Arrays.copyOf(rows[i], numColumns);
+        }
+        return response;
+    }
+
     @Override
     public SQLResponse emptyResponse(SQLRequest request,
                                      String[] outputNames,
@@ -98,17 +358,24 @@ public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLRe
 
         Object[][] objs;
         long rowCount = 0;
-        if (expectsAffectedRows) {
-            if (rows.size() >= 1){
-                Row first = rows.iterator().next();
-                if (first.size()>=1){
-                    rowCount = ((Number) first.get(0)).longValue();
+        try {
+            if (expectsAffectedRows) {
+                if (rows.size() >= 1){
+                    Row first = rows.iterator().next();
+                    if (first.size()>=1){
+                        rowCount = ((Number) first.get(0)).longValue();
+                    }
                 }
+                objs = TaskResult.EMPTY_OBJS;
+            } else {
+                rowCount = rows.size();
+                objs = Buckets.materialize(rows);
+            }
+        } finally {
+            if (rows instanceof Closeable) {
+                // releases e.g. the run files of an external sort if the rows weren't iterated completely
+                IOUtils.closeWhileHandlingException((Closeable) rows);
             }
-            objs = TaskResult.EMPTY_OBJS;
-        } else {
-            rowCount = rows.size();
-            objs = Buckets.materialize(rows);
         }
         BytesRefUtils.ensureStringTypesAreStrings(outputTypes, objs);
         return new SQLResponse(
@@ -0,0 +1,685 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql.cache;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import io.crate.analyze.Analysis;
+import io.crate.analyze.QuerySpec;
+import io.crate.analyze.UpdateAnalyzedStatement;
+import io.crate.analyze.WhereClause;
+import io.crate.analyze.relations.TableRelation;
+import io.crate.analyze.where.DocKeys;
+import io.crate.metadata.ColumnIdent;
+import io.crate.metadata.table.TableInfo;
+import io.crate.planner.IterablePlan;
+import io.crate.planner.Plan;
+import io.crate.planner.node.PlanNode;
+import io.crate.planner.node.dml.ESDeleteNode;
+import io.crate.planner.node.dml.SymbolBasedUpsertByIdNode;
+import io.crate.planner.node.dml.Upsert;
+import io.crate.planner.node.dql.ESGetNode;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Symbol;
+import io.crate.sql.tree.*;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.lucene.uid.Versions;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node level cache for the analysis and plan of statements on a single row of a table
+ * which only differ in their arguments.
+ *
+ * Templates are created for SELECT, UPDATE and DELETE statements whose WHERE clause
+ * is a conjunction of <code>pk_column = ?</code> for all primary key columns of a table which isn't partitioned.
+ * Besides the primary key values only the values of <code>column = ?</code> assignments of an UPDATE
+ * may be parameters. The first execution of such a statement is analyzed and planned as usual,
+ * following executions get a new plan with the arguments bound to the doc key and assignments
+ * of the template without analyzing and planning the statement again.
+ *
+ * Like the insert templates of {@link io.crate.analyze.InsertFromValuesAnalyzer}
+ * the templates are keyed by the parsed statement and aren't used anymore once the cluster meta data changes.
+ */
+@Singleton
+public class PlanTemplateCache implements ClusterStateListener {
+
+    /**
+     * the positions of the parameters of a statement by the column they are compared with or assigned to
+     */
+    static class Parameters {
+
+        final Map<String, Integer> keyColumns = new HashMap<>();
+        final Map<String, Integer> assignmentColumns = new HashMap<>();
+
+        int size() {
+            return keyColumns.size() + assignmentColumns.size();
+        }
+    }
+
+    private static class Template {
+
+        @Nullable
+        private final Analysis analysis;
+        private final String defaultSchema;
+        private final long metaDataGeneration;
+        private final int numParameters;
+
+        Template(@Nullable Analysis analysis,
+                 @Nullable String defaultSchema,
+                 long metaDataGeneration,
+                 int numParameters) {
+            this.analysis = analysis;
+            this.defaultSchema = defaultSchema;
+            this.metaDataGeneration = metaDataGeneration;
+            this.numParameters = numParameters;
+        }
+
+        boolean matches(Object[] args, @Nullable String defaultSchema, long metaDataGeneration) {
+            return this.metaDataGeneration == metaDataGeneration
+                    && numParameters == args.length
+                    && Objects.equals(this.defaultSchema, defaultSchema);
+        }
+
+        /**
+         * @return false if the statement has to be analyzed and planned on every execution
+         */
+        boolean supported() {
+            return false;
+        }
+
+        /**
+         * @return a new plan with the arguments bound or null if the arguments can't be bound
+         */
+        @Nullable
+        Plan plan(Object[] args) {
+            return null;
+        }
+    }
+
+    /**
+     * the doc key of a statement with the positions of the parameters of the primary key values
+     */
+    private static class DocKeyTemplate {
+
+        private final List<DataType> types;
+        private final int[] parameterIndices;
+        private final int clusteredByIdx;
+        private final int numParameters;
+
+        DocKeyTemplate(List<DataType> types, int[] parameterIndices, int clusteredByIdx, int numParameters) {
+            this.types = types;
+            this.parameterIndices = parameterIndices;
+            this.clusteredByIdx = clusteredByIdx;
+            this.numParameters = numParameters;
+        }
+
+        @Nullable
+        DocKeys docKeys(Object[] args) {
+            List<Symbol> key = new ArrayList<>(types.size());
+            for (int i = 0; i < types.size(); i++) {
+                Object value = args[parameterIndices[i]];
+                if (value == null) {
+                    // doesn't match any row, handled by the analysis
+                    return null;
+                }
+                DataType type = types.get(i);
+                key.add(Literal.newLiteral(type, type.value(value)));
+            }
+            return new DocKeys(ImmutableList.of(key), false, clusteredByIdx, null);
+        }
+    }
+
+    private static class GetTemplate extends Template {
+
+        private final ESGetNode node;
+        private final DocKeyTemplate docKeyTemplate;
+
+        GetTemplate(Analysis analysis, String defaultSchema, long metaDataGeneration,
+                    ESGetNode node, DocKeyTemplate docKeyTemplate) {
+            super(analysis, defaultSchema, metaDataGeneration, docKeyTemplate.numParameters);
+            this.node = node;
+            this.docKeyTemplate = docKeyTemplate;
+        }
+
+        @Override
+        boolean supported() {
+            return true;
+        }
+
+        @Override
+        Plan plan(Object[] args) {
+            DocKeys docKeys = docKeyTemplate.docKeys(args);
+            if (docKeys == null) {
+                return null;
+            }
+            WhereClause whereClause = new WhereClause();
+            whereClause.docKeys(docKeys);
+            QuerySpec querySpec = new QuerySpec()
+                    .outputs(node.querySpec().outputs())
+                    .orderBy(node.querySpec().orderBy())
+                    .limit(node.querySpec().limit())
+                    .offset(node.querySpec().offset())
+                    .where(whereClause);
+            return new IterablePlan(new ESGetNode(node.executionNodeId(), node.tableInfo(), querySpec));
+        }
+    }
+
+    private static class DeleteTemplate extends Template {
+
+        private final TableInfo tableInfo;
+        private final DocKeyTemplate docKeyTemplate;
+
+        DeleteTemplate(Analysis analysis, String defaultSchema, long metaDataGeneration,
+                       TableInfo tableInfo, DocKeyTemplate docKeyTemplate) {
+            super(analysis, defaultSchema, metaDataGeneration, docKeyTemplate.numParameters);
+            this.tableInfo = tableInfo;
+            this.docKeyTemplate = docKeyTemplate;
+        }
+
+        @Override
+        boolean supported() {
+            return true;
+        }
+
+        @Override
+        Plan plan(Object[] args) {
+            DocKeys docKeys = docKeyTemplate.docKeys(args);
+            if (docKeys == null) {
+                return null;
+            }
+            return new IterablePlan(new ESDeleteNode(tableInfo, docKeys.getOnlyKey()));
+        }
+    }
+
+    private static class UpdateTemplate extends Template {
+
+        private final SymbolBasedUpsertByIdNode node;
+        private final String index;
+        private final Symbol[] assignments;
+        private final int[] assignmentParameterIndices;
+        private final DocKeyTemplate docKeyTemplate;
+
+        UpdateTemplate(Analysis analysis, String defaultSchema, long metaDataGeneration,
+                       SymbolBasedUpsertByIdNode node, String index, Symbol[] assignments,
+                       int[] assignmentParameterIndices, DocKeyTemplate docKeyTemplate) {
+            super(analysis, defaultSchema, metaDataGeneration, docKeyTemplate.numParameters);
+            this.node = node;
+            this.index = index;
+            this.assignments = assignments;
+            this.assignmentParameterIndices = assignmentParameterIndices;
+            this.docKeyTemplate = docKeyTemplate;
+        }
+
+        @Override
+        boolean supported() {
+            return true;
+        }
+
+        @Override
+        Plan plan(Object[] args) {
+            DocKeys docKeys = docKeyTemplate.docKeys(args);
+            if (docKeys == null) {
+                return null;
+            }
+            Symbol[] boundAssignments = new Symbol[assignments.length];
+            for (int i = 0; i < assignments.length; i++) {
+                int parameterIdx = assignmentParameterIndices[i];
+                if (parameterIdx < 0) {
+                    boundAssignments[i] = assignments[i];
+                } else {
+                    DataType type = assignments[i].valueType();
+                    boundAssignments[i] = Literal.newLiteral(type, type.value(args[parameterIdx]));
+                }
+            }
+            DocKeys.DocKey key = docKeys.getOnlyKey();
+            SymbolBasedUpsertByIdNode upsertByIdNode = new SymbolBasedUpsertByIdNode(
+                    node.executionNodeId(), node.isPartitionedTable(), false, node.updateColumns(), null);
+            upsertByIdNode.add(index, key.id(), key.routing(), boundAssignments, null);
+            return new Upsert(ImmutableList.<Plan>of(new IterablePlan(upsertByIdNode)));
+        }
+    }
+
+    private static final int MAX_SIZE = 500;
+
+    /**
+     * keyed by the parsed statement, which is the same instance for every request with the same statement text
+     * as long as it is served from the statement cache of the transport action.
+     */
+    private final Cache<Statement, Template> templates = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_SIZE)
+            .build();
+
+    /**
+     * incremented on every meta data change, templates created before are not used anymore
+     */
+    private final AtomicLong metaDataGeneration = new AtomicLong();
+
+    @Inject
+    public PlanTemplateCache(ClusterService clusterService) {
+        clusterService.add(this);
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (event.metaDataChanged()) {
+            metaDataGeneration.incrementAndGet();
+            templates.invalidateAll();
+        }
+    }
+
+    /**
+     * @return true if the statement may be executed using a template,
+     *         the statement is then analyzed and planned using {@link #bind(Statement, Object[], String)}
+     *         and {@link #put(Statement, Object[], String, long, Analysis, Plan)}
+     */
+    public boolean accepts(Statement statement, Object[] args, @Nullable String defaultSchema) {
+        if (args.length == 0) {
+            return false;
+        }
+        Template template = templates.getIfPresent(statement);
+        if (template != null && template.matches(args, defaultSchema, metaDataGeneration.get())) {
+            return template.supported();
+        }
+        Parameters parameters = parameters(statement);
+        return parameters != null && parameters.size() == args.length;
+    }
+
+    /**
+     * @return the analysis and a new plan of the statement with the arguments bound
+     *         or null if there is no template for the statement
+     */
+    @Nullable
+    public Tuple<Analysis, Plan> bind(Statement statement, Object[] args, @Nullable String defaultSchema) {
+        Template template = templates.getIfPresent(statement);
+        if (template == null
+                || !template.supported()
+                || !template.matches(args, defaultSchema, metaDataGeneration.get())) {
+            return null;
+        }
+        Plan plan;
+        try {
+            plan = template.plan(args);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            // invalid arguments, the analysis reports the error
+            return null;
+        }
+        if (plan == null) {
+            return null;
+        }
+        return new Tuple<>(template.analysis, plan);
+    }
+
+    /**
+     * @return the current meta data generation, which has to be read before a statement is analyzed
+     *         to create a template from the analysis
+     */
+    public long metaDataGeneration() {
+        return metaDataGeneration.get();
+    }
+
+    /**
+     * create the template of a statement from its analysis and plan.
+     * If the plan isn't a primary key lookup, update or delete of a single row
+     * the statement is remembered to be executed without template.
+     */
+    public void put(Statement statement,
+                    Object[] args,
+                    @Nullable String defaultSchema,
+                    long generation,
+                    Analysis analysis,
+                    Plan plan) {
+        Template template = null;
+        Parameters parameters = parameters(statement);
+        if (parameters != null && parameters.size() == args.length) {
+            template = template(parameters, defaultSchema, generation, analysis, plan);
+        }
+        if (template == null) {
+            template = new Template(null, defaultSchema, generation, args.length);
+        }
+        templates.put(statement, template);
+    }
+
+    @Nullable
+    private static Template template(Parameters parameters,
+                                     @Nullable String defaultSchema,
+                                     long generation,
+                                     Analysis analysis,
+                                     Plan plan) {
+        if (plan instanceof Upsert) {
+            List<Plan> nodes = ((Upsert) plan).nodes();
+            if (nodes.size() != 1) {
+                return null;
+            }
+            plan = nodes.get(0);
+        }
+        if (!(plan instanceof IterablePlan)) {
+            return null;
+        }
+        Iterator<PlanNode> planNodes = ((IterablePlan) plan).iterator();
+        if (!planNodes.hasNext()) {
+            return null;
+        }
+        PlanNode planNode = planNodes.next();
+        if (planNodes.hasNext()) {
+            return null;
+        }
+        if (planNode instanceof ESGetNode) {
+            ESGetNode node = (ESGetNode) planNode;
+            if (node.docKeys().size() != 1 || !parameters.assignmentColumns.isEmpty()) {
+                return null;
+            }
+            DocKeyTemplate docKeyTemplate = docKeyTemplate(
+                    node.tableInfo(), node.docKeys().getOnlyKey().values(), parameters);
+            if (docKeyTemplate == null) {
+                return null;
+            }
+            return new GetTemplate(analysis, defaultSchema, generation, node, docKeyTemplate);
+        }
+        if (planNode instanceof ESDeleteNode) {
+            ESDeleteNode node = (ESDeleteNode) planNode;
+            if (node.key().version().isPresent() || !parameters.assignmentColumns.isEmpty()) {
+                return null;
+            }
+            DocKeyTemplate docKeyTemplate = docKeyTemplate(node.tableInfo(), node.key().values(), parameters);
+            if (docKeyTemplate == null) {
+                return null;
+            }
+            return new DeleteTemplate(analysis, defaultSchema, generation, node.tableInfo(), docKeyTemplate);
+        }
+        if (planNode instanceof SymbolBasedUpsertByIdNode) {
+            return updateTemplate(
+                    (SymbolBasedUpsertByIdNode) planNode, parameters, defaultSchema, generation, analysis);
+        }
+        return null;
+    }
+
+    @Nullable
+    private static Template updateTemplate(SymbolBasedUpsertByIdNode node,
+                                           Parameters parameters,
+                                           @Nullable String defaultSchema,
+                                           long generation,
+                                           Analysis analysis) {
+        if (node.items().size() != 1 || node.insertColumns() != null || node.isBulkRequest()) {
+            return null;
+        }
+        SymbolBasedUpsertByIdNode.Item item = node.items().get(0);
+        Symbol[] assignments = item.updateAssignments();
+        String[] updateColumns = node.updateColumns();
+        if (assignments == null || updateColumns == null || item.version() != Versions.MATCH_ANY) {
+            return null;
+        }
+        int[] assignmentParameterIndices = new int[updateColumns.length];
+        int boundAssignments = 0;
+        for (int i = 0; i < updateColumns.length; i++) {
+            Integer parameterIdx = parameters.assignmentColumns.get(updateColumns[i]);
+            if (parameterIdx == null) {
+                assignmentParameterIndices[i] = -1;
+            } else if (assignments[i] instanceof Literal
+                    && DataTypes.PRIMITIVE_TYPES.contains(assignments[i].valueType())) {
+                // values of objects and arrays are validated against the columns by the analysis
+                assignmentParameterIndices[i] = parameterIdx;
+                boundAssignments++;
+            } else {
+                return null;
+            }
+        }
+        if (boundAssignments != parameters.assignmentColumns.size()) {
+            return null;
+        }
+        if (!(analysis.analyzedStatement() instanceof UpdateAnalyzedStatement)) {
+            return null;
+        }
+        UpdateAnalyzedStatement statement = (UpdateAnalyzedStatement) analysis.analyzedStatement();
+        TableInfo tableInfo = ((TableRelation) statement.sourceRelation()).tableInfo();
+        WhereClause whereClause = statement.nestedStatements().get(0).whereClause();
+        if (!whereClause.docKeys().isPresent() || whereClause.docKeys().get().size() != 1) {
+            return null;
+        }
+        DocKeyTemplate docKeyTemplate = docKeyTemplate(
+                tableInfo, whereClause.docKeys().get().getOnlyKey().values(), parameters);
+        if (docKeyTemplate == null) {
+            return null;
+        }
+        return new UpdateTemplate(analysis, defaultSchema, generation,
+                node, item.index(), assignments, assignmentParameterIndices, docKeyTemplate);
+    }
+
+    /**
+     * @return the template of the doc key or null if the parameters aren't the values of all primary key columns
+     */
+    @Nullable
+    private static DocKeyTemplate docKeyTemplate(TableInfo tableInfo, List<Symbol> values, Parameters parameters) {
+        if (tableInfo.isPartitioned()) {
+            // the partitions are pruned by the analysis
+            return null;
+        }
+        List<ColumnIdent> primaryKey = tableInfo.primaryKey();
+        if (primaryKey.size() != parameters.keyColumns.size() || primaryKey.size() != values.size()) {
+            // values with a version
+            return null;
+        }
+        List<DataType> types = new ArrayList<>(primaryKey.size());
+        int[] parameterIndices = new int[primaryKey.size()];
+        for (int i = 0; i < primaryKey.size(); i++) {
+            Integer parameterIdx = parameters.keyColumns.get(primaryKey.get(i).fqn());
+            if (parameterIdx == null || !(values.get(i) instanceof Literal)) {
+                return null;
+            }
+            parameterIndices[i] = parameterIdx;
+            types.add(values.get(i).valueType());
+        }
+        int clusteredByIdx = -1;
+        if (tableInfo.clusteredBy() != null) {
+            clusteredByIdx = primaryKey.indexOf(tableInfo.clusteredBy());
+        }
+        return new DocKeyTemplate(types, parameterIndices, clusteredByIdx, parameters.size());
+    }
+
+    /**
+     * @return the parameters of a SELECT, UPDATE or DELETE statement
+     *         or null if it has parameters which aren't compared with a column in a conjunction
+     *         of its WHERE clause or assigned to a column
+     */
+    @Nullable
+    static Parameters parameters(Statement statement) {
+        Parameters parameters = new Parameters();
+        Optional<Expression> where;
+        if (statement instanceof Query) {
+            QueryBody queryBody = ((Query) statement).getQueryBody();
+            if (!(queryBody instanceof QuerySpecification)) {
+                return null;
+            }
+            where = ((QuerySpecification) queryBody).getWhere();
+        } else if (statement instanceof Delete) {
+            where = ((Delete) statement).getWhere();
+        } else if (statement instanceof Update) {
+            Update update = (Update) statement;
+            where = update.whereClause();
+            for (Assignment assignment : update.assignements()) {
+                if (assignment.columnName() instanceof QualifiedNameReference
+                        && assignment.expression() instanceof ParameterExpression) {
+                    String column = ((QualifiedNameReference) assignment.columnName()).getSuffix().toString();
+                    int parameterIdx = ((ParameterExpression) assignment.expression()).index();
+                    if (parameters.assignmentColumns.put(column, parameterIdx) != null) {
+                        return null;
+                    }
+                }
+            }
+        } else {
+            return null;
+        }
+        if (!where.isPresent() || !addKeyColumns(where.get(), parameters.keyColumns)) {
+            return null;
+        }
+
+        ParameterVisitor parameterVisitor = new ParameterVisitor();
+        parameterVisitor.process(statement, null);
+        if (parameterVisitor.containsCurrentTime || parameterVisitor.parameterIndices.size() != parameters.size()) {
+            // parameters which are used anywhere else are bound by the analysis
+            return null;
+        }
+        return parameters;
+    }
+
+    private static boolean addKeyColumns(Expression expression, Map<String, Integer> keyColumns) {
+        if (expression instanceof LogicalBinaryExpression) {
+            LogicalBinaryExpression logicalExpression = (LogicalBinaryExpression) expression;
+            return logicalExpression.getType() == LogicalBinaryExpression.Type.AND
+                    && addKeyColumns(logicalExpression.getLeft(), keyColumns)
+                    && addKeyColumns(logicalExpression.getRight(), keyColumns);
+        }
+        if (!(expression instanceof ComparisonExpression)
+                || ((ComparisonExpression) expression).getType() != ComparisonExpression.Type.EQUAL) {
+            return false;
+        }
+        Expression left = ((ComparisonExpression) expression).getLeft();
+        Expression right = ((ComparisonExpression) expression).getRight();
+        if (left instanceof ParameterExpression) {
+            Expression tmp = left;
+            left = right;
+            right = tmp;
+        }
+        if (!(left instanceof QualifiedNameReference) || !(right instanceof ParameterExpression)) {
+            return false;
+        }
+        String column = ((QualifiedNameReference) left).getSuffix().toString();
+        return keyColumns.put(column, ((ParameterExpression) right).index()) == null;
+    }
+
+    /**
+     * collects the parameters of all parts of a statement which may contain parameters
+     */
+    private static class ParameterVisitor extends DefaultTraversalVisitor<Void, Void> {
+
+        private final Set<Integer> parameterIndices = new HashSet<>();
+        private boolean containsCurrentTime = false;
+
+        @Override
+        public Void visitParameterExpression(ParameterExpression node, Void context) {
+            parameterIndices.add(node.index());
+            return null;
+        }
+
+        @Override
+        protected Void visitCurrentTime(CurrentTime node, Void context) {
+            containsCurrentTime = true;
+            return null;
+        }
+
+        @Override
+        protected Void visitQuery(Query node, Void context) {
+            super.visitQuery(node, context);
+            processLimitAndOffset(node.getLimit(), node.getOffset());
+            return null;
+        }
+
+        @Override
+        protected Void visitQuerySpecification(QuerySpecification node, Void context) {
+            super.visitQuerySpecification(node, context);
+            processLimitAndOffset(node.getLimit(), node.getOffset());
+            return null;
+        }
+
+        private void processLimitAndOffset(Optional<Expression> limit, Optional<Expression> offset) {
+            if (limit.isPresent()) {
+                process(limit.get(), null);
+            }
+            if (offset.isPresent()) {
+                process(offset.get(), null);
+            }
+        }
+
+        @Override
+        public Void visitDelete(Delete node, Void context) {
+            super.visitDelete(node, context);
+            if (node.getWhere().isPresent()) {
+                process(node.getWhere().get(), context);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitAssignment(Assignment node, Void context) {
+            process(node.columnName(), context);
+            process(node.expression(), context);
+            return null;
+        }
+
+        @Override
+        protected Void visitSubscriptExpression(SubscriptExpression node, Void context) {
+            process(node.name(), context);
+            process(node.index(), context);
+            return null;
+        }
+
+        @Override
+        public Void visitArrayLiteral(ArrayLiteral node, Void context) {
+            for (Expression value : node.values()) {
+                process(value, context);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitObjectLiteral(ObjectLiteral node, Void context) {
+            for (Expression value : node.values().values()) {
+                process(value, context);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitArrayComparisonExpression(ArrayComparisonExpression node, Void context) {
+            process(node.left(), context);
+            process(node.right(), context);
+            return null;
+        }
+
+        @Override
+        public Void visitArrayLikePredicate(ArrayLikePredicate node, Void context) {
+            process(node.left(), context);
+            process(node.right(), context);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql.cache;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.*;
+import io.crate.action.sql.SQLResponse;
+import io.crate.analyze.Analysis;
+import io.crate.analyze.QueriedTable;
+import io.crate.analyze.QuerySpec;
+import io.crate.breaker.CrateCircuitBreakerService;
+import io.crate.metadata.Routing;
+import io.crate.metadata.doc.DocTableInfo;
+import io.crate.planner.Plan;
+import io.crate.planner.PlanVisitor;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.node.dql.*;
+import io.crate.planner.symbol.*;
+import io.crate.sql.tree.CurrentTime;
+import io.crate.sql.tree.DefaultTraversalVisitor;
+import io.crate.sql.tree.Statement;
+import io.crate.types.DataType;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Node level cache for the responses of SELECT statements on user tables.
+ *
+ * Besides the statement and its arguments every entry stores the versions of the readers
+ * of all copies of the shards the statement was executed on and the meta data of their indices.
+ * An entry is only used as long as the shards still have the same reader versions and
+ * the meta data is unchanged, so a refresh which makes changes visible or a change of
+ * the mapping, settings or aliases of a table invalidates the entries of the affected tables.
+ *
+ * Entries are evicted in least recently used order once the configured size is reached.
+ * The memory used by the entries is accounted on the query circuit breaker.
+ */
+@Singleton
+public class QueryResultCache {
+
+    private static final ESLogger LOGGER = Loggers.getLogger(QueryResultCache.class);
+
+    public static final String ENABLED_SETTING = "sql.result_cache.enabled";
+    public static final String SIZE_SETTING = "sql.result_cache.size";
+    public static final String DEFAULT_SIZE = "1%";
+
+    private static final String BREAKER_LABEL = "query_result_cache";
+    private static final RoutingVisitor ROUTING_VISITOR = new RoutingVisitor();
+    private static final DeterministicSymbolVisitor DETERMINISTIC_SYMBOL_VISITOR = new DeterministicSymbolVisitor();
+
+    private final boolean enabled;
+    private final CircuitBreaker breaker;
+    private final Cache<Key, Entry> cache;
+    private final CounterMetric hits = new CounterMetric();
+    private final CounterMetric misses = new CounterMetric();
+    private final CounterMetric evictions = new CounterMetric();
+    private final CounterMetric sizeInBytes = new CounterMetric();
+
+    @Inject
+    public QueryResultCache(Settings settings, CrateCircuitBreakerService breakerService) {
+        this.enabled = settings.getAsBoolean(ENABLED_SETTING, false);
+        this.breaker = breakerService.getBreaker(CrateCircuitBreakerService.QUERY_BREAKER);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(settings.getAsMemory(SIZE_SETTING, DEFAULT_SIZE).bytes())
+                .weigher(new Weigher<Key, Entry>() {
+                    @Override
+                    public int weigh(Key key, Entry entry) {
+                        return (int) Math.min(Integer.MAX_VALUE, entry.sizeInBytes);
+                    }
+                })
+                .removalListener(new RemovalListener<Key, Entry>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, Entry> notification) {
+                        if (notification.wasEvicted()) {
+                            evictions.inc();
+                        }
+                        long size = notification.getValue().sizeInBytes;
+                        sizeInBytes.dec(size);
+                        breaker.addWithoutBreaking(-size);
+                    }
+                })
+                .build();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * get the cached response for the given key
+     *
+     * @param shardVersions the current reader versions of all copies of the shards the statement is executed on
+     * @param indices the current meta data of the indices the statement is executed on
+     * @return a new response or null if there is no entry or the entry was computed from other
+     *         reader versions or meta data
+     */
+    @Nullable
+    public SQLResponse get(Key key,
+                           Map<String, Long> shardVersions,
+                           Map<String, IndexMetaData> indices,
+                           long requestStartedTime,
+                           boolean includeTypes) {
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            misses.inc();
+            return null;
+        }
+        if (!entry.shardVersions.equals(shardVersions) || !entry.indices.equals(indices)) {
+            // shards have been refreshed or the tables have been altered since the entry was cached
+            cache.invalidate(key);
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+        return new SQLResponse(entry.cols, copy(entry.rows), entry.colTypes, entry.rowCount,
+                requestStartedTime, includeTypes);
+    }
+
+    /**
+     * cache the response which was computed from shards with the given reader versions and index meta data.
+     * The response isn't cached if accounting its size would trip the query circuit breaker.
+     */
+    public void put(Key key, Map<String, Long> shardVersions, Map<String, IndexMetaData> indices, SQLResponse response) {
+        Object[][] rows = copy(response.rows());
+        long size = estimateSize(response.cols()) + estimateSize(rows);
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(size, BREAKER_LABEL);
+        } catch (CircuitBreakingException e) {
+            LOGGER.debug("Not caching result of \"{}\": {}", key.stmt, e.getMessage());
+            return;
+        }
+        sizeInBytes.inc(size);
+        cache.put(key, new Entry(shardVersions, indices, response.cols(), response.columnTypes(), rows,
+                response.rowCount(), size));
+    }
+
+    public long hits() {
+        return hits.count();
+    }
+
+    public long misses() {
+        return misses.count();
+    }
+
+    public long evictions() {
+        return evictions.count();
+    }
+
+    public long entries() {
+        return cache.size();
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes.count();
+    }
+
+    /**
+     * @return true if the result of the statement only depends on the data of user tables
+     *         and can be cached as long as these don't change.
+     */
+    public static boolean isCacheable(Statement statement, Analysis analysis) {
+        if (analysis.expectsAffectedRows() || !(analysis.rootRelation() instanceof QueriedTable)) {
+            return false;
+        }
+        QueriedTable relation = (QueriedTable) analysis.rootRelation();
+        if (!(relation.tableRelation().tableInfo() instanceof DocTableInfo)) {
+            return false;
+        }
+        QuerySpec querySpec = relation.querySpec();
+        List<Symbol> symbols = new ArrayList<>(querySpec.outputs());
+        if (querySpec.where().hasQuery()) {
+            symbols.add(querySpec.where().query());
+        }
+        if (querySpec.groupBy() != null) {
+            symbols.addAll(querySpec.groupBy());
+        }
+        if (querySpec.having() != null && querySpec.having().hasQuery()) {
+            symbols.add(querySpec.having().query());
+        }
+        if (querySpec.orderBy() != null) {
+            symbols.addAll(querySpec.orderBy().orderBySymbols());
+        }
+        for (Symbol symbol : symbols) {
+            if (!DETERMINISTIC_SYMBOL_VISITOR.process(symbol, null)) {
+                return false;
+            }
+        }
+        // CURRENT_TIMESTAMP is already normalized to a literal by the analyzer
+        CurrentTimeVisitor currentTimeVisitor = new CurrentTimeVisitor();
+        currentTimeVisitor.process(statement, null);
+        return !currentTimeVisitor.containsCurrentTime;
+    }
+
+    /**
+     * @return the routing of the shards the result of the plan is computed from
+     *         or null if the plan doesn't collect from shards only
+     */
+    @Nullable
+    public static Routing routing(Plan plan) {
+        Routing routing = ROUTING_VISITOR.process(plan, null);
+        if (routing == null || !routing.hasLocations()) {
+            return null;
+        }
+        for (String nodeId : routing.locations().keySet()) {
+            if (nodeId == null) {
+                // unassigned shards
+                return null;
+            }
+        }
+        return routing;
+    }
+
+    /**
+     * copy the rows and the arrays within them, so that neither the cached rows
+     * nor the rows of a response served from the cache are shared with the caller
+     */
+    private static Object[][] copy(Object[][] rows) {
+        Object[][] copy = new Object[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            copy[i] = copyValue(rows[i]);
+        }
+        return copy;
+    }
+
+    private static Object[] copyValue(Object[] values) {
+        Object[] copy = values.clone();
+        for (int i = 0; i < copy.length; i++) {
+            if (copy[i] instanceof Object[]) {
+                copy[i] = copyValue((Object[]) copy[i]);
+            }
+        }
+        return copy;
+    }
+
+    private static long estimateSize(Object[] values) {
+        long size = RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                + (long) values.length * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        for (Object value : values) {
+            size += estimateSize(value);
+        }
+        return size;
+    }
+
+    private static long estimateSize(@Nullable Object value) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof String) {
+            return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                    + 2L * ((String) value).length();
+        }
+        if (value instanceof BytesRef) {
+            return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                    + ((BytesRef) value).length;
+        }
+        if (value instanceof Object[]) {
+            return estimateSize((Object[]) value);
+        }
+        if (value instanceof Collection) {
+            return estimateSize(((Collection) value).toArray());
+        }
+        if (value instanceof Map) {
+            long size = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+                        + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        // boxed primitives
+        return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_LONG;
+    }
+
+    public static class Key {
+
+        private final String stmt;
+        private final Object[] args;
+        private final String defaultSchema;
+
+        public Key(String stmt, Object[] args, @Nullable String defaultSchema) {
+            this.stmt = stmt;
+            this.args = args;
+            this.defaultSchema = defaultSchema;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return stmt.equals(key.stmt)
+                    && Objects.equal(defaultSchema, key.defaultSchema)
+                    && Arrays.deepEquals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(stmt, defaultSchema) + Arrays.deepHashCode(args);
+        }
+    }
+
+    private static class Entry {
+
+        private final Map<String, Long> shardVersions;
+        private final Map<String, IndexMetaData> indices;
+        private final String[] cols;
+        private final DataType[] colTypes;
+        private final Object[][] rows;
+        private final long rowCount;
+        private final long sizeInBytes;
+
+        private Entry(Map<String, Long> shardVersions,
+                      Map<String, IndexMetaData> indices,
+                      String[] cols,
+                      DataType[] colTypes,
+                      Object[][] rows,
+                      long rowCount,
+                      long sizeInBytes) {
+            this.shardVersions = shardVersions;
+            this.indices = indices;
+            this.cols = cols;
+            this.colTypes = colTypes;
+            this.rows = rows;
+            this.rowCount = rowCount;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
+    private static class RoutingVisitor extends PlanVisitor<Void, Routing> {
+
+        @Override
+        public Routing visitGlobalAggregate(GlobalAggregate plan, Void context) {
+            return plan.collectNode().routing();
+        }
+
+        @Override
+        public Routing visitQueryAndFetch(QueryAndFetch node, Void context) {
+            return node.collectNode().routing();
+        }
+
+        @Override
+        public Routing visitQueryThenFetch(QueryThenFetch node, Void context) {
+            return node.collectNode().routing();
+        }
+
+        @Override
+        public Routing visitNonDistributedGroupBy(NonDistributedGroupBy node, Void context) {
+            return node.collectNode().routing();
+        }
+
+        @Override
+        public Routing visitDistributedGroupBy(DistributedGroupBy node, Void context) {
+            return node.collectNode().routing();
+        }
+
+        @Override
+        public Routing visitCollectAndMerge(CollectAndMerge plan, Void context) {
+            return plan.collectNode().routing();
+        }
+
+        @Override
+        public Routing visitCountPlan(CountPlan countPlan, Void context) {
+            return countPlan.countNode().routing();
+        }
+    }
+
+    private static class DeterministicSymbolVisitor extends SymbolVisitor<Void, Boolean> {
+
+        @Override
+        public Boolean visitFunction(Function symbol, Void context) {
+            if (!symbol.info().deterministic()) {
+                return false;
+            }
+            for (Symbol argument : symbol.arguments()) {
+                if (!process(argument, context)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Boolean visitReference(Reference symbol, Void context) {
+            // node and cluster expressions can change without a refresh of the table
+            RowGranularity granularity = symbol.info().granularity();
+            return granularity != RowGranularity.NODE && granularity != RowGranularity.CLUSTER;
+        }
+
+        @Override
+        public Boolean visitDynamicReference(DynamicReference symbol, Void context) {
+            return visitReference(symbol, context);
+        }
+
+        @Override
+        protected Boolean visitSymbol(Symbol symbol, Void context) {
+            return true;
+        }
+    }
+
+    private static class CurrentTimeVisitor extends DefaultTraversalVisitor<Void, Void> {
+
+        private boolean containsCurrentTime = false;
+
+        @Override
+        protected Void visitCurrentTime(CurrentTime node, Void context) {
+            containsCurrentTime = true;
+            return null;
+        }
+    }
+}
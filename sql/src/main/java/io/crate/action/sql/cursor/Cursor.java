@@ -0,0 +1,312 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql.cursor;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import io.crate.exceptions.UnsupportedFeatureException;
+import io.crate.metadata.ColumnIdent;
+import io.crate.sql.tree.*;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A cursor over the result of a SELECT statement on a single table.
+ *
+ * Instead of keeping the query running between two fetches the cursor remembers
+ * the values of the ORDER BY expressions of the last row it returned
+ * and every fetch runs the query again with a predicate which only matches
+ * rows sorting after that row (keyset paging) and a LIMIT of the number of rows to fetch.
+ * So the cost of a fetch doesn't grow with the number of rows fetched before.
+ *
+ * If the ORDER BY clause doesn't contain the primary key of the table the missing
+ * primary key columns are added as last sort keys to make the order total.
+ * These are read from doc values like every other column. Only for tables without a primary key
+ * <code>_uid</code> must be used, which loads its field data.
+ * The values of the sort keys are selected as additional columns which are
+ * removed from the result before it is returned to the client.
+ */
+public class Cursor {
+
+    private final String name;
+    private final Query query;
+    private final QuerySpecification querySpec;
+    private final Object[] args;
+    private final String defaultSchema;
+    private final List<SortItem> sortKeys;
+    private final long keepAlive;
+    private final AtomicBoolean fetching = new AtomicBoolean(false);
+
+    private volatile long lastAccessTime;
+    @Nullable
+    private Object[] lastSortValues;
+
+    /**
+     * @param tieBreakers the columns added to the ORDER BY clause to make the order total,
+     *                    empty if the ORDER BY clause already contains all primary key columns of the table
+     */
+    public Cursor(String name,
+                  Query query,
+                  Object[] args,
+                  @Nullable String defaultSchema,
+                  List<ColumnIdent> tieBreakers,
+                  long keepAlive,
+                  long currentTime) {
+        this.name = name;
+        this.query = query;
+        this.args = args;
+        this.defaultSchema = defaultSchema;
+        this.keepAlive = keepAlive;
+        this.lastAccessTime = currentTime;
+        this.querySpec = validate(query);
+
+        ImmutableList.Builder<SortItem> sortKeys = ImmutableList.builder();
+        for (SortItem sortItem : querySpec.getOrderBy()) {
+            sortKeys.add(new SortItem(resolveSortKey(sortItem.getSortKey(), querySpec.getSelect()),
+                    sortItem.getOrdering(), sortItem.getNullOrdering()));
+        }
+        for (ColumnIdent tieBreaker : tieBreakers) {
+            sortKeys.add(tieBreakerSortItem(tieBreaker));
+        }
+        this.sortKeys = sortKeys.build();
+    }
+
+    /**
+     * primary key columns are never null, NULLS FIRST saves the IS NULL check in the predicate
+     */
+    private static SortItem tieBreakerSortItem(ColumnIdent column) {
+        Expression expression = new QualifiedNameReference(new QualifiedName(column.name()));
+        for (String part : column.path()) {
+            expression = new SubscriptExpression(expression, new StringLiteral(part));
+        }
+        return new SortItem(expression, SortItem.Ordering.ASCENDING, SortItem.NullOrdering.FIRST);
+    }
+
+    private static QuerySpecification validate(Query query) {
+        if (query.getWith().isPresent()
+            || !(query.getQueryBody() instanceof QuerySpecification)) {
+            throw new UnsupportedFeatureException("Cursors are only supported for simple SELECT statements");
+        }
+        QuerySpecification querySpec = (QuerySpecification) query.getQueryBody();
+        if (query.getLimit().isPresent() || query.getOffset().isPresent()
+            || querySpec.getLimit().isPresent() || querySpec.getOffset().isPresent()) {
+            throw new UnsupportedFeatureException(
+                    "LIMIT and OFFSET are not supported in the query of a cursor, use FETCH instead");
+        }
+        if (!querySpec.getGroupBy().isEmpty() || querySpec.getHaving().isPresent()
+            || querySpec.getSelect().isDistinct()) {
+            throw new UnsupportedFeatureException(
+                    "GROUP BY, HAVING and DISTINCT are not supported in the query of a cursor");
+        }
+        return querySpec;
+    }
+
+    /**
+     * resolve references to the select list by ordinal or alias so that
+     * the sort key can also be used in the WHERE clause
+     */
+    private static Expression resolveSortKey(Expression sortKey, Select select) {
+        List<SelectItem> selectItems = select.getSelectItems();
+        if (sortKey instanceof LongLiteral) {
+            long ordinal = ((LongLiteral) sortKey).getValue();
+            for (SelectItem selectItem : selectItems) {
+                if (selectItem instanceof AllColumns) {
+                    throw new UnsupportedFeatureException(
+                            "ORDER BY position is not supported together with * in the query of a cursor");
+                }
+            }
+            if (ordinal < 1 || ordinal > selectItems.size()) {
+                throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                        "ORDER BY position %d is not in select list", ordinal));
+            }
+            return ((SingleColumn) selectItems.get((int) ordinal - 1)).getExpression();
+        }
+        if (sortKey instanceof QualifiedNameReference) {
+            List<String> parts = ((QualifiedNameReference) sortKey).getName().getParts();
+            if (parts.size() == 1) {
+                for (SelectItem selectItem : selectItems) {
+                    if (selectItem instanceof SingleColumn) {
+                        SingleColumn column = (SingleColumn) selectItem;
+                        if (column.getAlias().isPresent() && column.getAlias().get().equals(parts.get(0))) {
+                            return column.getExpression();
+                        }
+                    }
+                }
+            }
+        }
+        return sortKey;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String defaultSchema() {
+        return defaultSchema;
+    }
+
+    public long keepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * the time of the last access or -1 if a fetch is in progress
+     */
+    public long lastAccessTime() {
+        return lastAccessTime;
+    }
+
+    /**
+     * mark the cursor as being fetched from.
+     *
+     * @return false if another fetch is in progress already
+     */
+    public boolean startFetch() {
+        if (fetching.compareAndSet(false, true)) {
+            lastAccessTime = -1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param rows the rows of the fetch including the hidden sort key columns
+     *             or null if the fetch failed
+     */
+    public void finishFetch(@Nullable Object[][] rows, long currentTime) {
+        if (rows != null && rows.length > 0) {
+            Object[] lastRow = rows[rows.length - 1];
+            lastSortValues = Arrays.copyOfRange(lastRow, lastRow.length - sortKeys.size(), lastRow.length);
+        }
+        lastAccessTime = currentTime;
+        fetching.set(false);
+    }
+
+    /**
+     * the number of columns added to the select list which must be removed from the rows
+     */
+    public int numHiddenColumns() {
+        return sortKeys.size();
+    }
+
+    /**
+     * the query returning the next <code>count</code> rows of the cursor
+     */
+    public Query nextPageQuery(long count) {
+        List<SelectItem> selectItems = new ArrayList<>(querySpec.getSelect().getSelectItems());
+        for (SortItem sortKey : sortKeys) {
+            selectItems.add(new SingleColumn(sortKey.getSortKey()));
+        }
+        List<SortItem> orderBy = querySpec.getOrderBy();
+        if (sortKeys.size() > orderBy.size()) {
+            orderBy = ImmutableList.<SortItem>builder()
+                    .addAll(orderBy)
+                    .addAll(sortKeys.subList(orderBy.size(), sortKeys.size()))
+                    .build();
+        }
+        Optional<Expression> where = querySpec.getWhere();
+        if (lastSortValues != null) {
+            Expression afterLastRow = afterLastRowPredicate();
+            if (where.isPresent()) {
+                where = Optional.<Expression>of(LogicalBinaryExpression.and(where.get(), afterLastRow));
+            } else {
+                where = Optional.of(afterLastRow);
+            }
+        }
+        QuerySpecification pageSpec = new QuerySpecification(
+                new Select(false, selectItems),
+                querySpec.getFrom(),
+                where,
+                querySpec.getGroupBy(),
+                querySpec.getHaving(),
+                orderBy,
+                Optional.<Expression>of(new LongLiteral(String.valueOf(count))),
+                Optional.<Expression>absent()
+        );
+        return new Query(query.getWith(), pageSpec, query.getOrderBy(),
+                Optional.<Expression>absent(), Optional.<Expression>absent());
+    }
+
+    /**
+     * the arguments for the query returned by {@link #nextPageQuery(long)}
+     */
+    public Object[] nextPageArgs() {
+        if (lastSortValues == null) {
+            return args;
+        }
+        Object[] pageArgs = Arrays.copyOf(args, args.length + lastSortValues.length);
+        System.arraycopy(lastSortValues, 0, pageArgs, args.length, lastSortValues.length);
+        return pageArgs;
+    }
+
+    /**
+     * builds
+     * <pre>
+     *     k1 > v1 OR (k1 = v1 AND k2 > v2) OR (k1 = v1 AND k2 = v2 AND k3 > v3) ...
+     * </pre>
+     * taking the sort direction and the position of null values into account
+     */
+    private Expression afterLastRowPredicate() {
+        assert lastSortValues != null : "lastSortValues must not be null";
+        Expression predicate = null;
+        Expression equalPrefix = null;
+        for (int i = 0; i < sortKeys.size(); i++) {
+            SortItem sortItem = sortKeys.get(i);
+            Expression key = sortItem.getSortKey();
+            boolean isNull = lastSortValues[i] == null;
+            ParameterExpression value = new ParameterExpression(args.length + i + 1);
+
+            Expression after = sortsAfter(sortItem, value, isNull);
+            if (after != null) {
+                Expression term = equalPrefix == null ? after : LogicalBinaryExpression.and(equalPrefix, after);
+                predicate = predicate == null ? term : LogicalBinaryExpression.or(predicate, term);
+            }
+            Expression equal = isNull
+                    ? new IsNullPredicate(key)
+                    : new ComparisonExpression(ComparisonExpression.Type.EQUAL, key, value);
+            equalPrefix = equalPrefix == null ? equal : LogicalBinaryExpression.and(equalPrefix, equal);
+        }
+        return predicate == null ? BooleanLiteral.FALSE_LITERAL : predicate;
+    }
+
+    @Nullable
+    private static Expression sortsAfter(SortItem sortItem, ParameterExpression value, boolean valueIsNull) {
+        Expression key = sortItem.getSortKey();
+        boolean descending = sortItem.getOrdering() == SortItem.Ordering.DESCENDING;
+        // same defaults as the ordering in the collectors: nulls last if ascending, first if descending
+        boolean nullsFirst = sortItem.getNullOrdering() == SortItem.NullOrdering.FIRST
+                || (sortItem.getNullOrdering() == SortItem.NullOrdering.UNDEFINED && descending);
+        if (valueIsNull) {
+            return nullsFirst ? new IsNotNullPredicate(key) : null;
+        }
+        Expression compare = new ComparisonExpression(
+                descending ? ComparisonExpression.Type.LESS_THAN : ComparisonExpression.Type.GREATER_THAN,
+                key, value);
+        if (nullsFirst) {
+            return compare;
+        }
+        return LogicalBinaryExpression.or(compare, new IsNullPredicate(key));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql.cursor;
+
+import io.crate.exceptions.CursorAlreadyExistsException;
+import io.crate.exceptions.CursorUnknownException;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.elasticsearch.common.unit.TimeValue.timeValueMinutes;
+
+/**
+ * registry of the cursors declared on this node.
+ *
+ * Cursors are registered by the session of the client which declared them and their name,
+ * so clients using different sessions can't see or close the cursors of each other.
+ * Clients which don't send a session share one namespace.
+ * The cursors are only known to this node, the statements using a cursor must be sent to the node
+ * which handled the DECLARE statement.
+ *
+ * Cursors which haven't been fetched from within their keep alive time are closed.
+ */
+@Singleton
+public class CursorService extends AbstractLifecycleComponent<CursorService> {
+
+    public static final String KEEP_ALIVE_SETTING = "sql.cursor.keep_alive";
+    public static final TimeValue DEFAULT_KEEP_ALIVE = timeValueMinutes(5);
+    protected static TimeValue DEFAULT_KEEP_ALIVE_INTERVAL = timeValueMinutes(1);
+
+    private final ThreadPool threadPool;
+    private final long keepAlive;
+    private final ScheduledFuture<?> keepAliveReaper;
+    // by session and name
+    private final ConcurrentMap<Tuple<String, String>, Cursor> cursors = ConcurrentCollections.newConcurrentMap();
+
+    @Inject
+    public CursorService(Settings settings, ThreadPool threadPool) {
+        super(settings);
+        this.threadPool = threadPool;
+        this.keepAlive = settings.getAsTime(KEEP_ALIVE_SETTING, DEFAULT_KEEP_ALIVE).millis();
+        this.keepAliveReaper = threadPool.scheduleWithFixedDelay(new Reaper(), DEFAULT_KEEP_ALIVE_INTERVAL);
+    }
+
+    @Override
+    protected void doStart() throws ElasticsearchException {
+    }
+
+    @Override
+    protected void doStop() throws ElasticsearchException {
+        cursors.clear();
+    }
+
+    @Override
+    protected void doClose() throws ElasticsearchException {
+        keepAliveReaper.cancel(false);
+    }
+
+    public long keepAlive() {
+        return keepAlive;
+    }
+
+    public long currentTime() {
+        return threadPool.estimatedTimeInMillis();
+    }
+
+    public void declare(@Nullable String session, Cursor cursor) throws CursorAlreadyExistsException {
+        if (cursors.putIfAbsent(key(session, cursor.name()), cursor) != null) {
+            throw new CursorAlreadyExistsException(cursor.name());
+        }
+    }
+
+    public Cursor get(@Nullable String session, String name) throws CursorUnknownException {
+        Cursor cursor = cursors.get(key(session, name));
+        if (cursor == null) {
+            throw new CursorUnknownException(name);
+        }
+        return cursor;
+    }
+
+    public void close(@Nullable String session, String name) throws CursorUnknownException {
+        if (cursors.remove(key(session, name)) == null) {
+            throw new CursorUnknownException(name);
+        }
+    }
+
+    private static Tuple<String, String> key(@Nullable String session, String name) {
+        return new Tuple<>(session, name);
+    }
+
+    public int numCursors() {
+        return cursors.size();
+    }
+
+    class Reaper implements Runnable {
+
+        @Override
+        public void run() {
+            final long time = threadPool.estimatedTimeInMillis();
+            for (Map.Entry<Tuple<String, String>, Cursor> entry : cursors.entrySet()) {
+                Cursor cursor = entry.getValue();
+                final long lastAccessTime = cursor.lastAccessTime();
+                if (lastAccessTime == -1L) { // a fetch is in progress
+                    continue;
+                }
+                if (time - lastAccessTime > cursor.keepAlive()) {
+                    logger.debug("closing cursor [{}], time [{}], lastAccessTime [{}], keepAlive [{}]",
+                            cursor.name(), time, lastAccessTime, cursor.keepAlive());
+                    cursors.remove(entry.getKey(), cursor);
+                }
+            }
+        }
+    }
+}
@@ -116,9 +116,12 @@ public class AnalyzedColumnDefinition {
         this.collectionType = type;
     }
 
+    /**
+     * doc values are used for all not analyzed columns, including arrays of primitive types.
+     * They are read from disk instead of being loaded into the field data cache.
+     */
     public boolean docValues() {
         return !isIndex()
-                && collectionType == null
                 && !dataType.equals("object")
                 && index().equals("not_analyzed");
     }
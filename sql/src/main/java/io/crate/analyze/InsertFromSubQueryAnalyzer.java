@@ -80,6 +80,9 @@ public class InsertFromSubQueryAnalyzer extends AbstractInsertAnalyzer {
         FieldProvider fieldProvider = new NameFieldProvider(tableRelation);
 
         QueriedRelation source = (QueriedRelation) relationAnalyzer.analyze(node.subQuery(), analysis);
+        if (source instanceof MultiSourceSelect) {
+            throw new UnsupportedFeatureException("Joins are not supported on insert using a sub-query");
+        }
         InsertFromSubQueryAnalyzedStatement insertStatement =
                 new InsertFromSubQueryAnalyzedStatement(source, tableInfo);
 
@@ -21,6 +21,11 @@
 
 package io.crate.analyze;
 
+import com.carrotsearch.hppc.IntSet;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import io.crate.analyze.expressions.ExpressionAnalysisContext;
 import io.crate.analyze.expressions.ExpressionAnalyzer;
 import io.crate.analyze.relations.FieldProvider;
@@ -33,6 +38,7 @@ import io.crate.metadata.ColumnIdent;
 import io.crate.metadata.TableIdent;
 import io.crate.metadata.table.TableInfo;
 import io.crate.operation.Input;
+import io.crate.planner.symbol.DynamicReference;
 import io.crate.planner.symbol.Field;
 import io.crate.planner.symbol.Literal;
 import io.crate.planner.symbol.Reference;
@@ -43,18 +49,69 @@ import io.crate.sql.tree.InsertFromValues;
 import io.crate.sql.tree.ValuesList;
 import io.crate.types.DataType;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterStateListener;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
 import org.elasticsearch.common.lucene.BytesRefs;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
-public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer {
+public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer implements ClusterStateListener {
+
+    /**
+     * the parts of an analyzed insert statement which don't depend on the inserted values.
+     * Templates are created once per statement and reused with every new set of arguments
+     * until the cluster meta data changes.
+     */
+    private static class StatementTemplate {
+
+        private final TableInfo tableInfo;
+        private final List<Reference> columns;
+        private final IntSet primaryKeyColumnIndices;
+        private final IntSet partitionedByIndices;
+        private final int routingColumnIndex;
+        private final String defaultSchema;
+        private final long metaDataGeneration;
+
+        public StatementTemplate(InsertFromValuesAnalyzedStatement statement,
+                                 @Nullable String defaultSchema,
+                                 long metaDataGeneration) {
+            this.tableInfo = statement.tableInfo();
+            this.columns = ImmutableList.copyOf(statement.columns());
+            this.primaryKeyColumnIndices = statement.primaryKeyColumnIndices();
+            this.partitionedByIndices = statement.partitionedByIndices();
+            this.routingColumnIndex = statement.routingColumnIndex();
+            this.defaultSchema = defaultSchema;
+            this.metaDataGeneration = metaDataGeneration;
+        }
+
+        public boolean matches(@Nullable String defaultSchema, long metaDataGeneration) {
+            return this.metaDataGeneration == metaDataGeneration && Objects.equals(this.defaultSchema, defaultSchema);
+        }
+
+        public InsertFromValuesAnalyzedStatement newStatement(boolean isBulkRequest) {
+            InsertFromValuesAnalyzedStatement statement = new InsertFromValuesAnalyzedStatement(tableInfo, isBulkRequest);
+            statement.columns(columns);
+            for (IntCursor cursor : primaryKeyColumnIndices) {
+                statement.addPrimaryKeyColumnIdx(cursor.value);
+            }
+            for (IntCursor cursor : partitionedByIndices) {
+                statement.addPartitionedByIndex(cursor.value);
+            }
+            statement.routingColumnIndex(routingColumnIndex);
+            return statement;
+        }
+    }
 
     private static class ValuesResolver implements io.crate.analyze.ValuesAwareExpressionAnalyzer.ValuesResolver {
 
@@ -83,15 +140,39 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer {
         }
     }
 
+    /**
+     * keyed by the parsed statement, which is the same instance for every request with the same statement text
+     * as long as it is served from the statement cache of the transport action.
+     * Weak keys compare by identity, so comparing large VALUES lists is avoided.
+     */
+    private final Cache<InsertFromValues, StatementTemplate> templates = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(100)
+            .build();
+
+    /**
+     * incremented on every meta data change, templates created before are not used anymore
+     */
+    private final AtomicLong metaDataGeneration = new AtomicLong();
+
     @Inject
-    protected InsertFromValuesAnalyzer(AnalysisMetaData analysisMetaData) {
+    protected InsertFromValuesAnalyzer(AnalysisMetaData analysisMetaData, ClusterService clusterService) {
         super(analysisMetaData);
+        clusterService.add(this);
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        if (event.metaDataChanged()) {
+            metaDataGeneration.incrementAndGet();
+            templates.invalidateAll();
+        }
     }
 
     @Override
     public AbstractInsertAnalyzedStatement visitInsertFromValues(InsertFromValues node, Analysis analysis) {
-        TableInfo tableInfo = analysisMetaData.referenceInfos().getWritableTable(
-                TableIdent.of(node.table(), analysis.parameterContext().defaultSchema()));
+        InsertFromValuesAnalyzedStatement statement = newStatement(node, analysis.parameterContext());
+        TableInfo tableInfo = statement.tableInfo();
         TableRelation tableRelation = new TableRelation(tableInfo);
 
         FieldProvider fieldProvider = new NameFieldProvider(tableRelation);
@@ -104,10 +185,6 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer {
         ExpressionAnalyzer valuesAwareExpressionAnalyzer = new ValuesAwareExpressionAnalyzer(
                 analysisMetaData, analysis.parameterContext(), fieldProvider, valuesResolver);
 
-        InsertFromValuesAnalyzedStatement statement = new InsertFromValuesAnalyzedStatement(
-                tableInfo, analysis.parameterContext().hasBulkParams());
-        handleInsertColumns(node, node.maxValuesLength(), statement);
-
         for (ValuesList valuesList : node.valuesLists()) {
             analyzeValues(
                     tableRelation,
@@ -123,6 +200,39 @@ public class InsertFromValuesAnalyzer extends AbstractInsertAnalyzer {
         return statement;
     }
 
+    /**
+     * create a statement with the resolved table and insert columns,
+     * either from a cached template or by resolving them.
+     */
+    private InsertFromValuesAnalyzedStatement newStatement(InsertFromValues node, ParameterContext parameterContext) {
+        String defaultSchema = parameterContext.defaultSchema();
+        long generation = metaDataGeneration.get();
+        StatementTemplate template = templates.getIfPresent(node);
+        if (template != null && template.matches(defaultSchema, generation)) {
+            return template.newStatement(parameterContext.hasBulkParams());
+        }
+
+        TableInfo tableInfo = analysisMetaData.referenceInfos().getWritableTable(
+                TableIdent.of(node.table(), defaultSchema));
+        InsertFromValuesAnalyzedStatement statement = new InsertFromValuesAnalyzedStatement(
+                tableInfo, parameterContext.hasBulkParams());
+        handleInsertColumns(node, node.maxValuesLength(), statement);
+        if (!hasDynamicColumns(statement)) {
+            // dynamic references get their type from the inserted values, they can't be shared
+            templates.put(node, new StatementTemplate(statement, defaultSchema, generation));
+        }
+        return statement;
+    }
+
+    private static boolean hasDynamicColumns(InsertFromValuesAnalyzedStatement statement) {
+        for (Reference column : statement.columns()) {
+            if (column instanceof DynamicReference) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void analyzeValues(TableRelation tableRelation,
                                ExpressionAnalyzer expressionAnalyzer,
                                ExpressionAnalysisContext expressionAnalysisContext,
@@ -23,6 +23,7 @@ package io.crate.analyze;
 
 import io.crate.analyze.relations.AnalyzedRelation;
 import io.crate.analyze.relations.AnalyzedRelationVisitor;
+import io.crate.analyze.relations.QueriedRelation;
 import io.crate.metadata.OutputName;
 import io.crate.metadata.Path;
 import io.crate.planner.symbol.Field;
@@ -32,7 +33,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-public class MultiSourceSelect implements AnalyzedRelation {
+public class MultiSourceSelect implements QueriedRelation {
 
     private final Map<QualifiedName, AnalyzedRelation> sources;
     private final List<Field> fields;
@@ -79,6 +80,7 @@ public class MultiSourceSelect implements AnalyzedRelation {
         return fields;
     }
 
+    @Override
     public QuerySpec querySpec() {
         return querySpec;
     }
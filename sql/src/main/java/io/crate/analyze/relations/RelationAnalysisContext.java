@@ -25,17 +25,22 @@ import io.crate.analyze.AnalysisMetaData;
 import io.crate.analyze.ParameterContext;
 import io.crate.analyze.expressions.ExpressionAnalysisContext;
 import io.crate.analyze.expressions.ExpressionAnalyzer;
+import io.crate.sql.tree.Expression;
 import io.crate.sql.tree.QualifiedName;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class RelationAnalysisContext {
 
     private final ExpressionAnalysisContext expressionAnalysisContext;
     private ExpressionAnalyzer expressionAnalyzer;
-    private Map<QualifiedName, AnalyzedRelation> sources = new HashMap<>();
+    // keeps the order of the FROM clause, e.g. for the columns of select *
+    private Map<QualifiedName, AnalyzedRelation> sources = new LinkedHashMap<>();
+    private List<Expression> joinConditions = new ArrayList<>();
     private ParameterContext parameterContext;
     private AnalysisMetaData analysisMetaData;
     private FullQualifedNameFieldProvider fieldProvider;
@@ -62,6 +67,14 @@ public class RelationAnalysisContext {
         return sources;
     }
 
+    public void addJoinCondition(Expression joinCondition) {
+        joinConditions.add(joinCondition);
+    }
+
+    public List<Expression> joinConditions() {
+        return joinConditions;
+    }
+
     public ExpressionAnalyzer expressionAnalyzer(){
         if (expressionAnalyzer == null){
             expressionAnalyzer = new ExpressionAnalyzer(analysisMetaData, parameterContext(),
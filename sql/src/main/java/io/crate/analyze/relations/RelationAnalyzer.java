@@ -78,13 +78,9 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
         for (Relation relation : node.getFrom()) {
             process(relation, context);
         }
-        if (context.sources().size() != 1) {
-            throw new UnsupportedOperationException
-                    ("Only exactly one table is allowed in the FROM clause, got: " + context.sources().size());
-        }
         ExpressionAnalysisContext expressionAnalysisContext = context.expressionAnalysisContext();
 
-        WhereClause whereClause = analyzeWhere(node.getWhere(), context);
+        WhereClause whereClause = analyzeWhere(whereWithJoinConditions(node.getWhere(), context), context);
 
         SelectAnalyzer.SelectAnalysis selectAnalysis = SelectAnalyzer.analyzeSelect(node.getSelect(), context);
 
@@ -119,8 +115,13 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
                         ("Only tables are allowed in the FROM clause, got: " + entry.getValue());
             }
         }
-        // TODO: implement multi table selects
-        // once this is used .normalize should for this class needs to be handled here too
+        for (Map.Entry<QualifiedName, AnalyzedRelation> entry : context.sources().entrySet()) {
+            if (!(entry.getValue() instanceof TableRelation)) {
+                throw new UnsupportedOperationException
+                        ("Only tables are allowed in the FROM clause, got: " + entry.getValue());
+            }
+        }
+        // the where clause is split up and normalized per table by the planner
         return new MultiSourceSelect(
                 context.sources(),
                 selectAnalysis.outputNames(),
@@ -128,6 +129,17 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
         );
     }
 
+    /**
+     * the conditions of inner joins are handled like conditions of the where clause
+     */
+    private Optional<Expression> whereWithJoinConditions(Optional<Expression> where, RelationAnalysisContext context) {
+        Expression query = where.orNull();
+        for (Expression joinCondition : context.joinConditions()) {
+            query = query == null ? joinCondition : LogicalBinaryExpression.and(query, joinCondition);
+        }
+        return Optional.fromNullable(query);
+    }
+
 
     private List<Symbol> rewriteGlobalDistinct(List<Symbol> outputSymbols) {
         List<Symbol> groupBy = new ArrayList<>(outputSymbols.size());
@@ -322,6 +334,25 @@ public class RelationAnalyzer extends DefaultTraversalVisitor<AnalyzedRelation,
         return symbols.iterator().next();
     }
 
+    @Override
+    protected AnalyzedRelation visitJoin(Join node, RelationAnalysisContext context) {
+        if (node.getType() != Join.Type.INNER && node.getType() != Join.Type.CROSS) {
+            throw new UnsupportedOperationException(String.format(Locale.ENGLISH,
+                    "%s joins are not supported", node.getType().name()));
+        }
+        process(node.getLeft(), context);
+        process(node.getRight(), context);
+        if (node.getCriteria().isPresent()) {
+            JoinCriteria joinCriteria = node.getCriteria().get();
+            if (!(joinCriteria instanceof JoinOn)) {
+                throw new UnsupportedOperationException(String.format(Locale.ENGLISH,
+                        "join criteria %s is not supported, use JOIN ... ON", joinCriteria));
+            }
+            context.addJoinCondition(((JoinOn) joinCriteria).getExpression());
+        }
+        return null;
+    }
+
     @Override
     protected AnalyzedRelation visitAliasedRelation(AliasedRelation node, RelationAnalysisContext context) {
         AnalyzedRelation childRelation = process(node.getRelation(),
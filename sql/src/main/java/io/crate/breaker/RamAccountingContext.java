@@ -104,6 +104,13 @@ public class RamAccountingContext {
         return totalBytes.get();
     }
 
+    /**
+     * @return the number of bytes that have been added, including the bytes which were not flushed yet
+     */
+    public long usedBytes() {
+        return totalBytes.get() + flushBuffer.get();
+    }
+
     /**
      * Close the context and adjust the breaker.
      * A remaining flush buffer will not be flushed to avoid breaking on close.
@@ -134,6 +141,15 @@ public class RamAccountingContext {
         return breaker.getLimit();
     }
 
+    /**
+     * Create a new context with the same id which accounts to the same breaker.
+     * The bytes of the new context are not added to this context and it has to be closed separately.
+     * This is useful to account memory which is owned by a single thread without sharing the counters.
+     */
+    public RamAccountingContext newChildContext() {
+        return new RamAccountingContext(contextId, breaker);
+    }
+
     /**
      * Returns the context id string.
      */
@@ -32,7 +32,9 @@ import io.crate.Streamer;
 import io.crate.action.job.*;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Bucket;
+import io.crate.core.collections.BucketPage;
 import io.crate.executor.JobTask;
+import io.crate.executor.StreamingTask;
 import io.crate.executor.TaskResult;
 import io.crate.executor.callbacks.OperationFinishedStatsTablesCallback;
 import io.crate.jobs.JobContextService;
@@ -63,7 +65,7 @@ import javax.annotation.Nullable;
 import java.util.*;
 
 
-public class ExecutionNodesTask extends JobTask {
+public class ExecutionNodesTask extends JobTask implements StreamingTask {
 
     private static final ESLogger LOGGER = Loggers.getLogger(ExecutionNodesTask.class);
 
@@ -85,6 +87,8 @@ public class ExecutionNodesTask extends JobTask {
     private final CircuitBreaker circuitBreaker;
     private List<MergeNode> mergeNodes;
     private boolean rowCountResult = false;
+    @Nullable
+    private StreamingRowDownstream streamingDownstream;
 
     /**
      * @param mergeNodes list of mergeNodes for the final merge operation on the handler.
@@ -142,6 +146,15 @@ public class ExecutionNodesTask extends JobTask {
         this.rowCountResult = rowCountResult;
     }
 
+    @Override
+    public boolean streamResult(StreamingRowDownstream downstream) {
+        if (rowCountResult || groupedExecutionNodes.size() != 1) {
+            return false;
+        }
+        this.streamingDownstream = downstream;
+        return true;
+    }
+
     @Override
     public void start() {
         assert mergeNodes != null : "mergeNodes must not be null";
@@ -150,30 +163,39 @@ public class ExecutionNodesTask extends JobTask {
         RowDownstream rowDownstream;
         if (rowCountResult) {
             rowDownstream = new RowCountResultRowDownstream(results);
+        } else if (streamingDownstream != null) {
+            rowDownstream = new StreamingResultRowDownstream(streamingDownstream, results.get(0));
         } else {
             rowDownstream = new QueryResultRowDownstream(results);
         }
         Streamer<?>[] streamers = streamerVisitor.processExecutionNode(mergeNodes.get(0)).inputStreamers();
         List<PageDownstreamContext> pageDownstreamContexts = new ArrayList<>(groupedExecutionNodes.size());
+        Map<Integer, PageDownstreamContext> localMerges = new HashMap<>(groupedExecutionNodes.size());
 
         for (int i = 0; i < groupedExecutionNodes.size(); i++) {
             RamAccountingContext ramAccountingContext = trackOperation(mergeNodes.get(i),
                     "localMerge", results.get(i));
 
-            PageDownstreamContext pageDownstreamContext = createPageDownstreamContext(ramAccountingContext, streamers,
+            // without a direct response the groups may have different outputs, e.g. the sides of a join
+            Streamer<?>[] groupStreamers = hasDirectResponse
+                    ? streamers : streamerVisitor.processExecutionNode(mergeNodes.get(i)).inputStreamers();
+            PageDownstreamContext pageDownstreamContext = createPageDownstreamContext(ramAccountingContext, groupStreamers,
                     mergeNodes.get(i), groupedExecutionNodes.get(i), rowDownstream);
             if (nodesByServer.size() == 0) {
                 pageDownstreamContext.finish();
                 continue;
             }
             if (!hasDirectResponse) {
-                createLocalContextAndStartOperation(pageDownstreamContext, nodesByServer, mergeNodes.get(i).executionNodeId());
+                localMerges.put(mergeNodes.get(i).executionNodeId(), pageDownstreamContext);
             }
             pageDownstreamContexts.add(pageDownstreamContext);
         }
         if (nodesByServer.size() == 0) {
             return;
         }
+        if (!hasDirectResponse) {
+            createLocalContextAndStartOperation(localMerges, nodesByServer);
+        }
         addCloseContextCallback(transportCloseContextNodeAction, groupedExecutionNodes, nodesByServer.keySet());
         sendJobRequests(streamers, pageDownstreamContexts, nodesByServer);
     }
@@ -190,6 +212,9 @@ public class ExecutionNodesTask extends JobTask {
                 ramAccountingContext,
                 Optional.of(threadPool.executor(ThreadPool.Names.SEARCH))
         );
+        if (streamingDownstream != null) {
+            finalMergePageDownstream = new ThrottledPageDownstream(finalMergePageDownstream, streamingDownstream);
+        }
         return new PageDownstreamContext(
                 finalMergePageDownstream,
                 streamers,
@@ -224,16 +249,18 @@ public class ExecutionNodesTask extends JobTask {
     /**
      * removes the localNodeId entry from the nodesByServer map and initializes the context and starts the operation.
      *
-     * This is done in order to be able to create the JobExecutionContext with the localMerge PageDownstreamContext
+     * This is done in order to be able to create the JobExecutionContext with the localMerge PageDownstreamContexts,
+     * a job can only have one context per node so all of them are added to the same context.
      */
-    private void createLocalContextAndStartOperation(PageDownstreamContext finalLocalMerge,
-                                                     Map<String, Collection<ExecutionNode>> nodesByServer,
-                                                     int localMergeExecutionNodeId) {
+    private void createLocalContextAndStartOperation(Map<Integer, PageDownstreamContext> localMerges,
+                                                     Map<String, Collection<ExecutionNode>> nodesByServer) {
         String localNodeId = clusterService.localNode().id();
         Collection<ExecutionNode> localExecutionNodes = nodesByServer.remove(localNodeId);
 
         JobExecutionContext.Builder builder = jobContextService.newBuilder(jobId());
-        builder.addSubContext(localMergeExecutionNodeId, finalLocalMerge);
+        for (Map.Entry<Integer, PageDownstreamContext> localMerge : localMerges.entrySet()) {
+            builder.addSubContext(localMerge.getKey(), localMerge.getValue());
+        }
 
         if (localExecutionNodes == null || localExecutionNodes.isEmpty()) {
             // only the local merge happens locally so it is enough to just create that context.
@@ -415,6 +442,50 @@ public class ExecutionNodesTask extends JobTask {
         }
     }
 
+    /**
+     * defers the request for the next page until the streaming downstream is ready to receive more rows
+     */
+    private static class ThrottledPageDownstream implements PageDownstream {
+
+        private final PageDownstream delegate;
+        private final StreamingRowDownstream streamingDownstream;
+
+        public ThrottledPageDownstream(PageDownstream delegate, StreamingRowDownstream streamingDownstream) {
+            this.delegate = delegate;
+            this.streamingDownstream = streamingDownstream;
+        }
+
+        @Override
+        public void nextPage(BucketPage page, final PageConsumeListener listener) {
+            delegate.nextPage(page, new PageConsumeListener() {
+                @Override
+                public void needMore() {
+                    streamingDownstream.onReady(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.needMore();
+                        }
+                    });
+                }
+
+                @Override
+                public void finish() {
+                    listener.finish();
+                }
+            });
+        }
+
+        @Override
+        public void finish() {
+            delegate.finish();
+        }
+
+        @Override
+        public void fail(Throwable t) {
+            delegate.fail(t);
+        }
+    }
+
     private static class FailureOnlyResponseListener implements ActionListener<JobResponse> {
 
         private final List<SettableFuture<TaskResult>> results;
@@ -0,0 +1,81 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.executor.transport;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class NodeShardVersionsRequest extends TransportRequest {
+
+    private Map<String, List<Integer>> shards;
+
+    public NodeShardVersionsRequest() {
+    }
+
+    /**
+     * @param shards the shard ids of the local node by index name
+     */
+    public NodeShardVersionsRequest(Map<String, List<Integer>> shards) {
+        this.shards = shards;
+    }
+
+    public Map<String, List<Integer>> shards() {
+        return shards;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int numIndices = in.readVInt();
+        shards = new TreeMap<>();
+        for (int i = 0; i < numIndices; i++) {
+            String index = in.readString();
+            int numShards = in.readVInt();
+            List<Integer> shardIds = new ArrayList<>(numShards);
+            for (int j = 0; j < numShards; j++) {
+                shardIds.add(in.readVInt());
+            }
+            shards.put(index, shardIds);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(shards.size());
+        for (Map.Entry<String, List<Integer>> entry : shards.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVInt(entry.getValue().size());
+            for (Integer shardId : entry.getValue()) {
+                out.writeVInt(shardId);
+            }
+        }
+    }
+}
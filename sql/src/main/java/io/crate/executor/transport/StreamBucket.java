@@ -29,11 +29,15 @@ import io.crate.Streamer;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Buckets;
 import io.crate.core.collections.Row;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.ReleasableBytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -41,29 +45,46 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 
-public class StreamBucket implements Bucket, Streamable {
+public class StreamBucket implements Bucket, Streamable, Releasable {
 
     private Streamer<?>[] streamers;
     private int size = -1;
     private BytesReference bytes;
 
+    /**
+     * Builds buckets by serializing rows into pages obtained from {@link BigArrays}.
+     * If recycling big arrays are used, the pages are owned by the built bucket and
+     * must be given back by closing it once its bytes aren't used anymore.
+     */
     public static class Builder {
 
 
         private static final int INITIAL_PAGE_SIZE = 1024;
         private int size = 0;
         private final Streamer<?>[] streamers;
-        private BytesStreamOutput out;
+        private final BigArrays bigArrays;
+        private final int initialSize;
+        private ReleasableBytesStreamOutput out;
 
         public Builder(Streamer<?>[] streamers) {
+            this(streamers, BigArrays.NON_RECYCLING_INSTANCE);
+        }
+
+        public Builder(Streamer<?>[] streamers, BigArrays bigArrays) {
             assert validStreamers(streamers) : "streamers must not be null and they shouldn't be of undefinedType";
             this.streamers = streamers;
-            out = new BytesStreamOutput(INITIAL_PAGE_SIZE);
+            this.bigArrays = bigArrays;
+            // smaller arrays aren't taken from the page recycler
+            this.initialSize = bigArrays == BigArrays.NON_RECYCLING_INSTANCE ? INITIAL_PAGE_SIZE : BigArrays.BYTE_PAGE_SIZE;
         }
 
         public void add(Row row) throws IOException {
             assert streamers.length == row.size() : "number of streamer must match row size";
 
+            if (out == null) {
+                // allocated lazily, builders which are reset after the last row mustn't hold a page
+                out = new ReleasableBytesStreamOutput(initialSize, bigArrays);
+            }
             size++;
             for (int i = 0; i < row.size(); i++) {
                 streamers[i].writeValueTo(out, row.get(i));
@@ -81,17 +102,31 @@ public class StreamBucket implements Bucket, Streamable {
             }
         }
 
+        /**
+         * the returned bucket takes over the pages written so far,
+         * {@link #reset()} must be called before more rows are added.
+         */
         public StreamBucket build() throws IOException {
             StreamBucket sb = new StreamBucket(streamers);
             sb.size = size;
-            sb.bytes = out.bytes();
+            sb.bytes = out == null ? BytesArray.EMPTY : out.bytes();
             return sb;
         }
 
         public void reset() {
-            out = new BytesStreamOutput(INITIAL_PAGE_SIZE);
+            out = null;
             size = 0;
         }
+
+        /**
+         * releases the pages of rows which haven't been built into a bucket yet
+         */
+        public void close() {
+            if (out != null) {
+                Releasables.close(out.bytes());
+            }
+            reset();
+        }
     }
 
     public StreamBucket(@Nullable Streamer<?>[] streamers) {
@@ -191,6 +226,19 @@ public class StreamBucket implements Bucket, Streamable {
         return new RowIterator();
     }
 
+    /**
+     * gives back the pages of a bucket created by a {@link Builder} with recycling {@link BigArrays}.
+     * The bucket is empty afterwards.
+     */
+    @Override
+    public void close() {
+        if (bytes instanceof Releasable) {
+            Releasables.close((Releasable) bytes);
+        }
+        bytes = null;
+        size = 0;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         size = in.readVInt();
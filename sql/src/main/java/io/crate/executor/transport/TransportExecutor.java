@@ -305,6 +305,18 @@ public class TransportExecutor implements Executor, TaskExecutor {
         public List<Task> visitQueryThenFetch(QueryThenFetch plan, Job job) {
             return ImmutableList.of(createExecutableNodesTask(job, plan.collectNode(), plan.mergeNode()));
         }
+
+        @Override
+        public List<Task> visitHashJoin(HashJoin plan, Job job) {
+            return ImmutableList.<Task>of(
+                    createExecutableNodesTask(job,
+                            ImmutableList.<List<ExecutionNode>>of(
+                                    ImmutableList.<ExecutionNode>of(
+                                            plan.leftCollectNode(),
+                                            plan.rightCollectNode(),
+                                            plan.hashJoinNode())),
+                            ImmutableList.of(plan.localMergeNode())));
+        }
     }
 
     class NodeVisitor extends PlanNodeVisitor<UUID, ImmutableList<Task>> {
@@ -39,5 +39,6 @@ public class TransportExecutorModule extends AbstractModule {
         bind(TransportShardUpsertAction.class).asEagerSingleton();
         bind(TransportFetchNodeAction.class).asEagerSingleton();
         bind(TransportCloseContextNodeAction.class).asEagerSingleton();
+        bind(TransportShardVersionsNodeAction.class).asEagerSingleton();
     }
 }
@@ -0,0 +1,204 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.executor.transport;
+
+import io.crate.metadata.Routing;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.routing.IndexRoutingTable;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport handler to retrieve the versions of the readers of shards.
+ * The version of a reader changes whenever a refresh makes changes of the shard visible to searches,
+ * so it can be used to tell whether a result computed from the shard is still valid.
+ */
+@Singleton
+public class TransportShardVersionsNodeAction implements NodeAction<NodeShardVersionsRequest, NodeShardVersionsResponse> {
+
+    private final String transportAction = "crate/sql/node/shard_versions";
+    private final Transports transports;
+    private final IndicesService indicesService;
+    private final ClusterService clusterService;
+
+    @Inject
+    public TransportShardVersionsNodeAction(TransportService transportService,
+                                            Transports transports,
+                                            IndicesService indicesService,
+                                            ClusterService clusterService) {
+        this.transports = transports;
+        this.indicesService = indicesService;
+        this.clusterService = clusterService;
+        transportService.registerHandler(transportAction, new NodeActionRequestHandler<NodeShardVersionsRequest, NodeShardVersionsResponse>(this) {
+            @Override
+            public NodeShardVersionsRequest newInstance() {
+                return new NodeShardVersionsRequest();
+            }
+        });
+    }
+
+    public void execute(
+            String targetNode,
+            NodeShardVersionsRequest request,
+            ActionListener<NodeShardVersionsResponse> listener) {
+        transports.executeLocalOrWithTransport(this, targetNode, request, listener,
+                new DefaultTransportResponseHandler<NodeShardVersionsResponse>(listener, executorName()) {
+                    @Override
+                    public NodeShardVersionsResponse newInstance() {
+                        return new NodeShardVersionsResponse();
+                    }
+                });
+    }
+
+    /**
+     * retrieve the reader versions of all active copies of the shards of the given routing.
+     * The listener receives the versions by <code>nodeId/indexUUID[shardId]</code>.
+     *
+     * The copies of a shard have different reader versions and without a preference
+     * every execution of a statement may choose another copy, so the versions of all copies
+     * are retrieved. That way the versions don't depend on the copies the routing contains.
+     */
+    public void execute(Routing routing, final ActionListener<Map<String, Long>> listener) {
+        Map<String, Map<String, List<Integer>>> locations;
+        try {
+            locations = shardCopies(routing);
+        } catch (Throwable t) {
+            listener.onFailure(t);
+            return;
+        }
+        final Map<String, Long> versions = new HashMap<>();
+        final AtomicInteger pendingNodes = new AtomicInteger(locations.size());
+        for (Map.Entry<String, Map<String, List<Integer>>> entry : locations.entrySet()) {
+            final String nodeId = entry.getKey();
+            execute(nodeId, new NodeShardVersionsRequest(entry.getValue()), new ActionListener<NodeShardVersionsResponse>() {
+                @Override
+                public void onResponse(NodeShardVersionsResponse response) {
+                    synchronized (versions) {
+                        for (Map.Entry<String, Long> version : response.versions().entrySet()) {
+                            versions.put(nodeId + "/" + version.getKey(), version.getValue());
+                        }
+                    }
+                    if (pendingNodes.decrementAndGet() == 0) {
+                        listener.onResponse(versions);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    if (pendingNodes.getAndSet(-1) > 0) {
+                        listener.onFailure(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the nodes of the active copies of all shards of the routing
+     *         as <code>nodeId -> index -> shardIds</code>
+     */
+    private Map<String, Map<String, List<Integer>>> shardCopies(Routing routing) {
+        RoutingTable routingTable = clusterService.state().routingTable();
+        Map<String, Map<String, List<Integer>>> copies = new HashMap<>();
+        for (Map<String, List<Integer>> nodeIndices : routing.locations().values()) {
+            for (Map.Entry<String, List<Integer>> entry : nodeIndices.entrySet()) {
+                IndexRoutingTable indexRoutingTable = routingTable.index(entry.getKey());
+                if (indexRoutingTable == null) {
+                    throw new IllegalStateException(String.format(Locale.ENGLISH,
+                            "index %s isn't part of the routing table", entry.getKey()));
+                }
+                for (Integer shardId : entry.getValue()) {
+                    for (ShardRouting shardRouting : indexRoutingTable.shard(shardId).activeShards()) {
+                        Map<String, List<Integer>> indices = copies.get(shardRouting.currentNodeId());
+                        if (indices == null) {
+                            indices = new HashMap<>();
+                            copies.put(shardRouting.currentNodeId(), indices);
+                        }
+                        List<Integer> shardIds = indices.get(entry.getKey());
+                        if (shardIds == null) {
+                            shardIds = new ArrayList<>();
+                            indices.put(entry.getKey(), shardIds);
+                        }
+                        shardIds.add(shardId);
+                    }
+                }
+            }
+        }
+        return copies;
+    }
+
+    @Override
+    public String actionName() {
+        return transportAction;
+    }
+
+    @Override
+    public String executorName() {
+        return ThreadPool.Names.SEARCH;
+    }
+
+    @Override
+    public void nodeOperation(NodeShardVersionsRequest request,
+                              ActionListener<NodeShardVersionsResponse> listener) {
+        Map<String, Long> versions = new HashMap<>();
+        try {
+            for (Map.Entry<String, List<Integer>> entry : request.shards().entrySet()) {
+                IndexService indexService = indicesService.indexServiceSafe(entry.getKey());
+                for (Integer shardId : entry.getValue()) {
+                    IndexShard indexShard = indexService.shardSafe(shardId);
+                    try (Engine.Searcher searcher = indexShard.acquireSearcher("shard_versions")) {
+                        IndexReader reader = searcher.reader();
+                        if (!(reader instanceof DirectoryReader)) {
+                            throw new IllegalStateException(String.format(Locale.ENGLISH,
+                                    "the reader of shard %s doesn't have a version", indexShard.shardId()));
+                        }
+                        versions.put(indexService.indexUUID() + "[" + shardId + "]",
+                                ((DirectoryReader) reader).getVersion());
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            listener.onFailure(t);
+            return;
+        }
+        listener.onResponse(new NodeShardVersionsResponse(versions));
+    }
+}
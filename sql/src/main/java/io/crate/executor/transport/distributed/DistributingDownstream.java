@@ -26,8 +26,10 @@ import io.crate.Streamer;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Row;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.util.BigArrays;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -51,19 +53,26 @@ public class DistributingDownstream extends ResultProviderBase {
                                   int targetExecutionNodeId,
                                   int bucketIdx,
                                   Collection<String> downstreamNodeIds,
+                                  String localNodeId,
                                   TransportDistributedResultAction transportDistributedResultAction,
+                                  BigArrays bigArrays,
                                   Streamer<?>[] streamers) {
         this.jobId = jobId;
         this.transportDistributedResultAction = transportDistributedResultAction;
 
         downstreams = new Downstream[downstreamNodeIds.size()];
-        bucketBuilder = new MultiBucketBuilder(streamers, downstreams.length);
+        BigArrays[] bucketBigArrays = new BigArrays[downstreams.length];
 
         int idx = 0;
         for (String downstreamNodeId : downstreamNodeIds) {
-            downstreams[idx] = new Downstream(downstreamNodeId, jobId, targetExecutionNodeId, bucketIdx, streamers);
+            boolean isLocal = downstreamNodeId.equals("_local") || downstreamNodeId.equals(localNodeId);
+            downstreams[idx] = new Downstream(downstreamNodeId, isLocal, jobId, targetExecutionNodeId, bucketIdx, streamers);
+            // buckets for the local node aren't serialized but merged directly,
+            // the merger might still read them after the response, so they can't use recycled pages
+            bucketBigArrays[idx] = isLocal ? BigArrays.NON_RECYCLING_INSTANCE : bigArrays;
             idx++;
         }
+        bucketBuilder = new MultiBucketBuilder(streamers, bucketBigArrays);
     }
 
     @Override
@@ -89,7 +98,13 @@ public class DistributingDownstream extends ResultProviderBase {
         int size = bucketBuilder.size(downstreamIdx);
         if (size >= Constants.PAGE_SIZE || remainingUpstreams.get() <= 0) {
             Downstream downstream = downstreams[downstreamIdx];
-            downstream.bucketQueue.add(bucketBuilder.build(downstreamIdx));
+            Bucket bucket = bucketBuilder.build(downstreamIdx);
+            if (!downstream.wantMore.get()) {
+                // downstream is finished or failed, the bucket would never be sent
+                downstream.releaseBucket(bucket);
+                return;
+            }
+            downstream.bucketQueue.add(bucket);
             sendRequest(downstream);
         }
     }
@@ -141,6 +156,8 @@ public class DistributingDownstream extends ResultProviderBase {
         } catch (IllegalArgumentException e) {
             LOGGER.error(e.getMessage(), e);
             downstream.wantMore.set(false);
+            downstream.releaseBucket(request.rows());
+            downstream.clearBucketQueue();
         }
     }
 
@@ -153,6 +170,7 @@ public class DistributingDownstream extends ResultProviderBase {
     @Override
     public Throwable doFail(Throwable t) {
         forwardFailures(t);
+        bucketBuilder.close();
         return t;
     }
 
@@ -163,15 +181,34 @@ public class DistributingDownstream extends ResultProviderBase {
         final Deque<Bucket> bucketQueue = new ConcurrentLinkedDeque<>();
         final DistributedResultRequest request;
         final String node;
+        final boolean isLocal;
 
         public Downstream(String node,
+                          boolean isLocal,
                           UUID jobId,
                           int targetExecutionNodeId,
                           int bucketIdx,
                           Streamer<?>[] streamers) {
             this.node = node;
+            this.isLocal = isLocal;
             this.request = new DistributedResultRequest(jobId, targetExecutionNodeId, bucketIdx, streamers);
         }
+
+        /**
+         * give the pages of a bucket back once it has been sent or won't be sent anymore
+         */
+        void releaseBucket(Bucket bucket) {
+            if (!isLocal && bucket instanceof Releasable) {
+                ((Releasable) bucket).close();
+            }
+        }
+
+        void clearBucketQueue() {
+            Bucket bucket;
+            while ((bucket = bucketQueue.poll()) != null) {
+                releaseBucket(bucket);
+            }
+        }
     }
 
     private class DistributedResultResponseActionListener implements ActionListener<DistributedResultResponse> {
@@ -190,11 +227,13 @@ public class DistributingDownstream extends ResultProviderBase {
                         response.needMore());
             }
 
+            // the rows of the request have been serialized, they aren't needed anymore
+            downstream.releaseBucket(downstream.request.rows());
             downstream.wantMore.set(response.needMore());
             if (!response.needMore()) {
                 finishedDownstreams.incrementAndGet();
                 // clean-up queue because no more rows are wanted
-                downstream.bucketQueue.clear();
+                downstream.clearBucketQueue();
             } else {
                 // send next request or final empty closing one
                 downstream.requestPending.set(false);
@@ -206,7 +245,8 @@ public class DistributingDownstream extends ResultProviderBase {
         public void onFailure(Throwable exp) {
             LOGGER.error("[{}] Exception sending distributing collect request to {}", exp, jobId, downstream.node);
             downstream.wantMore.set(false);
-            downstream.bucketQueue.clear();
+            downstream.releaseBucket(downstream.request.rows());
+            downstream.clearBucketQueue();
             finishedDownstreams.incrementAndGet();
         }
     }
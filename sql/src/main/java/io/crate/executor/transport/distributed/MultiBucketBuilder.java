@@ -28,6 +28,7 @@ import io.crate.core.collections.Row;
 import io.crate.executor.transport.StreamBucket;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.common.util.BigArrays;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
@@ -40,10 +41,14 @@ public class MultiBucketBuilder {
 
     private final List<StreamBucket.Builder> bucketBuilders;
 
-    public MultiBucketBuilder(Streamer<?>[] streamers, int numBuckets) {
-        bucketBuilders = new ArrayList<>(numBuckets);
-        for (int i = 0; i < numBuckets; i++) {
-            bucketBuilders.add(new StreamBucket.Builder(streamers));
+    /**
+     * @param bigArrays the big arrays used to allocate the pages of each bucket,
+     *                  buckets built from recycling big arrays must be closed after they've been sent.
+     */
+    public MultiBucketBuilder(Streamer<?>[] streamers, BigArrays[] bigArrays) {
+        bucketBuilders = new ArrayList<>(bigArrays.length);
+        for (BigArrays bucketBigArrays : bigArrays) {
+            bucketBuilders.add(new StreamBucket.Builder(streamers, bucketBigArrays));
         }
     }
 
@@ -102,4 +107,15 @@ public class MultiBucketBuilder {
         }
     }
 
+    /**
+     * releases the rows of all buckets which haven't been built yet
+     */
+    public void close() {
+        for (StreamBucket.Builder builder : bucketBuilders) {
+            synchronized (builder) {
+                builder.close();
+            }
+        }
+    }
+
 }
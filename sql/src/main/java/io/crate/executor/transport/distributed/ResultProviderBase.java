@@ -68,7 +68,14 @@ public abstract class ResultProviderBase implements ResultProvider {
     @Override
     public void finish() {
         if (remainingUpstreams.decrementAndGet() <= 0 && !failed.get()) {
-            result.set(doFinish());
+            Bucket bucket;
+            try {
+                bucket = doFinish();
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+            result.set(bucket);
         }
     }
 
@@ -78,6 +78,13 @@ public class FunctionInfo implements Comparable<FunctionInfo>, Streamable {
         return returnType;
     }
 
+    /**
+     * false if the function may return different results for the same arguments
+     */
+    public boolean deterministic() {
+        return deterministic;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
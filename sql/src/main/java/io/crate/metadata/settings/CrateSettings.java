@@ -1096,7 +1096,36 @@ public class CrateSettings {
     };
 
 
-    public static final ImmutableList<Setting> CRATE_SETTINGS = ImmutableList.<Setting>of(STATS, CLUSTER, DISCOVERY, INDICES, BULK);
+    public static final NestedSetting QUERY = new NestedSetting() {
+        @Override
+        public String name() {
+            return "query";
+        }
+
+        @Override
+        public List<Setting> children() {
+            return ImmutableList.<Setting>of(QUERY_APPROXIMATE_COUNT_DISTINCT);
+        }
+    };
+
+    public static final BoolSetting QUERY_APPROXIMATE_COUNT_DISTINCT = new BoolSetting() {
+        @Override
+        public String name() {
+            return "approximate_count_distinct";
+        }
+
+        @Override
+        public Boolean defaultValue() {
+            return false;
+        }
+
+        @Override
+        public Setting parent() {
+            return QUERY;
+        }
+    };
+
+    public static final ImmutableList<Setting> CRATE_SETTINGS = ImmutableList.<Setting>of(STATS, CLUSTER, DISCOVERY, INDICES, BULK, QUERY);
 
     public static final Map<String, SettingsApplier> SUPPORTED_SETTINGS = ImmutableMap.<String, SettingsApplier>builder()
             .put(CrateSettings.STATS.settingName(),
@@ -1237,6 +1266,10 @@ public class CrateSettings {
                     new SettingsAppliers.TimeSettingsApplier(CrateSettings.BULK_REQUEST_TIMEOUT))
             .put(CrateSettings.BULK_PARTITION_CREATION_TIMEOUT.settingName(),
                     new SettingsAppliers.TimeSettingsApplier(CrateSettings.BULK_PARTITION_CREATION_TIMEOUT))
+            .put(CrateSettings.QUERY.settingName(),
+                    new SettingsAppliers.ObjectSettingsApplier(CrateSettings.QUERY))
+            .put(CrateSettings.QUERY_APPROXIMATE_COUNT_DISTINCT.settingName(),
+                    new SettingsAppliers.BooleanSettingsApplier(CrateSettings.QUERY_APPROXIMATE_COUNT_DISTINCT))
             .build();
 
     @Nullable
@@ -323,6 +323,10 @@ public class SysClusterTableInfo extends SysTableInfo {
                 CrateSettings.BULK_REQUEST_TIMEOUT.name()));
         register("settings", DataTypes.STRING, ImmutableList.of(CrateSettings.BULK.name(),
                 CrateSettings.BULK_PARTITION_CREATION_TIMEOUT.name()));
+
+        register("settings", DataTypes.OBJECT, ImmutableList.of(CrateSettings.QUERY.name()));
+        register("settings", DataTypes.BOOLEAN, ImmutableList.of(CrateSettings.QUERY.name(),
+                CrateSettings.QUERY_APPROXIMATE_COUNT_DISTINCT.name()));
     }
 
     @Inject
@@ -139,6 +139,13 @@ public class SysNodesTableInfo extends SysTableInfo {
         register("fs", DataTypes.STRING, ImmutableList.of("data", "dev"));
         register("fs", DataTypes.STRING, ImmutableList.of("data", "path"));
 
+        register("result_cache", DataTypes.OBJECT, null);
+        register("result_cache", DataTypes.LONG, ImmutableList.of("hits"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("misses"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("evictions"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("entries"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("size"));
+
     }
 
     @Inject
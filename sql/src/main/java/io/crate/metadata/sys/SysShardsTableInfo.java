@@ -59,6 +59,9 @@ public class SysShardsTableInfo extends SysTableInfo {
         register("size", LongType.INSTANCE, null);
         register("state", StringType.INSTANCE, null);
         register("orphan_partition", BooleanType.INSTANCE, null);
+        register("blob_recovery", DataTypes.OBJECT, null);
+        register("blob_recovery", LongType.INSTANCE, ImmutableList.of("files"));
+        register("blob_recovery", LongType.INSTANCE, ImmutableList.of("bytes"));
 
         INFOS.put(SysNodesTableInfo.SYS_COL_IDENT, SysNodesTableInfo.tableColumnInfo(IDENT));
     }
@@ -25,6 +25,7 @@ import io.crate.metadata.FunctionImplementation;
 import io.crate.metadata.Functions;
 import io.crate.metadata.Scalar;
 import io.crate.operation.aggregation.FunctionExpression;
+import io.crate.operation.codegen.ExpressionCompiler;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.symbol.*;
 
@@ -36,6 +37,7 @@ public abstract class AbstractImplementationSymbolVisitor<C extends AbstractImpl
         extends SymbolVisitor<C, Input<?>> {
 
     protected final Functions functions;
+    private final ExpressionCompiler expressionCompiler;
 
     public abstract static class Context {
 
@@ -81,6 +83,7 @@ public abstract class AbstractImplementationSymbolVisitor<C extends AbstractImpl
 
     public AbstractImplementationSymbolVisitor(Functions functions) {
         this.functions = functions;
+        this.expressionCompiler = new ExpressionCompiler(functions);
     }
 
     public Functions functions() {
@@ -89,6 +92,15 @@ public abstract class AbstractImplementationSymbolVisitor<C extends AbstractImpl
 
     @Override
     public Input<?> visitFunction(Function function, C context) {
+        ExpressionCompiler.Compilation compilation = expressionCompiler.compile(function);
+        if (compilation != null) {
+            List<Symbol> leaves = compilation.leaves();
+            Input[] leafInputs = new Input[leaves.size()];
+            for (int i = 0; i < leafInputs.length; i++) {
+                leafInputs[i] = process(leaves.get(i), context);
+            }
+            return compilation.newInput(leafInputs);
+        }
         final FunctionImplementation functionImplementation = functions.get(function.info().ident());
         if (functionImplementation != null && functionImplementation instanceof Scalar<?, ?>) {
             List<Symbol> arguments = function.arguments();
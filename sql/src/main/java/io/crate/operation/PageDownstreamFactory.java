@@ -26,12 +26,14 @@ import io.crate.breaker.RamAccountingContext;
 import io.crate.executor.transport.TransportActionProvider;
 import io.crate.metadata.Functions;
 import io.crate.metadata.ReferenceResolver;
+import io.crate.operation.join.HashJoinOperation;
 import io.crate.operation.merge.BucketMerger;
 import io.crate.operation.merge.NonSortingBucketMerger;
 import io.crate.operation.merge.SortingBucketMerger;
 import io.crate.operation.projectors.FlatProjectorChain;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
 import io.crate.planner.RowGranularity;
+import io.crate.planner.node.dql.HashJoinNode;
 import io.crate.planner.node.dql.MergeNode;
 import org.elasticsearch.action.bulk.BulkRetryCoordinatorPool;
 import org.elasticsearch.cluster.ClusterService;
@@ -110,4 +112,41 @@ public class PageDownstreamFactory {
 
         return bucketMerger;
     }
+
+    /**
+     * @return the join operation whose sides consume the pages pushed to the hash join node,
+     *         the joined rows are passed through the projections of the node to the rowDownstream
+     */
+    public HashJoinOperation createHashJoinOperation(HashJoinNode hashJoinNode,
+                                                     RowDownstream rowDownstream,
+                                                     RamAccountingContext ramAccountingContext,
+                                                     Optional<Executor> executorOptional) {
+        FlatProjectorChain projectorChain = null;
+        if (!hashJoinNode.projections().isEmpty()) {
+            projectorChain = FlatProjectorChain.withAttachedDownstream(
+                    projectionToProjectorVisitor,
+                    ramAccountingContext,
+                    hashJoinNode.projections(),
+                    rowDownstream,
+                    Optional.fromNullable(hashJoinNode.jobId())
+            );
+            rowDownstream = projectorChain.firstProjector();
+        }
+
+        HashJoinOperation hashJoinOperation = new HashJoinOperation(
+                hashJoinNode.leftKeyColumns(),
+                hashJoinNode.rightKeyColumns(),
+                hashJoinNode.leftInputTypes(),
+                hashJoinNode.rightInputTypes(),
+                ramAccountingContext,
+                rowDownstream,
+                executorOptional
+        );
+
+        if (projectorChain != null) {
+            // the operation must be registered as upstream of the projections before they are started
+            projectorChain.startProjections();
+        }
+        return hashJoinOperation;
+    }
 }
@@ -0,0 +1,178 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation;
+
+import io.crate.core.collections.Buckets;
+import io.crate.core.collections.Row;
+
+import java.util.Arrays;
+
+/**
+ * A batch of rows stored column-wise.
+ *
+ * The rows of a batch are addressed through a selection vector which holds the positions of
+ * the rows which are still part of the batch. Downstreams like a filter may narrow the
+ * selection before passing the batch on, so the values of filtered rows are never copied.
+ *
+ * A batch is owned by the upstream which fills it and is re-used once the downstream
+ * returned, so downstreams have to materialize rows they want to keep.
+ */
+public class RowBatch {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Object[][] columns;
+    private final int[] selection;
+    private final int capacity;
+    private int size = 0;
+    private int selected = 0;
+
+    public RowBatch(int numColumns) {
+        this(numColumns, DEFAULT_CAPACITY);
+    }
+
+    public RowBatch(int numColumns, int capacity) {
+        this.capacity = capacity;
+        this.columns = new Object[numColumns][capacity];
+        this.selection = new int[capacity];
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    /**
+     * @return the number of rows stored in this batch, including the ones which are not selected
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * copy the values of the given row into this batch and select it
+     */
+    public void add(Row row) {
+        assert size < capacity : "batch is full";
+        for (int i = 0; i < columns.length; i++) {
+            columns[i][size] = row.get(i);
+        }
+        selection[selected++] = size++;
+    }
+
+    /**
+     * the values of one column, indexed by the row position
+     */
+    public Object[] column(int column) {
+        return columns[column];
+    }
+
+    public Object get(int column, int position) {
+        return columns[column][position];
+    }
+
+    /**
+     * the positions of the selected rows, only the first {@link #selected()} entries are valid
+     */
+    public int[] selection() {
+        return selection;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int selected() {
+        return selected;
+    }
+
+    /**
+     * narrow the selection to the first <code>selected</code> entries of {@link #selection()}
+     */
+    public void selected(int selected) {
+        assert selected <= this.selected : "selection can only be narrowed";
+        this.selected = selected;
+    }
+
+    public void clear() {
+        for (Object[] column : columns) {
+            Arrays.fill(column, 0, size, null);
+        }
+        size = 0;
+        selected = 0;
+    }
+
+    /**
+     * pass the selected rows to the downstream, as a whole if it is able to handle batches,
+     * row by row otherwise.
+     *
+     * @return false if the downstream does not need any more rows, true otherwise.
+     */
+    public boolean emitTo(RowDownstreamHandle downstream) {
+        if (downstream instanceof RowBatchDownstreamHandle) {
+            return ((RowBatchDownstreamHandle) downstream).setNextBatch(this);
+        }
+        BatchRow row = new BatchRow(this);
+        for (int i = 0; i < selected; i++) {
+            row.position(selection[i]);
+            if (!downstream.setNextRow(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A view on a single row of a batch
+     */
+    public static class BatchRow implements Row {
+
+        private final RowBatch batch;
+        private int position;
+
+        public BatchRow(RowBatch batch) {
+            this.batch = batch;
+        }
+
+        public void position(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public int size() {
+            return batch.columns.length;
+        }
+
+        @Override
+        public Object get(int index) {
+            return batch.columns[index][position];
+        }
+
+        @Override
+        public Object[] materialize() {
+            return Buckets.materialize(this);
+        }
+    }
+}
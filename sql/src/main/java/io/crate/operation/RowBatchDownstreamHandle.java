@@ -0,0 +1,41 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation;
+
+/**
+ * A downstream which is able to handle whole batches of rows at once.
+ * Upstreams pass batches using {@link RowBatch#emitTo(RowDownstreamHandle)} which falls back
+ * to {@link #setNextRow(io.crate.core.collections.Row)} for downstreams not implementing this interface.
+ */
+public interface RowBatchDownstreamHandle extends RowDownstreamHandle {
+
+    /**
+     * Feed the downstream with the selected rows of the batch.
+     *
+     * This method must be thread safe.
+     *
+     * @param batch the next rows - the batch is re-used by the upstream once this method returns
+     * @return false if the downstream does not need any more rows, true otherwise.
+     */
+    boolean setNextBatch(RowBatch batch);
+}
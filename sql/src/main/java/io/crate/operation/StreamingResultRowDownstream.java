@@ -0,0 +1,65 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation;
+
+import com.google.common.util.concurrent.SettableFuture;
+import io.crate.core.collections.Row;
+import io.crate.executor.TaskResult;
+
+/**
+ * RowDownstream that forwards the rows to a {@link StreamingRowDownstream}
+ * and sets an empty TaskResult once all rows have been forwarded.
+ */
+public class StreamingResultRowDownstream implements RowDownstream {
+
+    private final StreamingRowDownstream downstream;
+    private final SettableFuture<TaskResult> result;
+
+    public StreamingResultRowDownstream(StreamingRowDownstream downstream, SettableFuture<TaskResult> result) {
+        this.downstream = downstream;
+        this.result = result;
+    }
+
+    @Override
+    public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
+        final RowDownstreamHandle handle = downstream.registerUpstream(upstream);
+        return new RowDownstreamHandle() {
+
+            @Override
+            public boolean setNextRow(Row row) {
+                return handle.setNextRow(row);
+            }
+
+            @Override
+            public void finish() {
+                handle.finish();
+                result.set(TaskResult.EMPTY_RESULT);
+            }
+
+            @Override
+            public void fail(Throwable throwable) {
+                handle.fail(throwable);
+                result.setException(throwable);
+            }
+        };
+    }
+}
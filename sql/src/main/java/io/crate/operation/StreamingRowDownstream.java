@@ -0,0 +1,38 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation;
+
+/**
+ * A {@link RowDownstream} which consumes rows at its own pace, e.g. by writing them to a client.
+ *
+ * Upstreams which receive their rows page by page call {@link #onReady(Runnable)}
+ * before they request the next page, so that no more rows are produced than the
+ * downstream is able to consume.
+ */
+public interface StreamingRowDownstream extends RowDownstream {
+
+    /**
+     * Invoke the callback as soon as this downstream is ready to receive more rows.
+     * The callback might be invoked immediately from within this method.
+     */
+    void onReady(Runnable callback);
+}
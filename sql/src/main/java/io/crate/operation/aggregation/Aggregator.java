@@ -24,6 +24,7 @@ package io.crate.operation.aggregation;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.operation.Input;
 import io.crate.planner.symbol.Aggregation;
+import io.crate.types.DataType;
 
 import java.util.Locale;
 
@@ -34,6 +35,7 @@ import java.util.Locale;
 public class Aggregator {
 
     private final Input[] inputs;
+    private final RamAccountingContext ramAccountingContext;
     private final AggregationFunction aggregationFunction;
     private final FromImpl fromImpl;
     private final ToImpl toImpl;
@@ -73,6 +75,7 @@ public class Aggregator {
         }
 
         this.inputs = inputs;
+        this.ramAccountingContext = ramAccountingContext;
         this.aggregationFunction = aggregationFunction;
     }
 
@@ -89,6 +92,21 @@ public class Aggregator {
         return toImpl.finishCollect(state);
     }
 
+    /**
+     * merge two partial states of this aggregation, e.g. states which were spilled to disk
+     */
+    @SuppressWarnings("unchecked")
+    public Object reduce(Object state1, Object state2) {
+        return aggregationFunction.reduce(ramAccountingContext, state1, state2);
+    }
+
+    /**
+     * @return the type of the partial state, used to serialize the state
+     */
+    public DataType partialType() {
+        return aggregationFunction.partialType();
+    }
+
     abstract class FromImpl {
 
         protected final RamAccountingContext ramAccountingContext;
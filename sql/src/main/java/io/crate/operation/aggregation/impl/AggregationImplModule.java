@@ -55,6 +55,8 @@ public class AggregationImplModule extends AbstractModule {
         SumAggregation.register(this);
         CountAggregation.register(this);
         CollectSetAggregation.register(this);
+        ApproxCountDistinctAggregation.register(this);
+        PercentileAggregation.register(this);
 
         VarianceAggregation.register(this);
         GeometricMeanAggregation.register(this);
@@ -0,0 +1,320 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.aggregation.impl;
+
+import com.carrotsearch.hppc.LongOpenHashSet;
+import com.carrotsearch.hppc.cursors.LongCursor;
+import com.google.common.collect.ImmutableList;
+import io.crate.Streamer;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionInfo;
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.types.DataType;
+import io.crate.types.DataTypeFactory;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * Estimates the number of distinct values using a HyperLogLog++ sketch.
+ *
+ * Unlike <code>count(DISTINCT x)</code>, which collects all values into a set,
+ * the state of a group never grows beyond {@link HllState#NUM_REGISTERS} bytes and states are merged
+ * by taking the maximum of each register.
+ */
+public class ApproxCountDistinctAggregation extends AggregationFunction<ApproxCountDistinctAggregation.HllState, Long> {
+
+    public static final String NAME = "approx_count_distinct";
+
+    private final FunctionInfo info;
+
+    public static void register(AggregationImplModule mod) {
+        for (DataType dataType : DataTypes.PRIMITIVE_TYPES) {
+            mod.register(new ApproxCountDistinctAggregation(new FunctionInfo(
+                    new FunctionIdent(NAME, ImmutableList.of(dataType)), DataTypes.LONG,
+                    FunctionInfo.Type.AGGREGATE)));
+        }
+    }
+
+    /**
+     * A HyperLogLog sketch with a precision of {@link #PRECISION} bits.
+     *
+     * Small sets are kept as a set of the 64 bit hashes of the values, which gives exact counts (apart
+     * from hash collisions) and uses less memory than the registers. Once the set has more than
+     * {@link #SPARSE_LIMIT} hashes it is converted into the dense register array.
+     */
+    public static class HllState {
+
+        static final int PRECISION = 14;
+        static final int NUM_REGISTERS = 1 << PRECISION;
+        static final int SPARSE_LIMIT = NUM_REGISTERS / 32;
+
+        // estimated bytes per hash of the sparse set, including the free slots of the hash table
+        static final long SPARSE_HASH_BYTES = 2 * DataTypes.LONG.fixedSize() + 2;
+
+        private LongOpenHashSet sparse = new LongOpenHashSet();
+        private byte[] registers;
+
+        /**
+         * @return the difference of the estimated memory usage
+         */
+        long add(long hash) {
+            if (registers != null) {
+                addToRegisters(hash);
+                return 0;
+            }
+            if (!sparse.add(hash)) {
+                return 0;
+            }
+            if (sparse.size() > SPARSE_LIMIT) {
+                return toDense();
+            }
+            return SPARSE_HASH_BYTES;
+        }
+
+        /**
+         * merge the other sketch into this sketch
+         *
+         * @return the difference of the estimated memory usage
+         */
+        long merge(HllState other) {
+            if (other.registers == null) {
+                long bytes = 0;
+                for (LongCursor cursor : other.sparse) {
+                    bytes += add(cursor.value);
+                }
+                return bytes;
+            }
+            long bytes = registers == null ? toDense() : 0;
+            for (int i = 0; i < NUM_REGISTERS; i++) {
+                if (other.registers[i] > registers[i]) {
+                    registers[i] = other.registers[i];
+                }
+            }
+            return bytes;
+        }
+
+        private long toDense() {
+            registers = new byte[NUM_REGISTERS];
+            for (LongCursor cursor : sparse) {
+                addToRegisters(cursor.value);
+            }
+            long bytes = NUM_REGISTERS - (sparse.size() - 1) * SPARSE_HASH_BYTES;
+            sparse = null;
+            return bytes;
+        }
+
+        private void addToRegisters(long hash) {
+            int index = (int) (hash >>> (64 - PRECISION));
+            // number of leading zeros of the remaining bits + 1, capped by the marker bit
+            byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+            if (rank > registers[index]) {
+                registers[index] = rank;
+            }
+        }
+
+        public long cardinality() {
+            if (registers == null) {
+                return sparse.size();
+            }
+            double sum = 0;
+            int zeros = 0;
+            for (byte register : registers) {
+                sum += 1.0 / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+            double alpha = 0.7213 / (1 + 1.079 / NUM_REGISTERS);
+            double estimate = alpha * NUM_REGISTERS * NUM_REGISTERS / sum;
+            if (zeros > 0 && estimate <= 2.5 * NUM_REGISTERS) {
+                // linear counting is more accurate for small cardinalities
+                estimate = NUM_REGISTERS * Math.log((double) NUM_REGISTERS / zeros);
+            }
+            return Math.round(estimate);
+        }
+
+        @Override
+        public String toString() {
+            return "cardinality: " + cardinality();
+        }
+    }
+
+    public static class HllStateType extends DataType<HllState> implements Streamer<HllState>, DataTypeFactory {
+
+        public static final int ID = 16384;
+        private static final HllStateType INSTANCE = new HllStateType();
+
+        private static final byte SPARSE = 0;
+        private static final byte DENSE = 1;
+
+        private HllStateType() {
+            DataTypes.register(ID, this);
+        }
+
+        @Override
+        public int id() {
+            return ID;
+        }
+
+        @Override
+        public String getName() {
+            return "hll_state";
+        }
+
+        @Override
+        public Streamer<?> streamer() {
+            return this;
+        }
+
+        @Override
+        public HllState value(Object value) throws IllegalArgumentException, ClassCastException {
+            return (HllState) value;
+        }
+
+        @Override
+        public int compareValueTo(HllState val1, HllState val2) {
+            if (val1 == null) return -1;
+            if (val2 == null) return 1;
+            return Long.compare(val1.cardinality(), val2.cardinality());
+        }
+
+        @Override
+        public HllState readValueFrom(StreamInput in) throws IOException {
+            HllState state = new HllState();
+            if (in.readByte() == SPARSE) {
+                int size = in.readVInt();
+                for (int i = 0; i < size; i++) {
+                    state.sparse.add(in.readLong());
+                }
+            } else {
+                state.sparse = null;
+                state.registers = new byte[HllState.NUM_REGISTERS];
+                in.readBytes(state.registers, 0, HllState.NUM_REGISTERS);
+            }
+            return state;
+        }
+
+        @Override
+        public void writeValueTo(StreamOutput out, Object v) throws IOException {
+            HllState state = (HllState) v;
+            if (state.registers == null) {
+                out.writeByte(SPARSE);
+                out.writeVInt(state.sparse.size());
+                for (LongCursor cursor : state.sparse) {
+                    out.writeLong(cursor.value);
+                }
+            } else {
+                out.writeByte(DENSE);
+                out.writeBytes(state.registers);
+            }
+        }
+
+        @Override
+        public DataType<?> create() {
+            return INSTANCE;
+        }
+    }
+
+    ApproxCountDistinctAggregation(FunctionInfo info) {
+        this.info = info;
+    }
+
+    @Override
+    public FunctionInfo info() {
+        return info;
+    }
+
+    @Override
+    public HllState newState(RamAccountingContext ramAccountingContext) {
+        // state object, hash set object and its initial arrays
+        ramAccountingContext.addBytes(64);
+        return new HllState();
+    }
+
+    @Override
+    public HllState iterate(RamAccountingContext ramAccountingContext, HllState state, Input... args) {
+        Object value = args[0].value();
+        if (value != null) {
+            ramAccountingContext.addBytes(state.add(hash(value)));
+        }
+        return state;
+    }
+
+    @Override
+    public HllState reduce(RamAccountingContext ramAccountingContext, HllState state1, HllState state2) {
+        if (state1 == null) {
+            return state2;
+        }
+        if (state2 == null) {
+            return state1;
+        }
+        ramAccountingContext.addBytes(state1.merge(state2));
+        return state1;
+    }
+
+    @Override
+    public Long terminatePartial(RamAccountingContext ramAccountingContext, HllState state) {
+        return state.cardinality();
+    }
+
+    @Override
+    public DataType partialType() {
+        return HllStateType.INSTANCE;
+    }
+
+    static long hash(Object value) {
+        long bits;
+        if (value instanceof BytesRef) {
+            BytesRef bytesRef = (BytesRef) value;
+            return MurmurHash3.hash128(bytesRef.bytes, bytesRef.offset, bytesRef.length, 0, new MurmurHash3.Hash128()).h1;
+        } else if (value instanceof Double || value instanceof Float) {
+            bits = Double.doubleToLongBits(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            bits = ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            bits = (Boolean) value ? 1 : 0;
+        } else {
+            bits = value.hashCode();
+        }
+        return mix(bits);
+    }
+
+    /**
+     * the finalization step of MurmurHash3, spreads the bits of numeric values over the whole long
+     */
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
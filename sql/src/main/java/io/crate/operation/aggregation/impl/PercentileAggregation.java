@@ -0,0 +1,288 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.aggregation.impl;
+
+import com.google.common.base.Preconditions;
+import com.tdunning.math.stats.AVLTreeDigest;
+import com.tdunning.math.stats.Centroid;
+import com.tdunning.math.stats.TDigest;
+import io.crate.Streamer;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.metadata.DynamicFunctionResolver;
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionImplementation;
+import io.crate.metadata.FunctionInfo;
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.planner.symbol.Function;
+import io.crate.types.*;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Computes percentiles using a <a href="https://github.com/tdunning/t-digest">t-digest</a>.
+ *
+ * <code>percentile(col, 0.95)</code> returns a double,
+ * <code>percentile(col, [0.5, 0.95, 0.99])</code> returns an array with one double per fraction.
+ *
+ * The number of centroids of the digest is bounded by its compression, so the state of a group
+ * doesn't grow with the number of values and two states are merged by adding the centroids.
+ */
+public class PercentileAggregation extends AggregationFunction<PercentileAggregation.PercentileState, Object> {
+
+    public static final String NAME = "percentile";
+
+    static final double COMPRESSION = 100.0;
+
+    // estimated bytes of a centroid, including the node of the tree
+    private static final long CENTROID_BYTES = 64;
+
+    private final FunctionInfo info;
+    private final boolean multipleFractions;
+
+    public static void register(AggregationImplModule mod) {
+        mod.register(NAME, new PercentileResolver());
+    }
+
+    static class PercentileResolver implements DynamicFunctionResolver {
+
+        @Override
+        public FunctionImplementation<Function> getForTypes(List<DataType> dataTypes) throws IllegalArgumentException {
+            Preconditions.checkArgument(dataTypes.size() == 2,
+                    "%s expects a column and the fractions as arguments", NAME);
+            DataType valueType = dataTypes.get(0);
+            Preconditions.checkArgument(
+                    DataTypes.NUMERIC_PRIMITIVE_TYPES.contains(valueType) || valueType.equals(DataTypes.TIMESTAMP),
+                    "%s is not supported for columns of type %s", NAME, valueType);
+
+            DataType fractionType = dataTypes.get(1);
+            boolean multipleFractions = fractionType.id() == ArrayType.ID;
+            if (multipleFractions) {
+                fractionType = ((ArrayType) fractionType).innerType();
+            }
+            Preconditions.checkArgument(DataTypes.NUMERIC_PRIMITIVE_TYPES.contains(fractionType),
+                    "the fractions of %s must be numeric", NAME);
+            DataType returnType = multipleFractions ? new ArrayType(DataTypes.DOUBLE) : DataTypes.DOUBLE;
+            return new PercentileAggregation(new FunctionInfo(
+                    new FunctionIdent(NAME, dataTypes), returnType, FunctionInfo.Type.AGGREGATE), multipleFractions);
+        }
+    }
+
+    public static class PercentileState {
+
+        private double[] fractions;
+        private TDigest digest = new AVLTreeDigest(COMPRESSION);
+        private int accountedCentroids = 0;
+
+        /**
+         * @return the estimated bytes of the centroids which were added since the last call
+         */
+        long centroidBytesAdded() {
+            int centroids = digest.centroidCount();
+            if (centroids <= accountedCentroids) {
+                return 0;
+            }
+            long bytes = (centroids - accountedCentroids) * CENTROID_BYTES;
+            accountedCentroids = centroids;
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "centroids: " + digest.centroidCount() + " size: " + digest.size();
+        }
+    }
+
+    public static class PercentileStateType extends DataType<PercentileState>
+            implements Streamer<PercentileState>, DataTypeFactory {
+
+        public static final int ID = 32768;
+        private static final PercentileStateType INSTANCE = new PercentileStateType();
+
+        private PercentileStateType() {
+            DataTypes.register(ID, this);
+        }
+
+        @Override
+        public int id() {
+            return ID;
+        }
+
+        @Override
+        public String getName() {
+            return "percentile_state";
+        }
+
+        @Override
+        public Streamer<?> streamer() {
+            return this;
+        }
+
+        @Override
+        public PercentileState value(Object value) throws IllegalArgumentException, ClassCastException {
+            return (PercentileState) value;
+        }
+
+        @Override
+        public int compareValueTo(PercentileState val1, PercentileState val2) {
+            if (val1 == null) return -1;
+            if (val2 == null) return 1;
+            return Long.compare(val1.digest.size(), val2.digest.size());
+        }
+
+        @Override
+        public PercentileState readValueFrom(StreamInput in) throws IOException {
+            PercentileState state = new PercentileState();
+            int numFractions = in.readVInt();
+            if (numFractions > 0) {
+                state.fractions = new double[numFractions];
+                for (int i = 0; i < numFractions; i++) {
+                    state.fractions[i] = in.readDouble();
+                }
+            }
+            int numCentroids = in.readVInt();
+            for (int i = 0; i < numCentroids; i++) {
+                state.digest.add(in.readDouble(), in.readVInt());
+            }
+            return state;
+        }
+
+        @Override
+        public void writeValueTo(StreamOutput out, Object v) throws IOException {
+            PercentileState state = (PercentileState) v;
+            if (state.fractions == null) {
+                out.writeVInt(0);
+            } else {
+                out.writeVInt(state.fractions.length);
+                for (double fraction : state.fractions) {
+                    out.writeDouble(fraction);
+                }
+            }
+            out.writeVInt(state.digest.centroidCount());
+            for (Centroid centroid : state.digest.centroids()) {
+                out.writeDouble(centroid.mean());
+                out.writeVInt(centroid.count());
+            }
+        }
+
+        @Override
+        public DataType<?> create() {
+            return INSTANCE;
+        }
+    }
+
+    PercentileAggregation(FunctionInfo info, boolean multipleFractions) {
+        this.info = info;
+        this.multipleFractions = multipleFractions;
+    }
+
+    @Override
+    public FunctionInfo info() {
+        return info;
+    }
+
+    @Override
+    public PercentileState newState(RamAccountingContext ramAccountingContext) {
+        // state, digest and the empty tree
+        ramAccountingContext.addBytes(128);
+        return new PercentileState();
+    }
+
+    @Override
+    public PercentileState iterate(RamAccountingContext ramAccountingContext, PercentileState state, Input... args) {
+        if (state.fractions == null) {
+            state.fractions = fractions(args[1].value());
+        }
+        Number value = (Number) args[0].value();
+        if (value != null) {
+            state.digest.add(value.doubleValue());
+            ramAccountingContext.addBytes(state.centroidBytesAdded());
+        }
+        return state;
+    }
+
+    private double[] fractions(Object value) {
+        double[] fractions;
+        if (multipleFractions) {
+            Object[] values = (Object[]) value;
+            Preconditions.checkArgument(values != null && values.length > 0, "%s expects at least one fraction", NAME);
+            fractions = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                fractions[i] = fraction(values[i]);
+            }
+        } else {
+            fractions = new double[]{fraction(value)};
+        }
+        return fractions;
+    }
+
+    private static double fraction(Object value) {
+        Preconditions.checkArgument(value != null, "the fractions of %s must not be null", NAME);
+        double fraction = ((Number) value).doubleValue();
+        if (fraction < 0.0 || fraction > 1.0) {
+            throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                    "fraction %s of %s must be between 0 and 1", fraction, NAME));
+        }
+        return fraction;
+    }
+
+    @Override
+    public PercentileState reduce(RamAccountingContext ramAccountingContext, PercentileState state1, PercentileState state2) {
+        if (state1 == null) {
+            return state2;
+        }
+        if (state2 == null) {
+            return state1;
+        }
+        if (state1.fractions == null) {
+            state1.fractions = state2.fractions;
+        }
+        state1.digest.add(state2.digest);
+        ramAccountingContext.addBytes(state1.centroidBytesAdded());
+        return state1;
+    }
+
+    @Override
+    public Object terminatePartial(RamAccountingContext ramAccountingContext, PercentileState state) {
+        if (state.fractions == null || state.digest.size() == 0) {
+            return null;
+        }
+        if (!multipleFractions) {
+            return state.digest.quantile(state.fractions[0]);
+        }
+        Double[] percentiles = new Double[state.fractions.length];
+        for (int i = 0; i < state.fractions.length; i++) {
+            percentiles[i] = state.digest.quantile(state.fractions[i]);
+        }
+        return percentiles;
+    }
+
+    @Override
+    public DataType partialType() {
+        return PercentileStateType.INSTANCE;
+    }
+}
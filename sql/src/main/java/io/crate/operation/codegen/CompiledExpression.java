@@ -0,0 +1,71 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.codegen;
+
+import io.crate.operation.Input;
+
+/**
+ * base class of the classes generated by the {@link ExpressionCompiler}.
+ *
+ * The generated {@link #value()} reads the leaf inputs once and evaluates
+ * the whole function tree using primitive locals.
+ */
+public abstract class CompiledExpression implements Input<Object> {
+
+    protected final Input<?>[] inputs;
+    protected final Object[] constants;
+
+    protected CompiledExpression(Input<?>[] inputs, Object[] constants) {
+        this.inputs = inputs;
+        this.constants = constants;
+    }
+
+    // the range checks below behave like the corresponding DataType#value() implementations
+
+    protected static int toInt(long value) {
+        if (value < Integer.MIN_VALUE || Integer.MAX_VALUE < value) {
+            throw new IllegalArgumentException("integer value out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    protected static int toShort(int value) {
+        if (value < Short.MIN_VALUE || Short.MAX_VALUE < value) {
+            throw new IllegalArgumentException("short value out of range: " + value);
+        }
+        return value;
+    }
+
+    protected static int toByte(int value) {
+        if (value < Byte.MIN_VALUE || Byte.MAX_VALUE < value) {
+            throw new IllegalArgumentException("byte value out of range: " + value);
+        }
+        return value;
+    }
+
+    protected static double toFloat(double value) {
+        if (value < -Float.MAX_VALUE || Float.MAX_VALUE < value) {
+            throw new IllegalArgumentException("float value out of range: " + value);
+        }
+        return (float) value;
+    }
+}
@@ -0,0 +1,851 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.codegen;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionImplementation;
+import io.crate.metadata.Functions;
+import io.crate.operation.Input;
+import io.crate.operation.operator.*;
+import io.crate.operation.predicate.NotPredicate;
+import io.crate.operation.scalar.DateTruncFunction;
+import io.crate.operation.scalar.SubstrFunction;
+import io.crate.operation.scalar.arithmetic.*;
+import io.crate.operation.scalar.cast.*;
+import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Symbol;
+import io.crate.planner.symbol.SymbolFormatter;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.lucene.BytesRefs;
+import org.elasticsearch.common.rounding.Rounding;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles a normalized function tree into a {@link CompiledExpression} class.
+ *
+ * Supported are arithmetic, comparisons, AND/OR/NOT, numeric casts, substr and date_trunc with
+ * a literal interval. Every other symbol inside the tree becomes a leaf {@link Input} of the
+ * generated class. Generated classes are cached by the structure of the tree (function names and
+ * types), literals are leaves too, so the same class is re-used for queries which only differ in
+ * their parameters.
+ */
+public class ExpressionCompiler {
+
+    private static final ESLogger LOGGER = Loggers.getLogger(ExpressionCompiler.class);
+
+    private static final int MAX_CACHED_CLASSES = 1000;
+    private static final Cache<String, Constructor<? extends CompiledExpression>> CLASSES = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_CLASSES)
+            .build();
+    private static final AtomicInteger CLASS_ID = new AtomicInteger();
+
+    private static final String BASE_CLASS = Type.getInternalName(CompiledExpression.class);
+    private static final String INPUT_CLASS = Type.getInternalName(Input.class);
+    private static final String INPUTS_DESC = Type.getDescriptor(Input[].class);
+    private static final String CONSTANTS_DESC = Type.getDescriptor(Object[].class);
+    private static final String CONSTRUCTOR_DESC = "(" + INPUTS_DESC + CONSTANTS_DESC + ")V";
+
+    private final Functions functions;
+
+    public ExpressionCompiler(Functions functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * the compiled class of a function tree together with the leaves which must be
+     * resolved to inputs in order to create a new instance
+     */
+    public static class Compilation {
+
+        private final Constructor<? extends CompiledExpression> constructor;
+        private final List<Symbol> leaves;
+        private final Object[] constants;
+
+        private Compilation(Constructor<? extends CompiledExpression> constructor,
+                            List<Symbol> leaves,
+                            Object[] constants) {
+            this.constructor = constructor;
+            this.leaves = leaves;
+            this.constants = constants;
+        }
+
+        public List<Symbol> leaves() {
+            return leaves;
+        }
+
+        /**
+         * @param leafInputs the inputs of {@link #leaves()} in the same order
+         */
+        public Input<?> newInput(Input<?>[] leafInputs) {
+            assert leafInputs.length == leaves.size() : "number of leaf inputs must match number of leaves";
+            try {
+                return constructor.newInstance(leafInputs, constants);
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    /**
+     * @return the compilation of the given function or null if the function itself can't be compiled
+     */
+    @Nullable
+    public Compilation compile(Function function) {
+        final Analysis analysis = new Analysis();
+        final Node root = analysis.analyzeFunction(function);
+        if (root == null) {
+            return null;
+        }
+        StringBuilder fingerprint = new StringBuilder();
+        root.appendFingerprint(fingerprint);
+        Constructor<? extends CompiledExpression> constructor;
+        try {
+            constructor = CLASSES.get(fingerprint.toString(), new Callable<Constructor<? extends CompiledExpression>>() {
+                @Override
+                public Constructor<? extends CompiledExpression> call() throws Exception {
+                    return generate(root);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            LOGGER.warn("Could not compile {}, falling back to interpretation", e.getCause(),
+                    SymbolFormatter.format(function));
+            return null;
+        }
+        return new Compilation(constructor, analysis.leaves, analysis.constants.toArray());
+    }
+
+    private enum Kind {
+        LONG(LLOAD, LSTORE, 2),
+        DOUBLE(DLOAD, DSTORE, 2),
+        BOOLEAN(ILOAD, ISTORE, 1),
+        OBJECT(ALOAD, ASTORE, 1);
+
+        private final int loadOpcode;
+        private final int storeOpcode;
+        private final int size;
+
+        Kind(int loadOpcode, int storeOpcode, int size) {
+            this.loadOpcode = loadOpcode;
+            this.storeOpcode = storeOpcode;
+            this.size = size;
+        }
+
+        static Kind of(DataType type) {
+            if (type.equals(DataTypes.DOUBLE) || type.equals(DataTypes.FLOAT)) {
+                return DOUBLE;
+            }
+            if (type.equals(DataTypes.LONG) || type.equals(DataTypes.TIMESTAMP) || type.equals(DataTypes.INTEGER)
+                    || type.equals(DataTypes.SHORT) || type.equals(DataTypes.BYTE)) {
+                return LONG;
+            }
+            if (type.equals(DataTypes.BOOLEAN)) {
+                return BOOLEAN;
+            }
+            return OBJECT;
+        }
+
+        boolean isNumeric() {
+            return this == LONG || this == DOUBLE;
+        }
+    }
+
+    private enum NodeType {
+        LEAF,
+        ARITHMETIC,
+        COMPARISON,
+        AND,
+        OR,
+        NOT,
+        CAST,
+        SUBSTR,
+        DATE_TRUNC
+    }
+
+    private static class Node {
+
+        private final NodeType nodeType;
+        private final String name;
+        private final DataType type;
+        private final Kind kind;
+        private final List<Node> children;
+        private final int index;
+
+        private Node(NodeType nodeType, String name, DataType type, List<Node> children, int index) {
+            this.nodeType = nodeType;
+            this.name = name;
+            this.type = type;
+            this.kind = Kind.of(type);
+            this.children = children;
+            this.index = index;
+        }
+
+        void appendFingerprint(StringBuilder sb) {
+            if (nodeType == NodeType.LEAF) {
+                sb.append('$').append(index);
+            } else {
+                sb.append(name);
+            }
+            sb.append(':').append(type.getName());
+            if (!children.isEmpty()) {
+                sb.append('(');
+                for (int i = 0; i < children.size(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    children.get(i).appendFingerprint(sb);
+                }
+                sb.append(')');
+            }
+        }
+    }
+
+    /**
+     * translates a function tree into nodes, collecting leaves and constants
+     */
+    private class Analysis {
+
+        private final List<Symbol> leaves = new ArrayList<>();
+        private final List<Object> constants = new ArrayList<>();
+
+        @Nullable
+        Node analyzeFunction(Function function) {
+            FunctionIdent ident = function.info().ident();
+            List<DataType> argumentTypes = ident.argumentTypes();
+            List<Symbol> arguments = function.arguments();
+            DataType returnType = function.info().returnType();
+            if (argumentTypes.size() != arguments.size()) {
+                return null;
+            }
+            switch (ident.name()) {
+                case AddFunction.NAME:
+                case SubtractFunction.NAME:
+                case MultiplyFunction.NAME:
+                case DivideFunction.NAME:
+                case ModulusFunction.NAME:
+                    if (arguments.size() != 2 || !Kind.of(returnType).isNumeric()) {
+                        return null;
+                    }
+                    return newNode(NodeType.ARITHMETIC, function, Kind.LONG, Kind.DOUBLE);
+                case EqOperator.NAME:
+                case LtOperator.NAME:
+                case LteOperator.NAME:
+                case GtOperator.NAME:
+                case GteOperator.NAME:
+                    if (arguments.size() != 2 || !argumentTypes.get(0).equals(argumentTypes.get(1))) {
+                        return null;
+                    }
+                    Kind argumentKind = Kind.of(argumentTypes.get(0));
+                    if (argumentKind == Kind.OBJECT && !argumentTypes.get(0).equals(DataTypes.STRING)) {
+                        return null;
+                    }
+                    return newNode(NodeType.COMPARISON, function, argumentKind, argumentKind);
+                case AndOperator.NAME:
+                case OrOperator.NAME:
+                    if (arguments.size() != 2) {
+                        return null;
+                    }
+                    return newNode(ident.name().equals(AndOperator.NAME) ? NodeType.AND : NodeType.OR,
+                            function, Kind.BOOLEAN, Kind.BOOLEAN);
+                case NotPredicate.NAME:
+                    if (arguments.size() != 1) {
+                        return null;
+                    }
+                    return newNode(NodeType.NOT, function, Kind.BOOLEAN, Kind.BOOLEAN);
+                case ToLongFunction.NAME:
+                case ToIntFunction.NAME:
+                case ToShortFunction.NAME:
+                case ToByteFunction.NAME:
+                case ToDoubleFunction.NAME:
+                case ToFloatFunction.NAME:
+                case ToTimestampFunction.NAME:
+                    if (arguments.size() != 1 || !Kind.of(returnType).isNumeric()) {
+                        return null;
+                    }
+                    return newNode(NodeType.CAST, function, Kind.LONG, Kind.DOUBLE);
+                case SubstrFunction.NAME:
+                    return analyzeSubstr(function);
+                case DateTruncFunction.NAME:
+                    return analyzeDateTrunc(function);
+                default:
+                    return null;
+            }
+        }
+
+        @Nullable
+        private Node analyzeSubstr(Function function) {
+            List<Symbol> arguments = function.arguments();
+            List<DataType> argumentTypes = function.info().ident().argumentTypes();
+            if (arguments.size() < 2 || arguments.size() > 3 || !argumentTypes.get(0).equals(DataTypes.STRING)) {
+                return null;
+            }
+            List<Node> children = new ArrayList<>(arguments.size());
+            for (int i = 0; i < arguments.size(); i++) {
+                Node child = analyze(arguments.get(i), argumentTypes.get(i));
+                if (i == 0 ? child.kind != Kind.OBJECT : !child.kind.isNumeric()) {
+                    return null;
+                }
+                children.add(child);
+            }
+            return new Node(NodeType.SUBSTR, SubstrFunction.NAME, function.info().returnType(), children, -1);
+        }
+
+        @Nullable
+        private Node analyzeDateTrunc(Function function) {
+            List<Symbol> arguments = function.arguments();
+            List<DataType> argumentTypes = function.info().ident().argumentTypes();
+            if (arguments.size() < 2 || arguments.size() > 3) {
+                return null;
+            }
+            BytesRef interval = bytesRefLiteral(arguments.get(0));
+            BytesRef timeZone = DateTruncFunction.DEFAULT_TZ_BYTES_REF;
+            if (arguments.size() == 3) {
+                timeZone = bytesRefLiteral(arguments.get(1));
+            }
+            int tsIdx = arguments.size() - 1;
+            DataType tsType = argumentTypes.get(tsIdx);
+            if (interval == null || timeZone == null
+                    || !(tsType.equals(DataTypes.TIMESTAMP) || tsType.equals(DataTypes.LONG))) {
+                return null;
+            }
+            FunctionImplementation implementation = functions.get(function.info().ident());
+            if (!(implementation instanceof DateTruncFunction)) {
+                return null;
+            }
+            Node timestamp = analyze(arguments.get(tsIdx), tsType);
+            if (timestamp.kind != Kind.LONG) {
+                return null;
+            }
+            constants.add(((DateTruncFunction) implementation).rounding(interval, timeZone));
+            List<Node> children = new ArrayList<>(1);
+            children.add(timestamp);
+            return new Node(NodeType.DATE_TRUNC, DateTruncFunction.NAME, function.info().returnType(),
+                    children, constants.size() - 1);
+        }
+
+        @Nullable
+        private BytesRef bytesRefLiteral(Symbol symbol) {
+            if (symbol instanceof Literal && ((Literal) symbol).value() instanceof BytesRef) {
+                return (BytesRef) ((Literal) symbol).value();
+            }
+            return null;
+        }
+
+        /**
+         * create a node whose arguments must all be of one of the given kinds
+         */
+        @Nullable
+        private Node newNode(NodeType nodeType, Function function, Kind allowedKind, Kind otherAllowedKind) {
+            List<Symbol> arguments = function.arguments();
+            List<DataType> argumentTypes = function.info().ident().argumentTypes();
+            List<Node> children = new ArrayList<>(arguments.size());
+            for (int i = 0; i < arguments.size(); i++) {
+                Node child = analyze(arguments.get(i), argumentTypes.get(i));
+                if (child.kind != allowedKind && child.kind != otherAllowedKind) {
+                    return null;
+                }
+                children.add(child);
+            }
+            return new Node(nodeType, function.info().ident().name(), function.info().returnType(), children, -1);
+        }
+
+        private Node analyze(Symbol symbol, DataType declaredType) {
+            if (symbol instanceof Function) {
+                Node node = analyzeFunction((Function) symbol);
+                if (node != null) {
+                    return node;
+                }
+            }
+            DataType type = symbol.valueType();
+            if (type.equals(DataTypes.UNDEFINED)) {
+                type = declaredType;
+            }
+            int slot = leaves.indexOf(symbol);
+            if (slot < 0) {
+                leaves.add(symbol);
+                slot = leaves.size() - 1;
+            }
+            return new Node(NodeType.LEAF, null, type, new ArrayList<Node>(0), slot);
+        }
+    }
+
+    private static Constructor<? extends CompiledExpression> generate(Node root) throws Exception {
+        String className = String.format(Locale.ENGLISH, "%s$Generated%d", BASE_CLASS, CLASS_ID.incrementAndGet());
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        // no stack map frames are required for this class file version
+        cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, BASE_CLASS, null);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKESPECIAL, BASE_CLASS, "<init>", CONSTRUCTOR_DESC);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "value", "()Ljava/lang/Object;", null, null);
+        new MethodGenerator(mv).generate(root);
+        cw.visitEnd();
+
+        GeneratedClassLoader classLoader = new GeneratedClassLoader(ExpressionCompiler.class.getClassLoader());
+        Class<? extends CompiledExpression> generatedClass =
+                classLoader.define(className.replace('/', '.'), cw.toByteArray()).asSubclass(CompiledExpression.class);
+        // initialize the class so that broken byte code fails here and not during query execution
+        Class.forName(generatedClass.getName(), true, classLoader);
+        return generatedClass.getConstructor(Input[].class, Object[].class);
+    }
+
+    /**
+     * every generated class gets its own class loader so that it can be unloaded once it
+     * is evicted from the cache
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * generates the value() method.
+     *
+     * Every node stores its result in a new local variable. If a strict node encounters a null
+     * value it jumps to the null label of its parent with an empty operand stack.
+     * AND/OR/NOT evaluate their arguments to 0 (false), 1 (true) or 2 (null) to implement
+     * three valued logic.
+     */
+    private static class MethodGenerator {
+
+        private static final int INPUTS = 1;
+        private static final int CONSTANTS = 2;
+
+        private final MethodVisitor mv;
+        private int nextLocal = 3;
+
+        MethodGenerator(MethodVisitor mv) {
+            this.mv = mv;
+        }
+
+        void generate(Node root) {
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, BASE_CLASS, "inputs", INPUTS_DESC);
+            mv.visitVarInsn(ASTORE, INPUTS);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, BASE_CLASS, "constants", CONSTANTS_DESC);
+            mv.visitVarInsn(ASTORE, CONSTANTS);
+
+            Label ifNull = new Label();
+            int result = generate(root, ifNull);
+            mv.visitVarInsn(root.kind.loadOpcode, result);
+            box(root.type);
+            mv.visitInsn(ARETURN);
+
+            mv.visitLabel(ifNull);
+            mv.visitInsn(ACONST_NULL);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        private int newLocal(Kind kind) {
+            int local = nextLocal;
+            nextLocal += kind.size;
+            return local;
+        }
+
+        private int generate(Node node, Label ifNull) {
+            switch (node.nodeType) {
+                case LEAF:
+                    return generateLeaf(node, ifNull);
+                case ARITHMETIC:
+                    return generateArithmetic(node, ifNull);
+                case COMPARISON:
+                    return generateComparison(node, ifNull);
+                case AND:
+                case OR:
+                    return generateAndOr(node, ifNull);
+                case NOT:
+                    return generateNot(node);
+                case CAST:
+                    return generateCast(node, ifNull);
+                case SUBSTR:
+                    return generateSubstr(node, ifNull);
+                case DATE_TRUNC:
+                    return generateDateTrunc(node, ifNull);
+                default:
+                    throw new IllegalArgumentException("unsupported node " + node.nodeType);
+            }
+        }
+
+        private int generateLeaf(Node node, Label ifNull) {
+            mv.visitVarInsn(ALOAD, INPUTS);
+            push(node.index);
+            mv.visitInsn(AALOAD);
+            mv.visitMethodInsn(INVOKEINTERFACE, INPUT_CLASS, "value", "()Ljava/lang/Object;");
+            int value = newLocal(Kind.OBJECT);
+            mv.visitVarInsn(ASTORE, value);
+            mv.visitVarInsn(ALOAD, value);
+            mv.visitJumpInsn(IFNULL, ifNull);
+            if (node.kind == Kind.OBJECT) {
+                return value;
+            }
+            mv.visitVarInsn(ALOAD, value);
+            switch (node.kind) {
+                case LONG:
+                    mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+                    mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "longValue", "()J");
+                    break;
+                case DOUBLE:
+                    mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+                    mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", "doubleValue", "()D");
+                    break;
+                default:
+                    mv.visitTypeInsn(CHECKCAST, "java/lang/Boolean");
+                    mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
+            }
+            return store(node.kind);
+        }
+
+        private int generateArithmetic(Node node, Label ifNull) {
+            Node left = node.children.get(0);
+            Node right = node.children.get(1);
+            int leftValue = generate(left, ifNull);
+            int rightValue = generate(right, ifNull);
+            load(left, leftValue, node.kind);
+            load(right, rightValue, node.kind);
+            boolean isLong = node.kind == Kind.LONG;
+            switch (node.name) {
+                case AddFunction.NAME:
+                    mv.visitInsn(isLong ? LADD : DADD);
+                    break;
+                case SubtractFunction.NAME:
+                    mv.visitInsn(isLong ? LSUB : DSUB);
+                    break;
+                case MultiplyFunction.NAME:
+                    mv.visitInsn(isLong ? LMUL : DMUL);
+                    break;
+                case DivideFunction.NAME:
+                    mv.visitInsn(isLong ? LDIV : DDIV);
+                    break;
+                default:
+                    mv.visitInsn(isLong ? LREM : DREM);
+            }
+            return store(node.kind);
+        }
+
+        private int generateComparison(Node node, Label ifNull) {
+            Node left = node.children.get(0);
+            Node right = node.children.get(1);
+            int leftValue = generate(left, ifNull);
+            int rightValue = generate(right, ifNull);
+            mv.visitVarInsn(left.kind.loadOpcode, leftValue);
+            if (left.kind == Kind.OBJECT && node.name.equals(EqOperator.NAME)) {
+                // same as EqOperator
+                mv.visitVarInsn(ALOAD, rightValue);
+                mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Object", "equals", "(Ljava/lang/Object;)Z");
+                return store(Kind.BOOLEAN);
+            }
+            switch (left.kind) {
+                case LONG:
+                    mv.visitVarInsn(LLOAD, rightValue);
+                    mv.visitInsn(LCMP);
+                    break;
+                case DOUBLE:
+                    // same ordering as Double#compareTo used by CmpOperator
+                    mv.visitVarInsn(DLOAD, rightValue);
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "compare", "(DD)I");
+                    break;
+                case BOOLEAN:
+                    mv.visitVarInsn(ILOAD, rightValue);
+                    mv.visitInsn(ISUB);
+                    break;
+                default:
+                    mv.visitTypeInsn(CHECKCAST, "java/lang/Comparable");
+                    mv.visitVarInsn(ALOAD, rightValue);
+                    mv.visitMethodInsn(INVOKEINTERFACE, "java/lang/Comparable", "compareTo", "(Ljava/lang/Object;)I");
+            }
+            int jumpOpcode;
+            switch (node.name) {
+                case EqOperator.NAME:
+                    jumpOpcode = IFEQ;
+                    break;
+                case LtOperator.NAME:
+                    jumpOpcode = IFLT;
+                    break;
+                case LteOperator.NAME:
+                    jumpOpcode = IFLE;
+                    break;
+                case GtOperator.NAME:
+                    jumpOpcode = IFGT;
+                    break;
+                default:
+                    jumpOpcode = IFGE;
+            }
+            Label isTrue = new Label();
+            Label end = new Label();
+            mv.visitJumpInsn(jumpOpcode, isTrue);
+            mv.visitInsn(ICONST_0);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(isTrue);
+            mv.visitInsn(ICONST_1);
+            mv.visitLabel(end);
+            return store(Kind.BOOLEAN);
+        }
+
+        /**
+         * same three valued logic as {@link AndOperator} and {@link OrOperator},
+         * but the right argument is only evaluated if the left one doesn't decide the result
+         */
+        private int generateAndOr(Node node, Label ifNull) {
+            // AND is decided by a false argument, OR by a true argument
+            int decisive = node.nodeType == NodeType.AND ? 0 : 1;
+            Label decided = new Label();
+            Label end = new Label();
+
+            int left = generateTriState(node.children.get(0));
+            jumpIfEquals(left, decisive, decided);
+            int right = generateTriState(node.children.get(1));
+            jumpIfEquals(right, decisive, decided);
+            jumpIfEquals(left, 2, ifNull);
+            jumpIfEquals(right, 2, ifNull);
+
+            int result = newLocal(Kind.BOOLEAN);
+            push(1 - decisive);
+            mv.visitVarInsn(ISTORE, result);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(decided);
+            push(decisive);
+            mv.visitVarInsn(ISTORE, result);
+            mv.visitLabel(end);
+            return result;
+        }
+
+        /**
+         * same as {@link NotPredicate}, which evaluates NOT NULL to true
+         */
+        private int generateNot(Node node) {
+            Label isNull = new Label();
+            Label end = new Label();
+            int value = generate(node.children.get(0), isNull);
+            int result = newLocal(Kind.BOOLEAN);
+            mv.visitVarInsn(ILOAD, value);
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IXOR);
+            mv.visitVarInsn(ISTORE, result);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(isNull);
+            mv.visitInsn(ICONST_1);
+            mv.visitVarInsn(ISTORE, result);
+            mv.visitLabel(end);
+            return result;
+        }
+
+        private int generateTriState(Node node) {
+            Label isNull = new Label();
+            Label end = new Label();
+            int value = generate(node, isNull);
+            int result = newLocal(Kind.BOOLEAN);
+            mv.visitVarInsn(ILOAD, value);
+            mv.visitVarInsn(ISTORE, result);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(isNull);
+            mv.visitInsn(ICONST_2);
+            mv.visitVarInsn(ISTORE, result);
+            mv.visitLabel(end);
+            return result;
+        }
+
+        private void jumpIfEquals(int local, int value, Label target) {
+            mv.visitVarInsn(ILOAD, local);
+            push(value);
+            mv.visitJumpInsn(IF_ICMPEQ, target);
+        }
+
+        /**
+         * casts behave like the {@link DataType#value(Object)} implementations used by {@link ToPrimitiveFunction}
+         */
+        private int generateCast(Node node, Label ifNull) {
+            Node source = node.children.get(0);
+            int value = generate(source, ifNull);
+            DataType target = node.type;
+            if (target.equals(DataTypes.INTEGER)) {
+                load(source, value, Kind.LONG);
+                mv.visitMethodInsn(INVOKESTATIC, BASE_CLASS, "toInt", "(J)I");
+                mv.visitInsn(I2L);
+            } else if (target.equals(DataTypes.SHORT) || target.equals(DataTypes.BYTE)) {
+                loadInt(source, value);
+                mv.visitMethodInsn(INVOKESTATIC, BASE_CLASS,
+                        target.equals(DataTypes.SHORT) ? "toShort" : "toByte", "(I)I");
+                mv.visitInsn(I2L);
+            } else if (target.equals(DataTypes.FLOAT)) {
+                mv.visitVarInsn(source.kind.loadOpcode, value);
+                if (source.kind == Kind.LONG) {
+                    mv.visitInsn(L2F);
+                    mv.visitInsn(F2D);
+                } else if (!source.type.equals(DataTypes.FLOAT)) {
+                    mv.visitMethodInsn(INVOKESTATIC, BASE_CLASS, "toFloat", "(D)D");
+                }
+            } else if (target.equals(DataTypes.TIMESTAMP) && source.kind == Kind.DOUBLE) {
+                // floating point values are seconds
+                mv.visitVarInsn(DLOAD, value);
+                if (source.type.equals(DataTypes.FLOAT)) {
+                    mv.visitInsn(D2F);
+                    mv.visitLdcInsn(1000.0f);
+                    mv.visitInsn(FMUL);
+                    mv.visitInsn(F2L);
+                } else {
+                    mv.visitLdcInsn(1000.0d);
+                    mv.visitInsn(DMUL);
+                    mv.visitInsn(D2L);
+                }
+            } else {
+                load(source, value, node.kind);
+            }
+            return store(node.kind);
+        }
+
+        private int generateSubstr(Node node, Label ifNull) {
+            int[] values = new int[node.children.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = generate(node.children.get(i), ifNull);
+            }
+            String bytesRef = Type.getInternalName(BytesRef.class);
+            mv.visitVarInsn(ALOAD, values[0]);
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(BytesRefs.class), "toBytesRef",
+                    "(Ljava/lang/Object;)L" + bytesRef + ";");
+            StringBuilder desc = new StringBuilder("(L").append(bytesRef).append(';');
+            for (int i = 1; i < values.length; i++) {
+                loadInt(node.children.get(i), values[i]);
+                desc.append('I');
+            }
+            desc.append(")L").append(bytesRef).append(';');
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(SubstrFunction.class), "evaluate", desc.toString());
+            return store(Kind.OBJECT);
+        }
+
+        private int generateDateTrunc(Node node, Label ifNull) {
+            int timestamp = generate(node.children.get(0), ifNull);
+            String rounding = Type.getInternalName(Rounding.class);
+            mv.visitVarInsn(ALOAD, CONSTANTS);
+            push(node.index);
+            mv.visitInsn(AALOAD);
+            mv.visitTypeInsn(CHECKCAST, rounding);
+            mv.visitVarInsn(LLOAD, timestamp);
+            mv.visitMethodInsn(INVOKEVIRTUAL, rounding, "round", "(J)J");
+            return store(Kind.LONG);
+        }
+
+        /**
+         * load the value of a node as the given kind, converting like Number#longValue()
+         * and Number#doubleValue() do
+         */
+        private void load(Node node, int local, Kind kind) {
+            mv.visitVarInsn(node.kind.loadOpcode, local);
+            if (node.kind == Kind.LONG && kind == Kind.DOUBLE) {
+                mv.visitInsn(L2D);
+            } else if (node.kind == Kind.DOUBLE && kind == Kind.LONG) {
+                mv.visitInsn(D2L);
+            }
+        }
+
+        /**
+         * load the value of a numeric node like Number#intValue() does
+         */
+        private void loadInt(Node node, int local) {
+            mv.visitVarInsn(node.kind.loadOpcode, local);
+            mv.visitInsn(node.kind == Kind.LONG ? L2I : D2I);
+        }
+
+        private int store(Kind kind) {
+            int local = newLocal(kind);
+            mv.visitVarInsn(kind.storeOpcode, local);
+            return local;
+        }
+
+        private void box(DataType type) {
+            if (type.equals(DataTypes.BOOLEAN)) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+            } else if (type.equals(DataTypes.LONG) || type.equals(DataTypes.TIMESTAMP)) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;");
+            } else if (type.equals(DataTypes.INTEGER)) {
+                mv.visitInsn(L2I);
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
+            } else if (type.equals(DataTypes.SHORT)) {
+                mv.visitInsn(L2I);
+                mv.visitInsn(I2S);
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Short", "valueOf", "(S)Ljava/lang/Short;");
+            } else if (type.equals(DataTypes.BYTE)) {
+                mv.visitInsn(L2I);
+                mv.visitInsn(I2B);
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Byte", "valueOf", "(B)Ljava/lang/Byte;");
+            } else if (type.equals(DataTypes.DOUBLE)) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+            } else if (type.equals(DataTypes.FLOAT)) {
+                mv.visitInsn(D2F);
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "valueOf", "(F)Ljava/lang/Float;");
+            }
+        }
+
+        private void push(int value) {
+            if (value >= -1 && value <= 5) {
+                mv.visitInsn(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                mv.visitIntInsn(BIPUSH, value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                mv.visitIntInsn(SIPUSH, value);
+            } else {
+                mv.visitLdcInsn(value);
+            }
+        }
+    }
+}
@@ -42,11 +42,15 @@ import org.apache.lucene.search.*;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
 import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.lookup.SearchLookup;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * collect documents from ES shard, a lucene index
@@ -84,9 +88,59 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         }
     }
 
+    /**
+     * state shared by all collectors collecting the segments of one shard in parallel.
+     * Segments are handed out one by one, largest first, so a collector which is done
+     * with a small segment just picks up the next one.
+     */
+    static class ParallelCollect {
+
+        private final List<AtomicReaderContext> leaves;
+        private final Weight weight;
+        private final AtomicInteger nextLeaf = new AtomicInteger(0);
+        private final AtomicInteger pendingCollectors;
+        private volatile boolean aborted = false;
+
+        ParallelCollect(List<AtomicReaderContext> leaves, Weight weight, int numCollectors) {
+            this.leaves = new ArrayList<>(leaves);
+            Collections.sort(this.leaves, new Comparator<AtomicReaderContext>() {
+                @Override
+                public int compare(AtomicReaderContext o1, AtomicReaderContext o2) {
+                    return Integer.compare(o2.reader().maxDoc(), o1.reader().maxDoc());
+                }
+            });
+            this.weight = weight;
+            this.pendingCollectors = new AtomicInteger(numCollectors);
+        }
+
+        @Nullable
+        AtomicReaderContext nextLeaf() {
+            if (aborted) {
+                return null;
+            }
+            int idx = nextLeaf.getAndIncrement();
+            if (idx < leaves.size()) {
+                return leaves.get(idx);
+            }
+            return null;
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        /**
+         * @return true if the calling collector was the last one to finish
+         */
+        boolean collectorFinished() {
+            return pendingCollectors.decrementAndGet() == 0;
+        }
+    }
+
     private CollectInputSymbolVisitor<LuceneCollectorExpression<?>> inputSymbolVisitor;
 
     private final RowDownstreamHandle downstream;
+    private final RowBatch batch;
     private final CollectorFieldsVisitor fieldsVisitor;
     private final InputRow inputRow;
     private final List<LuceneCollectorExpression<?>> collectorExpressions;
@@ -97,7 +151,10 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
     private final List<OrderByCollectorExpression> orderByCollectorExpressions = new ArrayList<>();
     private final Integer limit;
     private final OrderBy orderBy;
+    private final List<LuceneDocCollector> parallelCollectors = new ArrayList<>();
+    private final AtomicBoolean started = new AtomicBoolean(false);
 
+    private Executor executor;
     private boolean visitorEnabled = false;
     private AtomicReader currentReader;
     private RamAccountingContext ramAccountingContext;
@@ -119,6 +176,8 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         this.orderBy = collectNode.orderBy();
         this.downstream = downStreamProjector.registerUpstream(this);
         this.inputRow = new InputRow(inputs);
+        // only buffer rows if the downstream benefits from getting them at once
+        this.batch = downstream instanceof RowBatchDownstreamHandle ? new RowBatch(inputs.size()) : null;
         this.collectorExpressions = collectorExpressions;
         for (LuceneCollectorExpression expr : collectorExpressions) {
             if ( expr instanceof OrderByCollectorExpression) {
@@ -166,10 +225,34 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
             e.setNextDocId(doc);
         }
 
-        if (!downstream.setNextRow(inputRow) || (limit != null && rowCount == limit)) {
-            // no more rows required, we can stop here
-            throw new CollectionAbortedException();
+        boolean limitReached = limit != null && rowCount == limit;
+        if (batch == null) {
+            if (!downstream.setNextRow(inputRow) || limitReached) {
+                // no more rows required, we can stop here
+                throw new CollectionAbortedException();
+            }
+        } else {
+            batch.add(inputRow);
+            if (batch.isFull() || limitReached) {
+                if (!emitBatch() || limitReached) {
+                    throw new CollectionAbortedException();
+                }
+            }
+        }
+    }
+
+    /**
+     * pass the buffered rows to the downstream
+     *
+     * @return false if the downstream does not need any more rows
+     */
+    private boolean emitBatch() {
+        if (batch == null || batch.size() == 0) {
+            return true;
         }
+        boolean wantMore = batch.emitTo(downstream);
+        batch.clear();
+        return wantMore;
     }
 
     @Override
@@ -191,23 +274,56 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         return true;
     }
 
-    @Override
-    public void doCollect(RamAccountingContext ramAccountingContext) {
+    /**
+     * add a collector which collects the segments of this shard in parallel to this collector.
+     * The collector must use the same search context and its own expressions and downstream.
+     *
+     * Only unordered collects without limit can be run in parallel.
+     */
+    public void addParallelCollector(LuceneDocCollector collector) {
+        assert orderBy == null && limit == null && !keepContextForFetcher
+                : "only unordered collects without limit can be run in parallel";
+        assert collector.searchContext == searchContext : "parallel collectors must share the search context";
+        parallelCollectors.add(collector);
+    }
+
+    /**
+     * executor used to run the parallel collectors
+     */
+    public void executor(Executor executor) {
+        this.executor = executor;
+    }
+
+    private void startCollect(RamAccountingContext ramAccountingContext, @Nullable SearchLookup searchLookup) {
         this.ramAccountingContext = ramAccountingContext;
-        // start collect
         CollectorContext collectorContext = new CollectorContext()
                 .searchContext(searchContext)
+                .searchLookup(searchLookup)
                 .visitor(fieldsVisitor)
                 .jobSearchContextId(jobSearchContextId);
         for (LuceneCollectorExpression<?> collectorExpression : collectorExpressions) {
             collectorExpression.startCollect(collectorContext);
         }
         visitorEnabled = fieldsVisitor.required();
-        jobCollectContext.acquireContext(searchContext);
+    }
+
+    private Query query() {
         Query query = searchContext.query();
         if (query == null) {
             query = new MatchAllDocsQuery();
         }
+        return query;
+    }
+
+    @Override
+    public void doCollect(RamAccountingContext ramAccountingContext) {
+        if (!parallelCollectors.isEmpty()) {
+            doCollectParallel(ramAccountingContext);
+            return;
+        }
+        startCollect(ramAccountingContext, null);
+        jobCollectContext.acquireContext(searchContext);
+        Query query = query();
 
         // do the lucene search
         boolean failed = false;
@@ -235,6 +351,7 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
             } else {
                 searchContext.searcher().search(query, this);
             }
+            emitBatch();
             downstream.finish();
         } catch (CollectionAbortedException e) {
             // ok, we stopped lucene from searching unnecessary leaf readers
@@ -250,6 +367,87 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         }
     }
 
+    private void doCollectParallel(final RamAccountingContext ramAccountingContext) {
+        jobCollectContext.acquireContext(searchContext);
+        final ParallelCollect parallelCollect;
+        try {
+            Weight weight = searchContext.searcher().createNormalizedWeight(query());
+            parallelCollect = new ParallelCollect(
+                    searchContext.searcher().getIndexReader().leaves(), weight, parallelCollectors.size() + 1);
+        } catch (Throwable t) {
+            downstream.fail(t);
+            for (LuceneDocCollector collector : parallelCollectors) {
+                collector.downstream.fail(t);
+            }
+            jobCollectContext.releaseContext(searchContext);
+            jobCollectContext.closeContext(jobSearchContextId);
+            return;
+        }
+
+        for (final LuceneDocCollector collector : parallelCollectors) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (collector.started.compareAndSet(false, true)) {
+                            collector.collectLeaves(parallelCollect, ramAccountingContext,
+                                    searchContext.lookup(false));
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // will be run by the current thread below
+            }
+        }
+        collectLeaves(parallelCollect, ramAccountingContext, null);
+
+        // collectors which didn't start yet would only delay finishing the downstream,
+        // as all segments are collected already, so finish them on the current thread
+        for (LuceneDocCollector collector : parallelCollectors) {
+            if (collector.started.compareAndSet(false, true)) {
+                collector.collectLeaves(parallelCollect, ramAccountingContext, searchContext.lookup(false));
+            }
+        }
+    }
+
+    /**
+     * collect segments handed out by parallelCollect until there are none left.
+     * The last collector to finish releases and closes the search context.
+     */
+    private void collectLeaves(ParallelCollect parallelCollect,
+                               RamAccountingContext ramAccountingContext,
+                               @Nullable SearchLookup searchLookup) {
+        jobCollectContext.acquireContext(searchContext);
+        try {
+            startCollect(ramAccountingContext, searchLookup);
+            AtomicReaderContext leaf;
+            while ((leaf = parallelCollect.nextLeaf()) != null) {
+                setNextReader(leaf);
+                BulkScorer scorer = parallelCollect.weight.bulkScorer(
+                        leaf, !acceptsDocsOutOfOrder(), leaf.reader().getLiveDocs());
+                if (scorer != null) {
+                    scorer.score(this);
+                }
+            }
+            emitBatch();
+            downstream.finish();
+        } catch (CollectionAbortedException e) {
+            // downstream doesn't need any more rows, stop the other collectors too
+            parallelCollect.abort();
+            downstream.finish();
+        } catch (Throwable t) {
+            parallelCollect.abort();
+            downstream.fail(t);
+        } finally {
+            if (parallelCollect.collectorFinished()) {
+                jobCollectContext.releaseContext(searchContext);
+                jobCollectContext.closeContext(jobSearchContextId);
+            } else {
+                SearchContext.removeCurrent();
+            }
+        }
+    }
+
     public CrateSearchContext searchContext() {
         return searchContext;
     }
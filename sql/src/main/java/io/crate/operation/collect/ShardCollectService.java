@@ -38,6 +38,7 @@ import io.crate.metadata.shard.blob.BlobShardReferenceResolver;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.Input;
 import io.crate.operation.RowDownstream;
+import io.crate.operation.collect.blobs.BlobDigestFilter;
 import io.crate.operation.collect.blobs.BlobDocCollector;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
 import io.crate.operation.reference.DocLevelReferenceResolver;
@@ -45,6 +46,9 @@ import io.crate.operation.reference.doc.blob.BlobReferenceResolver;
 import io.crate.operation.reference.doc.lucene.LuceneDocLevelReferenceResolver;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.projection.GroupProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Literal;
 import org.apache.lucene.search.Filter;
 import org.elasticsearch.action.bulk.BulkRetryCoordinatorPool;
@@ -54,6 +58,7 @@ import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.mapper.MapperService;
@@ -66,9 +71,15 @@ import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 public class ShardCollectService {
 
+    /**
+     * maximum number of threads used to collect the segments of a single shard
+     */
+    public static final String MAX_PARALLELISM_PER_SHARD = "collect.max_parallelism_per_shard";
+
     private final CollectInputSymbolVisitor<?> docInputSymbolVisitor;
     private final ThreadPool threadPool;
     private final ClusterService clusterService;
@@ -85,6 +96,7 @@ public class ShardCollectService {
     private final ProjectionToProjectorVisitor projectorVisitor;
     private final boolean isBlobShard;
     private final BlobIndices blobIndices;
+    private final int maxParallelismPerShard;
 
     @Inject
     public ShardCollectService(ThreadPool threadPool,
@@ -116,6 +128,8 @@ public class ShardCollectService {
         this.functions = functions;
         this.blobIndices = blobIndices;
         isBlobShard = BlobIndices.isBlobShard(this.shardId);
+        this.maxParallelismPerShard = Math.max(1, settings.getAsInt(MAX_PARALLELISM_PER_SHARD,
+                Math.min(4, EsExecutors.boundedNumberOfProcessors(settings))));
 
         DocLevelReferenceResolver<? extends Input<?>> resolver = (isBlobShard ? BlobReferenceResolver.INSTANCE : new LuceneDocLevelReferenceResolver(mapperService));
         this.docInputSymbolVisitor = new CollectInputSymbolVisitor<>(
@@ -167,7 +181,8 @@ public class ShardCollectService {
                 if (isBlobShard) {
                     return getBlobIndexCollector(normalizedCollectNode, downstream);
                 } else {
-                    return getLuceneIndexCollector(normalizedCollectNode, downstream, jobCollectContext, jobSearchContextId);
+                    return getLuceneIndexCollector(normalizedCollectNode, downstream, projectorChain,
+                            jobCollectContext, jobSearchContextId);
                 }
             } else if (granularity == RowGranularity.SHARD) {
                 ImplementationSymbolVisitor.Context shardCtx = shardImplementationSymbolVisitor.process(normalizedCollectNode);
@@ -190,12 +205,62 @@ public class ShardCollectService {
                 ctx.topLevelInputs(),
                 ctx.docLevelExpressions(),
                 condition,
+                BlobDigestFilter.fromQuery(collectNode.whereClause().query()),
                 downstream
         );
     }
 
+    /**
+     * number of threads used to collect the given segments.
+     * Only unordered collects without limit are collected in parallel.
+     */
+    private int parallelism(CollectNode collectNode, Engine.Searcher engineSearcher) {
+        if (collectNode.orderBy() != null
+            || collectNode.limit() != null
+            || collectNode.keepContextForFetcher()
+            || !shardProjectionsArePartial(collectNode.projections())) {
+            return 1;
+        }
+        return Math.min(maxParallelismPerShard, engineSearcher.reader().leaves().size());
+    }
+
+    /**
+     * every parallel collector gets its own shard projectors, so their results must be
+     * partial aggregations which are merged downstream.
+     * A final group projection would emit a group once per collector and writer
+     * projections would write to the same file.
+     */
+    static boolean shardProjectionsArePartial(List<Projection> projections) {
+        int shardProjectionsEnd = -1;
+        for (int i = 0; i < projections.size(); i++) {
+            if (projections.get(i).requiredGranularity() == RowGranularity.SHARD) {
+                shardProjectionsEnd = i;
+                break;
+            }
+        }
+        // see ShardProjectorChain, all projections up to the first shard projection run on the shard
+        for (int i = 0; i <= shardProjectionsEnd; i++) {
+            Projection projection = projections.get(i);
+            if (!(projection instanceof GroupProjection)) {
+                return false;
+            }
+            List<Aggregation> aggregations = ((GroupProjection) projection).values();
+            if (aggregations.isEmpty()) {
+                // no way to tell if the groups are merged downstream
+                return false;
+            }
+            for (Aggregation aggregation : aggregations) {
+                if (aggregation.toStep() != Aggregation.Step.PARTIAL) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private CrateCollector getLuceneIndexCollector(final CollectNode collectNode,
                                                    final RowDownstream downstream,
+                                                   final ShardProjectorChain projectorChain,
                                                    final JobCollectContext jobCollectContext,
                                                    final int jobSearchContextId) throws Exception {
         final CollectInputSymbolVisitor.Context docCtx = docInputSymbolVisitor.process(collectNode);
@@ -237,7 +302,7 @@ public class ShardCollectService {
                             if (minScore != null) {
                                 localContext.minimumScore(minScore);
                             }
-                            return new LuceneDocCollector(
+                            LuceneDocCollector collector = new LuceneDocCollector(
                                     docCtx.topLevelInputs(),
                                     docCtx.docLevelExpressions(),
                                     collectNode,
@@ -247,6 +312,25 @@ public class ShardCollectService {
                                     localContext,
                                     jobSearchContextId,
                                     collectNode.keepContextForFetcher());
+                            int parallelism = parallelism(collectNode, engineSearcher);
+                            if (parallelism > 1) {
+                                collector.executor(threadPool.executor(ThreadPool.Names.SEARCH));
+                                for (int i = 1; i < parallelism; i++) {
+                                    // every collector needs its own expressions and shard projectors
+                                    CollectInputSymbolVisitor.Context parallelCtx = docInputSymbolVisitor.process(collectNode);
+                                    collector.addParallelCollector(new LuceneDocCollector(
+                                            parallelCtx.topLevelInputs(),
+                                            parallelCtx.docLevelExpressions(),
+                                            collectNode,
+                                            functions,
+                                            projectorChain.newShardDownstreamProjector(projectorVisitor),
+                                            jobCollectContext,
+                                            localContext,
+                                            jobSearchContextId,
+                                            false));
+                                }
+                            }
+                            return collector;
                         } catch (Throwable t) {
                             if (localContext != null) {
                                 localContext.close();
@@ -0,0 +1,211 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect.blobs;
+
+import com.google.common.collect.Sets;
+import io.crate.operation.operator.*;
+import io.crate.operation.reference.doc.blob.BlobDigestExpression;
+import io.crate.planner.symbol.*;
+import org.elasticsearch.common.lucene.BytesRefs;
+
+import javax.annotation.Nullable;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The digests a blob collect can be limited to, extracted from the conditions on the digest column
+ * which are combined with AND in the where clause.
+ *
+ * The filter is only used to skip files and prefix directories without listing them,
+ * the where clause is still evaluated for every collected blob.
+ *
+ * Only the digest can be used this way because it is the name of the blob file.
+ * There is no catalog of the sizes and modification times of the blobs, so conditions
+ * on these columns are evaluated on the attributes of every collected file.
+ */
+public class BlobDigestFilter {
+
+    public static final BlobDigestFilter ALL = new BlobDigestFilter(null, null, null);
+
+    private static final int DIGEST_LENGTH = 40;
+
+    @Nullable
+    private final Set<String> digests;
+    @Nullable
+    private final String lowerBound;
+    @Nullable
+    private final String upperBound;
+
+    private BlobDigestFilter(@Nullable Set<String> digests, @Nullable String lowerBound, @Nullable String upperBound) {
+        this.digests = digests;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    public static BlobDigestFilter fromQuery(@Nullable Symbol query) {
+        if (query == null) {
+            return ALL;
+        }
+        Context context = new Context();
+        Visitor.INSTANCE.process(query, context);
+        return new BlobDigestFilter(context.digests, context.lowerBound, context.upperBound);
+    }
+
+    /**
+     * @return the digests which can match sorted ascending, null if all digests can match
+     */
+    @Nullable
+    public Set<String> digests() {
+        return digests;
+    }
+
+    /**
+     * @param subDir name of a prefix directory
+     * @return false if no digest in the directory can match
+     */
+    public boolean matchesPrefix(String subDir) {
+        if (lowerBound != null && padded(subDir, 'f').compareTo(lowerBound) < 0) {
+            return false;
+        }
+        if (upperBound != null && padded(subDir, '0').compareTo(upperBound) > 0) {
+            return false;
+        }
+        return true;
+    }
+
+    private static String padded(String prefix, char c) {
+        StringBuilder sb = new StringBuilder(DIGEST_LENGTH);
+        sb.append(prefix);
+        while (sb.length() < DIGEST_LENGTH) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static class Context {
+
+        private Set<String> digests;
+        private String lowerBound;
+        private String upperBound;
+
+        void restrictTo(Set<String> values) {
+            TreeSet<String> validDigests = new TreeSet<>();
+            for (String value : values) {
+                // digests are lower case hex strings, nothing else can be a file of the container
+                if (value.length() >= 2 && value.matches("[0-9a-f]+")) {
+                    validDigests.add(value);
+                }
+            }
+            if (digests == null) {
+                digests = validDigests;
+            } else {
+                digests.retainAll(validDigests);
+            }
+        }
+
+        void lowerBound(String value) {
+            if (lowerBound == null || value.compareTo(lowerBound) > 0) {
+                lowerBound = value;
+            }
+        }
+
+        void upperBound(String value) {
+            if (upperBound == null || value.compareTo(upperBound) < 0) {
+                upperBound = value;
+            }
+        }
+    }
+
+    private static class Visitor extends SymbolVisitor<Context, Void> {
+
+        private static final Visitor INSTANCE = new Visitor();
+
+        @Override
+        public Void visitFunction(Function function, Context context) {
+            String name = function.info().ident().name();
+            if (name.equals(AndOperator.NAME)) {
+                for (Symbol argument : function.arguments()) {
+                    process(argument, context);
+                }
+                return null;
+            }
+            if (function.arguments().size() != 2) {
+                return null;
+            }
+            Symbol left = function.arguments().get(0);
+            Symbol right = function.arguments().get(1);
+            boolean reversed = false;
+            if (isDigest(right) && left.symbolType().isValueSymbol()) {
+                Symbol tmp = left;
+                left = right;
+                right = tmp;
+                reversed = true;
+            }
+            if (!isDigest(left) || !right.symbolType().isValueSymbol()) {
+                return null;
+            }
+            Object value = ((Literal) right).value();
+            if (value == null) {
+                return null;
+            }
+            switch (name) {
+                case EqOperator.NAME:
+                    context.restrictTo(Sets.newHashSet(BytesRefs.toString(value)));
+                    break;
+                case InOperator.NAME:
+                    if (!reversed) {
+                        Set<String> values = new TreeSet<>();
+                        for (Object o : (Set<?>) value) {
+                            if (o != null) {
+                                values.add(BytesRefs.toString(o));
+                            }
+                        }
+                        context.restrictTo(values);
+                    }
+                    break;
+                case GtOperator.NAME:
+                case GteOperator.NAME:
+                    if (reversed) {
+                        context.upperBound(BytesRefs.toString(value));
+                    } else {
+                        context.lowerBound(BytesRefs.toString(value));
+                    }
+                    break;
+                case LtOperator.NAME:
+                case LteOperator.NAME:
+                    if (reversed) {
+                        context.lowerBound(BytesRefs.toString(value));
+                    } else {
+                        context.upperBound(BytesRefs.toString(value));
+                    }
+                    break;
+            }
+            return null;
+        }
+
+        private static boolean isDigest(Symbol symbol) {
+            return symbol instanceof Reference
+                    && ((Reference) symbol).info().ident().columnIdent().fqn().equals(BlobDigestExpression.COLUMN_NAME);
+        }
+    }
+}
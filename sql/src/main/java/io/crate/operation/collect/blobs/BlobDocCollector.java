@@ -32,6 +32,7 @@ import io.crate.operation.collect.CrateCollector;
 
 import java.io.File;
 import java.util.List;
+import java.util.Set;
 
 public class BlobDocCollector implements CrateCollector {
 
@@ -39,6 +40,7 @@ public class BlobDocCollector implements CrateCollector {
     private final List<Input<?>> inputs;
     private final List<BlobCollectorExpression<?>> expressions;
     private final Input<Boolean> condition;
+    private final BlobDigestFilter digestFilter;
 
     private RowDownstreamHandle downstream;
 
@@ -48,18 +50,46 @@ public class BlobDocCollector implements CrateCollector {
             List<BlobCollectorExpression<?>> expressions,
             Input<Boolean> condition,
             RowDownstream downstream) {
+        this(blobShard, inputs, expressions, condition, BlobDigestFilter.ALL, downstream);
+    }
+
+    public BlobDocCollector(
+            BlobShard blobShard,
+            List<Input<?>> inputs,
+            List<BlobCollectorExpression<?>> expressions,
+            Input<Boolean> condition,
+            BlobDigestFilter digestFilter,
+            RowDownstream downstream) {
         this.blobShard = blobShard;
         this.inputs = inputs;
         this.expressions = expressions;
         this.condition = condition;
+        this.digestFilter = digestFilter;
         this.downstream = downstream.registerUpstream(this);
     }
 
     @Override
     public void doCollect(RamAccountingContext ramAccountingContext) {
         BlobContainer.FileVisitor fileVisitor = new FileListingsFileVisitor();
+        BlobContainer blobContainer = blobShard.blobContainer();
         try {
-            blobShard.blobContainer().walkFiles(null, fileVisitor);
+            Set<String> digests = digestFilter.digests();
+            if (digests != null) {
+                // look up the requested blobs instead of listing the directories
+                for (String digest : digests) {
+                    File file = blobContainer.getFile(digest);
+                    if (file.isFile() && !fileVisitor.visit(file)) {
+                        return;
+                    }
+                }
+                return;
+            }
+            for (int i = 0; i < BlobContainer.PREFIXES.length; i++) {
+                if (digestFilter.matchesPrefix(BlobContainer.SUB_DIRS[i])
+                    && !blobContainer.walkFiles(BlobContainer.PREFIXES[i], null, fileVisitor)) {
+                    return;
+                }
+            }
         } finally {
             downstream.finish();
         }
@@ -28,15 +28,19 @@ import io.crate.analyze.WhereClause;
 import io.crate.lucene.LuceneQueryBuilder;
 import io.crate.operation.ThreadPools;
 import io.crate.operation.collect.EngineSearcher;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
 import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.cache.recycler.PageCacheRecycler;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
-import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.script.ScriptService;
@@ -68,6 +72,7 @@ public class InternalCountOperation implements CountOperation {
     private final ThreadPoolExecutor executor;
     private final int corePoolSize;
     private final ThreadPool threadPool;
+    private final SegmentCountCache segmentCountCache = new SegmentCountCache();
 
     @Inject
     public InternalCountOperation(ClusterService clusterService,
@@ -114,9 +119,49 @@ public class InternalCountOperation implements CountOperation {
 
     @Override
     public long count(String index, int shardId, WhereClause whereClause) throws IOException, InterruptedException {
+        if (whereClause.noMatch()) {
+            return 0L;
+        }
         IndexService indexService = indicesService.indexServiceSafe(index);
         IndexShard indexShard = indexService.shardSafe(shardId);
+        Engine.Searcher searcher = EngineSearcher.getSearcherWithRetry(indexShard, "count-operation", null);
 
+        List<AtomicReaderContext> uncachedLeaves = new ArrayList<>();
+        long count = 0L;
+        boolean closeSearcher = true;
+        try {
+            if (!whereClause.hasQuery()) {
+                // match all (partitions are already pruned), no need to run a query
+                return searcher.reader().numDocs();
+            }
+            for (AtomicReaderContext leaf : searcher.reader().leaves()) {
+                Long leafCount = segmentCountCache.get(leaf.reader(), whereClause.query());
+                if (leafCount == null) {
+                    uncachedLeaves.add(leaf);
+                } else {
+                    count += leafCount;
+                }
+            }
+            if (uncachedLeaves.isEmpty()) {
+                return count;
+            }
+            // the search context takes over the searcher
+            closeSearcher = false;
+        } finally {
+            if (closeSearcher) {
+                searcher.close();
+            }
+        }
+        return count + countUncachedLeaves(index, shardId, indexService, indexShard, searcher, whereClause, uncachedLeaves);
+    }
+
+    private long countUncachedLeaves(String index,
+                                     int shardId,
+                                     IndexService indexService,
+                                     IndexShard indexShard,
+                                     Engine.Searcher searcher,
+                                     WhereClause whereClause,
+                                     List<AtomicReaderContext> leaves) throws IOException, InterruptedException {
         SearchShardTarget shardTarget = new SearchShardTarget(clusterService.localNode().id(), index, shardId);
         SearchContext context = new DefaultSearchContext(0,
                 new ShardSearchLocalRequest(
@@ -125,7 +170,7 @@ public class InternalCountOperation implements CountOperation {
                         null
                 ),
                 shardTarget,
-                EngineSearcher.getSearcherWithRetry(indexShard, "count-operation", null),
+                searcher,
                 indexService,
                 indexShard,
                 scriptService,
@@ -141,13 +186,32 @@ public class InternalCountOperation implements CountOperation {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
-            return Lucene.count(context.searcher(), queryCtx.query());
+            Weight weight = context.searcher().createNormalizedWeight(queryCtx.query());
+            long count = 0L;
+            for (AtomicReaderContext leaf : leaves) {
+                long leafCount = countLeaf(weight, leaf);
+                segmentCountCache.put(leaf.reader(), whereClause.query(), leafCount);
+                count += leafCount;
+            }
+            return count;
         } finally {
             context.close();
             SearchContext.removeCurrent();
         }
     }
 
+    private static long countLeaf(Weight weight, AtomicReaderContext leaf) throws IOException {
+        Scorer scorer = weight.scorer(leaf, leaf.reader().getLiveDocs());
+        if (scorer == null) {
+            return 0L;
+        }
+        long count = 0L;
+        while (scorer.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+            count++;
+        }
+        return count;
+    }
+
     private static class MergePartialCountFunction implements Function<List<Long>, Long> {
         @Nullable
         @Override
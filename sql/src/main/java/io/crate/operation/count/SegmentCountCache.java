@@ -0,0 +1,82 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.count;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.crate.planner.symbol.Symbol;
+import org.apache.lucene.index.AtomicReader;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the number of matching documents of a segment per normalized query.
+ *
+ * Entries are keyed by the core and deletes key of the segment reader, so a segment
+ * with new deletes gets new entries and entries of closed readers are garbage collected.
+ * Queries containing non-deterministic functions never equal each other and so never hit the cache.
+ */
+class SegmentCountCache {
+
+    private static final int MAX_SEGMENTS = 10_000;
+    private static final int MAX_QUERIES_PER_SEGMENT = 100;
+
+    private final Cache<Object, ConcurrentMap<Symbol, Long>> cache = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(MAX_SEGMENTS)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+
+    @Nullable
+    public Long get(AtomicReader reader, Symbol query) {
+        ConcurrentMap<Symbol, Long> counts = cache.getIfPresent(reader.getCombinedCoreAndDeletesKey());
+        if (counts == null) {
+            return null;
+        }
+        return counts.get(query);
+    }
+
+    public void put(AtomicReader reader, Symbol query, long count) {
+        ConcurrentMap<Symbol, Long> counts;
+        try {
+            counts = cache.get(reader.getCombinedCoreAndDeletesKey(), new Callable<ConcurrentMap<Symbol, Long>>() {
+                @Override
+                public ConcurrentMap<Symbol, Long> call() throws Exception {
+                    return new ConcurrentHashMap<>();
+                }
+            });
+        } catch (ExecutionException e) {
+            // creating the map can't fail
+            throw new IllegalStateException(e);
+        }
+        if (counts.size() >= MAX_QUERIES_PER_SEGMENT) {
+            counts.clear();
+        }
+        counts.put(query, count);
+    }
+}
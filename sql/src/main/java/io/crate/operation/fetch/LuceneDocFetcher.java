@@ -114,13 +114,20 @@ public class LuceneDocFetcher implements RowUpstream {
         visitorEnabled = fieldsVisitor.required();
 
         try {
+            // read the documents ordered by docId, segment by segment, the PositionalRowMerger
+            // restores the requested order
+            shardDocIdsBucket.sortByDocId();
+            List<AtomicReaderContext> leaves = searchContext.searcher().getIndexReader().leaves();
+            AtomicReaderContext subReaderContext = null;
+            int docBaseEnd = -1;
             for (int index = 0; index < shardDocIdsBucket.size(); index++) {
                 int docId = shardDocIdsBucket.docId(index);
-                int readerIndex = ReaderUtil.subIndex(docId, searchContext.searcher().getIndexReader().leaves());
-                AtomicReaderContext subReaderContext = searchContext.searcher().getIndexReader().leaves().get(readerIndex);
-                int subDoc = docId - subReaderContext.docBase;
-                setNextReader(subReaderContext);
-                fetch(shardDocIdsBucket.position(index), subDoc);
+                if (docId >= docBaseEnd) {
+                    subReaderContext = leaves.get(ReaderUtil.subIndex(docId, leaves));
+                    docBaseEnd = subReaderContext.docBase + subReaderContext.reader().maxDoc();
+                    setNextReader(subReaderContext);
+                }
+                fetch(shardDocIdsBucket.position(index), docId - subReaderContext.docBase);
             }
             downstream.finish();
         } catch (FetchAbortedException e) {
@@ -42,6 +42,7 @@ import io.crate.operation.collect.LuceneDocCollector;
 import io.crate.operation.reference.DocLevelReferenceResolver;
 import io.crate.operation.reference.doc.lucene.LuceneDocLevelReferenceResolver;
 import io.crate.planner.symbol.Reference;
+import org.apache.lucene.util.InPlaceMergeSorter;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.threadpool.ThreadPool;
@@ -199,6 +200,29 @@ public class NodeFetchOperation implements RowUpstream {
         public int position(int idx) {
             return positions.get(idx);
         }
+
+        /**
+         * sort the docIds ascending so that stored fields are read in index order,
+         * the position of every docId is kept.
+         */
+        public void sortByDocId() {
+            new InPlaceMergeSorter() {
+                @Override
+                protected int compare(int i, int j) {
+                    return Integer.compare(docIds.get(i), docIds.get(j));
+                }
+
+                @Override
+                protected void swap(int i, int j) {
+                    int docId = docIds.get(i);
+                    docIds.set(i, docIds.get(j));
+                    docIds.set(j, docId);
+                    int position = positions.get(i);
+                    positions.set(i, positions.get(j));
+                    positions.set(j, position);
+                }
+            }.sort(0, docIds.size());
+        }
     }
 
 }
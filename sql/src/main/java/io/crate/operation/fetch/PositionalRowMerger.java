@@ -27,10 +27,7 @@ import io.crate.operation.RowDownstreamHandle;
 import io.crate.operation.RowUpstream;
 import io.crate.operation.projectors.Projector;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -38,7 +35,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Merge rows of multiple upstreams ordered by a positional unique long. Rows are emitted as
  * soon as possible. Every upstream gets its own {@link RowDownstreamHandle}, this handle is
  * not operating thread-safe, but the merger itself is thread-safe. The main purpose of this
- * implementation is merging ordered shard rows on a node.
+ * implementation is merging shard rows on a node.
+ *
+ * The rows of a single upstream don't need to arrive in positional order, rows which can't be
+ * emitted yet are buffered ordered by their position.
  */
 public class PositionalRowMerger implements Projector, RowDownstreamHandle {
 
@@ -138,12 +138,19 @@ public class PositionalRowMerger implements Projector, RowDownstreamHandle {
 
     static class UpstreamBuffer implements RowDownstreamHandle {
 
-        private final LinkedList<Row> rows = new LinkedList<>();
+        private final PriorityQueue<Row> rows;
         private final PositionalRowMerger merger;
         private final Object lock = new Object();
 
-        public UpstreamBuffer(PositionalRowMerger merger) {
+        public UpstreamBuffer(final PositionalRowMerger merger) {
             this.merger = merger;
+            this.rows = new PriorityQueue<>(11, new Comparator<Row>() {
+                @Override
+                public int compare(Row o1, Row o2) {
+                    return Integer.compare((int) o1.get(merger.orderingColumnIndex),
+                            (int) o2.get(merger.orderingColumnIndex));
+                }
+            });
         }
 
         @Override
@@ -181,7 +188,7 @@ public class PositionalRowMerger implements Projector, RowDownstreamHandle {
 
         public Row first() {
             synchronized (lock) {
-                return rows.getFirst();
+                return rows.element();
             }
         }
 
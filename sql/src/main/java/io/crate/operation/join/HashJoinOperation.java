@@ -0,0 +1,380 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.join;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.breaker.SizeEstimator;
+import io.crate.breaker.SizeEstimatorFactory;
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.BucketPage;
+import io.crate.core.collections.Row;
+import io.crate.core.collections.RowN;
+import io.crate.operation.PageConsumeListener;
+import io.crate.operation.PageDownstream;
+import io.crate.operation.RowDownstream;
+import io.crate.operation.RowDownstreamHandle;
+import io.crate.operation.RowUpstream;
+import io.crate.types.DataType;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * inner equi join of two sides whose rows are pushed page by page.
+ *
+ * The rows of the right side are put into a hash table keyed by the values of their join columns.
+ * Pages of the left side are held back until the right side is finished, their upstreams don't
+ * send further pages meanwhile. Afterwards the left rows are probed against the hash table one page
+ * after another and only the joined rows are kept.
+ * Emitted rows consist of the columns of the left row followed by the columns of the right row.
+ *
+ * Rows with a <code>NULL</code> join column never match.
+ * Every row is accounted on the given {@link RamAccountingContext} before it is added to the hash table.
+ */
+public class HashJoinOperation implements RowUpstream {
+
+    // estimated size of a hash table entry with its list of rows
+    private static final long ENTRY_SIZE = 2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+            + 6 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_INT;
+
+    // used for types without a size estimator, like objects or arrays
+    private static final long UNKNOWN_VALUE_SIZE = 64;
+
+    private final int[] leftKeyColumns;
+    private final int[] rightKeyColumns;
+    private final List<DataType> leftTypes;
+    private final List<DataType> rightTypes;
+    private final SizeEstimator<Object>[] rightSizeEstimators;
+    private final RamAccountingContext ramAccountingContext;
+    private final Optional<Executor> executor;
+    private final RowDownstreamHandle downstream;
+
+    private final Map<Object, List<Object[]>> hashTable = new HashMap<>();
+    private final SettableFuture<Void> hashTableBuilt = SettableFuture.create();
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final PageDownstream leftSide = new LeftSide();
+    private final PageDownstream rightSide = new RightSide();
+
+    /**
+     * @param leftKeyColumns indices of the join columns in the rows of the left side
+     * @param rightKeyColumns indices of the join columns in the rows of the right side,
+     *                        matching the left ones by position
+     * @param leftTypes the column types of the left rows
+     * @param rightTypes the column types of the right rows
+     * @param executor the executor the pages are consumed on, they are consumed on the thread
+     *                 which completes their buckets if absent
+     */
+    public HashJoinOperation(int[] leftKeyColumns,
+                             int[] rightKeyColumns,
+                             List<DataType> leftTypes,
+                             List<DataType> rightTypes,
+                             RamAccountingContext ramAccountingContext,
+                             RowDownstream downstream,
+                             Optional<Executor> executor) {
+        assert leftKeyColumns.length > 0 && leftKeyColumns.length == rightKeyColumns.length
+                : "number of left and right join columns must match";
+        this.leftKeyColumns = leftKeyColumns;
+        this.rightKeyColumns = rightKeyColumns;
+        this.leftTypes = leftTypes;
+        this.rightTypes = rightTypes;
+        this.rightSizeEstimators = sizeEstimators(rightTypes);
+        this.ramAccountingContext = ramAccountingContext;
+        this.executor = executor;
+        this.downstream = downstream.registerUpstream(this);
+    }
+
+    /**
+     * consumes the pages of the left side, the downstream is finished once the left side is finished
+     */
+    public PageDownstream leftSide() {
+        return leftSide;
+    }
+
+    /**
+     * consumes the pages of the right side which the hash table is built from
+     */
+    public PageDownstream rightSide() {
+        return rightSide;
+    }
+
+    private Executor executor() {
+        return executor.isPresent() ? executor.get() : MoreExecutors.directExecutor();
+    }
+
+    private void finish() {
+        if (!finished.getAndSet(true)) {
+            downstream.finish();
+        }
+    }
+
+    private void fail(Throwable t) {
+        // release pending left pages
+        hashTableBuilt.setException(t);
+        if (!finished.getAndSet(true)) {
+            downstream.fail(t);
+        }
+    }
+
+    /**
+     * pages are consumed one after another, so the hash table is only modified by one thread at a time
+     * and is read-only once it has been built
+     */
+    private void addToHashTable(Bucket bucket) {
+        for (Row row : bucket) {
+            Object key = key(row, rightKeyColumns);
+            if (key == null) {
+                continue;
+            }
+            List<Object[]> rows = hashTable.get(key);
+            long bytes = rowSize(row, rightSizeEstimators);
+            if (rows == null) {
+                bytes += ENTRY_SIZE;
+            }
+            // account before the row is materialized, the circuit breaker trips before the memory is used
+            ramAccountingContext.addBytes(bytes);
+            if (rows == null) {
+                rows = new ArrayList<>(1);
+                hashTable.put(key, rows);
+            }
+            rows.add(row.materialize());
+        }
+    }
+
+    /**
+     * @return false if the downstream doesn't need any more rows
+     */
+    private boolean probe(Bucket bucket, RowN rightRow, JoinedRow joinedRow) {
+        for (Row row : bucket) {
+            Object key = key(row, leftKeyColumns);
+            if (key == null) {
+                continue;
+            }
+            List<Object[]> matchingRows = hashTable.get(key);
+            if (matchingRows == null) {
+                continue;
+            }
+            for (Object[] matchingRow : matchingRows) {
+                rightRow.cells(matchingRow);
+                joinedRow.rows(row, rightRow);
+                if (!downstream.setNextRow(joinedRow)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private class RightSide implements PageDownstream {
+
+        @Override
+        public void nextPage(BucketPage page, final PageConsumeListener listener) {
+            if (finished.get()) {
+                listener.finish();
+                return;
+            }
+            Futures.addCallback(Futures.allAsList(page.buckets()), new FutureCallback<List<Bucket>>() {
+                @Override
+                public void onSuccess(List<Bucket> buckets) {
+                    try {
+                        for (Bucket bucket : buckets) {
+                            if (bucket != null) {
+                                addToHashTable(bucket);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        onFailure(t);
+                        return;
+                    }
+                    listener.needMore();
+                }
+
+                @Override
+                public void onFailure(@Nonnull Throwable t) {
+                    HashJoinOperation.this.fail(t);
+                    listener.finish();
+                }
+            }, executor());
+        }
+
+        @Override
+        public void finish() {
+            hashTableBuilt.set(null);
+        }
+
+        @Override
+        public void fail(Throwable t) {
+            HashJoinOperation.this.fail(t);
+        }
+    }
+
+    private class LeftSide implements PageDownstream {
+
+        private final RowN rightRow = new RowN(rightTypes.size());
+        private final JoinedRow joinedRow = new JoinedRow(leftTypes.size(), rightTypes.size());
+
+        @Override
+        public void nextPage(final BucketPage page, final PageConsumeListener listener) {
+            Futures.addCallback(hashTableBuilt, new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(@Nullable Void result) {
+                    consume(page, listener);
+                }
+
+                @Override
+                public void onFailure(@Nonnull Throwable t) {
+                    // the failure has already been passed to the downstream
+                    listener.finish();
+                }
+            }, executor());
+        }
+
+        private void consume(BucketPage page, final PageConsumeListener listener) {
+            Futures.addCallback(Futures.allAsList(page.buckets()), new FutureCallback<List<Bucket>>() {
+                @Override
+                public void onSuccess(List<Bucket> buckets) {
+                    if (finished.get()) {
+                        listener.finish();
+                        return;
+                    }
+                    try {
+                        for (Bucket bucket : buckets) {
+                            if (bucket != null && !probe(bucket, rightRow, joinedRow)) {
+                                listener.finish();
+                                return;
+                            }
+                        }
+                    } catch (Throwable t) {
+                        onFailure(t);
+                        return;
+                    }
+                    listener.needMore();
+                }
+
+                @Override
+                public void onFailure(@Nonnull Throwable t) {
+                    HashJoinOperation.this.fail(t);
+                    listener.finish();
+                }
+            }, executor());
+        }
+
+        @Override
+        public void finish() {
+            HashJoinOperation.this.finish();
+        }
+
+        @Override
+        public void fail(Throwable t) {
+            HashJoinOperation.this.fail(t);
+        }
+    }
+
+    /**
+     * @return the value of the only join column, a list of the values of all join columns
+     *         or null if any join column is null
+     */
+    @Nullable
+    private static Object key(Row row, int[] keyColumns) {
+        if (keyColumns.length == 1) {
+            return row.get(keyColumns[0]);
+        }
+        Object[] values = new Object[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            Object value = row.get(keyColumns[i]);
+            if (value == null) {
+                return null;
+            }
+            values[i] = value;
+        }
+        return Arrays.asList(values);
+    }
+
+    private static long rowSize(Row row, SizeEstimator<Object>[] estimators) {
+        long bytes = RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + row.size() * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+        for (int i = 0; i < row.size(); i++) {
+            bytes += estimators[i] == null ? UNKNOWN_VALUE_SIZE : estimators[i].estimateSize(row.get(i));
+        }
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SizeEstimator<Object>[] sizeEstimators(List<DataType> types) {
+        SizeEstimator<Object>[] estimators = new SizeEstimator[types.size()];
+        for (int i = 0; i < types.size(); i++) {
+            try {
+                estimators[i] = SizeEstimatorFactory.create(types.get(i));
+            } catch (UnsupportedOperationException e) {
+                estimators[i] = null;
+            }
+        }
+        return estimators;
+    }
+
+    static class JoinedRow implements Row {
+
+        private final int numLeftColumns;
+        private final int size;
+        private Row left;
+        private Row right;
+
+        JoinedRow(int numLeftColumns, int numRightColumns) {
+            this.numLeftColumns = numLeftColumns;
+            this.size = numLeftColumns + numRightColumns;
+        }
+
+        void rows(Row left, Row right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < numLeftColumns) {
+                return left.get(index);
+            }
+            return right.get(index - numLeftColumns);
+        }
+
+        @Override
+        public Object[] materialize() {
+            Object[] cells = new Object[size];
+            for (int i = 0; i < size; i++) {
+                cells[i] = get(i);
+            }
+            return cells;
+        }
+    }
+}
@@ -21,6 +21,7 @@
 
 package io.crate.operation.projectors;
 
+import com.google.common.base.Supplier;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.ArrayBucket;
 import io.crate.core.collections.Bucket;
@@ -28,48 +29,69 @@ import io.crate.core.collections.Row;
 import io.crate.core.collections.RowN;
 import io.crate.executor.transport.distributed.ResultProviderBase;
 import io.crate.operation.AggregationContext;
-import io.crate.operation.RowDownstream;
-import io.crate.operation.RowUpstream;
-import io.crate.operation.RowDownstreamHandle;
+import io.crate.operation.*;
 import io.crate.operation.aggregation.Aggregator;
 import io.crate.operation.collect.CollectExpression;
 
+import javax.annotation.Nullable;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class AggregationProjector extends ResultProviderBase implements Projector, RowUpstream {
+/**
+ * Aggregates all rows into a single row.
+ *
+ * If the projector is created with a supplier of its inputs, every registered upstream gets a handle
+ * with its own inputs and aggregation states, so upstreams running on different threads don't
+ * have to synchronize. The states of all upstreams are reduced once the last upstream finished.
+ */
+public class AggregationProjector extends ResultProviderBase implements Projector, RowUpstream, RowBatchDownstreamHandle {
 
-    private final Aggregator[] aggregators;
-    private final Set<CollectExpression<?>> collectExpressions;
-    private final Object[] cells;
-    private final Row row;
-    private final Object[] states;
+    private final RamAccountingContext ramAccountingContext;
+    @Nullable
+    private final Supplier<ImplementationSymbolVisitor.Context> upstreamInputs;
+    private final List<PartialAggregation> partials = new CopyOnWriteArrayList<>();
+    // used by upstreams which feed the projector directly
+    private PartialAggregation defaultPartial;
     private RowDownstreamHandle downstream;
 
     public AggregationProjector(Set<CollectExpression<?>> collectExpressions,
                                 AggregationContext[] aggregations,
                                 RamAccountingContext ramAccountingContext) {
-        cells = new Object[aggregations.length];
-        row = new RowN(cells);
-        states = new Object[aggregations.length];
-        this.collectExpressions = collectExpressions;
-        aggregators = new Aggregator[aggregations.length];
-        for (int i = 0; i < aggregators.length; i++) {
-            aggregators[i] = new Aggregator(
-                    ramAccountingContext,
-                    aggregations[i].symbol(),
-                    aggregations[i].function(),
-                    aggregations[i].inputs()
-            );
-            // prepareState creates the aggregationState. In case of the AggregationProjector
-            // we only want to have 1 global state not 1 state per node/shard or even document.
-            states[i] = aggregators[i].prepareState();
+        this(null, ramAccountingContext);
+        defaultPartial = new PartialAggregation(collectExpressions, aggregations, ramAccountingContext);
+        partials.add(defaultPartial);
+    }
+
+    /**
+     * @param upstreamInputs creates new inputs and aggregations for every registered upstream
+     */
+    public AggregationProjector(@Nullable Supplier<ImplementationSymbolVisitor.Context> upstreamInputs,
+                                RamAccountingContext ramAccountingContext) {
+        this.upstreamInputs = upstreamInputs;
+        this.ramAccountingContext = ramAccountingContext;
+    }
+
+    private PartialAggregation newUpstreamPartial() {
+        ImplementationSymbolVisitor.Context context = upstreamInputs.get();
+        PartialAggregation partial = new PartialAggregation(
+                context.collectExpressions(), context.aggregations(), ramAccountingContext);
+        partial.startCollect();
+        partials.add(partial);
+        return partial;
+    }
+
+    private synchronized PartialAggregation defaultPartial() {
+        if (defaultPartial == null) {
+            defaultPartial = newUpstreamPartial();
         }
+        return defaultPartial;
     }
 
     @Override
     public void startProjection() {
-        for (CollectExpression<?> collectExpression : collectExpressions) {
-            collectExpression.startCollect();
+        if (defaultPartial != null) {
+            defaultPartial.startCollect();
         }
     }
 
@@ -80,15 +102,24 @@ public class AggregationProjector extends ResultProviderBase implements Projecto
     }
 
     @Override
-    public synchronized boolean setNextRow(Row row) {
-        for (CollectExpression<?> collectExpression : collectExpressions) {
-            collectExpression.setNextRow(row);
+    public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
+        RowDownstreamHandle handle = super.registerUpstream(upstream);
+        if (upstreamInputs == null) {
+            return handle;
         }
-        for (int i = 0; i < aggregators.length; i++) {
-            Aggregator aggregator = aggregators[i];
-            states[i] = aggregator.processRow(states[i]);
+        synchronized (this) {
+            return newUpstreamPartial();
         }
-        return true;
+    }
+
+    @Override
+    public synchronized boolean setNextRow(Row row) {
+        return defaultPartial().setNextRow(row);
+    }
+
+    @Override
+    public synchronized boolean setNextBatch(RowBatch batch) {
+        return defaultPartial().setNextBatch(batch);
     }
 
     @Override
@@ -101,13 +132,96 @@ public class AggregationProjector extends ResultProviderBase implements Projecto
 
     @Override
     public Bucket doFinish() {
-        for (int i = 0; i < aggregators.length; i++) {
-            cells[i] = aggregators[i].finishCollect(states[i]);
+        if (partials.isEmpty()) {
+            defaultPartial();
+        }
+        PartialAggregation first = partials.get(0);
+        Object[] cells = new Object[first.aggregators.length];
+        for (int i = 0; i < cells.length; i++) {
+            Object state = first.states[i];
+            for (int j = 1; j < partials.size(); j++) {
+                state = first.aggregators[i].reduce(state, partials.get(j).states[i]);
+            }
+            cells[i] = first.aggregators[i].finishCollect(state);
         }
         if (downstream != null) {
-            downstream.setNextRow(row);
+            downstream.setNextRow(new RowN(cells));
             downstream.finish();
         }
         return new ArrayBucket(new Object[][]{cells});
     }
+
+    /**
+     * The inputs, aggregators and states of one upstream,
+     * or of all upstreams if they feed the projector directly.
+     */
+    private class PartialAggregation implements RowBatchDownstreamHandle {
+
+        private final Aggregator[] aggregators;
+        private final Set<CollectExpression<?>> collectExpressions;
+        private final Object[] states;
+
+        PartialAggregation(Set<CollectExpression<?>> collectExpressions,
+                           AggregationContext[] aggregations,
+                           RamAccountingContext ramAccountingContext) {
+            states = new Object[aggregations.length];
+            this.collectExpressions = collectExpressions;
+            aggregators = new Aggregator[aggregations.length];
+            for (int i = 0; i < aggregators.length; i++) {
+                aggregators[i] = new Aggregator(
+                        ramAccountingContext,
+                        aggregations[i].symbol(),
+                        aggregations[i].function(),
+                        aggregations[i].inputs()
+                );
+                // prepareState creates the aggregationState. In case of the AggregationProjector
+                // we only want to have 1 state per upstream not 1 state per document.
+                states[i] = aggregators[i].prepareState();
+            }
+        }
+
+        void startCollect() {
+            for (CollectExpression<?> collectExpression : collectExpressions) {
+                collectExpression.startCollect();
+            }
+        }
+
+        @Override
+        public boolean setNextRow(Row row) {
+            processRow(row);
+            return true;
+        }
+
+        @Override
+        public boolean setNextBatch(RowBatch batch) {
+            RowBatch.BatchRow row = new RowBatch.BatchRow(batch);
+            int[] selection = batch.selection();
+            int numSelected = batch.selected();
+            for (int i = 0; i < numSelected; i++) {
+                row.position(selection[i]);
+                processRow(row);
+            }
+            return true;
+        }
+
+        private void processRow(Row row) {
+            for (CollectExpression<?> collectExpression : collectExpressions) {
+                collectExpression.setNextRow(row);
+            }
+            for (int i = 0; i < aggregators.length; i++) {
+                Aggregator aggregator = aggregators[i];
+                states[i] = aggregator.processRow(states[i]);
+            }
+        }
+
+        @Override
+        public void finish() {
+            AggregationProjector.this.finish();
+        }
+
+        @Override
+        public void fail(Throwable throwable) {
+            AggregationProjector.this.fail(throwable);
+        }
+    }
 }
@@ -0,0 +1,562 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
+import io.crate.Streamer;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.breaker.SizeEstimator;
+import io.crate.breaker.SizeEstimatorFactory;
+import io.crate.core.collections.ArrayBucket;
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.Buckets;
+import io.crate.core.collections.Row;
+import io.crate.core.collections.RowN;
+import io.crate.executor.transport.StreamBucket;
+import io.crate.executor.transport.distributed.ResultProviderBase;
+import io.crate.operation.Input;
+import io.crate.operation.RowDownstream;
+import io.crate.operation.RowDownstreamHandle;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.projectors.sorting.OrderingByPosition;
+import io.crate.types.DataType;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Sorts all rows, not only the top N, without keeping them on the heap.
+ *
+ * Rows are collected into a run until the estimated size of the run exceeds <code>runSize</code> bytes.
+ * The run is then sorted and written to a temporary file as a sequence of {@link StreamBucket}s.
+ * On finish the spilled runs and the remaining in-memory run are merged while the rows are emitted,
+ * only one page of rows per run is held in memory.
+ *
+ * If a downstream is set the rows are only passed to the downstream and the result is empty.
+ * Otherwise the sorted rows are the result: if no run has been spilled it contains the in-memory run,
+ * else the result is backed by the run files which are merged page by page while it is iterated.
+ */
+public class ExternalSortProjector extends ResultProviderBase {
+
+    private static final ESLogger LOGGER = Loggers.getLogger(ExternalSortProjector.class);
+
+    public static final String SETTING_RUN_SIZE = "sort.external.run_size";
+    public static final ByteSizeValue DEFAULT_RUN_SIZE = new ByteSizeValue(64, ByteSizeUnit.MB);
+    public static final String SETTING_PATH = "sort.external.path";
+
+    /**
+     * sorts with a bigger <code>offset + limit</code> or without limit use this projector,
+     * smaller ones are sorted in a bounded priority queue
+     */
+    public static final int MIN_ROWS = 100000;
+
+    // number of rows of a StreamBucket in a run file
+    static final int PAGE_SIZE = 1000;
+
+    // used for types without a size estimator, like objects or arrays
+    private static final long UNKNOWN_VALUE_SIZE = 64;
+
+    private final Input<?>[] inputs;
+    private final CollectExpression<?>[] collectExpressions;
+    private final int numOutputs;
+    private final Ordering<Object[]> ordering;
+    private final int maxSize;
+    private final int offset;
+    private final Streamer<?>[] streamers;
+    private final SizeEstimator<Object>[] sizeEstimators;
+    private final long rowOverhead;
+    private final RamAccountingContext ramAccountingContext;
+    private final long runSize;
+    @Nullable
+    private final Path tmpDir;
+
+    private RowDownstreamHandle downstream;
+
+    private List<Object[]> run = new ArrayList<>();
+    private long runBytes = 0;
+    private long numRows = 0;
+    private final List<Path> runFiles = new ArrayList<>();
+
+    /**
+     * @param inputs             contains output {@link io.crate.operation.Input}s and orderBy {@link io.crate.operation.Input}s
+     * @param collectExpressions gathered from outputs and orderBy inputs
+     * @param types              the types of the values of <code>inputs</code>
+     * @param numOutputs         <code>inputs</code> contains this much output {@link io.crate.operation.Input}s starting form index 0
+     * @param orderBy            indices of {@link io.crate.operation.Input}s in parameter <code>inputs</code> we sort by
+     * @param reverseFlags       for every index orderBy a boolean indicates ascending (<code>false</code>) or descending (<code>true</code>) order
+     * @param limit              the number of rows to emit or {@link TopN#NO_LIMIT} to emit all rows
+     * @param offset             the initial offset, this number of rows are skipped
+     * @param runSize            the estimated size in bytes of the rows which are sorted in memory
+     * @param tmpDir             directory of the run files, the default temporary directory is used if null
+     */
+    public ExternalSortProjector(Input<?>[] inputs,
+                                 CollectExpression<?>[] collectExpressions,
+                                 List<DataType> types,
+                                 int numOutputs,
+                                 int[] orderBy,
+                                 boolean[] reverseFlags,
+                                 Boolean[] nullsFirst,
+                                 int limit,
+                                 int offset,
+                                 RamAccountingContext ramAccountingContext,
+                                 long runSize,
+                                 @Nullable Path tmpDir) {
+        Preconditions.checkArgument(limit >= TopN.NO_LIMIT, "invalid limit");
+        Preconditions.checkArgument(offset >= 0, "invalid offset");
+        assert nullsFirst.length == reverseFlags.length;
+        assert types.size() == inputs.length : "number of types must match the number of inputs";
+
+        this.inputs = inputs;
+        this.collectExpressions = collectExpressions;
+        this.numOutputs = numOutputs;
+        this.offset = offset;
+        this.maxSize = limit == TopN.NO_LIMIT ? Integer.MAX_VALUE : (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        this.ramAccountingContext = ramAccountingContext;
+        this.runSize = runSize;
+        this.tmpDir = tmpDir;
+
+        List<Comparator<Object[]>> comparators = new ArrayList<>(orderBy.length);
+        for (int i = 0; i < orderBy.length; i++) {
+            comparators.add(OrderingByPosition.arrayOrdering(orderBy[i], reverseFlags[i], nullsFirst[i]));
+        }
+        // the orderings are reversed for priority queues, see OrderingByPosition
+        this.ordering = Ordering.compound(comparators).reverse();
+
+        streamers = new Streamer[types.size()];
+        sizeEstimators = sizeEstimators(types);
+        for (int i = 0; i < types.size(); i++) {
+            streamers[i] = types.get(i).streamer();
+        }
+        rowOverhead = RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + inputs.length * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    }
+
+    @Override
+    public synchronized boolean setNextRow(Row row) {
+        for (CollectExpression<?> collectExpression : collectExpressions) {
+            collectExpression.setNextRow(row);
+        }
+        Object[] cells = new Object[inputs.length];
+        long bytes = rowOverhead;
+        for (int i = 0; i < inputs.length; i++) {
+            cells[i] = inputs[i].value();
+            bytes += sizeEstimators[i] == null ? UNKNOWN_VALUE_SIZE : sizeEstimators[i].estimateSize(cells[i]);
+        }
+        ramAccountingContext.addBytes(bytes);
+        runBytes += bytes;
+        run.add(cells);
+        numRows++;
+        if (runBytes >= runSize) {
+            try {
+                spill();
+            } catch (IOException e) {
+                fail(e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * sorts the current run and writes it to a new run file
+     */
+    private void spill() throws IOException {
+        List<Object[]> sortedRun = sortedRun();
+        Path runFile = tmpDir == null
+                ? Files.createTempFile("crate-sort-", ".run")
+                : Files.createTempFile(tmpDir, "crate-sort-", ".run");
+        runFiles.add(runFile);
+        try (StreamOutput out = new OutputStreamStreamOutput(new BufferedOutputStream(Files.newOutputStream(runFile)))) {
+            StreamBucket.Builder builder = new StreamBucket.Builder(streamers);
+            for (Object[] cells : sortedRun) {
+                builder.add(new RowN(cells));
+                if (builder.size() == PAGE_SIZE) {
+                    builder.writeToStream(out);
+                    builder.reset();
+                }
+            }
+            if (builder.size() > 0) {
+                builder.writeToStream(out);
+            }
+            // an empty page marks the end of the run
+            out.writeVInt(0);
+        }
+        LOGGER.trace("spilled run of {} rows ({} bytes) to {}", sortedRun.size(), runBytes, runFile);
+        releaseRun();
+    }
+
+    /**
+     * @return the current run in sorted order, rows behind <code>offset + limit</code> can't be emitted and are dropped
+     */
+    private List<Object[]> sortedRun() {
+        Collections.sort(run, ordering);
+        if (run.size() > maxSize) {
+            return run.subList(0, maxSize);
+        }
+        return run;
+    }
+
+    private void releaseRun() {
+        ramAccountingContext.addBytes(-runBytes);
+        runBytes = 0;
+        run = new ArrayList<>();
+    }
+
+    @Override
+    public Bucket doFinish() {
+        if (downstream == null) {
+            return resultBucket();
+        }
+        List<RunIterator> runIterators = new ArrayList<>(runFiles.size());
+        try {
+            List<Iterator<Object[]>> sortedRuns = new ArrayList<>(runFiles.size() + 1);
+            sortedRuns.add(sortedRun().iterator());
+            for (Path runFile : runFiles) {
+                RunIterator runIterator = new RunIterator(runFile, streamers);
+                runIterators.add(runIterator);
+                sortedRuns.add(runIterator);
+            }
+            Iterator<Object[]> rows = merge(sortedRuns, ordering, offset, maxSize);
+            OutputRow outputRow = new OutputRow(numOutputs);
+            while (rows.hasNext()) {
+                outputRow.cells(rows.next());
+                if (!downstream.setNextRow(outputRow)) {
+                    break;
+                }
+            }
+            downstream.finish();
+            return Bucket.EMPTY;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (RunIterator runIterator : runIterators) {
+                closeQuietly(runIterator);
+            }
+            cleanUp();
+        }
+    }
+
+    /**
+     * @return the sorted rows without materializing the spilled runs. The rows of an in-memory run
+     *         stay accounted until the {@link RamAccountingContext} is closed, if runs have been spilled
+     *         the last run is spilled too and the run files are handed over to the result.
+     */
+    private synchronized Bucket resultBucket() {
+        if (runFiles.isEmpty()) {
+            List<Object[]> sortedRun = sortedRun();
+            List<Object[]> rows = sortedRun.subList(Math.min(offset, sortedRun.size()), sortedRun.size());
+            run = new ArrayList<>();
+            runBytes = 0;
+            return new ArrayBucket(rows.toArray(new Object[rows.size()][]), numOutputs);
+        }
+        try {
+            spill();
+        } catch (IOException e) {
+            cleanUp();
+            throw new RuntimeException(e);
+        }
+        int size = (int) Math.max(0, Math.min(numRows, maxSize) - offset);
+        RunFilesBucket bucket = new RunFilesBucket(
+                new ArrayList<>(runFiles), streamers, ordering, offset, maxSize, size, numOutputs);
+        runFiles.clear();
+        return bucket;
+    }
+
+    private static Iterator<Object[]> merge(List<Iterator<Object[]>> sortedRuns,
+                                            Ordering<Object[]> ordering,
+                                            int offset,
+                                            int maxSize) {
+        Iterator<Object[]> rows = sortedRuns.size() == 1
+                ? sortedRuns.get(0) : Iterators.mergeSorted(sortedRuns, ordering);
+        Iterators.advance(rows, offset);
+        return Iterators.limit(rows, maxSize - offset);
+    }
+
+    @Override
+    public Throwable doFail(Throwable t) {
+        cleanUp();
+        if (downstream != null) {
+            downstream.fail(t);
+        }
+        return t;
+    }
+
+    private synchronized void cleanUp() {
+        releaseRun();
+        deleteRunFiles(runFiles);
+        runFiles.clear();
+    }
+
+    private static void deleteRunFiles(List<Path> runFiles) {
+        for (Path runFile : runFiles) {
+            try {
+                Files.deleteIfExists(runFile);
+            } catch (IOException e) {
+                LOGGER.warn("could not delete run file {}", e, runFile);
+            }
+        }
+    }
+
+    @Override
+    public void downstream(RowDownstream downstream) {
+        this.downstream = downstream.registerUpstream(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SizeEstimator<Object>[] sizeEstimators(List<DataType> types) {
+        SizeEstimator<Object>[] estimators = new SizeEstimator[types.size()];
+        for (int i = 0; i < types.size(); i++) {
+            try {
+                estimators[i] = SizeEstimatorFactory.create(types.get(i));
+            } catch (UnsupportedOperationException e) {
+                estimators[i] = null;
+            }
+        }
+        return estimators;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.warn("could not close run file", e);
+        }
+    }
+
+    /**
+     * exposes the output columns of the sorted rows, which also contain the order by values
+     */
+    private static class OutputRow implements Row {
+
+        private final int size;
+        private Object[] cells;
+
+        OutputRow(int size) {
+            this.size = size;
+        }
+
+        void cells(Object[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Object get(int index) {
+            return cells[index];
+        }
+
+        @Override
+        public Object[] materialize() {
+            return Buckets.materialize(this);
+        }
+    }
+
+    /**
+     * the sorted rows of spilled runs, the runs are merged while the bucket is iterated.
+     * It can only be iterated once, the run files are deleted as soon as all rows have been iterated,
+     * reading a run file fails or the bucket is closed.
+     */
+    static class RunFilesBucket implements Bucket, Closeable {
+
+        private final List<Path> runFiles;
+        private final Streamer<?>[] streamers;
+        private final Ordering<Object[]> ordering;
+        private final int offset;
+        private final int maxSize;
+        private final int size;
+        private final int numOutputs;
+        private boolean iterated = false;
+        private boolean closed = false;
+        private List<RunIterator> runIterators = Collections.emptyList();
+
+        RunFilesBucket(List<Path> runFiles,
+                       Streamer<?>[] streamers,
+                       Ordering<Object[]> ordering,
+                       int offset,
+                       int maxSize,
+                       int size,
+                       int numOutputs) {
+            this.runFiles = runFiles;
+            this.streamers = streamers;
+            this.ordering = ordering;
+            this.offset = offset;
+            this.maxSize = maxSize;
+            this.size = size;
+            this.numOutputs = numOutputs;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public synchronized Iterator<Row> iterator() {
+            Preconditions.checkState(!iterated, "the rows of an external sort can only be iterated once");
+            Preconditions.checkState(!closed, "the rows of an external sort have been released");
+            iterated = true;
+            runIterators = new ArrayList<>(runFiles.size());
+            try {
+                for (Path runFile : runFiles) {
+                    runIterators.add(new RunIterator(runFile, streamers));
+                }
+            } catch (IOException e) {
+                close();
+                throw new RuntimeException(e);
+            }
+            final Iterator<Object[]> rows = merge(
+                    new ArrayList<Iterator<Object[]>>(runIterators), ordering, offset, maxSize);
+            final OutputRow outputRow = new OutputRow(numOutputs);
+            return new Iterator<Row>() {
+
+                private boolean exhausted = false;
+
+                @Override
+                public boolean hasNext() {
+                    if (exhausted) {
+                        return false;
+                    }
+                    try {
+                        if (rows.hasNext()) {
+                            return true;
+                        }
+                    } catch (RuntimeException e) {
+                        close();
+                        throw e;
+                    }
+                    close();
+                    return false;
+                }
+
+                @Override
+                public Row next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    outputRow.cells(rows.next());
+                    return outputRow;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove is not supported");
+                }
+
+                private void close() {
+                    exhausted = true;
+                    RunFilesBucket.this.close();
+                }
+            };
+        }
+
+        /**
+         * closes the run files which are read and deletes all run files,
+         * must be called if the bucket isn't iterated completely
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (RunIterator runIterator : runIterators) {
+                closeQuietly(runIterator);
+            }
+            deleteRunFiles(runFiles);
+        }
+    }
+
+    /**
+     * reads the rows of a run file page by page
+     */
+    static class RunIterator implements Iterator<Object[]>, Closeable {
+
+        private final StreamInput in;
+        private final StreamBucket page;
+        private Iterator<Row> pageRows = Collections.emptyIterator();
+        private boolean exhausted = false;
+
+        RunIterator(Path runFile, Streamer<?>[] streamers) throws IOException {
+            in = new InputStreamStreamInput(new BufferedInputStream(Files.newInputStream(runFile)));
+            page = new StreamBucket(streamers);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pageRows.hasNext()) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            try {
+                page.readFrom(in);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (page.size() == 0) {
+                exhausted = true;
+                return false;
+            }
+            pageRows = page.iterator();
+            return true;
+        }
+
+        @Override
+        public Object[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pageRows.next().materialize();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove is not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
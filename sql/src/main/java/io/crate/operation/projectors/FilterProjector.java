@@ -22,16 +22,13 @@
 package io.crate.operation.projectors;
 
 import io.crate.core.collections.Row;
-import io.crate.operation.Input;
-import io.crate.operation.RowDownstream;
-import io.crate.operation.RowDownstreamHandle;
-import io.crate.operation.RowUpstream;
+import io.crate.operation.*;
 import io.crate.operation.collect.CollectExpression;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class FilterProjector implements Projector, RowDownstreamHandle {
+public class FilterProjector implements Projector, RowBatchDownstreamHandle {
 
     private final CollectExpression[] collectExpressions;
     private final Input<Boolean> condition;
@@ -67,6 +64,33 @@ public class FilterProjector implements Projector, RowDownstreamHandle {
         return true;
     }
 
+    /**
+     * narrows the selection of the batch to the rows matching the condition
+     * and passes it on to the downstream
+     */
+    @Override
+    public synchronized boolean setNextBatch(RowBatch batch) {
+        RowBatch.BatchRow row = new RowBatch.BatchRow(batch);
+        int[] selection = batch.selection();
+        int numSelected = batch.selected();
+        int matching = 0;
+        for (int i = 0; i < numSelected; i++) {
+            row.position(selection[i]);
+            for (CollectExpression<?> collectExpression : collectExpressions) {
+                collectExpression.setNextRow(row);
+            }
+            Boolean queryResult = condition.value();
+            if (queryResult != null && queryResult) {
+                selection[matching++] = selection[i];
+            }
+        }
+        batch.selected(matching);
+        if (downstream != null && matching > 0) {
+            return batch.emitTo(downstream);
+        }
+        return true;
+    }
+
     @Override
     public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
         remainingUpstreams.incrementAndGet();
@@ -22,7 +22,9 @@
 package io.crate.operation.projectors;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
+import io.crate.Streamer;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.breaker.SizeEstimator;
 import io.crate.breaker.SizeEstimatorFactory;
@@ -31,29 +33,83 @@ import io.crate.core.collections.RowN;
 import io.crate.operation.*;
 import io.crate.operation.aggregation.Aggregator;
 import io.crate.operation.collect.CollectExpression;
-import io.crate.types.DataType;
-import io.crate.types.DataTypes;
+import io.crate.types.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.common.util.LongHash;
+import org.elasticsearch.common.util.ObjectArray;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class GroupingProjector implements Projector, RowDownstreamHandle {
+/**
+ * Groups rows by their keys and aggregates the rows of each group.
+ *
+ * If the projector is created with a supplier of its inputs, every registered upstream gets a handle
+ * with its own inputs, grouper and aggregation states, so upstreams running on different threads don't
+ * have to synchronize. Once the last upstream finished the groups of all upstreams are merged into one
+ * grouper using {@link Aggregator#reduce(Object, Object)}.
+ *
+ * If spilling is enabled and the memory accounted for the groups exceeds the spill size
+ * (or half of the limit of the circuit breaker, whichever is lower), the keys and partial
+ * aggregation states of all groups are written to hash partitioned temporary files and
+ * grouping continues with an empty grouper.
+ * With several upstreams each of them spills its groups once they exceed its share of the spill size.
+ * After the input is exhausted the spilled partitions are read and merged one at a time,
+ * so only the groups of one partition have to fit into memory.
+ *
+ * If adaptive pre-aggregation is enabled (only possible if the aggregations emit partial states)
+ * every upstream samples the first {@link #SAMPLE_ROWS} rows. If grouping them didn't reduce the
+ * number of rows enough, all following rows are passed on as a group of their own,
+ * except the rows of keys which occurred frequently in the sample (heavy hitters), which are still
+ * aggregated because grouping reduces their rows well.
+ * The rows which are passed on are buffered per upstream and handed to the downstream
+ * in batches of {@link #PASS_THROUGH_BATCH_SIZE} rows.
+ * This only decides whether to pre-aggregate; the groups of a key are still all merged by the
+ * downstream the key is distributed to, frequent keys are not spread over several downstreams.
+ */
+public class GroupingProjector implements Projector, RowBatchDownstreamHandle {
 
-    private final CollectExpression[] collectExpressions;
+    public static final String SETTING_SPILL_SIZE = "group_by.external.spill_size";
+    public static final ByteSizeValue DEFAULT_SPILL_SIZE = new ByteSizeValue(64, ByteSizeUnit.MB);
+    public static final String SETTING_PATH = "group_by.external.path";
+    public static final String SETTING_ADAPTIVE_PRE_AGGREGATION = "group_by.adaptive_pre_aggregation";
+
+    static final int SAMPLE_ROWS = 10000;
+    // pre-aggregation is switched off if the sampled rows form more groups than this fraction of the rows
+    static final double MAX_SAMPLE_GROUPS_RATIO = 0.5;
+    // keys with at least this fraction of the sampled rows are still aggregated
+    static final double HEAVY_HITTER_RATIO = 0.01;
+    // number of passed through rows an upstream buffers before handing them to the downstream
+    static final int PASS_THROUGH_BATCH_SIZE = 1000;
 
     private static final ESLogger logger = Loggers.getLogger(GroupingProjector.class);
     private final RamAccountingContext ramAccountingContext;
+    private final List<? extends DataType> keyTypes;
+    private final long spillThreshold;
+    @Nullable
+    private final Path spillPath;
+    @Nullable
+    private final Supplier<ImplementationSymbolVisitor.Context> upstreamInputs;
+    private final boolean adaptivePreAggregation;
 
-    private Grouper grouper;
+    private final List<PartialGrouping> partials = new CopyOnWriteArrayList<>();
+    // used by upstreams which feed the projector directly
+    private PartialGrouping defaultPartial;
+    private GroupingSpillFiles spillFiles;
     private RowDownstreamHandle downstream;
     private AtomicInteger remainingUpstreams = new AtomicInteger(0);
     private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
@@ -63,30 +119,71 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
                              CollectExpression[] collectExpressions,
                              AggregationContext[] aggregations,
                              RamAccountingContext ramAccountingContext) {
-        assert keyTypes.size() == keyInputs.size() : "number of key types must match with number of key inputs";
+        this(keyTypes, keyInputs, collectExpressions, aggregations, ramAccountingContext, 0, null);
+    }
+
+    /**
+     * @param spillSize the estimated size in bytes of the groups which are held in memory before they are
+     *                  spilled to disk, <code>0</code> disables spilling
+     * @param spillPath directory of the spill files, the default temporary directory is used if null
+     */
+    public GroupingProjector(List<? extends DataType> keyTypes,
+                             List<Input<?>> keyInputs,
+                             CollectExpression[] collectExpressions,
+                             AggregationContext[] aggregations,
+                             RamAccountingContext ramAccountingContext,
+                             long spillSize,
+                             @Nullable Path spillPath) {
+        this(keyTypes, null, ramAccountingContext, spillSize, spillPath, false);
+        defaultPartial = new PartialGrouping(keyInputs, collectExpressions, aggregations, ramAccountingContext);
+        partials.add(defaultPartial);
+    }
+
+    /**
+     * @param upstreamInputs creates new inputs for every registered upstream, the key inputs must be the
+     *                       top level inputs of the returned context
+     * @param spillSize      the estimated size in bytes of the groups which are held in memory before they are
+     *                       spilled to disk, <code>0</code> disables spilling
+     * @param spillPath      directory of the spill files, the default temporary directory is used if null
+     * @param adaptivePreAggregation if true pre-aggregation is switched off if it doesn't reduce the rows,
+     *                               all aggregations must emit partial states
+     */
+    public GroupingProjector(List<? extends DataType> keyTypes,
+                             @Nullable Supplier<ImplementationSymbolVisitor.Context> upstreamInputs,
+                             RamAccountingContext ramAccountingContext,
+                             long spillSize,
+                             @Nullable Path spillPath,
+                             boolean adaptivePreAggregation) {
         assert allTypesKnown(keyTypes) : "must have a known type for each key input";
-        this.collectExpressions = collectExpressions;
         this.ramAccountingContext = ramAccountingContext;
+        this.keyTypes = keyTypes;
+        this.upstreamInputs = upstreamInputs;
+        this.adaptivePreAggregation = adaptivePreAggregation;
+        this.spillPath = spillPath;
+        long breakerLimit = ramAccountingContext.limit();
+        this.spillThreshold = spillSize > 0 && breakerLimit > 0 ? Math.min(spillSize, breakerLimit / 2) : spillSize;
+    }
 
-        Aggregator[] aggregators = new Aggregator[aggregations.length];
-        for (int i = 0; i < aggregations.length; i++) {
-            aggregators[i] = new Aggregator(
-                    ramAccountingContext,
-                    aggregations[i].symbol(),
-                    aggregations[i].function(),
-                    aggregations[i].inputs()
-            );
-        }
-
-        // grouper object size overhead
-        ramAccountingContext.addBytes(8);
-        if (keyInputs.size() == 1) {
-            grouper = new SingleKeyGrouper(keyInputs.get(0), keyTypes.get(0),
-                    collectExpressions, aggregators);
-        } else {
-            grouper = new ManyKeyGrouper(keyInputs, keyTypes,
-                    collectExpressions, aggregators);
+    /**
+     * create a partial grouping with new inputs, which accounts its memory in its own context
+     */
+    private PartialGrouping newUpstreamPartial() {
+        ImplementationSymbolVisitor.Context context = upstreamInputs.get();
+        PartialGrouping partial = new PartialGrouping(
+                context.topLevelInputs(),
+                context.collectExpressions().toArray(new CollectExpression[context.collectExpressions().size()]),
+                context.aggregations(),
+                ramAccountingContext.newChildContext());
+        partial.startCollect();
+        partials.add(partial);
+        return partial;
+    }
+
+    private synchronized PartialGrouping defaultPartial() {
+        if (defaultPartial == null) {
+            defaultPartial = newUpstreamPartial();
         }
+        return defaultPartial;
     }
 
     private static boolean allTypesKnown(List<? extends DataType> keyTypes) {
@@ -105,35 +202,193 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
 
     @Override
     public void startProjection() {
-        for (CollectExpression collectExpression : collectExpressions) {
-            collectExpression.startCollect();
+        if (defaultPartial != null) {
+            defaultPartial.startCollect();
         }
     }
 
     @Override
     public synchronized boolean setNextRow(Row row) {
+        return defaultPartial().setNextRow(row);
+    }
+
+    @Override
+    public synchronized boolean setNextBatch(RowBatch batch) {
+        return defaultPartial().setNextBatch(batch);
+    }
+
+    private synchronized <T extends Throwable> T failDownstream(T e) {
+        if (downstream != null) {
+            downstream.fail(e);
+            downstream = null;
+        }
+        return e;
+    }
+
+    /**
+     * write all groups of the grouper of the partial grouping to the spill files and release the grouper
+     */
+    private synchronized void spillGroups(PartialGrouping partial) throws IOException {
+        if (spillFiles == null) {
+            Streamer<?>[] streamers = new Streamer[keyTypes.size() + partial.aggregators.length];
+            for (int i = 0; i < keyTypes.size(); i++) {
+                streamers[i] = keyTypes.get(i).streamer();
+            }
+            for (int i = 0; i < partial.aggregators.length; i++) {
+                streamers[keyTypes.size() + i] = partial.aggregators[i].partialType().streamer();
+            }
+            spillFiles = new GroupingSpillFiles(keyTypes.size(), streamers, spillPath);
+        }
+        partial.grouper.emitGroups(spillFiles);
+        partial.grouper.close();
+        partial.grouper = null;
+        partial.releaseBytesSince(partial.grouperBaseBytes);
+        if (logger.isTraceEnabled()) {
+            logger.trace("spilled groups to disk, grouping context: {}", ramAccountingContext.contextId());
+        }
+    }
+
+    private void releaseBytesSince(long baseBytes) {
+        long bytes = ramAccountingContext.usedBytes() - baseBytes;
+        if (bytes > 0) {
+            ramAccountingContext.addBytes(-bytes);
+        }
+    }
+
+    /**
+     * merge the groups of all partial groupings into the grouper of the first one and emit them
+     */
+    private void finishInMemory() {
+        if (downstream == null) {
+            return;
+        }
+        Grouper target = partials.get(0).grouper;
         try {
-            return grouper.setNextRow(row);
-        } catch (CircuitBreakingException e) {
-            if (downstream != null) {
-                downstream.fail(e);
-                downstream = null;
+            for (int i = 1; i < partials.size(); i++) {
+                PartialGrouping partial = partials.get(i);
+                partial.grouper.emitGroups(target);
+                partial.grouper.close();
+                partial.grouper = null;
             }
-            throw e;
+        } catch (IOException | CircuitBreakingException e) {
+            failDownstream(e);
+            return;
         }
+        target.finish();
+    }
+
+    /**
+     * spill the remaining groups and merge the spilled partitions one after another
+     */
+    private void finishSpilled() {
+        if (downstream == null) {
+            return;
+        }
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            downstream.fail(throwable);
+            return;
+        }
+        try {
+            for (PartialGrouping partial : partials) {
+                spillGroups(partial);
+            }
+            spillFiles.finishWriting();
+            RowN row = new RowN(keyTypes.size() + partials.get(0).aggregators.length);
+            boolean wantMore = true;
+            for (int i = 0; wantMore && i < GroupingSpillFiles.NUM_PARTITIONS; i++) {
+                wantMore = mergePartition(i, row, partials.get(0).aggregators);
+            }
+        } catch (IOException | CircuitBreakingException e) {
+            downstream.fail(e);
+            return;
+        }
+        downstream.finish();
+    }
+
+    /**
+     * merge the partial states of the groups of one partition and emit the groups
+     *
+     * @return false if the downstream doesn't want any more rows
+     */
+    private boolean mergePartition(int partition, RowN row, Aggregator[] aggregators) throws IOException {
+        int numKeys = keyTypes.size();
+        List<SizeEstimator<Object>> sizeEstimators = new ArrayList<>(numKeys);
+        for (DataType keyType : keyTypes) {
+            sizeEstimators.add(SizeEstimatorFactory.create(keyType));
+        }
+        long baseBytes = ramAccountingContext.usedBytes();
+        // the key is a view on the leading cells of the spilled row, the remaining cells hold the states
+        Map<List<Object>, Object[]> groups = new HashMap<>();
+        try {
+            try (ExternalSortProjector.RunIterator rows = spillFiles.partition(partition)) {
+                while (rows.hasNext()) {
+                    Object[] cells = rows.next();
+                    List<Object> key = Arrays.asList(cells).subList(0, numKeys);
+                    Object[] group = groups.get(key);
+                    if (group == null) {
+                        ramAccountingContext.addBytes(groupBytes(cells, sizeEstimators));
+                        groups.put(key, cells);
+                    } else {
+                        for (int i = 0; i < aggregators.length; i++) {
+                            group[numKeys + i] = aggregators[i].reduce(group[numKeys + i], cells[numKeys + i]);
+                        }
+                    }
+                }
+            }
+            for (Object[] group : groups.values()) {
+                for (int i = 0; i < aggregators.length; i++) {
+                    group[numKeys + i] = aggregators[i].finishCollect(group[numKeys + i]);
+                }
+                row.cells(group);
+                if (!downstream.setNextRow(row)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            releaseBytesSince(baseBytes);
+        }
+    }
+
+    private static long groupBytes(Object[] cells, List<SizeEstimator<Object>> sizeEstimators) {
+        // row array, key view and 24 bytes overhead per map entry
+        long bytes = RamAccountingContext.roundUp(12 + cells.length * 4) + 32 + 24;
+        for (int i = 0; i < sizeEstimators.size(); i++) {
+            bytes += RamAccountingContext.roundUp(sizeEstimators.get(i).estimateSize(cells[i]));
+        }
+        return bytes;
     }
 
     @Override
     public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
         remainingUpstreams.incrementAndGet();
-        return this;
+        if (upstreamInputs == null) {
+            return this;
+        }
+        synchronized (this) {
+            return newUpstreamPartial();
+        }
     }
 
     @Override
     public void finish() {
+        PartialGrouping partial = defaultPartial;
+        if (partial != null) {
+            synchronized (this) {
+                partial.flushPassThrough();
+            }
+        }
         if (remainingUpstreams.decrementAndGet() <= 0) {
-            if (grouper != null) {
-                grouper.finish();
+            if (partials.isEmpty()) {
+                defaultPartial();
+            }
+            if (partials.get(0).grouper != null) {
+                if (spillFiles == null) {
+                    finishInMemory();
+                } else {
+                    finishSpilled();
+                }
                 cleanUp();
             }
         }
@@ -188,13 +443,358 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
     }
 
     private void cleanUp() {
-        grouper = null;
+        for (PartialGrouping partial : partials) {
+            partial.close();
+        }
+        if (spillFiles != null) {
+            spillFiles.close();
+        }
+        spillFiles = null;
+    }
+
+    /**
+     * Consumer of groups, each group is given as its keys followed by its partial aggregation states.
+     */
+    interface GroupConsumer {
+
+        /**
+         * @param cells the keys and states of the group, the array may be re-used after the method returned
+         */
+        void add(Object[] cells) throws IOException;
     }
 
-    private interface Grouper {
+    private interface Grouper extends GroupConsumer {
         boolean setNextRow(final Row row);
 
         void finish();
+
+        /**
+         * pass the keys and partial states of all groups to the consumer
+         */
+        void emitGroups(GroupConsumer consumer) throws IOException;
+
+        /**
+         * merge a group emitted by another grouper into the groups of this grouper
+         */
+        @Override
+        void add(Object[] cells);
+
+        /**
+         * release any resources held by the grouper
+         */
+        void close();
+    }
+
+    /**
+     * The inputs, aggregators and grouper of one upstream,
+     * or of all upstreams if they feed the projector directly.
+     */
+    private class PartialGrouping implements RowBatchDownstreamHandle {
+
+        private final CollectExpression[] collectExpressions;
+        private final List<Input<?>> keyInputs;
+        private final Aggregator[] aggregators;
+        private final RamAccountingContext ramAccountingContext;
+
+        private Grouper grouper;
+        // bytes accounted before the current grouper was created
+        private long grouperBaseBytes;
+
+        // key counts of the sampled rows, null once sampling is done
+        @Nullable
+        private Map<Object, int[]> sampleKeyCounts;
+        private int sampledRows = 0;
+        // keys which are still aggregated, null as long as pre-aggregation is on
+        @Nullable
+        private Set<Object> heavyHitters;
+        // rows which are passed on without grouping, handed to the downstream in batches
+        private List<Object[]> passThroughRows;
+        private long passThroughBytes = 0L;
+        private RowN passThroughRow;
+
+        PartialGrouping(List<Input<?>> keyInputs,
+                        CollectExpression[] collectExpressions,
+                        AggregationContext[] aggregations,
+                        RamAccountingContext ramAccountingContext) {
+            assert keyTypes.size() == keyInputs.size() : "number of key types must match with number of key inputs";
+            this.keyInputs = keyInputs;
+            this.collectExpressions = collectExpressions;
+            this.ramAccountingContext = ramAccountingContext;
+            aggregators = new Aggregator[aggregations.length];
+            for (int i = 0; i < aggregations.length; i++) {
+                aggregators[i] = new Aggregator(
+                        ramAccountingContext,
+                        aggregations[i].symbol(),
+                        aggregations[i].function(),
+                        aggregations[i].inputs()
+                );
+            }
+            grouper = newGrouper();
+            if (adaptivePreAggregation) {
+                sampleKeyCounts = new HashMap<>();
+            }
+        }
+
+        void startCollect() {
+            for (CollectExpression collectExpression : collectExpressions) {
+                collectExpression.startCollect();
+            }
+        }
+
+        @Override
+        public boolean setNextRow(Row row) {
+            try {
+                return processRow(row);
+            } catch (CircuitBreakingException e) {
+                throw failDownstream(e);
+            }
+        }
+
+        @Override
+        public boolean setNextBatch(RowBatch batch) {
+            RowBatch.BatchRow row = new RowBatch.BatchRow(batch);
+            int[] selection = batch.selection();
+            int numSelected = batch.selected();
+            try {
+                for (int i = 0; i < numSelected; i++) {
+                    row.position(selection[i]);
+                    if (!processRow(row)) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (CircuitBreakingException e) {
+                throw failDownstream(e);
+            }
+        }
+
+        private boolean processRow(Row row) {
+            if (heavyHitters != null) {
+                return passThrough(row);
+            }
+            if (!grouper.setNextRow(row) || !maybeSpill()) {
+                return false;
+            }
+            if (sampleKeyCounts != null) {
+                sample();
+            }
+            return true;
+        }
+
+        /**
+         * count the key of the current row and decide whether pre-aggregation is worth it once the
+         * sample is complete
+         */
+        private void sample() {
+            Object key = currentKey(false);
+            int[] count = sampleKeyCounts.get(key);
+            if (count == null) {
+                sampleKeyCounts.put(currentKey(true), new int[]{1});
+            } else {
+                count[0]++;
+            }
+            sampledRows++;
+            if (sampledRows < SAMPLE_ROWS) {
+                return;
+            }
+            if (sampleKeyCounts.size() > sampledRows * MAX_SAMPLE_GROUPS_RATIO) {
+                heavyHitters = new HashSet<>();
+                for (Map.Entry<Object, int[]> entry : sampleKeyCounts.entrySet()) {
+                    if (entry.getValue()[0] >= sampledRows * HEAVY_HITTER_RATIO) {
+                        heavyHitters.add(entry.getKey());
+                    }
+                }
+                passThroughRows = new ArrayList<>(PASS_THROUGH_BATCH_SIZE);
+                passThroughRow = new RowN(keyInputs.size() + aggregators.length);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{} groups in {} sampled rows, switched off pre-aggregation except for {} keys",
+                            sampleKeyCounts.size(), sampledRows, heavyHitters.size());
+                }
+            }
+            sampleKeyCounts = null;
+        }
+
+        /**
+         * pass the row on as a group of its own unless its key is a heavy hitter.
+         * The row is buffered until a batch is complete, see {@link #flushPassThrough()}.
+         */
+        private boolean passThrough(Row row) {
+            if (failure.get() != null) {
+                // another upstream failed, the result is discarded anyway
+                return false;
+            }
+            for (CollectExpression collectExpression : collectExpressions) {
+                collectExpression.setNextRow(row);
+            }
+            if (heavyHitters.contains(currentKey(false))) {
+                return grouper.setNextRow(row) && maybeSpill();
+            }
+            long baseBytes = ramAccountingContext.usedBytes();
+            int numKeys = keyInputs.size();
+            Object[] cells = new Object[numKeys + aggregators.length];
+            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + cells.length * 4));
+            for (int i = 0; i < numKeys; i++) {
+                // the upstream might re-use the values of its rows
+                cells[i] = keyValue(keyInputs.get(i), true);
+            }
+            for (int i = 0; i < aggregators.length; i++) {
+                cells[numKeys + i] = aggregators[i].finishCollect(
+                        aggregators[i].processRow(aggregators[i].prepareState()));
+            }
+            passThroughBytes += ramAccountingContext.usedBytes() - baseBytes;
+            passThroughRows.add(cells);
+            if (passThroughRows.size() >= PASS_THROUGH_BATCH_SIZE) {
+                return flushPassThrough();
+            }
+            return true;
+        }
+
+        /**
+         * hand the buffered pass through rows to the downstream.
+         * The downstream is shared by all upstreams, so the rows are passed on while holding the projector lock,
+         * which is only acquired once per batch.
+         *
+         * @return false if the downstream doesn't want any more rows
+         */
+        boolean flushPassThrough() {
+            if (passThroughRows == null || passThroughRows.isEmpty()) {
+                return true;
+            }
+            boolean wantMore = true;
+            synchronized (GroupingProjector.this) {
+                if (downstream == null || failure.get() != null) {
+                    wantMore = false;
+                } else {
+                    for (Object[] cells : passThroughRows) {
+                        passThroughRow.cells(cells);
+                        if (!downstream.setNextRow(passThroughRow)) {
+                            wantMore = false;
+                            break;
+                        }
+                    }
+                }
+            }
+            // the states are serialized or copied by the downstream
+            releasePassThroughRows();
+            return wantMore;
+        }
+
+        private void releasePassThroughRows() {
+            if (passThroughRows != null) {
+                passThroughRows.clear();
+            }
+            ramAccountingContext.addBytes(-passThroughBytes);
+            passThroughBytes = 0L;
+        }
+
+        /**
+         * @param copy if true values which might be re-used by the upstream are copied
+         * @return the key of the current row, the value if there is only one key or a list of the values
+         */
+        private Object currentKey(boolean copy) {
+            if (keyInputs.size() == 1) {
+                return keyValue(keyInputs.get(0), copy);
+            }
+            List<Object> key = new ArrayList<>(keyInputs.size());
+            for (Input<?> keyInput : keyInputs) {
+                key.add(keyValue(keyInput, copy));
+            }
+            return key;
+        }
+
+        private Object keyValue(Input<?> keyInput, boolean copy) {
+            Object value = keyInput.value();
+            if (copy && value instanceof BytesRef) {
+                return BytesRef.deepCopyOf((BytesRef) value);
+            }
+            return value;
+        }
+
+        @Override
+        public void finish() {
+            flushPassThrough();
+            GroupingProjector.this.finish();
+        }
+
+        @Override
+        public void fail(Throwable throwable) {
+            GroupingProjector.this.fail(throwable);
+        }
+
+        /**
+         * spill the groups if they exceed the share of this partial grouping of the spill threshold
+         *
+         * @return false if spilling failed
+         */
+        private boolean maybeSpill() {
+            if (spillThreshold <= 0
+                || ramAccountingContext.usedBytes() - grouperBaseBytes < spillThreshold / partials.size()) {
+                return true;
+            }
+            try {
+                spillGroups(this);
+            } catch (IOException e) {
+                // the spill files are cleaned up once all upstreams finished
+                failDownstream(e);
+                return false;
+            }
+            grouper = newGrouper();
+            return true;
+        }
+
+        private Grouper newGrouper() {
+            grouperBaseBytes = ramAccountingContext.usedBytes();
+            // grouper object size overhead
+            ramAccountingContext.addBytes(8);
+            if (keyInputs.size() == 1) {
+                return newSingleKeyGrouper(keyInputs.get(0), keyTypes.get(0));
+            }
+            return new ManyKeyGrouper(keyInputs, keyTypes,
+                    collectExpressions, aggregators, ramAccountingContext);
+        }
+
+        /**
+         * choose the grouper implementation based on the type of the key.
+         *
+         * Numeric keys are grouped using a primitive long hash table,
+         * string keys using a hash table that stores the key bytes in a single arena.
+         * All other types fall back to a {@link java.util.HashMap} based grouper.
+         */
+        private Grouper newSingleKeyGrouper(Input keyInput, DataType keyType) {
+            switch (keyType.id()) {
+                case ByteType.ID:
+                case ShortType.ID:
+                case IntegerType.ID:
+                case LongType.ID:
+                case TimestampType.ID:
+                case FloatType.ID:
+                case DoubleType.ID:
+                    return new LongKeyGrouper(keyInput, keyType, collectExpressions, aggregators, ramAccountingContext);
+                case StringType.ID:
+                case IpType.ID:
+                    return new BytesRefKeyGrouper(keyInput, collectExpressions, aggregators, ramAccountingContext);
+                default:
+                    return new SingleKeyGrouper(keyInput, keyType, collectExpressions, aggregators, ramAccountingContext);
+            }
+        }
+
+        private void releaseBytesSince(long baseBytes) {
+            long bytes = ramAccountingContext.usedBytes() - baseBytes;
+            if (bytes > 0) {
+                ramAccountingContext.addBytes(-bytes);
+            }
+        }
+
+        void close() {
+            if (grouper != null) {
+                grouper.close();
+            }
+            grouper = null;
+            releasePassThroughRows();
+            if (ramAccountingContext != GroupingProjector.this.ramAccountingContext) {
+                ramAccountingContext.close();
+            }
+        }
     }
 
     private class SingleKeyGrouper implements Grouper {
@@ -204,12 +804,15 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
         private final Input keyInput;
         private final CollectExpression[] collectExpressions;
         private final SizeEstimator<Object> sizeEstimator;
+        private final RamAccountingContext ramAccountingContext;
 
         public SingleKeyGrouper(Input keyInput,
                                 DataType keyInputType,
                                 CollectExpression[] collectExpressions,
-                                Aggregator[] aggregators) {
+                                Aggregator[] aggregators,
+                                RamAccountingContext ramAccountingContext) {
             this.collectExpressions = collectExpressions;
+            this.ramAccountingContext = ramAccountingContext;
             this.result = new HashMap<>();
             this.keyInput = keyInput;
             this.aggregators = aggregators;
@@ -274,6 +877,35 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
             }
             downstream.finish();
         }
+
+        @Override
+        public void emitGroups(GroupConsumer consumer) throws IOException {
+            Object[] cells = new Object[1 + aggregators.length];
+            for (Map.Entry<Object, Object[]> entry : result.entrySet()) {
+                cells[0] = entry.getKey();
+                System.arraycopy(entry.getValue(), 0, cells, 1, aggregators.length);
+                consumer.add(cells);
+            }
+        }
+
+        @Override
+        public void add(Object[] cells) {
+            Object key = cells[0];
+            Object[] states = result.get(key);
+            if (states == null) {
+                ramAccountingContext.addBytes(
+                        RamAccountingContext.roundUp(sizeEstimator.estimateSize(key)) + 24); // 24 bytes overhead per entry
+                result.put(key, Arrays.copyOfRange(cells, 1, cells.length));
+            } else {
+                for (int i = 0; i < aggregators.length; i++) {
+                    states[i] = aggregators[i].reduce(states[i], cells[i + 1]);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
     }
 
     private class ManyKeyGrouper implements Grouper {
@@ -283,15 +915,27 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
         private final List<Input<?>> keyInputs;
         private final CollectExpression[] collectExpressions;
         private final List<SizeEstimator<Object>> sizeEstimators;
+        private final RamAccountingContext ramAccountingContext;
+
+        /**
+         * re-used for lookups, only copied if a new group is encountered
+         */
+        private final ArrayList<Object> spareKey;
 
         public ManyKeyGrouper(List<Input<?>> keyInputs,
                               List<? extends DataType> keyTypes,
                               CollectExpression[] collectExpressions,
-                              Aggregator[] aggregators) {
+                              Aggregator[] aggregators,
+                              RamAccountingContext ramAccountingContext) {
             this.collectExpressions = collectExpressions;
+            this.ramAccountingContext = ramAccountingContext;
             this.result = new HashMap<>();
             this.keyInputs = keyInputs;
             this.aggregators = aggregators;
+            this.spareKey = new ArrayList<>(keyInputs.size());
+            for (int i = 0; i < keyInputs.size(); i++) {
+                spareKey.add(null);
+            }
             sizeEstimators = new ArrayList<>(keyTypes.size());
             for (DataType dataType : keyTypes) {
                 sizeEstimators.add(SizeEstimatorFactory.create(dataType));
@@ -304,24 +948,11 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
                 collectExpression.setNextRow(row);
             }
 
-            // key list ram accounting
-            ramAccountingContext.addBytes(12);
-            // TODO: use something with better equals() performance for the keys
-            List<Object> key = new ArrayList<>(keyInputs.size());
-            int keyIdx = 0;
-            for (Input keyInput : keyInputs) {
-                key.add(keyInput.value());
-                // 4 bytes overhead per list entry + 4 bytes overhead for later hashCode
-                // calculation while using list.get()
-                ramAccountingContext.addBytes(RamAccountingContext.roundUp(
-                        sizeEstimators.get(keyIdx).estimateSize(keyInput.value()) + 4) + 4);
-                keyIdx++;
+            for (int i = 0; i < keyInputs.size(); i++) {
+                spareKey.set(i, keyInputs.get(i).value());
             }
 
-            // HashMap.get requires some objects (iterators) and at least 2 integers
-            ramAccountingContext.addBytes(32);
-            Object[] states = result.get(key);
-            ramAccountingContext.addBytes(-32);
+            Object[] states = result.get(spareKey);
             if (states == null) {
                 states = new Object[aggregators.length];
                 for (int i = 0; i < aggregators.length; i++) {
@@ -329,8 +960,7 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
                     state = aggregators[i].processRow(state);
                     states[i] = state;
                 }
-                ramAccountingContext.addBytes(24); // 24 bytes overhead per map entry
-                result.put(key, states);
+                result.put(copySpareKey(), states);
             } else {
                 for (int i = 0; i < aggregators.length; i++) {
                     states[i] = aggregators[i].processRow(states[i]);
@@ -366,5 +996,371 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
             }
             downstream.finish();
         }
+
+        /**
+         * copy the spare key for a new group, including the ram accounting of the key and the map entry
+         */
+        private List<Object> copySpareKey() {
+            // key list ram accounting
+            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + keyInputs.size() * 4));
+            List<Object> key = new ArrayList<>(spareKey);
+            for (int i = 0; i < key.size(); i++) {
+                ramAccountingContext.addBytes(RamAccountingContext.roundUp(
+                        sizeEstimators.get(i).estimateSize(key.get(i))));
+            }
+            ramAccountingContext.addBytes(24); // 24 bytes overhead per map entry
+            return key;
+        }
+
+        @Override
+        public void emitGroups(GroupConsumer consumer) throws IOException {
+            Object[] cells = new Object[keyInputs.size() + aggregators.length];
+            for (Map.Entry<List<Object>, Object[]> entry : result.entrySet()) {
+                List<Object> key = entry.getKey();
+                for (int i = 0; i < key.size(); i++) {
+                    cells[i] = key.get(i);
+                }
+                System.arraycopy(entry.getValue(), 0, cells, key.size(), aggregators.length);
+                consumer.add(cells);
+            }
+        }
+
+        @Override
+        public void add(Object[] cells) {
+            int numKeys = keyInputs.size();
+            for (int i = 0; i < numKeys; i++) {
+                spareKey.set(i, cells[i]);
+            }
+            Object[] states = result.get(spareKey);
+            if (states == null) {
+                result.put(copySpareKey(), Arrays.copyOfRange(cells, numKeys, cells.length));
+            } else {
+                for (int i = 0; i < aggregators.length; i++) {
+                    states[i] = aggregators[i].reduce(states[i], cells[numKeys + i]);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Base class for groupers which map a single key to a dense group id using a
+     * {@link BigArrays} backed hash table.
+     *
+     * The aggregation states of all groups are stored in one flat array,
+     * the states of the group with id <code>n</code> start at <code>n * aggregators.length</code>.
+     * Rows with a <code>null</code> key are aggregated separately as the hash tables can't hold null keys.
+     */
+    private abstract class HashGrouper implements Grouper {
+
+        protected final BigArrays bigArrays = BigArrays.NON_RECYCLING_INSTANCE;
+        protected final Aggregator[] aggregators;
+        private final Input keyInput;
+        private final CollectExpression[] collectExpressions;
+        private final RamAccountingContext ramAccountingContext;
+
+        private ObjectArray<Object> states;
+        private Object[] nullKeyStates;
+        private long accountedBytes = 0;
+
+        protected HashGrouper(Input keyInput,
+                              CollectExpression[] collectExpressions,
+                              Aggregator[] aggregators,
+                              RamAccountingContext ramAccountingContext) {
+            this.keyInput = keyInput;
+            this.ramAccountingContext = ramAccountingContext;
+            this.collectExpressions = collectExpressions;
+            this.aggregators = aggregators;
+            this.states = bigArrays.newObjectArray(Math.max(1, aggregators.length) * 16);
+        }
+
+        /**
+         * add the key to the hash table
+         *
+         * @return the group id if the key was added, <code>-1 - id</code> if the key already existed
+         */
+        protected abstract long addKey(Object key);
+
+        /**
+         * @return the key of the group with the given id
+         */
+        protected abstract Object key(long id);
+
+        /**
+         * @return the number of groups (excluding the null key group)
+         */
+        protected abstract long size();
+
+        /**
+         * @return the bytes currently used by the hash table
+         */
+        protected abstract long hashTableBytes();
+
+        protected abstract void closeHashTable();
+
+        @Override
+        public boolean setNextRow(Row row) {
+            for (CollectExpression collectExpression : collectExpressions) {
+                collectExpression.setNextRow(row);
+            }
+
+            Object key = keyInput.value();
+            if (key == null) {
+                if (nullKeyStates == null) {
+                    ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + aggregators.length * 4));
+                    nullKeyStates = new Object[aggregators.length];
+                    for (int i = 0; i < aggregators.length; i++) {
+                        nullKeyStates[i] = aggregators[i].processRow(aggregators[i].prepareState());
+                    }
+                } else {
+                    for (int i = 0; i < aggregators.length; i++) {
+                        nullKeyStates[i] = aggregators[i].processRow(nullKeyStates[i]);
+                    }
+                }
+                return true;
+            }
+
+            long id = addKey(key);
+            if (id < 0) {
+                long offset = (-1 - id) * aggregators.length;
+                for (int i = 0; i < aggregators.length; i++) {
+                    states.set(offset + i, aggregators[i].processRow(states.get(offset + i)));
+                }
+            } else {
+                long offset = id * aggregators.length;
+                states = bigArrays.grow(states, offset + aggregators.length);
+                accountTableGrowth();
+                for (int i = 0; i < aggregators.length; i++) {
+                    states.set(offset + i, aggregators[i].processRow(aggregators[i].prepareState()));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * account the memory of the hash table and the states array.
+         * Both only grow if a new group is added.
+         */
+        private void accountTableGrowth() {
+            long usedBytes = hashTableBytes() + states.size() * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+            if (usedBytes > accountedBytes) {
+                ramAccountingContext.addBytes(usedBytes - accountedBytes);
+                accountedBytes = usedBytes;
+            }
+        }
+
+        @Override
+        public void finish() {
+            if (downstream == null) {
+                return;
+            }
+            Throwable throwable = failure.get();
+            if (throwable != null) {
+                downstream.fail(throwable);
+            }
+
+            long numGroups = size() + (nullKeyStates == null ? 0 : 1);
+            // account the multi-dimension `rows` array
+            // 1st level
+            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + numGroups * 4));
+            // 2nd level
+            ramAccountingContext.addBytes(RamAccountingContext.roundUp(
+                    (1 + aggregators.length) * 4 + 12));
+            RowN row = new RowN(1 + aggregators.length);
+            boolean wantMore = true;
+            if (nullKeyStates != null) {
+                Object[] cells = new Object[row.size()];
+                for (int i = 0; i < aggregators.length; i++) {
+                    cells[i + 1] = aggregators[i].finishCollect(nullKeyStates[i]);
+                }
+                row.cells(cells);
+                wantMore = downstream.setNextRow(row);
+            }
+            for (long id = 0; wantMore && id < size(); id++) {
+                Object[] cells = new Object[row.size()];
+                cells[0] = key(id);
+                long offset = id * aggregators.length;
+                for (int i = 0; i < aggregators.length; i++) {
+                    cells[i + 1] = aggregators[i].finishCollect(states.get(offset + i));
+                }
+                row.cells(cells);
+                wantMore = downstream.setNextRow(row);
+            }
+            downstream.finish();
+        }
+
+        @Override
+        public void emitGroups(GroupConsumer consumer) throws IOException {
+            Object[] cells = new Object[1 + aggregators.length];
+            if (nullKeyStates != null) {
+                cells[0] = null;
+                System.arraycopy(nullKeyStates, 0, cells, 1, aggregators.length);
+                consumer.add(cells);
+            }
+            for (long id = 0; id < size(); id++) {
+                cells[0] = key(id);
+                long offset = id * aggregators.length;
+                for (int i = 0; i < aggregators.length; i++) {
+                    cells[i + 1] = states.get(offset + i);
+                }
+                consumer.add(cells);
+            }
+        }
+
+        @Override
+        public void add(Object[] cells) {
+            Object key = cells[0];
+            if (key == null) {
+                if (nullKeyStates == null) {
+                    ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + aggregators.length * 4));
+                    nullKeyStates = Arrays.copyOfRange(cells, 1, cells.length);
+                } else {
+                    for (int i = 0; i < aggregators.length; i++) {
+                        nullKeyStates[i] = aggregators[i].reduce(nullKeyStates[i], cells[i + 1]);
+                    }
+                }
+                return;
+            }
+
+            long id = addKey(key);
+            if (id < 0) {
+                long offset = (-1 - id) * aggregators.length;
+                for (int i = 0; i < aggregators.length; i++) {
+                    states.set(offset + i, aggregators[i].reduce(states.get(offset + i), cells[i + 1]));
+                }
+            } else {
+                long offset = id * aggregators.length;
+                states = bigArrays.grow(states, offset + aggregators.length);
+                accountTableGrowth();
+                for (int i = 0; i < aggregators.length; i++) {
+                    states.set(offset + i, cells[i + 1]);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closeHashTable();
+            Releasables.close(states);
+        }
+    }
+
+    /**
+     * grouper for numeric keys.
+     * Keys are encoded into longs, floating point keys using their raw bit representation.
+     */
+    private class LongKeyGrouper extends HashGrouper {
+
+        private final int keyTypeId;
+        private final boolean floatingPoint;
+        private final LongHash hash;
+
+        public LongKeyGrouper(Input keyInput,
+                              DataType keyType,
+                              CollectExpression[] collectExpressions,
+                              Aggregator[] aggregators,
+                              RamAccountingContext ramAccountingContext) {
+            super(keyInput, collectExpressions, aggregators, ramAccountingContext);
+            this.keyTypeId = keyType.id();
+            this.floatingPoint = keyTypeId == FloatType.ID || keyTypeId == DoubleType.ID;
+            this.hash = new LongHash(16, bigArrays);
+        }
+
+        @Override
+        protected long addKey(Object key) {
+            if (floatingPoint) {
+                return hash.add(Double.doubleToLongBits(((Number) key).doubleValue()));
+            }
+            return hash.add(((Number) key).longValue());
+        }
+
+        @Override
+        protected Object key(long id) {
+            long key = hash.get(id);
+            switch (keyTypeId) {
+                case ByteType.ID:
+                    return (byte) key;
+                case ShortType.ID:
+                    return (short) key;
+                case IntegerType.ID:
+                    return (int) key;
+                case FloatType.ID:
+                    return (float) Double.longBitsToDouble(key);
+                case DoubleType.ID:
+                    return Double.longBitsToDouble(key);
+                default:
+                    return key;
+            }
+        }
+
+        @Override
+        protected long size() {
+            return hash.size();
+        }
+
+        @Override
+        protected long hashTableBytes() {
+            // ids and keys
+            return hash.capacity() * 2 * RamUsageEstimator.NUM_BYTES_LONG;
+        }
+
+        @Override
+        protected void closeHashTable() {
+            hash.close();
+        }
+    }
+
+    /**
+     * grouper for string keys.
+     * The key bytes are copied into a single paged byte array instead of one BytesRef per group.
+     */
+    private class BytesRefKeyGrouper extends HashGrouper {
+
+        private final BytesRefHash hash;
+        private long keyBytes = 0;
+
+        public BytesRefKeyGrouper(Input keyInput,
+                                  CollectExpression[] collectExpressions,
+                                  Aggregator[] aggregators,
+                                  RamAccountingContext ramAccountingContext) {
+            super(keyInput, collectExpressions, aggregators, ramAccountingContext);
+            this.hash = new BytesRefHash(16, bigArrays);
+        }
+
+        @Override
+        protected long addKey(Object key) {
+            BytesRef bytesRef = (BytesRef) key;
+            long id = hash.add(bytesRef);
+            if (id >= 0) {
+                keyBytes += bytesRef.length;
+            }
+            return id;
+        }
+
+        @Override
+        protected Object key(long id) {
+            return BytesRef.deepCopyOf(hash.get(id, new BytesRef()));
+        }
+
+        @Override
+        protected long size() {
+            return hash.size();
+        }
+
+        @Override
+        protected long hashTableBytes() {
+            // ids per slot, start offset + hash per key and the key bytes
+            return hash.capacity() * RamUsageEstimator.NUM_BYTES_LONG
+                   + hash.size() * (RamUsageEstimator.NUM_BYTES_LONG + RamUsageEstimator.NUM_BYTES_INT)
+                   + keyBytes;
+        }
+
+        @Override
+        protected void closeHashTable() {
+            hash.close();
+        }
     }
 }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors;
+
+import io.crate.Streamer;
+import io.crate.core.collections.RowN;
+import io.crate.executor.transport.StreamBucket;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Temporary files of groups which were spilled by the {@link GroupingProjector}.
+ *
+ * Each group is written as a row of its keys followed by its partial aggregation states.
+ * The rows are distributed over a fixed number of partitions by the hash of their keys,
+ * so all spilled states of one group end up in the same partition file
+ * and the partitions can be merged one after another.
+ */
+class GroupingSpillFiles implements GroupingProjector.GroupConsumer, Closeable {
+
+    private static final ESLogger LOGGER = Loggers.getLogger(GroupingSpillFiles.class);
+
+    static final int NUM_PARTITIONS = 16;
+
+    private final int numKeys;
+    private final Streamer<?>[] streamers;
+    private final Path[] files = new Path[NUM_PARTITIONS];
+    private final StreamOutput[] outputs = new StreamOutput[NUM_PARTITIONS];
+    private final StreamBucket.Builder[] pages = new StreamBucket.Builder[NUM_PARTITIONS];
+    private long numRows = 0;
+
+    /**
+     * @param numKeys   the number of leading key columns of a row
+     * @param streamers the streamers of the key columns followed by the streamers of the partial states
+     * @param tmpDir    directory of the files, the default temporary directory is used if null
+     */
+    GroupingSpillFiles(int numKeys, Streamer<?>[] streamers, @Nullable Path tmpDir) throws IOException {
+        this.numKeys = numKeys;
+        this.streamers = streamers;
+        try {
+            for (int i = 0; i < NUM_PARTITIONS; i++) {
+                files[i] = tmpDir == null
+                        ? Files.createTempFile("crate-group-", ".spill")
+                        : Files.createTempFile(tmpDir, "crate-group-", ".spill");
+                outputs[i] = new OutputStreamStreamOutput(new BufferedOutputStream(Files.newOutputStream(files[i])));
+                pages[i] = new StreamBucket.Builder(streamers);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * add a group to the partition of its keys
+     */
+    @Override
+    public void add(Object[] cells) throws IOException {
+        int partition = partition(cells);
+        StreamBucket.Builder page = pages[partition];
+        page.add(new RowN(cells));
+        if (page.size() == ExternalSortProjector.PAGE_SIZE) {
+            page.writeToStream(outputs[partition]);
+            page.reset();
+        }
+        numRows++;
+    }
+
+    private int partition(Object[] cells) {
+        int hash = 1;
+        for (int i = 0; i < numKeys; i++) {
+            hash = 31 * hash + Objects.hashCode(cells[i]);
+        }
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % NUM_PARTITIONS;
+    }
+
+    /**
+     * flush the remaining rows and close the files for writing, must be called before the partitions are read
+     */
+    void finishWriting() throws IOException {
+        for (int i = 0; i < NUM_PARTITIONS; i++) {
+            if (pages[i].size() > 0) {
+                pages[i].writeToStream(outputs[i]);
+                pages[i].reset();
+            }
+            // an empty page marks the end of the partition
+            outputs[i].writeVInt(0);
+            outputs[i].close();
+            outputs[i] = null;
+        }
+        LOGGER.trace("spilled {} groups into {} partitions", numRows, NUM_PARTITIONS);
+    }
+
+    /**
+     * @return an iterator over the rows of the given partition, which reads one page at a time
+     */
+    ExternalSortProjector.RunIterator partition(int partition) throws IOException {
+        return new ExternalSortProjector.RunIterator(files[partition], streamers);
+    }
+
+    /**
+     * close and delete all files
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < NUM_PARTITIONS; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (IOException e) {
+                    LOGGER.warn("could not close spill file {}", e, files[i]);
+                }
+                outputs[i] = null;
+            }
+            if (files[i] != null) {
+                try {
+                    Files.deleteIfExists(files[i]);
+                } catch (IOException e) {
+                    LOGGER.warn("could not delete spill file {}", e, files[i]);
+                }
+                files[i] = null;
+            }
+        }
+    }
+}
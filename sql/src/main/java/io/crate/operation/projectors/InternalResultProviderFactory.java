@@ -35,6 +35,7 @@ import io.crate.planner.node.StreamerVisitor;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.util.BigArrays;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -46,14 +47,17 @@ public class InternalResultProviderFactory implements ResultProviderFactory {
     private final ClusterService clusterService;
     private final TransportDistributedResultAction transportDistributedResultAction;
     private final StreamerVisitor streamerVisitor;
+    private final BigArrays bigArrays;
 
     @Inject
     public InternalResultProviderFactory(ClusterService clusterService,
                                          TransportDistributedResultAction transportDistributedResultAction,
-                                         StreamerVisitor streamerVisitor) {
+                                         StreamerVisitor streamerVisitor,
+                                         BigArrays bigArrays) {
         this.clusterService = clusterService;
         this.transportDistributedResultAction = transportDistributedResultAction;
         this.streamerVisitor = streamerVisitor;
+        this.bigArrays = bigArrays;
     }
 
     public ResultProvider createDownstream(ExecutionNode node, UUID jobId) {
@@ -68,14 +72,17 @@ public class InternalResultProviderFactory implements ResultProviderFactory {
             // TODO: set bucketIdx properly
             ArrayList<String> server = Lists.newArrayList(node.executionNodes());
             Collections.sort(server);
-            int bucketIdx = server.indexOf(clusterService.localNode().id());
+            String localNodeId = clusterService.localNode().id();
+            int bucketIdx = server.indexOf(localNodeId);
 
             return new DistributingDownstream(
                     jobId,
                     node.downstreamExecutionNodeId(),
                     bucketIdx,
                     node.downstreamNodes(),
+                    localNodeId,
                     transportDistributedResultAction,
+                    bigArrays,
                     streamers
             );
         }
@@ -23,6 +23,7 @@ package io.crate.operation.projectors;
 
 import com.carrotsearch.hppc.IntObjectOpenHashMap;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
 import io.crate.analyze.EvaluatingNormalizer;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.executor.transport.TransportActionProvider;
@@ -33,6 +34,7 @@ import io.crate.operation.collect.CollectExpression;
 import io.crate.planner.consumer.OrderByPositionVisitor;
 import io.crate.planner.projection.*;
 import io.crate.planner.symbol.*;
+import io.crate.types.DataType;
 import io.crate.types.StringType;
 import org.elasticsearch.action.bulk.BulkRetryCoordinatorPool;
 import org.elasticsearch.cluster.ClusterService;
@@ -41,6 +43,8 @@ import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -55,6 +59,13 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
     private final EvaluatingNormalizer normalizer;
     @Nullable
     private final ShardId shardId;
+    private final long externalSortRunSize;
+    @Nullable
+    private final Path externalSortPath;
+    private final long groupingSpillSize;
+    @Nullable
+    private final Path groupingSpillPath;
+    private final boolean adaptivePreAggregation;
     @Nullable
 
     public ProjectionToProjectorVisitor(ClusterService clusterService,
@@ -73,6 +84,15 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
         this.symbolVisitor = symbolVisitor;
         this.normalizer = normalizer;
         this.shardId = shardId;
+        this.externalSortRunSize = settings.getAsBytesSize(
+                ExternalSortProjector.SETTING_RUN_SIZE, ExternalSortProjector.DEFAULT_RUN_SIZE).bytes();
+        String externalSortPath = settings.get(ExternalSortProjector.SETTING_PATH);
+        this.externalSortPath = externalSortPath == null ? null : Paths.get(externalSortPath);
+        this.groupingSpillSize = settings.getAsBytesSize(
+                GroupingProjector.SETTING_SPILL_SIZE, GroupingProjector.DEFAULT_SPILL_SIZE).bytes();
+        String groupingSpillPath = settings.get(GroupingProjector.SETTING_PATH);
+        this.groupingSpillPath = groupingSpillPath == null ? null : Paths.get(groupingSpillPath);
+        this.adaptivePreAggregation = settings.getAsBoolean(GroupingProjector.SETTING_ADAPTIVE_PRE_AGGREGATION, true);
     }
 
     public ProjectionToProjectorVisitor(ClusterService clusterService,
@@ -133,15 +153,38 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
                 orderByIndices[idx++] = i;
             }
 
+            List<DataType> types = new ArrayList<>(inputs.size());
+            for (Symbol symbol : projection.outputs()) {
+                types.add(symbol.valueType());
+            }
+            for (Symbol symbol : projection.orderBy()) {
+                types.add(symbol.valueType());
+            }
+            if (context.ramAccountingContext != null && needsExternalSort(projection)) {
+                return new ExternalSortProjector(
+                        inputs.toArray(new Input<?>[inputs.size()]),
+                        collectExpressions.toArray(new CollectExpression[collectExpressions.size()]),
+                        types,
+                        numOutputs,
+                        orderByIndices,
+                        projection.reverseFlags(),
+                        projection.nullsFirst(),
+                        projection.limit(),
+                        projection.offset(),
+                        context.ramAccountingContext,
+                        externalSortRunSize,
+                        externalSortPath);
+            }
             projector = new SortingTopNProjector(
-                    inputs.toArray(new Input<?>[inputs.size()]),
-                    collectExpressions.toArray(new CollectExpression[collectExpressions.size()]),
+                    topNInputs(projection),
                     numOutputs,
                     orderByIndices,
                     projection.reverseFlags(),
                     projection.nullsFirst(),
                     projection.limit(),
-                    projection.offset());
+                    projection.offset(),
+                    context.ramAccountingContext,
+                    types);
         } else {
             projector = new SimpleTopNProjector(
                     inputs,
@@ -152,6 +195,27 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
         return projector;
     }
 
+    /**
+     * @return a supplier which creates new inputs for the outputs followed by the orderBy symbols
+     */
+    private Supplier<ImplementationSymbolVisitor.Context> topNInputs(final TopNProjection projection) {
+        return new Supplier<ImplementationSymbolVisitor.Context>() {
+            @Override
+            public ImplementationSymbolVisitor.Context get() {
+                ImplementationSymbolVisitor.Context symbolContext = symbolVisitor.process(projection.outputs());
+                for (Symbol symbol : projection.orderBy()) {
+                    symbolContext.add(symbolVisitor.process(symbol, symbolContext));
+                }
+                return symbolContext;
+            }
+        };
+    }
+
+    private static boolean needsExternalSort(TopNProjection projection) {
+        return projection.limit() == TopN.NO_LIMIT
+               || (long) projection.offset() + projection.limit() > ExternalSortProjector.MIN_ROWS;
+    }
+
     @Override
     public Projector visitMergeProjection(MergeProjection projection, Context context) {
         int[] orderByIndices = OrderByPositionVisitor.orderByPositions(projection.orderBy(),
@@ -163,32 +227,56 @@ public class ProjectionToProjectorVisitor extends ProjectionVisitor<ProjectionTo
     }
 
     @Override
-    public Projector visitGroupProjection(GroupProjection projection, Context context) {
-        ImplementationSymbolVisitor.Context symbolContext = symbolVisitor.process(projection.keys());
-        List<Input<?>> keyInputs = symbolContext.topLevelInputs();
-
-        for (Aggregation aggregation : projection.values()) {
-            symbolVisitor.process(aggregation, symbolContext);
-        }
+    public Projector visitGroupProjection(final GroupProjection projection, Context context) {
+        Supplier<ImplementationSymbolVisitor.Context> upstreamInputs = new Supplier<ImplementationSymbolVisitor.Context>() {
+            @Override
+            public ImplementationSymbolVisitor.Context get() {
+                ImplementationSymbolVisitor.Context symbolContext = symbolVisitor.process(projection.keys());
+                for (Aggregation aggregation : projection.values()) {
+                    symbolVisitor.process(aggregation, symbolContext);
+                }
+                return symbolContext;
+            }
+        };
         return new GroupingProjector(
                 Symbols.extractTypes(projection.keys()),
-                keyInputs,
-                symbolContext.collectExpressions().toArray(new CollectExpression[symbolContext.collectExpressions().size()]),
-                symbolContext.aggregations(),
-                context.ramAccountingContext
+                upstreamInputs,
+                context.ramAccountingContext,
+                groupingSpillSize,
+                groupingSpillPath,
+                adaptivePreAggregation && isPreAggregation(projection)
         );
     }
 
-    @Override
-    public Projector visitAggregationProjection(AggregationProjection projection, Context context) {
-        ImplementationSymbolVisitor.Context symbolContext = new ImplementationSymbolVisitor.Context();
-        for (Aggregation aggregation : projection.aggregations()) {
-            symbolVisitor.process(aggregation, symbolContext);
+    /**
+     * @return true if all aggregations of the projection emit partial states,
+     *         so the groups are merged again by a later projection
+     */
+    private static boolean isPreAggregation(GroupProjection projection) {
+        if (projection.values().isEmpty()) {
+            return false;
         }
-        return new AggregationProjector(
-                symbolContext.collectExpressions(),
-                symbolContext.aggregations(),
-                context.ramAccountingContext);
+        for (Aggregation aggregation : projection.values()) {
+            if (aggregation.toStep() != Aggregation.Step.PARTIAL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Projector visitAggregationProjection(final AggregationProjection projection, Context context) {
+        Supplier<ImplementationSymbolVisitor.Context> upstreamInputs = new Supplier<ImplementationSymbolVisitor.Context>() {
+            @Override
+            public ImplementationSymbolVisitor.Context get() {
+                ImplementationSymbolVisitor.Context symbolContext = new ImplementationSymbolVisitor.Context();
+                for (Aggregation aggregation : projection.aggregations()) {
+                    symbolVisitor.process(aggregation, symbolContext);
+                }
+                return symbolContext;
+            }
+        };
+        return new AggregationProjector(upstreamInputs, context.ramAccountingContext);
     }
 
     @Override
@@ -22,7 +22,6 @@
 package io.crate.operation.projectors;
 
 import com.google.common.base.Preconditions;
-import io.crate.Constants;
 import io.crate.core.collections.Row;
 import io.crate.operation.*;
 import io.crate.operation.collect.CollectExpression;
@@ -31,7 +30,7 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class SimpleTopNProjector implements Projector, RowUpstream, RowDownstreamHandle {
+public class SimpleTopNProjector implements Projector, RowUpstream, RowBatchDownstreamHandle {
 
     private final CollectExpression<?>[] collectExpressions;
     private final InputRow inputRow;
@@ -51,7 +50,7 @@ public class SimpleTopNProjector implements Projector, RowUpstream, RowDownstrea
         this.inputRow = new InputRow(inputs);
         this.collectExpressions = collectExpressions;
         if (limit == TopN.NO_LIMIT) {
-            limit = Constants.DEFAULT_SELECT_LIMIT;
+            limit = Integer.MAX_VALUE;
         }
         this.remainingOffset = offset;
         this.toCollect = limit;
@@ -76,6 +75,30 @@ public class SimpleTopNProjector implements Projector, RowUpstream, RowDownstrea
             remainingOffset--;
             return true;
         }
+        return emitRow(row);
+    }
+
+    @Override
+    public synchronized boolean setNextBatch(RowBatch batch) {
+        if (toCollect<1){
+            return false;
+        }
+        int[] selection = batch.selection();
+        int numSelected = batch.selected();
+        // skip the offset at once
+        int i = Math.min(remainingOffset, numSelected);
+        remainingOffset -= i;
+        RowBatch.BatchRow row = new RowBatch.BatchRow(batch);
+        for (; i < numSelected; i++) {
+            row.position(selection[i]);
+            if (!emitRow(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean emitRow(Row row) {
         assert downstream != null;
         for (CollectExpression<?> collectExpression : collectExpressions) {
             collectExpression.setNextRow(row);
@@ -22,33 +22,62 @@
 package io.crate.operation.projectors;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import io.crate.Constants;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.breaker.SizeEstimator;
+import io.crate.breaker.SizeEstimatorFactory;
 import io.crate.core.collections.ArrayBucket;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Row;
 import io.crate.executor.transport.distributed.ResultProviderBase;
+import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.Input;
 import io.crate.operation.RowDownstream;
 import io.crate.operation.RowDownstreamHandle;
+import io.crate.operation.RowUpstream;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.projectors.sorting.OrderingByPosition;
 import io.crate.operation.projectors.sorting.RowPriorityQueue;
+import io.crate.types.DataType;
+import org.apache.lucene.util.RamUsageEstimator;
 
+import javax.annotation.Nullable;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Sorts the rows and emits the top n rows.
+ *
+ * If the projector is created with a supplier of its inputs, every registered upstream gets a handle
+ * with its own inputs and priority queue, so upstreams running on different threads don't
+ * have to synchronize. The queues of all upstreams are merged once the last upstream finished.
+ *
+ * If a {@link RamAccountingContext} is given, the queue of every upstream and the rows it holds are accounted,
+ * they stay accounted until the context is closed.
+ */
 public class SortingTopNProjector extends ResultProviderBase {
 
+    // used for types without a size estimator, like objects or arrays
+    private static final long UNKNOWN_VALUE_SIZE = 64;
+
     private final int offset;
     private final int maxSize;
     private final int numOutputs;
 
     private RowDownstreamHandle downstream;
 
-    private RowPriorityQueue<Object[]> pq;
     private final Comparator[] comparators;
-    private final Input<?>[] inputs;
-    private final CollectExpression<?>[] collectExpressions;
-    private Object[] spare;
+    @Nullable
+    private final Supplier<ImplementationSymbolVisitor.Context> upstreamInputs;
+    private final List<PartialTopN> partials = new CopyOnWriteArrayList<>();
+    @Nullable
+    private final RamAccountingContext ramAccountingContext;
+    @Nullable
+    private final SizeEstimator<Object>[] sizeEstimators;
+    // used by upstreams which feed the projector directly
+    private PartialTopN defaultPartial;
 
     /**
      * @param inputs             contains output {@link io.crate.operation.Input}s and orderBy {@link io.crate.operation.Input}s
@@ -67,13 +96,32 @@ public class SortingTopNProjector extends ResultProviderBase {
                                 Boolean[] nullsFirst,
                                 int limit,
                                 int offset) {
+        this(null, numOutputs, orderBy, reverseFlags, nullsFirst, limit, offset, null, null);
+        defaultPartial = new PartialTopN(inputs, collectExpressions);
+        partials.add(defaultPartial);
+    }
+
+    /**
+     * @param upstreamInputs creates new inputs for every registered upstream, the top level inputs of the
+     *                       returned context must contain the output inputs followed by the orderBy inputs
+     * @param ramAccountingContext accounts the queues of the upstreams, nothing is accounted if null
+     * @param types          the types of the values of the inputs, required if a ramAccountingContext is given
+     */
+    public SortingTopNProjector(@Nullable Supplier<ImplementationSymbolVisitor.Context> upstreamInputs,
+                                int numOutputs,
+                                int[] orderBy,
+                                boolean[] reverseFlags,
+                                Boolean[] nullsFirst,
+                                int limit,
+                                int offset,
+                                @Nullable RamAccountingContext ramAccountingContext,
+                                @Nullable List<DataType> types) {
         Preconditions.checkArgument(limit >= TopN.NO_LIMIT, "invalid limit");
         Preconditions.checkArgument(offset >= 0, "invalid offset");
         assert nullsFirst.length == reverseFlags.length;
 
-        this.inputs = inputs;
+        this.upstreamInputs = upstreamInputs;
         this.numOutputs = numOutputs;
-        this.collectExpressions = collectExpressions;
         this.offset = offset;
 
         if (limit == TopN.NO_LIMIT) {
@@ -86,41 +134,70 @@ public class SortingTopNProjector extends ResultProviderBase {
             boolean reverse = reverseFlags[i];
             comparators[i] = OrderingByPosition.arrayOrdering(col, reverse, nullsFirst[i]);
         }
+        assert ramAccountingContext == null || types != null : "types are required to account the rows";
+        this.ramAccountingContext = ramAccountingContext;
+        this.sizeEstimators = ramAccountingContext == null ? null : sizeEstimators(types);
     }
 
-    @Override
-    public void startProjection() {
-        super.startProjection();
-        synchronized (this){
-            if (pq==null) {
-                pq = new RowPriorityQueue<>(maxSize, comparators);
+    @SuppressWarnings("unchecked")
+    private static SizeEstimator<Object>[] sizeEstimators(List<DataType> types) {
+        SizeEstimator<Object>[] estimators = new SizeEstimator[types.size()];
+        for (int i = 0; i < types.size(); i++) {
+            try {
+                estimators[i] = SizeEstimatorFactory.create(types.get(i));
+            } catch (UnsupportedOperationException e) {
+                estimators[i] = null;
             }
         }
+        return estimators;
+    }
+
+    private PartialTopN newUpstreamPartial() {
+        ImplementationSymbolVisitor.Context context = upstreamInputs.get();
+        List<Input<?>> inputs = context.topLevelInputs();
+        PartialTopN partial = new PartialTopN(
+                inputs.toArray(new Input<?>[inputs.size()]),
+                context.collectExpressions().toArray(new CollectExpression[context.collectExpressions().size()]));
+        partial.startCollect();
+        partials.add(partial);
+        return partial;
+    }
+
+    private synchronized PartialTopN defaultPartial() {
+        if (defaultPartial == null) {
+            defaultPartial = newUpstreamPartial();
+        }
+        return defaultPartial;
     }
 
     @Override
-    public synchronized boolean setNextRow(Row row) {
-        if (spare == null) {
-            spare = new Object[inputs.length];
+    public void startProjection() {
+        super.startProjection();
+        if (defaultPartial != null) {
+            defaultPartial.startCollect();
         }
-        evaluateRow(row);
-        spare = pq.insertWithOverflow(spare);
-        return true;
     }
 
-    private synchronized void evaluateRow(Row row) {
-        for (CollectExpression<?> collectExpression : collectExpressions) {
-            collectExpression.setNextRow(row);
+    @Override
+    public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
+        RowDownstreamHandle handle = super.registerUpstream(upstream);
+        if (upstreamInputs == null) {
+            return handle;
         }
-        int i = 0;
-        for (Input<?> input : inputs) {
-            spare[i++] = input.value();
+        synchronized (this) {
+            return newUpstreamPartial();
         }
     }
 
+    @Override
+    public synchronized boolean setNextRow(Row row) {
+        return defaultPartial().setNextRow(row);
+    }
+
     @Override
     public Bucket doFinish() {
         Bucket bucket;
+        RowPriorityQueue<Object[]> pq = mergeQueues();
         if (pq != null){
             final int resultSize = Math.max(pq.size() - offset, 0);
             Object[][] rows = new Object[resultSize][];
@@ -141,6 +218,34 @@ public class SortingTopNProjector extends ResultProviderBase {
         return bucket;
     }
 
+    /**
+     * insert the rows of the queues of all partials into the largest queue
+     *
+     * @return the merged queue or null if no rows were received
+     */
+    @Nullable
+    private RowPriorityQueue<Object[]> mergeQueues() {
+        PartialTopN target = null;
+        for (PartialTopN partial : partials) {
+            if (partial.pq != null && (target == null || partial.pq.size() > target.pq.size())) {
+                target = partial;
+            }
+        }
+        if (target == null) {
+            return null;
+        }
+        for (PartialTopN partial : partials) {
+            if (partial == target || partial.pq == null) {
+                continue;
+            }
+            Object[] row;
+            while ((row = partial.pq.pop()) != null) {
+                target.pq.insertWithOverflow(row);
+            }
+        }
+        return target.pq;
+    }
+
     @Override
     public Throwable doFail(Throwable t) {
         if (downstream != null) {
@@ -154,5 +259,83 @@ public class SortingTopNProjector extends ResultProviderBase {
         this.downstream = downstream.registerUpstream(this);
     }
 
+    /**
+     * The inputs and priority queue of one upstream,
+     * or of all upstreams if they feed the projector directly.
+     */
+    private class PartialTopN implements RowDownstreamHandle {
+
+        private final Input<?>[] inputs;
+        private final CollectExpression<?>[] collectExpressions;
+        private RowPriorityQueue<Object[]> pq;
+        private Object[] spare;
+
+        PartialTopN(Input<?>[] inputs, CollectExpression<?>[] collectExpressions) {
+            this.inputs = inputs;
+            this.collectExpressions = collectExpressions;
+        }
+
+        void startCollect() {
+            for (CollectExpression<?> collectExpression : collectExpressions) {
+                collectExpression.startCollect();
+            }
+        }
+
+        @Override
+        public boolean setNextRow(Row row) {
+            if (pq == null) {
+                // the heap of the queue is allocated up front
+                accountBytes(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+                              + ((long) maxSize + 1) * RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+                pq = new RowPriorityQueue<>(maxSize, comparators);
+            }
+            if (spare == null) {
+                spare = new Object[inputs.length];
+            }
+            evaluateRow(row);
+            if (pq.size() < maxSize) {
+                // once the queue is full every inserted row replaces another one
+                accountBytes(rowBytes(spare));
+            }
+            spare = pq.insertWithOverflow(spare);
+            return true;
+        }
+
+        private void accountBytes(long bytes) {
+            if (ramAccountingContext != null) {
+                ramAccountingContext.addBytes(bytes);
+            }
+        }
+
+        private long rowBytes(Object[] cells) {
+            if (sizeEstimators == null) {
+                return 0;
+            }
+            long bytes = RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + cells.length * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+            for (int i = 0; i < cells.length; i++) {
+                bytes += sizeEstimators[i] == null ? UNKNOWN_VALUE_SIZE : sizeEstimators[i].estimateSize(cells[i]);
+            }
+            return bytes;
+        }
 
+        private void evaluateRow(Row row) {
+            for (CollectExpression<?> collectExpression : collectExpressions) {
+                collectExpression.setNextRow(row);
+            }
+            int i = 0;
+            for (Input<?> input : inputs) {
+                spare[i++] = input.value();
+            }
+        }
+
+        @Override
+        public void finish() {
+            SortingTopNProjector.this.finish();
+        }
+
+        @Override
+        public void fail(Throwable throwable) {
+            SortingTopNProjector.this.fail(throwable);
+        }
+    }
 }
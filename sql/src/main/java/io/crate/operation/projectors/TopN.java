@@ -21,7 +21,31 @@
 
 package io.crate.operation.projectors;
 
+import io.crate.Constants;
+
+import javax.annotation.Nullable;
+
 public class TopN {
     public static final int NO_OFFSET = 0;
     public static final int NO_LIMIT = -1;
+
+    /**
+     * @param sorted whether the rows are sorted by a TopN projection, those rows are sorted externally
+     *               if they don't fit into memory, see {@link ExternalSortProjector}
+     * @return the given limit. Without limit sorted rows aren't limited at all,
+     *         other rows are limited to {@link Constants#DEFAULT_SELECT_LIMIT}
+     */
+    public static int limit(@Nullable Integer limit, boolean sorted) {
+        if (limit != null) {
+            return limit;
+        }
+        return sorted ? NO_LIMIT : Constants.DEFAULT_SELECT_LIMIT;
+    }
+
+    /**
+     * @return the number of rows required to apply the limit and offset later on
+     */
+    public static int limitAndOffset(int limit, int offset) {
+        return limit == NO_LIMIT ? NO_LIMIT : limit + offset;
+    }
 }
@@ -37,9 +37,8 @@ public class BooleanColumnReference extends FieldCacheExpression<IndexFieldData,
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getBytesValues();
+    protected void loadValues(AtomicReaderContext context) {
+        values = indexFieldData().load(context).getBytesValues();
     }
 
     @Override
@@ -25,9 +25,13 @@ import io.crate.exceptions.GroupByOnArrayUnsupportedException;
 import io.crate.exceptions.ValidationException;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.RandomAccessOrds;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.fielddata.FieldData;
 import org.elasticsearch.index.fielddata.IndexOrdinalsFieldData;
 
+import java.io.IOException;
+
 public class BytesRefColumnReference extends FieldCacheExpression<IndexOrdinalsFieldData, BytesRef> {
 
     private RandomAccessOrds values;
@@ -50,9 +54,13 @@ public class BytesRefColumnReference extends FieldCacheExpression<IndexOrdinalsF
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getOrdinalsValues();
+    protected void loadValues(AtomicReaderContext context) throws IOException {
+        SortedSetDocValues docValues = sortedSetDocValues(context);
+        if (docValues == null) {
+            values = indexFieldData().load(context).getOrdinalsValues();
+        } else {
+            values = FieldData.maybeSlowRandomAccessOrds(docValues);
+        }
     }
 
     @Override
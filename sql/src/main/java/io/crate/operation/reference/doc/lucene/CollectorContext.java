@@ -31,6 +31,7 @@ public class CollectorContext {
     private SearchLookup searchLookup;
     private LuceneDocCollector.CollectorFieldsVisitor fieldsVisitor;
     private int jobSearchContextId;
+    private PartialSourceLookup partialSourceLookup;
 
     public CollectorContext() {
     }
@@ -53,6 +54,19 @@ public class CollectorContext {
         return fieldsVisitor;
     }
 
+    /**
+     * lookup of source columns which is shared by all expressions of the collector,
+     * so that the source of a document is only loaded and parsed once.
+     * Must only be used if a {@link #visitor()} is set.
+     */
+    public PartialSourceLookup partialSourceLookup() {
+        assert fieldsVisitor != null : "partialSourceLookup requires a fields visitor";
+        if (partialSourceLookup == null) {
+            partialSourceLookup = new PartialSourceLookup(fieldsVisitor);
+        }
+        return partialSourceLookup;
+    }
+
 
     public CollectorContext jobSearchContextId(int jobSearchContextId) {
         this.jobSearchContextId = jobSearchContextId;
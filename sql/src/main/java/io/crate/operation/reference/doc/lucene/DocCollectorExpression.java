@@ -58,12 +58,7 @@ public class DocCollectorExpression extends
 
         assert referenceInfo.ident().columnIdent().path().size() > 0;
         final String fqn = Joiner.on(".").join(referenceInfo.ident().columnIdent().path());
-        return new ChildDocCollectorExpression() {
-
-            @Override
-            public void startCollect(CollectorContext context) {
-                super.startCollect(context);
-            }
+        return new ChildDocCollectorExpression<Object>(fqn) {
 
             @Override
             public Object value() {
@@ -71,7 +66,7 @@ public class DocCollectorExpression extends
                 // for example:
                 //      sourceExtractor might read byte as int and
                 //      then eq(byte, byte) would get eq(byte, int) and fail
-                return referenceInfo.type().value(sourceLookup.extractValue(fqn));
+                return referenceInfo.type().value(sourceValue());
             }
         };
     }
@@ -79,21 +74,44 @@ public class DocCollectorExpression extends
     public abstract static class ChildDocCollectorExpression<ReturnType> extends
             LuceneCollectorExpression<ReturnType> implements ColumnReferenceExpression {
 
+        protected final String fqn;
         protected SourceLookup sourceLookup;
+        protected PartialSourceLookup partialSourceLookup;
+
+        protected ChildDocCollectorExpression(String fqn) {
+            this.fqn = fqn;
+        }
 
         @Override
         public void setNextDocId(int doc) {
-            sourceLookup.setNextDocId(doc);
+            if (sourceLookup != null) {
+                sourceLookup.setNextDocId(doc);
+            }
         }
 
         @Override
         public void setNextReader(AtomicReaderContext context) {
-            sourceLookup.setNextReader(context);
+            if (sourceLookup != null) {
+                sourceLookup.setNextReader(context);
+            }
         }
 
         @Override
         public void startCollect(CollectorContext context) {
-            sourceLookup = context.searchLookup().source();
+            if (context.visitor() != null) {
+                // the source is loaded by the collector and only the requested columns are parsed
+                partialSourceLookup = context.partialSourceLookup();
+                partialSourceLookup.register(fqn);
+            } else {
+                sourceLookup = context.searchLookup().source();
+            }
+        }
+
+        protected Object sourceValue() {
+            if (partialSourceLookup != null) {
+                return partialSourceLookup.get(fqn);
+            }
+            return sourceLookup.extractValue(fqn);
         }
     }
 }
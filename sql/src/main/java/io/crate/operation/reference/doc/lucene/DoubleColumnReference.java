@@ -47,9 +47,8 @@ public class DoubleColumnReference extends FieldCacheExpression<IndexNumericFiel
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getDoubleValues();
+    protected void loadValues(AtomicReaderContext context) {
+        values = indexFieldData().load(context).getDoubleValues();
     }
 
     @Override
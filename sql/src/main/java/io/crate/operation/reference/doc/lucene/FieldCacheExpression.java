@@ -22,25 +22,101 @@
 package io.crate.operation.reference.doc.lucene;
 
 import io.crate.Constants;
+import io.crate.exceptions.UnhandledServerException;
+import org.apache.lucene.index.*;
 import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexFieldDataService;
 import org.elasticsearch.index.mapper.FieldMapper;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 
+/**
+ * Expression reading the values of a column.
+ *
+ * If a string column is mapped with doc values they are read directly from disk.
+ * Otherwise (or for segments written without doc values) the values are loaded using field data,
+ * which is only done once a document of the segment is actually collected.
+ *
+ * Numeric doc values are written as binary doc values in a format private to the field mapper,
+ * so numeric columns are always read using field data, which reads them from disk as well
+ * if the column is mapped with doc values.
+ */
 public abstract class FieldCacheExpression<IFD extends IndexFieldData, ReturnType> extends
         ColumnReferenceCollectorExpression<ReturnType> {
 
     private final static String[] DEFAULT_MAPPING_TYPES = new String[]{
             Constants.DEFAULT_MAPPING_TYPE};
 
-    protected IFD indexFieldData;
+    private FieldMapper mapper;
+    private IndexFieldDataService fieldDataService;
+    private IFD indexFieldData;
+    private AtomicReaderContext readerContext;
+    private boolean valuesLoaded;
 
     public FieldCacheExpression(String columnName) {
         super(columnName);
     }
 
     public void startCollect(CollectorContext context){
-        FieldMapper mapper = context.searchContext().mapperService().smartNameFieldMapper
+        mapper = context.searchContext().mapperService().smartNameFieldMapper
                 (columnName, DEFAULT_MAPPING_TYPES);
-        indexFieldData = (IFD) context.searchContext().fieldData().getForField(mapper);
+        fieldDataService = context.searchContext().fieldData();
+        indexFieldData = null;
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        readerContext = context;
+        valuesLoaded = false;
+    }
+
+    @Override
+    public void setNextDocId(int doc) {
+        super.setNextDocId(doc);
+        if (!valuesLoaded) {
+            try {
+                loadValues(readerContext);
+            } catch (IOException e) {
+                throw new UnhandledServerException(
+                        String.format("Failed to read values of column %s", columnName), e);
+            }
+            valuesLoaded = true;
+        }
+    }
+
+    /**
+     * called before the first document of a segment is set
+     */
+    protected abstract void loadValues(AtomicReaderContext context) throws IOException;
+
+    @SuppressWarnings("unchecked")
+    protected IFD indexFieldData() {
+        if (indexFieldData == null) {
+            indexFieldData = (IFD) fieldDataService.getForField(mapper);
+        }
+        return indexFieldData;
+    }
+
+    /**
+     * @return the sorted set doc values of the column or null if field data must be used
+     */
+    @Nullable
+    protected SortedSetDocValues sortedSetDocValues(AtomicReaderContext context) throws IOException {
+        if (hasDocValues(context, FieldInfo.DocValuesType.SORTED_SET)) {
+            return DocValues.getSortedSet(context.reader(), mapper.names().indexName());
+        }
+        return null;
+    }
+
+    private boolean hasDocValues(AtomicReaderContext context, FieldInfo.DocValuesType docValuesType) {
+        if (mapper == null || !mapper.hasDocValues()) {
+            return false;
+        }
+        // segments without the field have no values at all,
+        // segments written with older versions might contain doc values of a different type
+        FieldInfo fieldInfo = context.reader().getFieldInfos().fieldInfo(mapper.names().indexName());
+        return fieldInfo == null || fieldInfo.getDocValuesType() == docValuesType;
     }
 }
@@ -47,9 +47,8 @@ public class FloatColumnReference extends FieldCacheExpression<IndexNumericField
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getDoubleValues();
+    protected void loadValues(AtomicReaderContext context) {
+        values = indexFieldData().load(context).getDoubleValues();
     }
 
     @Override
@@ -49,9 +49,8 @@ public class GeoPointColumnReference extends FieldCacheExpression<IndexGeoPointF
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getGeoPointValues();
+    protected void loadValues(AtomicReaderContext context) {
+        values = indexFieldData().load(context).getGeoPointValues();
     }
 
     @Override
@@ -53,9 +53,8 @@ public class IntegerColumnReference extends FieldCacheExpression<IndexNumericFie
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getLongValues();
+    protected void loadValues(AtomicReaderContext context) {
+        values = indexFieldData().load(context).getLongValues();
     }
 
     @Override
@@ -55,8 +55,7 @@ public class IpColumnReference extends FieldCacheExpression<IndexNumericFieldDat
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getLongValues();
+    protected void loadValues(AtomicReaderContext context) {
+        values = indexFieldData().load(context).getLongValues();
     }
 }
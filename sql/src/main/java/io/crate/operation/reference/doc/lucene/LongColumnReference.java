@@ -47,9 +47,8 @@ public class LongColumnReference extends FieldCacheExpression<IndexNumericFieldD
     }
 
     @Override
-    public void setNextReader(AtomicReaderContext context) {
-        super.setNextReader(context);
-        values = indexFieldData.load(context).getLongValues();
+    protected void loadValues(AtomicReaderContext context) {
+        values = indexFieldData().load(context).getLongValues();
     }
 
     @Override
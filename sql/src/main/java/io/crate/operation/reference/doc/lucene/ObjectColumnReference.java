@@ -30,6 +30,7 @@ import java.util.Map;
 public class ObjectColumnReference extends ColumnReferenceCollectorExpression<Map<String, Object>> {
 
     protected SourceLookup sourceLookup;
+    protected PartialSourceLookup partialSourceLookup;
 
     public ObjectColumnReference(String columnName) {
         super(columnName);
@@ -37,22 +38,34 @@ public class ObjectColumnReference extends ColumnReferenceCollectorExpression<Ma
 
     @Override
     public void setNextDocId(int doc) {
-        sourceLookup.setNextDocId(doc);
+        if (sourceLookup != null) {
+            sourceLookup.setNextDocId(doc);
+        }
     }
 
     @Override
     public void setNextReader(AtomicReaderContext context) {
-        sourceLookup.setNextReader(context);
+        if (sourceLookup != null) {
+            sourceLookup.setNextReader(context);
+        }
     }
 
     @Override
     public void startCollect(CollectorContext context) {
-        sourceLookup = context.searchContext().lookup().source();
+        if (context.visitor() != null) {
+            partialSourceLookup = context.partialSourceLookup();
+            partialSourceLookup.register(columnName);
+        } else {
+            sourceLookup = context.searchLookup().source();
+        }
     }
 
 
     @Override
     public Map<String, Object> value() {
+        if (partialSourceLookup != null) {
+            return (Map<String, Object>) partialSourceLookup.get(columnName);
+        }
         return (Map<String, Object>)sourceLookup.extractValue(columnName);
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.reference.doc.lucene;
+
+import io.crate.operation.collect.LuceneDocCollector;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Extracts the values of the registered columns from the _source loaded by the fields visitor of a collector.
+ *
+ * The source is parsed with a streaming parser which only builds the values of the registered columns
+ * and skips all other subtrees without materializing them. The source of a document is parsed at most once,
+ * no matter how many columns are extracted from it.
+ *
+ * Values are extracted the same way as {@link XContentMapValues#extractValue(String, Map)} does,
+ * so the columns of objects inside arrays are returned as lists.
+ */
+public class PartialSourceLookup {
+
+    private static final String HOLDER_KEY = "_";
+
+    private final LuceneDocCollector.CollectorFieldsVisitor visitor;
+    private final PathNode root = new PathNode();
+    private final Map<String, Object> values = new HashMap<>();
+    private BytesReference parsedSource;
+
+    public PartialSourceLookup(LuceneDocCollector.CollectorFieldsVisitor visitor) {
+        this.visitor = visitor;
+    }
+
+    /**
+     * register a column which is extracted from the source
+     *
+     * @param fqn the dotted path of the column
+     */
+    public void register(String fqn) {
+        visitor.required(true);
+        PathNode node = root;
+        for (String name : fqn.split("\\.")) {
+            PathNode child = node.children.get(name);
+            if (child == null) {
+                child = new PathNode();
+                node.children.put(name, child);
+            }
+            node = child;
+        }
+        node.fqn = fqn;
+    }
+
+    /**
+     * @return the value of a registered column of the document currently loaded by the visitor
+     */
+    @Nullable
+    public Object get(String fqn) {
+        BytesReference source = visitor.source();
+        if (source != parsedSource) {
+            // the visitor loads a new source instance for every document
+            parse(source);
+        }
+        return values.get(fqn);
+    }
+
+    private void parse(@Nullable BytesReference source) {
+        values.clear();
+        parsedSource = source;
+        if (source == null) {
+            return;
+        }
+        try (XContentParser parser = XContentHelper.createParser(source)) {
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                parseObject(parser, root);
+            }
+        } catch (IOException e) {
+            throw new ElasticsearchParseException("failed to parse source", e);
+        }
+    }
+
+    private void parseObject(XContentParser parser, PathNode node) throws IOException {
+        while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            PathNode child = node.children.get(parser.currentName());
+            XContentParser.Token token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+            } else if (child.fqn != null) {
+                Object value = readValue(parser, token);
+                values.put(child.fqn, value);
+                extractChildren(child, value);
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                parseObject(parser, child);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                // the columns of objects inside an array are collected into lists
+                extractChildren(child, parser.list());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * extract the registered columns below the node from the already parsed value of the node
+     */
+    private void extractChildren(PathNode node, @Nullable Object value) {
+        if (value == null || node.children.isEmpty()) {
+            return;
+        }
+        extractChildren(node, Collections.singletonMap(HOLDER_KEY, value), HOLDER_KEY);
+    }
+
+    private void extractChildren(PathNode node, Map<String, Object> holder, String path) {
+        for (Map.Entry<String, PathNode> entry : node.children.entrySet()) {
+            PathNode child = entry.getValue();
+            String childPath = path + "." + entry.getKey();
+            if (child.fqn != null) {
+                values.put(child.fqn, XContentMapValues.extractValue(childPath, holder));
+            }
+            extractChildren(child, holder, childPath);
+        }
+    }
+
+    @Nullable
+    private static Object readValue(XContentParser parser, XContentParser.Token token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                return parser.list();
+            case VALUE_STRING:
+                return parser.text();
+            case VALUE_NUMBER:
+                return parser.numberValue();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.binaryValue();
+            default:
+                return null;
+        }
+    }
+
+    private static class PathNode {
+
+        private final Map<String, PathNode> children = new HashMap<>();
+        // set if the path up to this node is a registered column
+        @Nullable
+        private String fqn;
+    }
+}
@@ -164,5 +164,8 @@ public class ClusterSettingsExpression extends SysClusterObjectReference {
         childImplementations.put(
                 CrateSettings.BULK.name(),
                 new NestedSettingExpression(CrateSettings.BULK, values));
+        childImplementations.put(
+                CrateSettings.QUERY.name(),
+                new NestedSettingExpression(CrateSettings.QUERY, values));
     }
 }
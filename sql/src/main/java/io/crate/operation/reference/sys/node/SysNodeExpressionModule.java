@@ -61,5 +61,6 @@ public class SysNodeExpressionModule extends AbstractModule {
         bindExpr(NodeNetworkExpression.NAME, NodeNetworkExpression.class);
         bindExpr(NodeOsExpression.NAME, NodeOsExpression.class);
         bindExpr(NodeProcessExpression.NAME, NodeProcessExpression.class);
+        bindExpr(NodeResultCacheExpression.NAME, NodeResultCacheExpression.class);
     }
 }
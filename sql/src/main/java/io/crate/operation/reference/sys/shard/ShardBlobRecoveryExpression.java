@@ -0,0 +1,57 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.reference.sys.shard;
+
+import io.crate.metadata.shard.ShardReferenceImplementation;
+import io.crate.operation.reference.NestedObjectExpression;
+
+import java.util.Map;
+
+/**
+ * Blob recovery statistics are only collected for blob shards,
+ * the column and its children are always null for other shards.
+ */
+public class ShardBlobRecoveryExpression extends NestedObjectExpression implements ShardReferenceImplementation<Map<String, Object>> {
+
+    public static final String NAME = "blob_recovery";
+
+    public static final String FILES = "files";
+    public static final String BYTES = "bytes";
+
+    public ShardBlobRecoveryExpression() {
+        childImplementations.put(FILES, new NullExpression());
+        childImplementations.put(BYTES, new NullExpression());
+    }
+
+    @Override
+    public Map<String, Object> value() {
+        return null;
+    }
+
+    static class NullExpression extends SysShardExpression<Long> {
+        @Override
+        public Long value() {
+            return null;
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class SysShardExpressionModule extends AbstractModule {
             .put(new ColumnIdent(ShardSchemaNameExpression.NAME), ShardSchemaNameExpression.class)
             .put(new ColumnIdent(ShardPartitionIdentExpression.NAME), ShardPartitionIdentExpression.class)
             .put(new ColumnIdent(ShardPartitionOrphanedExpression.NAME), ShardPartitionOrphanedExpression.class)
+            .put(new ColumnIdent(ShardBlobRecoveryExpression.NAME), ShardBlobRecoveryExpression.class)
             .build();
 
 
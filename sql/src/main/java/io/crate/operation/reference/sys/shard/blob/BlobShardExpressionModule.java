@@ -61,6 +61,7 @@ public class BlobShardExpressionModule extends AbstractModule {
             binder.addBinding(infos.get(new ColumnIdent(BlobShardTableNameExpression.NAME)).ident()).to(BlobShardTableNameExpression.class).asEagerSingleton();
             binder.addBinding(infos.get(new ColumnIdent(BlobShardPartitionIdentExpression.NAME)).ident()).to(BlobShardPartitionIdentExpression.class).asEagerSingleton();
             binder.addBinding(infos.get(new ColumnIdent(BlobShardPartitionOrphanedExpression.NAME)).ident()).to(BlobShardPartitionOrphanedExpression.class).asEagerSingleton();
+            binder.addBinding(infos.get(new ColumnIdent(BlobShardBlobRecoveryExpression.NAME)).ident()).to(BlobShardBlobRecoveryExpression.class).asEagerSingleton();
 
         }
     }
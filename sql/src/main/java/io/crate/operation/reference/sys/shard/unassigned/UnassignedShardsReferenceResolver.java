@@ -1,11 +1,13 @@
 package io.crate.operation.reference.sys.shard.unassigned;
 
+import io.crate.metadata.ColumnIdent;
 import io.crate.metadata.ReferenceIdent;
 import io.crate.metadata.ReferenceImplementation;
 import io.crate.metadata.ReferenceInfo;
 import io.crate.metadata.shard.unassigned.UnassignedShardCollectorExpression;
 import io.crate.metadata.sys.SysClusterTableInfo;
 import io.crate.metadata.sys.SysNodesTableInfo;
+import io.crate.metadata.sys.SysShardsTableInfo;
 import io.crate.operation.reference.DocLevelReferenceResolver;
 import io.crate.operation.reference.sys.cluster.SysClusterExpression;
 import io.crate.operation.reference.sys.shard.*;
@@ -86,6 +88,11 @@ public class UnassignedShardsReferenceResolver implements DocLevelReferenceResol
                 return this.row.orphanedPartition();
             }
         });
+        register(nullExpression(SysShardsTableInfo.INFOS.get(new ColumnIdent(ShardBlobRecoveryExpression.NAME))));
+        register(nullExpression(SysShardsTableInfo.INFOS.get(
+                new ColumnIdent(ShardBlobRecoveryExpression.NAME, ShardBlobRecoveryExpression.FILES))));
+        register(nullExpression(SysShardsTableInfo.INFOS.get(
+                new ColumnIdent(ShardBlobRecoveryExpression.NAME, ShardBlobRecoveryExpression.BYTES))));
         register(new UnassignedShardCollectorExpression(SysNodesTableInfo.SYS_COL_NAME) {
             @Override
             public Object value() {
@@ -166,7 +166,7 @@ public class DateTruncFunction extends Scalar<Long, Object> {
         return truncate(tzRounding, TimestampType.INSTANCE.value(value));
     }
 
-    protected Rounding rounding(BytesRef interval, BytesRef timeZoneString) {
+    public Rounding rounding(BytesRef interval, BytesRef timeZoneString) {
         DateTimeUnit intervalAsUnit = intervalAsUnit(interval);
         DateTimeZone timeZone = parseZone(timeZoneString);
 
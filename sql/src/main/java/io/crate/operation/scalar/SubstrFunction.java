@@ -75,7 +75,7 @@ public class SubstrFunction extends Scalar<BytesRef, Object> implements DynamicF
         return evaluate(BytesRefs.toBytesRef(val), ((Number) args[1].value()).intValue());
     }
 
-    private static BytesRef evaluate(@Nonnull BytesRef inputStr, int beginIdx) {
+    public static BytesRef evaluate(@Nonnull BytesRef inputStr, int beginIdx) {
         final int startPos = Math.max(0, beginIdx - 1);
         if (startPos > inputStr.length - 1) {
             return EMPTY_BYTES_REF;
@@ -84,7 +84,7 @@ public class SubstrFunction extends Scalar<BytesRef, Object> implements DynamicF
         return substring(inputStr, startPos, endPos);
     }
 
-    private static BytesRef evaluate(@Nonnull BytesRef inputStr, int beginIdx, int len) {
+    public static BytesRef evaluate(@Nonnull BytesRef inputStr, int beginIdx, int len) {
         final int startPos = Math.max(0, beginIdx - 1);
         if (startPos > inputStr.length - 1) {
             return EMPTY_BYTES_REF;
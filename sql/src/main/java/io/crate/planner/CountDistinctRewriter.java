@@ -0,0 +1,112 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.planner;
+
+import io.crate.analyze.HavingClause;
+import io.crate.analyze.QuerySpec;
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionInfo;
+import io.crate.operation.aggregation.impl.ApproxCountDistinctAggregation;
+import io.crate.operation.aggregation.impl.CollectSetAggregation;
+import io.crate.operation.scalar.CollectionCountFunction;
+import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.Symbol;
+import io.crate.planner.symbol.SymbolVisitor;
+import io.crate.types.DataTypes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces <code>count(DISTINCT x)</code>, which is analyzed as <code>collection_count(collect_set(x))</code>,
+ * with <code>approx_count_distinct(x)</code>.
+ *
+ * The symbols of the query spec are replaced in place, a count which is used more than once
+ * (e.g. in the outputs and the order by) is replaced by the same function instance.
+ */
+class CountDistinctRewriter extends SymbolVisitor<Map<Function, Function>, Symbol> {
+
+    private static final CountDistinctRewriter INSTANCE = new CountDistinctRewriter();
+
+    static void rewrite(QuerySpec querySpec) {
+        if (!querySpec.hasAggregates()) {
+            return;
+        }
+        Map<Function, Function> replaced = new HashMap<>();
+        INSTANCE.rewriteInPlace(querySpec.outputs(), replaced);
+        if (querySpec.orderBy() != null) {
+            INSTANCE.rewriteInPlace(querySpec.orderBy().orderBySymbols(), replaced);
+        }
+        HavingClause having = querySpec.having();
+        if (having != null && having.hasQuery()) {
+            querySpec.having(new HavingClause(INSTANCE.process(having.query(), replaced)));
+        }
+    }
+
+    private void rewriteInPlace(List<Symbol> symbols, Map<Function, Function> replaced) {
+        for (int i = 0; i < symbols.size(); i++) {
+            symbols.set(i, process(symbols.get(i), replaced));
+        }
+    }
+
+    @Override
+    public Symbol visitFunction(Function function, Map<Function, Function> replaced) {
+        if (isCountDistinct(function)) {
+            Function approxCount = replaced.get(function);
+            if (approxCount == null) {
+                Function collectSet = (Function) function.arguments().get(0);
+                approxCount = new Function(
+                        new FunctionInfo(
+                                new FunctionIdent(ApproxCountDistinctAggregation.NAME,
+                                        collectSet.info().ident().argumentTypes()),
+                                DataTypes.LONG,
+                                FunctionInfo.Type.AGGREGATE),
+                        new ArrayList<>(collectSet.arguments()));
+                replaced.put(function, approxCount);
+            }
+            return approxCount;
+        }
+        List<Symbol> arguments = function.arguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            function.setArgument(i, process(arguments.get(i), replaced));
+        }
+        return function;
+    }
+
+    private static boolean isCountDistinct(Function function) {
+        if (!function.info().ident().name().equals(CollectionCountFunction.NAME)
+            || function.arguments().size() != 1
+            || !(function.arguments().get(0) instanceof Function)) {
+            return false;
+        }
+        Function argument = (Function) function.arguments().get(0);
+        return argument.info().ident().name().equals(CollectSetAggregation.NAME);
+    }
+
+    @Override
+    protected Symbol visitSymbol(Symbol symbol, Map<Function, Function> replaced) {
+        return symbol;
+    }
+}
@@ -34,6 +34,7 @@ import io.crate.metadata.table.TableInfo;
 import io.crate.planner.consumer.OrderByPositionVisitor;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.DQLPlanNode;
+import io.crate.planner.node.dql.HashJoinNode;
 import io.crate.planner.node.dql.MergeNode;
 import io.crate.planner.projection.Projection;
 import io.crate.planner.symbol.InputColumn;
@@ -144,6 +145,14 @@ public class PlanNodeBuilder {
         }
     }
 
+    /**
+     * calculates the outputTypes using the projections and the types of the joined rows.
+     * must be called after projections have been set.
+     */
+    public static void setOutputTypes(HashJoinNode node) {
+        node.outputTypes(Planner.extractDataTypes(node.projections(), node.inputTypes()));
+    }
+
     /**
      * sets the inputTypes from the previousNode's outputTypes
      * and calculates the outputTypes using the projections and input types.
@@ -79,4 +79,8 @@ public class PlanVisitor<C, R> {
     public R visitCountPlan(CountPlan countPlan, C context) {
         return visitPlan(countPlan, context);
     }
+
+    public R visitHashJoin(HashJoin plan, C context) {
+        return visitPlan(plan, context);
+    }
 }
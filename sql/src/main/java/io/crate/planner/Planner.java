@@ -27,12 +27,15 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import io.crate.analyze.*;
+import io.crate.analyze.relations.AnalyzedRelation;
 import io.crate.analyze.relations.PlannedAnalyzedRelation;
+import io.crate.analyze.relations.QueriedRelation;
 import io.crate.analyze.relations.TableRelation;
 import io.crate.core.collections.TreeMapBuilder;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.metadata.*;
 import io.crate.metadata.doc.DocSysColumns;
+import io.crate.metadata.settings.CrateSettings;
 import io.crate.metadata.table.TableInfo;
 import io.crate.operation.aggregation.impl.CountAggregation;
 import io.crate.planner.consumer.ConsumerContext;
@@ -175,7 +178,15 @@ public class Planner extends AnalyzedStatementVisitor<Planner.Context, Plan> {
 
     @Override
     protected Plan visitSelectStatement(SelectAnalyzedStatement statement, Context context) {
-        return consumingPlanner.plan(statement.relation(), context);
+        AnalyzedRelation relation = statement.relation();
+        if (relation instanceof QueriedRelation && approximateCountDistinct()) {
+            CountDistinctRewriter.rewrite(((QueriedRelation) relation).querySpec());
+        }
+        return consumingPlanner.plan(relation, context);
+    }
+
+    private boolean approximateCountDistinct() {
+        return CrateSettings.QUERY_APPROXIMATE_COUNT_DISTINCT.extract(clusterService.state().metaData().settings());
     }
 
     @Override
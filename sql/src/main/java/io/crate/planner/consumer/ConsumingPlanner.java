@@ -48,6 +48,7 @@ public class ConsumingPlanner {
         consumers.add(new ESGetConsumer());
         consumers.add(new QueryThenFetchConsumer());
         consumers.add(new InsertFromSubQueryConsumer(analysisMetaData));
+        consumers.add(new HashJoinConsumer(analysisMetaData));
         consumers.add(new QueryAndFetchConsumer());
     }
 
@@ -21,11 +21,9 @@
 
 package io.crate.planner.consumer;
 
-import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import io.crate.Constants;
 import io.crate.analyze.HavingClause;
 import io.crate.analyze.InsertFromSubQueryAnalyzedStatement;
 import io.crate.analyze.OrderBy;
@@ -35,6 +33,7 @@ import io.crate.analyze.relations.AnalyzedRelationVisitor;
 import io.crate.exceptions.VersionInvalidException;
 import io.crate.metadata.Routing;
 import io.crate.metadata.table.TableInfo;
+import io.crate.operation.projectors.TopN;
 import io.crate.planner.PlanNodeBuilder;
 import io.crate.planner.node.NoopPlannedAnalyzedRelation;
 import io.crate.planner.node.dql.CollectNode;
@@ -153,8 +152,8 @@ public class DistributedGroupByConsumer implements Consumer {
                         collectOutputs,
                         orderBy,
                         0,
-                        MoreObjects.firstNonNull(table.querySpec().limit(),
-                                Constants.DEFAULT_SELECT_LIMIT) + table.querySpec().offset(),
+                        TopN.limitAndOffset(TopN.limit(table.querySpec().limit(), orderBy != null),
+                                table.querySpec().offset()),
                         table.querySpec().outputs()));
             }
             MergeNode mergeNode = PlanNodeBuilder.distributedMerge(
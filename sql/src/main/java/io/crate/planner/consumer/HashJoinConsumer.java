@@ -0,0 +1,507 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner.consumer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import io.crate.analyze.*;
+import io.crate.analyze.relations.AnalyzedRelation;
+import io.crate.analyze.relations.AnalyzedRelationVisitor;
+import io.crate.analyze.relations.PlannedAnalyzedRelation;
+import io.crate.analyze.relations.TableRelation;
+import io.crate.exceptions.UnsupportedFeatureException;
+import io.crate.exceptions.ValidationException;
+import io.crate.metadata.OutputName;
+import io.crate.metadata.table.TableInfo;
+import io.crate.operation.operator.AndOperator;
+import io.crate.operation.operator.EqOperator;
+import io.crate.operation.projectors.TopN;
+import io.crate.planner.PlanNodeBuilder;
+import io.crate.planner.Planner;
+import io.crate.planner.node.NoopPlannedAnalyzedRelation;
+import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.node.dql.HashJoin;
+import io.crate.planner.node.dql.HashJoinNode;
+import io.crate.planner.node.dql.MergeNode;
+import io.crate.planner.node.dql.QueryAndFetch;
+import io.crate.planner.projection.FilterProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.projection.TopNProjection;
+import io.crate.planner.symbol.*;
+import io.crate.sql.tree.QualifiedName;
+import io.crate.types.DataType;
+
+import java.util.*;
+
+/**
+ * plans an inner equi join of two tables as {@link HashJoin}.
+ *
+ * The conditions of the where clause are split up:
+ * <ul>
+ * <li>conditions which only reference one table are pushed down into the query of that table</li>
+ * <li><code>left = right</code> conditions, each side referencing a different table, become join keys</li>
+ * <li>everything else is evaluated on the joined rows</li>
+ * </ul>
+ *
+ * Both tables are planned like a normal select on a single table whose collect nodes push their rows
+ * partitioned by the first join key to the nodes executing the {@link HashJoinNode},
+ * tables which are collected on the handler itself can't be joined.
+ * The hash table is built from the right table, the rows of the left table are streamed against it.
+ * The joined rows are filtered and limited on those nodes and merged on the handler.
+ */
+public class HashJoinConsumer implements Consumer {
+
+    private final Visitor visitor;
+
+    public HashJoinConsumer(AnalysisMetaData analysisMetaData) {
+        visitor = new Visitor(analysisMetaData);
+    }
+
+    @Override
+    public boolean consume(AnalyzedRelation rootRelation, ConsumerContext context) {
+        Context ctx = new Context(context);
+        context.rootRelation(visitor.process(context.rootRelation(), ctx));
+        return ctx.result;
+    }
+
+    private static class Context {
+        ConsumerContext consumerContext;
+        boolean result = false;
+
+        public Context(ConsumerContext context) {
+            this.consumerContext = context;
+        }
+    }
+
+    private static class Visitor extends AnalyzedRelationVisitor<Context, AnalyzedRelation> {
+
+        private final AnalysisMetaData analysisMetaData;
+        private final QueryAndFetchConsumer queryAndFetchConsumer = new QueryAndFetchConsumer();
+
+        public Visitor(AnalysisMetaData analysisMetaData) {
+            this.analysisMetaData = analysisMetaData;
+        }
+
+        @Override
+        public AnalyzedRelation visitMultiSourceSelect(MultiSourceSelect multiSourceSelect, Context context) {
+            QuerySpec querySpec = multiSourceSelect.querySpec();
+            if (multiSourceSelect.sources().size() != 2) {
+                context.consumerContext.validationException(new UnsupportedFeatureException(
+                        "Joins are only supported between exactly two tables"));
+                return multiSourceSelect;
+            }
+            if (querySpec.hasAggregates() || (querySpec.groupBy() != null && !querySpec.groupBy().isEmpty())
+                || querySpec.having() != null) {
+                context.consumerContext.validationException(new UnsupportedFeatureException(
+                        "Aggregations and GROUP BY are not supported on joins"));
+                return multiSourceSelect;
+            }
+            if (querySpec.where().noMatch()) {
+                context.result = true;
+                return new NoopPlannedAnalyzedRelation(multiSourceSelect);
+            }
+
+            Iterator<Map.Entry<QualifiedName, AnalyzedRelation>> sources = multiSourceSelect.sources().entrySet().iterator();
+            Side left = new Side(sources.next());
+            Side right = new Side(sources.next());
+
+            List<Symbol> postJoinConditions = new ArrayList<>();
+            List<Symbol> conditions = new ArrayList<>();
+            if (querySpec.where().hasQuery()) {
+                splitConjunctions(querySpec.where().query(), conditions);
+            }
+            for (Symbol condition : conditions) {
+                Set<AnalyzedRelation> relations = RELATION_COLLECTOR.collect(condition);
+                if (relations.size() < 2) {
+                    side(left, right, relations).conditions.add(condition);
+                } else if (!addJoinKey(condition, left, right)) {
+                    if (condition instanceof MatchPredicate) {
+                        context.consumerContext.validationException(new UnsupportedFeatureException(
+                                "Cannot use match predicate on columns of different tables"));
+                        return multiSourceSelect;
+                    }
+                    postJoinConditions.add(condition);
+                }
+            }
+            if (left.outputs.isEmpty()) {
+                context.consumerContext.validationException(new UnsupportedFeatureException(
+                        "Joins are only supported with an equality condition between both tables"));
+                return multiSourceSelect;
+            }
+            int[] leftKeyColumns = keyColumns(left.outputs.size());
+            int[] rightKeyColumns = keyColumns(right.outputs.size());
+
+            FieldCollector fieldCollector = new FieldCollector(left, right);
+            fieldCollector.collect(querySpec.outputs());
+            fieldCollector.collect(postJoinConditions);
+            OrderBy orderBy = querySpec.orderBy();
+            if (orderBy != null) {
+                fieldCollector.collect(orderBy.orderBySymbols());
+            }
+
+            // symbols evaluated on the joined rows must be created before the tables are planned,
+            // planning resolves the fields of the table queries in place
+            InputColumnMapper inputColumnMapper = new InputColumnMapper(left, right);
+            List<Symbol> outputs = inputColumnMapper.map(querySpec.outputs());
+            Symbol postJoinCondition = postJoinConditions.isEmpty() ? null
+                    : inputColumnMapper.process(joinConjunctions(postJoinConditions), null);
+            List<Symbol> orderByInputs = orderBy == null ? null
+                    : inputColumnMapper.map(orderBy.orderBySymbols());
+
+            CollectNode leftCollectNode = plan(left, context);
+            if (leftCollectNode == null) {
+                return noMatchOrUnchanged(multiSourceSelect, context);
+            }
+            CollectNode rightCollectNode = plan(right, context);
+            if (rightCollectNode == null) {
+                return noMatchOrUnchanged(multiSourceSelect, context);
+            }
+
+            Planner.Context plannerContext = context.consumerContext.plannerContext();
+            // both sides must use the same order of downstream nodes to send rows with equal keys to the same node
+            Set<String> joinNodes = new TreeSet<>(leftCollectNode.executionNodes());
+            joinNodes.addAll(rightCollectNode.executionNodes());
+            int leftExecutionNodeId = plannerContext.nextExecutionNodeId();
+            int rightExecutionNodeId = plannerContext.nextExecutionNodeId();
+            HashJoinNode hashJoinNode = new HashJoinNode(leftExecutionNodeId, rightExecutionNodeId, "hash join",
+                    leftCollectNode.executionNodes().size(), rightCollectNode.executionNodes().size(),
+                    leftKeyColumns, rightKeyColumns, left.outputTypes(), right.outputTypes());
+            hashJoinNode.executionNodes(joinNodes);
+            leftCollectNode.downstreamNodes(new ArrayList<>(joinNodes));
+            leftCollectNode.downstreamExecutionNodeId(leftExecutionNodeId);
+            rightCollectNode.downstreamNodes(new ArrayList<>(joinNodes));
+            rightCollectNode.downstreamExecutionNodeId(rightExecutionNodeId);
+
+            List<Symbol> joinedColumns = inputColumnMapper.joinedColumns();
+            List<Projection> joinProjections = new ArrayList<>(2);
+            if (postJoinCondition != null) {
+                joinProjections.add(new FilterProjection(postJoinCondition, joinedColumns));
+            }
+            int limit = TopN.limit(querySpec.limit(), orderBy != null);
+            // every join node emits up to limit + offset rows, the order by and outputs are applied on the handler
+            TopNProjection joinTopN;
+            if (orderBy == null) {
+                joinTopN = new TopNProjection(TopN.limitAndOffset(limit, querySpec.offset()), 0);
+            } else {
+                joinTopN = new TopNProjection(TopN.limitAndOffset(limit, querySpec.offset()), 0,
+                        orderByInputs, orderBy.reverseFlags(), orderBy.nullsFirst());
+            }
+            joinTopN.outputs(joinedColumns);
+            joinProjections.add(joinTopN);
+            hashJoinNode.projections(joinProjections);
+            PlanNodeBuilder.setOutputTypes(hashJoinNode);
+
+            TopNProjection topN;
+            if (orderBy == null) {
+                topN = new TopNProjection(limit, querySpec.offset());
+            } else {
+                topN = new TopNProjection(limit, querySpec.offset(),
+                        orderByInputs, orderBy.reverseFlags(), orderBy.nullsFirst());
+            }
+            topN.outputs(outputs);
+            MergeNode localMergeNode = PlanNodeBuilder.localMerge(
+                    ImmutableList.<Projection>of(topN), hashJoinNode, plannerContext);
+            localMergeNode.executionNodes(Sets.newHashSet(plannerContext.clusterService().localNode().id()));
+            hashJoinNode.downstreamNodes(localMergeNode.executionNodes());
+            hashJoinNode.downstreamExecutionNodeId(localMergeNode.executionNodeId());
+
+            HashJoin hashJoin = new HashJoin(leftCollectNode, rightCollectNode, hashJoinNode, localMergeNode);
+            context.result = true;
+            return hashJoin;
+        }
+
+        @Override
+        protected AnalyzedRelation visitAnalyzedRelation(AnalyzedRelation relation, Context context) {
+            return relation;
+        }
+
+        /**
+         * @return the collect node of the table or null if the table query can't match or the table can't be planned,
+         *         in which case {@link #noMatchOrUnchanged(MultiSourceSelect, Context)} takes over
+         */
+        private CollectNode plan(Side side, Context context) {
+            List<OutputName> outputNames = new ArrayList<>(side.outputs.size());
+            for (Symbol output : side.outputs) {
+                outputNames.add(new OutputName(SymbolFormatter.format(output)));
+            }
+            WhereClause whereClause = side.conditions.isEmpty()
+                    ? WhereClause.MATCH_ALL : new WhereClause(joinConjunctions(side.conditions), null, null);
+            QueriedTable queriedTable = new QueriedTable(side.name, side.relation, outputNames,
+                    new QuerySpec().outputs(side.outputs).where(whereClause)).normalize(analysisMetaData);
+            if (queriedTable.querySpec().where().noMatch()) {
+                context.result = true;
+                return null;
+            }
+
+            ConsumerContext consumerContext = new ConsumerContext(queriedTable, context.consumerContext.plannerContext());
+            queryAndFetchConsumer.consume(queriedTable, consumerContext);
+            AnalyzedRelation plannedRelation = consumerContext.rootRelation();
+            if (plannedRelation instanceof QueryAndFetch) {
+                CollectNode collectNode = ((QueryAndFetch) plannedRelation).collectNode();
+                if (collectNode.executionNodes().isEmpty()) {
+                    // no shards to collect from, nothing can be joined
+                    context.result = true;
+                    return null;
+                }
+                if (!collectNode.executionNodes().contains(TableInfo.NULL_NODE_ID)) {
+                    assert collectNode.projections().isEmpty() : "the rows of a table must be collected unlimited";
+                    return collectNode;
+                }
+            }
+            ValidationException validationException = consumerContext.validationException();
+            context.consumerContext.validationException(validationException == null
+                    ? new UnsupportedFeatureException("Cannot join " + side.relation.tableInfo().ident().fqn())
+                    : validationException);
+            return null;
+        }
+
+        private static AnalyzedRelation noMatchOrUnchanged(MultiSourceSelect multiSourceSelect, Context context) {
+            if (context.result) {
+                return new NoopPlannedAnalyzedRelation(multiSourceSelect);
+            }
+            return multiSourceSelect;
+        }
+
+        private static Side side(Side left, Side right, Set<AnalyzedRelation> relations) {
+            if (relations.isEmpty() || relations.contains(left.relation)) {
+                return left;
+            }
+            assert relations.contains(right.relation) : "condition must reference one of the joined tables";
+            return right;
+        }
+
+        /**
+         * add the arguments of the condition as key columns if it is an equality between
+         * an expression on the left and an expression on the right table.
+         */
+        private static boolean addJoinKey(Symbol condition, Side left, Side right) {
+            if (!(condition instanceof Function)
+                || !((Function) condition).info().ident().name().equals(EqOperator.NAME)) {
+                return false;
+            }
+            List<Symbol> arguments = ((Function) condition).arguments();
+            Set<AnalyzedRelation> firstRelations = RELATION_COLLECTOR.collect(arguments.get(0));
+            Set<AnalyzedRelation> secondRelations = RELATION_COLLECTOR.collect(arguments.get(1));
+            if (firstRelations.size() != 1 || secondRelations.size() != 1) {
+                return false;
+            }
+            if (firstRelations.contains(left.relation) && secondRelations.contains(right.relation)) {
+                left.outputs.add(arguments.get(0));
+                right.outputs.add(arguments.get(1));
+                return true;
+            }
+            if (firstRelations.contains(right.relation) && secondRelations.contains(left.relation)) {
+                left.outputs.add(arguments.get(1));
+                right.outputs.add(arguments.get(0));
+                return true;
+            }
+            return false;
+        }
+
+        private static int[] keyColumns(int numKeys) {
+            int[] keyColumns = new int[numKeys];
+            for (int i = 0; i < numKeys; i++) {
+                keyColumns[i] = i;
+            }
+            return keyColumns;
+        }
+
+        private static void splitConjunctions(Symbol query, List<Symbol> conjunctions) {
+            if (query instanceof Function && ((Function) query).info().ident().name().equals(AndOperator.NAME)) {
+                for (Symbol argument : ((Function) query).arguments()) {
+                    splitConjunctions(argument, conjunctions);
+                }
+            } else {
+                conjunctions.add(query);
+            }
+        }
+
+        private static Symbol joinConjunctions(List<Symbol> conjunctions) {
+            Symbol query = conjunctions.get(0);
+            for (int i = 1; i < conjunctions.size(); i++) {
+                query = new Function(AndOperator.INFO, Arrays.asList(query, conjunctions.get(i)));
+            }
+            return query;
+        }
+    }
+
+    /**
+     * one table of the join, the join keys are the first outputs
+     */
+    private static class Side {
+
+        final QualifiedName name;
+        final TableRelation relation;
+        final List<Symbol> outputs = new ArrayList<>();
+        final List<Symbol> conditions = new ArrayList<>();
+
+        Side(Map.Entry<QualifiedName, AnalyzedRelation> source) {
+            this.name = source.getKey();
+            this.relation = (TableRelation) source.getValue();
+        }
+
+        List<DataType> outputTypes() {
+            List<DataType> types = new ArrayList<>(outputs.size());
+            for (Symbol output : outputs) {
+                types.add(output.valueType());
+            }
+            return types;
+        }
+    }
+
+    private static final RelationCollector RELATION_COLLECTOR = new RelationCollector();
+
+    /**
+     * collects the relations referenced by a symbol.
+     * Relations are compared by identity, a table joined with itself results in two different relations.
+     */
+    private static class RelationCollector extends SymbolVisitor<Set<AnalyzedRelation>, Void> {
+
+        Set<AnalyzedRelation> collect(Symbol symbol) {
+            Set<AnalyzedRelation> relations = Collections.newSetFromMap(new IdentityHashMap<AnalyzedRelation, Boolean>());
+            process(symbol, relations);
+            return relations;
+        }
+
+        @Override
+        public Void visitField(Field field, Set<AnalyzedRelation> context) {
+            context.add(field.relation());
+            return null;
+        }
+
+        @Override
+        public Void visitFunction(Function symbol, Set<AnalyzedRelation> context) {
+            for (Symbol argument : symbol.arguments()) {
+                process(argument, context);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitMatchPredicate(MatchPredicate matchPredicate, Set<AnalyzedRelation> context) {
+            for (Field field : matchPredicate.identBoostMap().keySet()) {
+                context.add(field.relation());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * adds all fields which are needed to evaluate symbols on the joined rows to the outputs of their table
+     */
+    private static class FieldCollector extends SymbolVisitor<Void, Void> {
+
+        private final Side left;
+        private final Side right;
+
+        FieldCollector(Side left, Side right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        void collect(List<Symbol> symbols) {
+            for (Symbol symbol : symbols) {
+                process(symbol, null);
+            }
+        }
+
+        @Override
+        public Void visitField(Field field, Void context) {
+            Side side = field.relation() == left.relation ? left : right;
+            if (!side.outputs.contains(field)) {
+                side.outputs.add(field);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitFunction(Function symbol, Void context) {
+            for (Symbol argument : symbol.arguments()) {
+                process(argument, context);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * creates copies of symbols in which fields are replaced by input columns pointing to the joined rows
+     */
+    private static class InputColumnMapper extends SymbolVisitor<Void, Symbol> {
+
+        private final Side left;
+        private final Side right;
+
+        InputColumnMapper(Side left, Side right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        List<Symbol> map(List<Symbol> symbols) {
+            List<Symbol> mapped = new ArrayList<>(symbols.size());
+            for (Symbol symbol : symbols) {
+                mapped.add(process(symbol, null));
+            }
+            return mapped;
+        }
+
+        List<Symbol> joinedColumns() {
+            List<Symbol> columns = new ArrayList<>(left.outputs.size() + right.outputs.size());
+            for (Symbol output : left.outputs) {
+                columns.add(new InputColumn(columns.size(), output.valueType()));
+            }
+            for (Symbol output : right.outputs) {
+                columns.add(new InputColumn(columns.size(), output.valueType()));
+            }
+            return columns;
+        }
+
+        @Override
+        public Symbol visitField(Field field, Void context) {
+            int idx = left.outputs.indexOf(field);
+            if (field.relation() == left.relation && idx > -1) {
+                return new InputColumn(idx, field.valueType());
+            }
+            idx = right.outputs.indexOf(field);
+            assert field.relation() == right.relation && idx > -1 : "field must be an output of the joined tables";
+            return new InputColumn(left.outputs.size() + idx, field.valueType());
+        }
+
+        @Override
+        public Symbol visitFunction(Function symbol, Void context) {
+            List<Symbol> arguments = new ArrayList<>(symbol.arguments().size());
+            for (Symbol argument : symbol.arguments()) {
+                arguments.add(process(argument, context));
+            }
+            return new Function(symbol.info(), arguments);
+        }
+
+        @Override
+        public Symbol visitMatchPredicate(MatchPredicate matchPredicate, Void context) {
+            throw new UnsupportedFeatureException("Cannot use match predicate on columns of different tables");
+        }
+
+        @Override
+        protected Symbol visitSymbol(Symbol symbol, Void context) {
+            return symbol;
+        }
+    }
+}
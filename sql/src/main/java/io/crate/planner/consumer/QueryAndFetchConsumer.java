@@ -22,7 +22,6 @@
 package io.crate.planner.consumer;
 
 import com.google.common.collect.ImmutableList;
-import io.crate.Constants;
 import io.crate.analyze.*;
 import io.crate.analyze.relations.AnalyzedRelation;
 import io.crate.analyze.relations.AnalyzedRelationVisitor;
@@ -35,6 +34,7 @@ import io.crate.metadata.Functions;
 import io.crate.metadata.table.TableInfo;
 import io.crate.operation.aggregation.impl.SumAggregation;
 import io.crate.operation.predicate.MatchPredicate;
+import io.crate.operation.projectors.TopN;
 import io.crate.planner.PlanNodeBuilder;
 import io.crate.planner.node.dql.QueryAndFetch;
 import io.crate.planner.node.dql.CollectNode;
@@ -51,8 +51,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import static com.google.common.base.MoreObjects.firstNonNull;
-
 public class QueryAndFetchConsumer implements Consumer {
 
     private static final Visitor VISITOR = new Visitor();
@@ -196,11 +194,12 @@ public class QueryAndFetchConsumer implements Consumer {
                 // if we have an offset we have to get as much docs from every node as we have offset+limit
                 // otherwise results will be wrong
                 TopNProjection tnp;
-                int limit = firstNonNull(querySpec.limit(), Constants.DEFAULT_SELECT_LIMIT);
+                // sorted rows aren't limited by default, they are sorted externally if they don't fit into memory
+                int limit = TopN.limit(querySpec.limit(), orderBy != null);
                 if (orderBy == null){
-                    tnp = new TopNProjection(querySpec.offset() + limit, 0);
+                    tnp = new TopNProjection(TopN.limitAndOffset(limit, querySpec.offset()), 0);
                 } else {
-                    tnp = new TopNProjection(querySpec.offset() + limit, 0,
+                    tnp = new TopNProjection(TopN.limitAndOffset(limit, querySpec.offset()), 0,
                             orderByInputColumns,
                             orderBy.reverseFlags(),
                             orderBy.nullsFirst()
@@ -21,7 +21,6 @@
 
 package io.crate.planner.consumer;
 
-import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import io.crate.Constants;
 import io.crate.analyze.OrderBy;
@@ -37,7 +36,9 @@ import io.crate.metadata.ReferenceInfo;
 import io.crate.metadata.ScoreReferenceDetector;
 import io.crate.metadata.doc.DocSysColumns;
 import io.crate.metadata.table.TableInfo;
+import io.crate.operation.projectors.ExternalSortProjector;
 import io.crate.operation.projectors.FetchProjector;
+import io.crate.operation.projectors.TopN;
 import io.crate.planner.PlanNodeBuilder;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.NoopPlannedAnalyzedRelation;
@@ -111,6 +112,11 @@ public class QueryThenFetchConsumer implements Consumer {
             OrderBy orderBy = querySpec.orderBy();
             if (orderBy != null) {
                 table.tableRelation().validateOrderBy(orderBy);
+                if (sortsExternally(querySpec)) {
+                    // the sorted collector of a shard is sized to the limit, large or unlimited sorts
+                    // are planned as query-and-fetch whose TopN projection sorts externally
+                    return null;
+                }
 
                 // detect if all output columns are used in orderBy,
                 // if so, no fetch projection is needed
@@ -151,7 +157,7 @@ public class QueryThenFetchConsumer implements Consumer {
                     collectSymbols,
                     ImmutableList.<Projection>of(),
                     orderBy,
-                    MoreObjects.firstNonNull(querySpec.limit(), Constants.DEFAULT_SELECT_LIMIT) + querySpec.offset()
+                    TopN.limit(querySpec.limit(), false) + querySpec.offset()
             );
 
 
@@ -223,6 +229,15 @@ public class QueryThenFetchConsumer implements Consumer {
             return new QueryThenFetch(collectNode, localMergeNode);
         }
 
+        /**
+         * sorts without limit or with a limit which exceeds the rows sorted in memory are done by the
+         * {@link ExternalSortProjector}, which isn't limited by default
+         */
+        private static boolean sortsExternally(QuerySpec querySpec) {
+            Integer limit = querySpec.limit();
+            return limit == null || (long) limit + querySpec.offset() > ExternalSortProjector.MIN_ROWS;
+        }
+
         @Override
         protected PlannedAnalyzedRelation visitAnalyzedRelation(AnalyzedRelation relation, ConsumerContext context) {
             return null;
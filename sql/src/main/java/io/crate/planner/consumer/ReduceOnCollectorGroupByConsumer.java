@@ -22,7 +22,6 @@
 package io.crate.planner.consumer;
 
 import com.google.common.collect.ImmutableList;
-import io.crate.Constants;
 import io.crate.analyze.HavingClause;
 import io.crate.analyze.InsertFromSubQueryAnalyzedStatement;
 import io.crate.analyze.OrderBy;
@@ -51,8 +50,6 @@ import io.crate.planner.symbol.Symbol;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.google.common.base.MoreObjects.firstNonNull;
-
 public class ReduceOnCollectorGroupByConsumer implements Consumer {
 
     private static final Visitor VISITOR = new Visitor();
@@ -176,7 +173,8 @@ public class ReduceOnCollectorGroupByConsumer implements Consumer {
                         collectOutputs,
                         orderBy,
                         0, // no offset
-                        firstNonNull(table.querySpec().limit(), Constants.DEFAULT_SELECT_LIMIT) + table.querySpec().offset(),
+                        TopN.limitAndOffset(TopN.limit(table.querySpec().limit(), orderBy != null),
+                                table.querySpec().offset()),
                         table.querySpec().outputs()
                 ));
             }
@@ -200,7 +198,7 @@ public class ReduceOnCollectorGroupByConsumer implements Consumer {
                                 table.querySpec().outputs(),
                                 null, // omit order by
                                 table.querySpec().offset(),
-                                firstNonNull(table.querySpec().limit(), Constants.DEFAULT_SELECT_LIMIT),
+                                TopN.limit(table.querySpec().limit(), true),
                                 table.querySpec().outputs()
                         )
                 );
@@ -213,7 +211,7 @@ public class ReduceOnCollectorGroupByConsumer implements Consumer {
                                 collectorTopN ? table.querySpec().outputs() : collectOutputs,
                                 orderBy,
                                 table.querySpec().offset(),
-                                firstNonNull(table.querySpec().limit(), Constants.DEFAULT_SELECT_LIMIT),
+                                table.querySpec().limit(),
                                 table.querySpec().outputs()
                         )
                 );
@@ -24,6 +24,7 @@ package io.crate.planner.node;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.CountNode;
 import io.crate.planner.node.dql.FileUriCollectNode;
+import io.crate.planner.node.dql.HashJoinNode;
 import io.crate.planner.node.dql.MergeNode;
 import org.elasticsearch.common.io.stream.Streamable;
 
@@ -45,7 +46,8 @@ public interface ExecutionNode extends Streamable {
         COLLECT(CollectNode.FACTORY),
         COUNT(CountNode.FACTORY),
         FILE_URI_COLLECT(FileUriCollectNode.FACTORY),
-        MERGE(MergeNode.FACTORY);
+        MERGE(MergeNode.FACTORY),
+        HASH_JOIN(HashJoinNode.FACTORY);
 
         private final ExecutionNodeFactory factory;
 
@@ -23,6 +23,7 @@ package io.crate.planner.node;
 
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.CountNode;
+import io.crate.planner.node.dql.HashJoinNode;
 import io.crate.planner.node.dql.MergeNode;
 
 public class ExecutionNodeVisitor<C, R> {
@@ -46,4 +47,8 @@ public class ExecutionNodeVisitor<C, R> {
     public R visitCountNode(CountNode countNode, C context) {
         return visitExecutionNode(countNode, context);
     }
+
+    public R visitHashJoinNode(HashJoinNode node, C context) {
+        return visitExecutionNode(node, context);
+    }
 }
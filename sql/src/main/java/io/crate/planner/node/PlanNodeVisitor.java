@@ -44,6 +44,10 @@ public class PlanNodeVisitor<C, R> {
         return visitPlanNode(node, context);
     }
 
+    public R visitHashJoinNode(HashJoinNode node, C context) {
+        return visitPlanNode(node, context);
+    }
+
     public R visitESGetNode(ESGetNode node, C context) {
         return visitPlanNode(node, context);
     }
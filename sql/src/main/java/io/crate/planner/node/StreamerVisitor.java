@@ -28,6 +28,7 @@ import io.crate.exceptions.ResourceUnknownException;
 import io.crate.metadata.Functions;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.node.dql.HashJoinNode;
 import io.crate.planner.node.dql.MergeNode;
 import io.crate.planner.projection.AggregationProjection;
 import io.crate.planner.projection.GroupProjection;
@@ -121,6 +122,12 @@ public class StreamerVisitor {
             return null;
         }
 
+        @Override
+        public Void visitHashJoinNode(HashJoinNode node, Context context) {
+            extractFromHashJoinNode(node, context);
+            return null;
+        }
+
         @Override
         protected Void visitExecutionNode(ExecutionNode node, Context context) {
             throw new UnsupportedOperationException(String.format("Got unsupported ExecutionNode %s", node.getClass().getName()));
@@ -205,6 +212,23 @@ public class StreamerVisitor {
         setOutputStreamers(node.outputTypes(), node.inputTypes(), node.projections(), context);
     }
 
+    /**
+     * the input streamers are those of the left side,
+     * the rows of the right side are streamed using the types of {@link HashJoinNode#rightInputTypes()}
+     */
+    private void extractFromHashJoinNode(HashJoinNode node, Context context) {
+        for (DataType dataType : node.leftInputTypes()) {
+            context.inputStreamers.add(dataType.streamer());
+        }
+        if (node.projections().isEmpty()) {
+            for (DataType dataType : node.inputTypes()) {
+                context.outputStreamers.add(dataType.streamer());
+            }
+        } else {
+            setOutputStreamers(node.outputTypes(), node.inputTypes(), node.projections(), context);
+        }
+    }
+
     private void setOutputStreamers(List<DataType> outputTypes,
                                     List<DataType> inputTypes,
                                     List<Projection> projections, Context context) {
@@ -0,0 +1,90 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.planner.node.dql;
+
+import io.crate.planner.PlanAndPlannedAnalyzedRelation;
+import io.crate.planner.PlanNodeBuilder;
+import io.crate.planner.PlanVisitor;
+import io.crate.planner.projection.Projection;
+
+/**
+ * inner equi join of two tables, executed distributed.
+ *
+ * Both tables are collected like a select on a single table, the collectors push their rows
+ * partitioned by the first join key to the nodes executing the {@link HashJoinNode}.
+ * The joined rows are merged on the handler.
+ * The rows of the join consist of the outputs of the left table followed by the outputs of the right table.
+ */
+public class HashJoin extends PlanAndPlannedAnalyzedRelation {
+
+    private final CollectNode leftCollectNode;
+    private final CollectNode rightCollectNode;
+    private final HashJoinNode hashJoinNode;
+    private final MergeNode localMergeNode;
+
+    public HashJoin(CollectNode leftCollectNode,
+                    CollectNode rightCollectNode,
+                    HashJoinNode hashJoinNode,
+                    MergeNode localMergeNode) {
+        this.leftCollectNode = leftCollectNode;
+        this.rightCollectNode = rightCollectNode;
+        this.hashJoinNode = hashJoinNode;
+        this.localMergeNode = localMergeNode;
+    }
+
+    public CollectNode leftCollectNode() {
+        return leftCollectNode;
+    }
+
+    public CollectNode rightCollectNode() {
+        return rightCollectNode;
+    }
+
+    public HashJoinNode hashJoinNode() {
+        return hashJoinNode;
+    }
+
+    public MergeNode localMergeNode() {
+        return localMergeNode;
+    }
+
+    @Override
+    public <C, R> R accept(PlanVisitor<C, R> visitor, C context) {
+        return visitor.visitHashJoin(this, context);
+    }
+
+    @Override
+    public void addProjection(Projection projection) {
+        localMergeNode.addProjection(projection);
+        PlanNodeBuilder.connectTypes(hashJoinNode, localMergeNode);
+    }
+
+    @Override
+    public boolean resultIsDistributed() {
+        return false;
+    }
+
+    @Override
+    public DQLPlanNode resultNode() {
+        return localMergeNode;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.planner.node.dql;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.crate.planner.node.ExecutionNodeVisitor;
+import io.crate.planner.node.PlanNodeVisitor;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A plan node which joins the rows of two upstreams on the equality of their key columns.
+ *
+ * Both upstreams push their rows partitioned by the first key column, so every execution node
+ * receives all rows of both sides with the same keys.
+ * The rows of the right side are put into a hash table, the rows of the left side are streamed
+ * against it once the right side is complete.
+ *
+ * The left upstreams push their rows to the {@link #executionNodeId()} of this node,
+ * the right upstreams to {@link #rightExecutionNodeId()}.
+ * The joined rows consist of the columns of the left side followed by the columns of the right side
+ * and are passed through the projections of this node.
+ */
+public class HashJoinNode extends AbstractDQLPlanNode {
+
+    public static final ExecutionNodeFactory<HashJoinNode> FACTORY = new ExecutionNodeFactory<HashJoinNode>() {
+        @Override
+        public HashJoinNode create() {
+            return new HashJoinNode();
+        }
+    };
+
+    private int rightExecutionNodeId;
+    private int numLeftUpstreams;
+    private int numRightUpstreams;
+    private int[] leftKeyColumns;
+    private int[] rightKeyColumns;
+    private List<DataType> leftInputTypes;
+    private List<DataType> rightInputTypes;
+    private Set<String> executionNodes;
+    private int downstreamExecutionNodeId = NO_EXECUTION_NODE;
+    private List<String> downstreamNodes = ImmutableList.of();
+
+    public HashJoinNode() {
+    }
+
+    public HashJoinNode(int executionNodeId,
+                        int rightExecutionNodeId,
+                        String name,
+                        int numLeftUpstreams,
+                        int numRightUpstreams,
+                        int[] leftKeyColumns,
+                        int[] rightKeyColumns,
+                        List<DataType> leftInputTypes,
+                        List<DataType> rightInputTypes) {
+        super(executionNodeId, name);
+        assert leftKeyColumns.length > 0 && leftKeyColumns.length == rightKeyColumns.length
+                : "number of left and right join columns must match";
+        this.rightExecutionNodeId = rightExecutionNodeId;
+        this.numLeftUpstreams = numLeftUpstreams;
+        this.numRightUpstreams = numRightUpstreams;
+        this.leftKeyColumns = leftKeyColumns;
+        this.rightKeyColumns = rightKeyColumns;
+        this.leftInputTypes = leftInputTypes;
+        this.rightInputTypes = rightInputTypes;
+
+        List<DataType> joinedTypes = new ArrayList<>(leftInputTypes.size() + rightInputTypes.size());
+        joinedTypes.addAll(leftInputTypes);
+        joinedTypes.addAll(rightInputTypes);
+        inputTypes(joinedTypes);
+    }
+
+    @Override
+    public Type type() {
+        return Type.HASH_JOIN;
+    }
+
+    /**
+     * the id the right upstreams push their rows to
+     */
+    public int rightExecutionNodeId() {
+        return rightExecutionNodeId;
+    }
+
+    public int numLeftUpstreams() {
+        return numLeftUpstreams;
+    }
+
+    public int numRightUpstreams() {
+        return numRightUpstreams;
+    }
+
+    public int[] leftKeyColumns() {
+        return leftKeyColumns;
+    }
+
+    public int[] rightKeyColumns() {
+        return rightKeyColumns;
+    }
+
+    public List<DataType> leftInputTypes() {
+        return leftInputTypes;
+    }
+
+    public List<DataType> rightInputTypes() {
+        return rightInputTypes;
+    }
+
+    @Override
+    public Set<String> executionNodes() {
+        if (executionNodes == null) {
+            return ImmutableSet.of();
+        } else {
+            return executionNodes;
+        }
+    }
+
+    public void executionNodes(Set<String> executionNodes) {
+        this.executionNodes = executionNodes;
+    }
+
+    @Override
+    public List<String> downstreamNodes() {
+        return downstreamNodes;
+    }
+
+    public void downstreamNodes(Set<String> nodes) {
+        downstreamNodes = ImmutableList.copyOf(nodes);
+    }
+
+    @Override
+    public int downstreamExecutionNodeId() {
+        return downstreamExecutionNodeId;
+    }
+
+    public void downstreamExecutionNodeId(int downstreamExecutionNodeId) {
+        this.downstreamExecutionNodeId = downstreamExecutionNodeId;
+    }
+
+    @Override
+    public <C, R> R accept(PlanNodeVisitor<C, R> visitor, C context) {
+        return visitor.visitHashJoinNode(this, context);
+    }
+
+    @Override
+    public <C, R> R accept(ExecutionNodeVisitor<C, R> visitor, C context) {
+        return visitor.visitHashJoinNode(this, context);
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        rightExecutionNodeId = in.readVInt();
+        numLeftUpstreams = in.readVInt();
+        numRightUpstreams = in.readVInt();
+
+        int numKeyColumns = in.readVInt();
+        leftKeyColumns = new int[numKeyColumns];
+        rightKeyColumns = new int[numKeyColumns];
+        for (int i = 0; i < numKeyColumns; i++) {
+            leftKeyColumns[i] = in.readVInt();
+            rightKeyColumns[i] = in.readVInt();
+        }
+        leftInputTypes = readTypes(in);
+        rightInputTypes = readTypes(in);
+        List<DataType> joinedTypes = new ArrayList<>(leftInputTypes.size() + rightInputTypes.size());
+        joinedTypes.addAll(leftInputTypes);
+        joinedTypes.addAll(rightInputTypes);
+        inputTypes(joinedTypes);
+
+        int numExecutionNodes = in.readVInt();
+        if (numExecutionNodes > 0) {
+            executionNodes = new HashSet<>(numExecutionNodes);
+            for (int i = 0; i < numExecutionNodes; i++) {
+                executionNodes.add(in.readString());
+            }
+        }
+
+        downstreamExecutionNodeId = in.readVInt();
+        int numDownstreamNodes = in.readVInt();
+        downstreamNodes = new ArrayList<>(numDownstreamNodes);
+        for (int i = 0; i < numDownstreamNodes; i++) {
+            downstreamNodes.add(in.readString());
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(rightExecutionNodeId);
+        out.writeVInt(numLeftUpstreams);
+        out.writeVInt(numRightUpstreams);
+
+        out.writeVInt(leftKeyColumns.length);
+        for (int i = 0; i < leftKeyColumns.length; i++) {
+            out.writeVInt(leftKeyColumns[i]);
+            out.writeVInt(rightKeyColumns[i]);
+        }
+        writeTypes(leftInputTypes, out);
+        writeTypes(rightInputTypes, out);
+
+        if (executionNodes == null) {
+            out.writeVInt(0);
+        } else {
+            out.writeVInt(executionNodes.size());
+            for (String node : executionNodes) {
+                out.writeString(node);
+            }
+        }
+
+        out.writeVInt(downstreamExecutionNodeId);
+        out.writeVInt(downstreamNodes.size());
+        for (String downstreamNode : downstreamNodes) {
+            out.writeString(downstreamNode);
+        }
+    }
+
+    private static List<DataType> readTypes(StreamInput in) throws IOException {
+        int numTypes = in.readVInt();
+        List<DataType> types = new ArrayList<>(numTypes);
+        for (int i = 0; i < numTypes; i++) {
+            types.add(DataTypes.fromStream(in));
+        }
+        return types;
+    }
+
+    private static void writeTypes(List<DataType> types, StreamOutput out) throws IOException {
+        out.writeVInt(types.size());
+        for (DataType type : types) {
+            DataTypes.toStream(type, out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("executionNodeId", executionNodeId())
+                .add("rightExecutionNodeId", rightExecutionNodeId)
+                .add("name", name())
+                .add("projections", projections)
+                .add("outputTypes", outputTypes)
+                .add("jobId", jobId())
+                .add("leftKeyColumns", Arrays.toString(leftKeyColumns))
+                .add("rightKeyColumns", Arrays.toString(rightKeyColumns))
+                .add("executionNodes", executionNodes)
+                .toString();
+    }
+}
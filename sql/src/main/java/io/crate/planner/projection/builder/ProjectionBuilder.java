@@ -21,12 +21,11 @@
 
 package io.crate.planner.projection.builder;
 
-import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
-import io.crate.Constants;
 import io.crate.analyze.OrderBy;
 import io.crate.analyze.QuerySpec;
 import io.crate.metadata.FunctionInfo;
+import io.crate.operation.projectors.TopN;
 import io.crate.planner.projection.*;
 import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Function;
@@ -124,7 +123,7 @@ public class ProjectionBuilder {
             int offset,
             @Nullable Integer limit,
             @Nullable Collection<Symbol> outputs) {
-        limit = MoreObjects.firstNonNull(limit, Constants.DEFAULT_SELECT_LIMIT);
+        limit = TopN.limit(limit, orderBy != null);
 
         InputCreatingVisitor.Context context = new InputCreatingVisitor.Context(inputs);
         List<Symbol> inputsProcessed = inputVisitor.process(inputs, context);
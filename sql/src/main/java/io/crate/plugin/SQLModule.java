@@ -22,6 +22,9 @@
 package io.crate.plugin;
 
 import io.crate.action.sql.DDLStatementDispatcher;
+import io.crate.action.sql.cache.PlanTemplateCache;
+import io.crate.action.sql.cache.QueryResultCache;
+import io.crate.action.sql.cursor.CursorService;
 import io.crate.metadata.FulltextAnalyzerResolver;
 import io.crate.service.SQLService;
 import org.elasticsearch.common.inject.AbstractModule;
@@ -34,5 +37,8 @@ public class SQLModule extends AbstractModule {
         bind(SQLService.class).asEagerSingleton();
         bind(DDLStatementDispatcher.class).asEagerSingleton();
         bind(FulltextAnalyzerResolver.class).asEagerSingleton();
+        bind(CursorService.class).asEagerSingleton();
+        bind(QueryResultCache.class).asEagerSingleton();
+        bind(PlanTemplateCache.class).asEagerSingleton();
     }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import io.crate.Constants;
 import io.crate.action.sql.SQLAction;
 import io.crate.action.sql.SQLBulkAction;
 import io.crate.action.sql.TransportSQLAction;
+import io.crate.action.sql.cursor.CursorService;
 import io.crate.action.sql.TransportSQLBulkAction;
 import io.crate.breaker.CircuitBreakerModule;
 import io.crate.breaker.CrateCircuitBreakerService;
@@ -105,7 +106,8 @@ public class SQLPlugin extends AbstractPlugin {
         return ImmutableList.<Class<? extends LifecycleComponent>>of(
                 SQLService.class,
                 BulkRetryCoordinatorPool.class,
-                JobContextService.class);
+                JobContextService.class,
+                CursorService.class);
     }
 
     @Override
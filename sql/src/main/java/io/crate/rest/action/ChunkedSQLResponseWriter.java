@@ -0,0 +1,247 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.rest.action;
+
+import io.crate.action.sql.SQLBaseResponse;
+import io.crate.action.sql.SQLResponse;
+import io.crate.action.sql.SQLResultStream;
+import io.crate.core.collections.Row;
+import io.crate.executor.BytesRefUtils;
+import io.crate.http.netty.NettyHttpChannel;
+import io.crate.operation.RowDownstreamHandle;
+import io.crate.operation.RowUpstream;
+import io.crate.types.DataType;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the result of a SELECT statement to the HTTP channel using chunked transfer encoding
+ * while the rows are computed.
+ *
+ * The content is the same JSON document as the one of a regular response,
+ * but the rows are written in chunks as soon as they arrive.
+ * The next page of rows is only requested from the upstreams once the
+ * previous chunk has been written to the socket.
+ *
+ * If the result can't be streamed or the statement fails before the first chunk
+ * has been sent, a regular response is sent instead.
+ */
+class ChunkedSQLResponseWriter implements SQLResultStream, ActionListener<SQLResponse> {
+
+    private static final ESLogger LOGGER = Loggers.getLogger(ChunkedSQLResponseWriter.class);
+
+    static final int ROWS_PER_CHUNK = 1000;
+
+    private final RestRequest request;
+    private final NettyHttpChannel channel;
+    private final boolean includeTypes;
+    private final BytesStreamOutput out = new BytesStreamOutput();
+    private final List<Object[]> pendingRows = new ArrayList<>(ROWS_PER_CHUNK);
+
+    private XContentBuilder builder;
+    private DataType[] outputTypes;
+    private ChannelFuture lastWrite;
+    private boolean headSent = false;
+    private volatile boolean closed = false;
+    private long rowCount = 0;
+
+    ChunkedSQLResponseWriter(RestRequest request, NettyHttpChannel channel, boolean includeTypes) {
+        this.request = request;
+        this.channel = channel;
+        this.includeTypes = includeTypes;
+    }
+
+    @Override
+    public synchronized void start(String[] outputNames, DataType[] outputTypes) {
+        this.outputTypes = outputTypes;
+        try {
+            builder = XContentFactory.jsonBuilder(out);
+            if (request.paramAsBoolean("pretty", false)) {
+                builder.prettyPrint();
+            }
+            builder.startObject();
+            builder.array("cols", outputNames);
+            if (includeTypes) {
+                builder.startArray("col_types");
+                for (DataType outputType : outputTypes) {
+                    SQLBaseResponse.toXContentNestedDataType(builder, outputType);
+                }
+                builder.endArray();
+            }
+            builder.startArray("rows");
+        } catch (IOException e) {
+            // writing into memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
+        return new RowDownstreamHandle() {
+            @Override
+            public boolean setNextRow(Row row) {
+                return ChunkedSQLResponseWriter.this.setNextRow(row);
+            }
+
+            @Override
+            public void finish() {
+                // the tail of the document is written once the response arrives
+            }
+
+            @Override
+            public void fail(Throwable throwable) {
+                // the error is written once the failure arrives at the listener
+            }
+        };
+    }
+
+    private synchronized boolean setNextRow(Row row) {
+        if (closed) {
+            return false;
+        }
+        pendingRows.add(row.materialize());
+        if (pendingRows.size() >= ROWS_PER_CHUNK) {
+            flush();
+        }
+        return true;
+    }
+
+    @Override
+    public void onReady(final Runnable callback) {
+        ChannelFuture future;
+        synchronized (this) {
+            flush();
+            future = lastWrite;
+        }
+        if (future == null) {
+            callback.run();
+        } else {
+            future.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    callback.run();
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void onResponse(SQLResponse response) {
+        if (builder == null) {
+            // result wasn't streamed
+            new RestSQLAction.SQLResponseListener<SQLResponse>(request, channel).onResponse(response);
+            return;
+        }
+        try {
+            writePendingRows();
+            builder.endArray();
+            builder.field("rowcount", rowCount);
+            builder.field("duration", response.duration());
+            builder.endObject();
+            sendChunk();
+            channel.sendLastChunk();
+        } catch (Throwable t) {
+            LOGGER.error("failed to send the end of a chunked response", t);
+        }
+        closed = true;
+    }
+
+    @Override
+    public synchronized void onFailure(Throwable e) {
+        closed = true;
+        if (!headSent) {
+            new RestSQLAction.SQLResponseListener<SQLResponse>(request, channel).onFailure(e);
+            return;
+        }
+        try {
+            // the status has already been sent, so the document is terminated with an error field
+            pendingRows.clear();
+            builder.endArray();
+            CrateThrowableRestResponse.errorToXContent(builder, request, e);
+            builder.endObject();
+            sendChunk();
+            channel.sendLastChunk();
+        } catch (Throwable t) {
+            LOGGER.error("failed to send failure response", t);
+        }
+    }
+
+    private void flush() {
+        if (pendingRows.isEmpty() || closed) {
+            return;
+        }
+        try {
+            writePendingRows();
+            sendChunk();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writePendingRows() throws IOException {
+        if (pendingRows.isEmpty()) {
+            return;
+        }
+        Object[][] rows = pendingRows.toArray(new Object[pendingRows.size()][]);
+        pendingRows.clear();
+        BytesRefUtils.ensureStringTypesAreStrings(outputTypes, rows);
+        for (Object[] row : rows) {
+            builder.startArray();
+            for (Object value : row) {
+                builder.value(value);
+            }
+            builder.endArray();
+        }
+        rowCount += rows.length;
+    }
+
+    private void sendChunk() throws IOException {
+        builder.flush();
+        if (!headSent) {
+            channel.sendChunkedResponseHead(RestStatus.OK, builder.contentType().restContentType());
+            headSent = true;
+        }
+        lastWrite = channel.sendChunk(out.bytes().copyBytesArray());
+        lastWrite.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    LOGGER.debug("failed to send chunk, stop streaming", future.getCause());
+                    closed = true;
+                }
+            }
+        });
+        out.reset();
+    }
+}
@@ -54,8 +54,17 @@ public class CrateThrowableRestResponse extends RestResponse {
     }
 
     private static XContentBuilder convert(RestChannel channel, Throwable t) throws IOException {
-        XContentBuilder builder = channel.newBuilder().startObject()
-            .startObject("error");
+        XContentBuilder builder = channel.newBuilder().startObject();
+        errorToXContent(builder, channel.request(), t);
+        builder.endObject();
+        return builder;
+    }
+
+    /**
+     * write the error fields into the current object of the builder
+     */
+    static void errorToXContent(XContentBuilder builder, RestRequest request, Throwable t) throws IOException {
+        builder.startObject("error");
 
         SQLActionException sqlActionException = null;
         builder.field("message", detailedMessage(t));
@@ -68,12 +77,10 @@ public class CrateThrowableRestResponse extends RestResponse {
 
         builder.endObject();
 
-        if (t != null && channel.request().paramAsBoolean("error_trace", false)
+        if (t != null && request.paramAsBoolean("error_trace", false)
                 && sqlActionException != null) {
             builder.field("error_trace", sqlActionException.stackTrace());
         }
-        builder.endObject();
-        return builder;
     }
 
     @Override
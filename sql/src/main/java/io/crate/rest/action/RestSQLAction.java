@@ -25,6 +25,7 @@ import io.crate.action.sql.*;
 import io.crate.action.sql.parser.SQLXContentSourceContext;
 import io.crate.action.sql.parser.SQLXContentSourceParser;
 import io.crate.exceptions.SQLParseException;
+import io.crate.http.netty.NettyHttpChannel;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.inject.Inject;
@@ -39,9 +40,15 @@ import java.io.StringWriter;
 
 public class RestSQLAction extends BaseRestHandler {
 
+    private final TransportSQLAction transportSQLAction;
+
     @Inject
-    public RestSQLAction(Settings settings, Client client, RestController controller) {
+    public RestSQLAction(Settings settings,
+                         Client client,
+                         RestController controller,
+                         TransportSQLAction transportSQLAction) {
         super(settings, controller, client);
+        this.transportSQLAction = transportSQLAction;
 
         controller.registerHandler(RestRequest.Method.POST, "/_sql", this);
     }
@@ -86,7 +93,16 @@ public class RestSQLAction extends BaseRestHandler {
         requestBuilder.stmt(context.stmt());
         requestBuilder.args(context.args());
         requestBuilder.includeTypesOnResponse(request.paramAsBoolean("types", false));
-        requestBuilder.execute(RestSQLAction.<SQLResponse>newListener(request, channel));
+        requestBuilder.session(request.param("session"));
+        if (request.paramAsBoolean("stream", false)
+            && channel instanceof NettyHttpChannel
+            && ((NettyHttpChannel) channel).supportsChunkedResponse()) {
+            ChunkedSQLResponseWriter writer = new ChunkedSQLResponseWriter(
+                    request, (NettyHttpChannel) channel, requestBuilder.request().includeTypesOnResponse());
+            transportSQLAction.executeStreaming(requestBuilder.request(), writer, writer);
+        } else {
+            requestBuilder.execute(RestSQLAction.<SQLResponse>newListener(request, channel));
+        }
     }
 
     private void executeBulkRequest(SQLXContentSourceContext context, RestRequest request, RestChannel channel, Client client) {
@@ -102,7 +118,7 @@ public class RestSQLAction extends BaseRestHandler {
         return new SQLResponseListener<>(request, channel);
     }
 
-    private static class SQLResponseListener<TResponse extends SQLBaseResponse> implements ActionListener<TResponse> {
+    static class SQLResponseListener<TResponse extends SQLBaseResponse> implements ActionListener<TResponse> {
 
         private static final ESLogger logger = Loggers.getLogger(SQLResponseListener.class);
         private final RestRequest request;
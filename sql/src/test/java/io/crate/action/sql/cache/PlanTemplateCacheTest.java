@@ -0,0 +1,76 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql.cache;
+
+import io.crate.sql.parser.SqlParser;
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+
+public class PlanTemplateCacheTest extends CrateUnitTest {
+
+    private static PlanTemplateCache.Parameters parameters(String stmt) {
+        return PlanTemplateCache.parameters(SqlParser.createStatement(stmt));
+    }
+
+    @Test
+    public void testParametersOfPrimaryKeyLookup() throws Exception {
+        PlanTemplateCache.Parameters parameters = parameters("select name from t where id = ? and ? = t.region");
+        assertThat(parameters.keyColumns.size(), is(2));
+        assertThat(parameters.keyColumns.get("id"), is(0));
+        assertThat(parameters.keyColumns.get("region"), is(1));
+        assertThat(parameters.assignmentColumns.size(), is(0));
+    }
+
+    @Test
+    public void testParametersOfUpdateAndDelete() throws Exception {
+        PlanTemplateCache.Parameters parameters = parameters("update t set name = ?, counter = counter + 1 where id = ?");
+        assertThat(parameters.assignmentColumns.get("name"), is(0));
+        assertThat(parameters.keyColumns.get("id"), is(1));
+        assertThat(parameters.size(), is(2));
+
+        parameters = parameters("delete from t where id = ?");
+        assertThat(parameters.keyColumns.get("id"), is(0));
+        assertThat(parameters.size(), is(1));
+    }
+
+    @Test
+    public void testParametersUsedOutsideOfConditionsAndAssignments() throws Exception {
+        assertThat(parameters("select name from t where id = ? limit ?"), nullValue());
+        assertThat(parameters("select name, ? from t where id = ?"), nullValue());
+        assertThat(parameters("select name from t where id = $1 and name = $1"), nullValue());
+        assertThat(parameters("update t set tags = [?] where id = ?"), nullValue());
+        assertThat(parameters("update t set counter = counter + ? where id = ?"), nullValue());
+    }
+
+    @Test
+    public void testConditionsWhichAreNoConjunctionOfEqualities() throws Exception {
+        assertThat(parameters("select name from t where id = ? or id = ?"), nullValue());
+        assertThat(parameters("select name from t where id > ?"), nullValue());
+        assertThat(parameters("select name from t where id = ? and id = ?"), nullValue());
+        assertThat(parameters("select name from t where id = ? and name = 'Arthur'"), nullValue());
+        assertThat(parameters("select name from t"), nullValue());
+        assertThat(parameters("update t set name = ? where id = ? and current_timestamp > 0"), nullValue());
+    }
+}
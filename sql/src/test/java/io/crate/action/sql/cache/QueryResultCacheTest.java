@@ -0,0 +1,205 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql.cache;
+
+import com.google.common.collect.ImmutableMap;
+import io.crate.action.sql.SQLResponse;
+import io.crate.Constants;
+import io.crate.breaker.CrateCircuitBreakerService;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class QueryResultCacheTest extends CrateUnitTest {
+
+    private static final Map<String, Long> VERSIONS = ImmutableMap.of("n1/uuid[0]", 4L, "n2/uuid[1]", 7L);
+
+    private CircuitBreaker breaker;
+    private Map<String, IndexMetaData> indices;
+
+    @Before
+    public void prepare() throws Exception {
+        indices = ImmutableMap.of("t", indexMetaData("t", ImmutableMap.<String, Object>of()));
+    }
+
+    private QueryResultCache newCache(Settings settings, long breakerLimit) {
+        breaker = new MemoryCircuitBreaker(new ByteSizeValue(breakerLimit), 1.0,
+                Loggers.getLogger(QueryResultCacheTest.class));
+        CrateCircuitBreakerService breakerService = mock(CrateCircuitBreakerService.class);
+        when(breakerService.getBreaker(CrateCircuitBreakerService.QUERY_BREAKER)).thenReturn(breaker);
+        return new QueryResultCache(settings, breakerService);
+    }
+
+    private QueryResultCache newCache() {
+        return newCache(ImmutableSettings.EMPTY, Long.MAX_VALUE);
+    }
+
+    private static SQLResponse response(Object[][] rows) {
+        return new SQLResponse(new String[]{"name"}, rows, new DataType[]{DataTypes.STRING},
+                rows.length, 0L, false);
+    }
+
+    private static IndexMetaData indexMetaData(String name, Map<String, Object> mapping) throws IOException {
+        return IndexMetaData.builder(name)
+                .settings(ImmutableSettings.builder()
+                        .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                        .put("index.number_of_shards", 2)
+                        .put("index.number_of_replicas", 0))
+                .putMapping(new MappingMetaData(Constants.DEFAULT_MAPPING_TYPE, mapping))
+                .build();
+    }
+
+    private static QueryResultCache.Key key(Object... args) {
+        return new QueryResultCache.Key("select name from t where id = ?", args, null);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        assertThat(newCache().enabled(), is(false));
+        assertThat(newCache(ImmutableSettings.builder()
+                .put(QueryResultCache.ENABLED_SETTING, true).build(), Long.MAX_VALUE).enabled(), is(true));
+    }
+
+    @Test
+    public void testGetCachedResponse() throws Exception {
+        QueryResultCache cache = newCache();
+        assertThat(cache.get(key(1), VERSIONS, indices, 0L, false), nullValue());
+
+        cache.put(key(1), VERSIONS, indices, response(new Object[][]{new Object[]{"Arthur"}}));
+        SQLResponse response = cache.get(key(1), VERSIONS, indices, 10L, true);
+        assertThat(response, notNullValue());
+        assertThat(response.cols(), is(new String[]{"name"}));
+        assertThat(response.rows()[0][0], is((Object) "Arthur"));
+        assertThat(response.rowCount(), is(1L));
+        assertThat(response.columnTypes(), is(new DataType[]{DataTypes.STRING}));
+
+        // the arguments are part of the key
+        assertThat(cache.get(key(2), VERSIONS, indices, 0L, false), nullValue());
+
+        assertThat(cache.hits(), is(1L));
+        assertThat(cache.misses(), is(2L));
+        assertThat(cache.entries(), is(1L));
+    }
+
+    @Test
+    public void testChangedShardVersionInvalidatesEntry() throws Exception {
+        QueryResultCache cache = newCache();
+        cache.put(key(1), VERSIONS, indices, response(new Object[][]{new Object[]{"Arthur"}}));
+        assertThat(breaker.getUsed(), greaterThan(0L));
+
+        Map<String, Long> refreshed = ImmutableMap.of("n1/uuid[0]", 5L, "n2/uuid[1]", 7L);
+        assertThat(cache.get(key(1), refreshed, indices, 0L, false), nullValue());
+        assertThat(cache.entries(), is(0L));
+        assertThat(cache.sizeInBytes(), is(0L));
+        assertThat(breaker.getUsed(), is(0L));
+    }
+
+    @Test
+    public void testChangedIndexMetaDataInvalidatesEntry() throws Exception {
+        QueryResultCache cache = newCache();
+        cache.put(key(1), VERSIONS, indices, response(new Object[][]{new Object[]{"Arthur"}}));
+
+        // meta data received with a new cluster state is equal if it hasn't changed
+        Map<String, IndexMetaData> unchanged = ImmutableMap.of("t", indexMetaData("t", ImmutableMap.<String, Object>of()));
+        assertThat(cache.get(key(1), VERSIONS, unchanged, 0L, false), notNullValue());
+
+        // e.g. ALTER TABLE ADD COLUMN changes the mapping but not the reader versions
+        Map<String, Object> mapping = ImmutableMap.<String, Object>of("properties",
+                ImmutableMap.of("name", ImmutableMap.of("type", "string")));
+        Map<String, IndexMetaData> altered = ImmutableMap.of("t", indexMetaData("t", mapping));
+        assertThat(cache.get(key(1), VERSIONS, altered, 0L, false), nullValue());
+        assertThat(cache.entries(), is(0L));
+        assertThat(breaker.getUsed(), is(0L));
+    }
+
+    @Test
+    public void testEntryIsNotCachedIfBreakerTrips() throws Exception {
+        QueryResultCache cache = newCache(ImmutableSettings.EMPTY, 10L);
+        cache.put(key(1), VERSIONS, indices, response(new Object[][]{new Object[]{"Arthur"}}));
+
+        assertThat(cache.entries(), is(0L));
+        assertThat(breaker.getUsed(), is(0L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        QueryResultCache cache = newCache(ImmutableSettings.builder()
+                .put(QueryResultCache.SIZE_SETTING, "1kb").build(), Long.MAX_VALUE);
+        Object[][] rows = new Object[10][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{"Trillian"};
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.put(key(i), VERSIONS, indices, response(rows));
+        }
+
+        assertThat(cache.evictions(), greaterThan(0L));
+        assertThat(cache.sizeInBytes(), lessThanOrEqualTo(1024L));
+        assertThat(breaker.getUsed(), is(cache.sizeInBytes()));
+    }
+
+    @Test
+    public void testCachedRowsAreNotShared() throws Exception {
+        QueryResultCache cache = newCache();
+        cache.put(key(1), VERSIONS, indices, response(new Object[][]{new Object[]{"Arthur"}}));
+
+        SQLResponse response = cache.get(key(1), VERSIONS, indices, 0L, false);
+        response.rows()[0] = new Object[]{"Ford"};
+        assertThat(cache.get(key(1), VERSIONS, indices, 0L, false).rows()[0][0], is((Object) "Arthur"));
+    }
+
+    @Test
+    public void testCachedArraysAreNotShared() throws Exception {
+        QueryResultCache cache = newCache();
+        Object[][] rows = new Object[][]{new Object[]{"Arthur", new Object[]{"Trillian"}}};
+        cache.put(key(1), VERSIONS, indices, response(rows));
+        rows[0][0] = "Ford";
+
+        SQLResponse response = cache.get(key(1), VERSIONS, indices, 0L, false);
+        assertThat(response.rows()[0][0], is((Object) "Arthur"));
+        response.rows()[0][0] = "Zaphod";
+        ((Object[]) response.rows()[0][1])[0] = "Marvin";
+
+        Object[] row = cache.get(key(1), VERSIONS, indices, 0L, false).rows()[0];
+        assertThat(row[0], is((Object) "Arthur"));
+        assertThat(((Object[]) row[1])[0], is((Object) "Trillian"));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.action.sql.cursor;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.exceptions.UnsupportedFeatureException;
+import io.crate.metadata.ColumnIdent;
+import io.crate.metadata.doc.DocSysColumns;
+import io.crate.sql.SqlFormatter;
+import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Query;
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+public class CursorTest extends CrateUnitTest {
+
+    private static final List<ColumnIdent> UID = ImmutableList.of(DocSysColumns.UID);
+    private static final List<ColumnIdent> UNIQUE = ImmutableList.of();
+
+    private static Cursor newCursor(String stmt, Object[] args, List<ColumnIdent> tieBreakers) {
+        return new Cursor("c", (Query) SqlParser.createStatement(stmt), args, null, tieBreakers, 1000L, 0L);
+    }
+
+    private static String format(Query query) {
+        return SqlFormatter.formatSql(query).replaceAll("\\s+", " ").trim();
+    }
+
+    @Test
+    public void testFirstPage() throws Exception {
+        Cursor cursor = newCursor("select name from t where x = ? order by name", new Object[]{1}, UID);
+        assertThat(cursor.numHiddenColumns(), is(2));
+        assertThat(format(cursor.nextPageQuery(10)), is(
+                "SELECT \"name\" , \"name\" , \"_uid\" FROM t WHERE (\"x\" = $1) " +
+                "ORDER BY \"name\" ASC, \"_uid\" ASC NULLS FIRST LIMIT 10"));
+        assertThat(cursor.nextPageArgs(), is(new Object[]{1}));
+    }
+
+    @Test
+    public void testNextPageContinuesAfterLastRow() throws Exception {
+        Cursor cursor = newCursor("select name from t where x = ? order by name", new Object[]{1}, UID);
+        assertThat(cursor.startFetch(), is(true));
+        assertThat(cursor.lastAccessTime(), is(-1L));
+        cursor.finishFetch(new Object[][]{
+                new Object[]{"a", "a", "t#1"},
+                new Object[]{"b", "b", "t#2"}}, 10L);
+        assertThat(cursor.lastAccessTime(), is(10L));
+
+        assertThat(format(cursor.nextPageQuery(10)), is(
+                "SELECT \"name\" , \"name\" , \"_uid\" FROM t " +
+                "WHERE ((\"x\" = $1) AND (((\"name\" > $2) OR (\"name\" IS NULL)) " +
+                "OR ((\"name\" = $2) AND (\"_uid\" > $3)))) " +
+                "ORDER BY \"name\" ASC, \"_uid\" ASC NULLS FIRST LIMIT 10"));
+        assertThat(cursor.nextPageArgs(), is(new Object[]{1, "b", "t#2"}));
+
+        // an empty page keeps the position
+        cursor.finishFetch(new Object[0][], 20L);
+        assertThat(cursor.nextPageArgs(), is(new Object[]{1, "b", "t#2"}));
+    }
+
+    @Test
+    public void testPrimaryKeyColumnsBreakTies() throws Exception {
+        Cursor cursor = newCursor("select name from t order by name", new Object[0],
+                ImmutableList.of(new ColumnIdent("id"), new ColumnIdent("o", "x")));
+        assertThat(cursor.numHiddenColumns(), is(3));
+        cursor.finishFetch(new Object[][]{new Object[]{"a", "a", 1, 2}}, 10L);
+        assertThat(format(cursor.nextPageQuery(5)), is(
+                "SELECT \"name\" , \"name\" , \"id\" , \"o\"['x'] FROM t " +
+                "WHERE ((((\"name\" > $1) OR (\"name\" IS NULL)) " +
+                "OR ((\"name\" = $1) AND (\"id\" > $2))) " +
+                "OR (((\"name\" = $1) AND (\"id\" = $2)) AND (\"o\"['x'] > $3))) " +
+                "ORDER BY \"name\" ASC, \"id\" ASC NULLS FIRST, \"o\"['x'] ASC NULLS FIRST LIMIT 5"));
+        assertThat(cursor.nextPageArgs(), is(new Object[]{"a", 1, 2}));
+    }
+
+    @Test
+    public void testNullValuesAndDescendingOrder() throws Exception {
+        Cursor cursor = newCursor("select a, b from t order by a desc, b", new Object[0], UNIQUE);
+        assertThat(cursor.numHiddenColumns(), is(2));
+        // nulls come first if ordered descending and last if ascending
+        cursor.finishFetch(new Object[][]{new Object[]{null, null, null, null}}, 10L);
+        assertThat(format(cursor.nextPageQuery(5)), is(
+                "SELECT \"a\" , \"b\" , \"a\" , \"b\" FROM t " +
+                "WHERE (\"a\" IS NOT NULL) " +
+                "ORDER BY \"a\" DESC, \"b\" ASC LIMIT 5"));
+
+        cursor.finishFetch(new Object[][]{new Object[]{3, 4, 3, 4}}, 10L);
+        assertThat(format(cursor.nextPageQuery(5)), is(
+                "SELECT \"a\" , \"b\" , \"a\" , \"b\" FROM t " +
+                "WHERE ((\"a\" < $1) OR ((\"a\" = $1) AND ((\"b\" > $2) OR (\"b\" IS NULL)))) " +
+                "ORDER BY \"a\" DESC, \"b\" ASC LIMIT 5"));
+    }
+
+    @Test
+    public void testEndOfUniqueOrder() throws Exception {
+        Cursor cursor = newCursor("select a from t order by a", new Object[0], UNIQUE);
+        // nothing sorts after null if nulls are last
+        cursor.finishFetch(new Object[][]{new Object[]{null, null}}, 10L);
+        assertThat(format(cursor.nextPageQuery(5)), is(
+                "SELECT \"a\" , \"a\" FROM t WHERE false ORDER BY \"a\" ASC LIMIT 5"));
+    }
+
+    @Test
+    public void testOrdinalAndAliasSortKeys() throws Exception {
+        Cursor cursor = newCursor("select x + 1 as y, z from t order by y, 2", new Object[0], UNIQUE);
+        assertThat(format(cursor.nextPageQuery(5)), is(
+                "SELECT (\"x\" + 1) \"y\" , \"z\" , (\"x\" + 1) , \"z\" FROM t ORDER BY \"y\" ASC, 2 ASC LIMIT 5"));
+    }
+
+    @Test
+    public void testFetchInProgress() throws Exception {
+        Cursor cursor = newCursor("select a from t", new Object[0], UID);
+        assertThat(cursor.startFetch(), is(true));
+        assertThat(cursor.startFetch(), is(false));
+        cursor.finishFetch(null, 10L);
+        assertThat(cursor.startFetch(), is(true));
+    }
+
+    @Test
+    public void testLimitIsNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("LIMIT and OFFSET are not supported in the query of a cursor");
+        newCursor("select a from t limit 10", new Object[0], UID);
+    }
+
+    @Test
+    public void testGroupByIsNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("GROUP BY, HAVING and DISTINCT are not supported in the query of a cursor");
+        newCursor("select a from t group by a", new Object[0], UID);
+    }
+
+    @Test
+    public void testOrdinalWithAllColumnsIsNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        newCursor("select * from t order by 1", new Object[0], UID);
+    }
+}
@@ -292,7 +292,7 @@ public class CreateAlterTableStatementAnalyzerTest extends BaseAnalyzerTest {
                 is("details={inner={doc_values=false, dynamic=true, index=not_analyzed, " +
                         "properties={age={doc_values=true, index=not_analyzed, store=false, type=integer}, " +
                         "name={doc_values=true, index=not_analyzed, store=false, type=string}, " +
-                        "tags={inner={doc_values=false, index=not_analyzed, store=false, type=string}, type=array}}," +
+                        "tags={inner={doc_values=true, index=not_analyzed, store=false, type=string}, type=array}}," +
                         " store=false, type=object}, type=array}, " +
                         "id={doc_values=true, index=not_analyzed, store=false, type=integer}"));
     }
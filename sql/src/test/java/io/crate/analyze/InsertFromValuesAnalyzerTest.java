@@ -34,11 +34,15 @@ import io.crate.operation.predicate.PredicateModule;
 import io.crate.operation.scalar.ScalarFunctionModule;
 import io.crate.operation.scalar.arithmetic.AddFunction;
 import io.crate.planner.RowGranularity;
+import io.crate.planner.symbol.DynamicReference;
 import io.crate.planner.symbol.Function;
 import io.crate.planner.symbol.Symbol;
+import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Statement;
 import io.crate.testing.MockedClusterServiceModule;
 import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.inject.Module;
 import org.hamcrest.Matchers;
@@ -934,5 +938,57 @@ public class InsertFromValuesAnalyzerTest extends BaseAnalyzerTest {
         expectedException.expectMessage("Updating a clustered-by column is not supported");
         analyze("insert into users (id) values (1) on duplicate key update id = 10");
     }
+
+    private InsertFromValuesAnalyzedStatement analyze(Statement statement, Object[] args) {
+        return (InsertFromValuesAnalyzedStatement) analyzer.analyze(statement,
+                new ParameterContext(args, new Object[0][], ReferenceInfos.DEFAULT_SCHEMA_NAME)).analyzedStatement();
+    }
+
+    @Test
+    public void testStatementTemplateIsReusedWithNewArguments() throws Exception {
+        Statement statement = SqlParser.createStatement("insert into users (id, name) values (?, ?)");
+        InsertFromValuesAnalyzedStatement first = analyze(statement, new Object[]{1, "Arthur"});
+        InsertFromValuesAnalyzedStatement second = analyze(statement, new Object[]{2, "Trillian"});
+
+        assertThat(second.columns(), is(first.columns()));
+        assertThat(second.primaryKeyColumnIndices(), is(first.primaryKeyColumnIndices()));
+        assertThat(second.routingColumnIndex(), is(first.routingColumnIndex()));
+
+        assertThat(first.ids(), contains("1"));
+        assertThat(second.ids(), contains("2"));
+        assertThat((BytesRef) first.sourceMaps().get(0)[1], is(new BytesRef("Arthur")));
+        assertThat((BytesRef) second.sourceMaps().get(0)[1], is(new BytesRef("Trillian")));
+
+        InsertFromValuesAnalyzedStatement third = analyze(statement, new Object[]{3, "Ford"});
+        assertThat(third.columns(), sameInstance(second.columns()));
+    }
+
+    @Test
+    public void testStatementTemplateIsNotUsedAfterMetaDataChange() throws Exception {
+        Statement statement = SqlParser.createStatement("insert into users (id, name) values (?, ?)");
+        InsertFromValuesAnalyzedStatement first = analyze(statement, new Object[]{1, "Arthur"});
+        InsertFromValuesAnalyzedStatement second = analyze(statement, new Object[]{2, "Trillian"});
+        assertThat(second.columns(), sameInstance(analyze(statement, new Object[]{3, "Ford"}).columns()));
+
+        ClusterChangedEvent event = mock(ClusterChangedEvent.class);
+        when(event.metaDataChanged()).thenReturn(true);
+        injector.getInstance(InsertFromValuesAnalyzer.class).clusterChanged(event);
+
+        InsertFromValuesAnalyzedStatement third = analyze(statement, new Object[]{4, "Zaphod"});
+        assertThat(third.columns(), not(sameInstance(second.columns())));
+        assertThat(third.columns(), is(first.columns()));
+    }
+
+    @Test
+    public void testStatementWithDynamicColumnIsNotTemplated() throws Exception {
+        Statement statement = SqlParser.createStatement("insert into users (id, name, new_col) values (?, ?, ?)");
+        InsertFromValuesAnalyzedStatement first = analyze(statement, new Object[]{1, "Arthur", 42});
+        InsertFromValuesAnalyzedStatement second = analyze(statement, new Object[]{2, "Trillian", "foo"});
+
+        assertThat(first.columns().get(2), instanceOf(DynamicReference.class));
+        assertThat(second.columns().get(2), not(sameInstance(first.columns().get(2))));
+        assertEquals(DataTypes.INTEGER, first.columns().get(2).valueType());
+        assertEquals(DataTypes.STRING, second.columns().get(2).valueType());
+    }
 }
 
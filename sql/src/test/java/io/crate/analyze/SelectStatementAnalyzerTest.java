@@ -272,8 +272,8 @@ public class SelectStatementAnalyzerTest extends BaseAnalyzerTest {
         List<String> outputNames = outputNames(analysis.relation());
         assertThat(outputNames.get(0), is("id"));
         assertThat(outputNames.get(1), is("id"));
-        assertThat(outputNames.size(), is(15));
-        assertThat(analysis.relation().querySpec().outputs().size(), is(15));
+        assertThat(outputNames.size(), is(16));
+        assertThat(analysis.relation().querySpec().outputs().size(), is(16));
     }
 
     @Test
@@ -694,9 +694,11 @@ public class SelectStatementAnalyzerTest extends BaseAnalyzerTest {
 
     @Test
     public void test2From() throws Exception {
-        expectedException.expect(UnsupportedOperationException.class);
-        expectedException.expectMessage("Only exactly one table is allowed in the FROM clause, got: 2");
-        analyze("select name from users a, users b");
+        SelectAnalyzedStatement analysis = analyze("select a.name from users a, users b where a.id = b.id");
+        assertThat(analysis.relation(), instanceOf(MultiSourceSelect.class));
+        MultiSourceSelect relation = (MultiSourceSelect) analysis.relation();
+        assertThat(relation.sources().size(), is(2));
+        assertThat(relation.querySpec().where().query(), isFunction(EqOperator.NAME));
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -720,9 +722,22 @@ public class SelectStatementAnalyzerTest extends BaseAnalyzerTest {
         analyze("select id, name from parted where not date");
     }
 
-    @Test(expected = UnsupportedOperationException.class)
+    @Test
     public void testJoin() throws Exception {
-        analyze("select * from users join users_multi_pk on users.id = users.multi_pk.id");
+        SelectAnalyzedStatement analysis = analyze("select users.name from users " +
+                "join users_multi_pk on users.id = users_multi_pk.id where users.name = 'Arthur'");
+        assertThat(analysis.relation(), instanceOf(MultiSourceSelect.class));
+        MultiSourceSelect relation = (MultiSourceSelect) analysis.relation();
+        assertThat(relation.sources().size(), is(2));
+        // the join condition is added to the where clause
+        assertThat(relation.querySpec().where().query(), isFunction(AndOperator.NAME));
+    }
+
+    @Test
+    public void testOuterJoin() throws Exception {
+        expectedException.expect(UnsupportedOperationException.class);
+        expectedException.expectMessage("LEFT joins are not supported");
+        analyze("select users.name from users left join users_multi_pk on users.id = users_multi_pk.id");
     }
 
     @Test(expected = UnsupportedOperationException.class)
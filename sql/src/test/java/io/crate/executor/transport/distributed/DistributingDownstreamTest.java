@@ -29,6 +29,7 @@ import io.crate.testing.TestingHelpers;
 import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.util.BigArrays;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -68,7 +69,9 @@ public class DistributingDownstreamTest extends CrateUnitTest {
                 1,
                 0,
                 downstreamNodes,
+                "n1",
                 distributedResultAction,
+                BigArrays.NON_RECYCLING_INSTANCE,
                 streamers
         );
         downstream.registerUpstream(null);
@@ -136,6 +139,30 @@ public class DistributingDownstreamTest extends CrateUnitTest {
 
     }
 
+    @Test
+    public void testRowsOfRemoteDownstreamAreReleasedAfterResponse() throws Exception {
+        ArgumentCaptor<DistributedResultRequest> r1Captor = ArgumentCaptor.forClass(DistributedResultRequest.class);
+        ArgumentCaptor<ActionListener> l1Captor = ArgumentCaptor.forClass(ActionListener.class);
+        doNothing().when(distributedResultAction).pushResult(eq("n1"), r1Captor.capture(), l1Captor.capture());
+
+        ArgumentCaptor<DistributedResultRequest> r2Captor = ArgumentCaptor.forClass(DistributedResultRequest.class);
+        ArgumentCaptor<ActionListener> l2Captor = ArgumentCaptor.forClass(ActionListener.class);
+        doNothing().when(distributedResultAction).pushResult(eq("n2"), r2Captor.capture(), l2Captor.capture());
+
+        downstream.setNextRow(new Row1(new BytesRef("Trillian")));
+        downstream.setNextRow(new Row1(new BytesRef("Arthur")));
+        downstream.finish();
+
+        //noinspection unchecked
+        l1Captor.getValue().onResponse(new DistributedResultResponse(false));
+        //noinspection unchecked
+        l2Captor.getValue().onResponse(new DistributedResultResponse(false));
+
+        // n1 is the local node, its bucket might still be read by the merger
+        assertThat(TestingHelpers.printedTable(r1Captor.getValue().rows()), is("Arthur\n"));
+        assertThat(r2Captor.getValue().rows().size(), is(0));
+    }
+
     private void assertRows(ArgumentCaptor<DistributedResultRequest> r2Captor, String expectedRows) {
         List<DistributedResultRequest> allRequestsForNodeN1 = r2Captor.getAllValues();
         assertThat(allRequestsForNodeN1.size(), is(1));
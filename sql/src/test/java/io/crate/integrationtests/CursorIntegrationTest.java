@@ -0,0 +1,205 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.integrationtests;
+
+import io.crate.action.sql.SQLAction;
+import io.crate.action.sql.SQLActionException;
+import io.crate.action.sql.SQLRequest;
+import io.crate.action.sql.SQLResponse;
+import io.crate.test.integration.CrateIntegrationTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.SUITE, numNodes = 1)
+public class CursorIntegrationTest extends SQLTransportIntegrationTest {
+
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    private void createTable(int numRows) {
+        execute("create table t (id integer, v integer) with (number_of_replicas=0)");
+        ensureYellow();
+        Object[][] bulkArgs = new Object[numRows][];
+        for (int i = 0; i < numRows; i++) {
+            // v has a lot of duplicates and some nulls
+            bulkArgs[i] = new Object[]{i, i % 5 == 0 ? null : i % 3};
+        }
+        execute("insert into t (id, v) values (?, ?)", bulkArgs);
+        refresh();
+    }
+
+    @Test
+    public void testFetchAllRowsInPages() throws Exception {
+        createTable(47);
+        execute("declare c cursor for select id, v from t where id > ? order by v desc", new Object[]{1});
+        assertThat(response.rowCount(), is(0L));
+
+        Set<Object> ids = new HashSet<>();
+        Integer lastValue = null;
+        boolean first = true;
+        for (int page = 0; page < 10; page++) {
+            execute("fetch 10 from c");
+            assertThat(response.cols(), arrayContaining("id", "v"));
+            for (Object[] row : response.rows()) {
+                assertThat(row.length, is(2));
+                assertThat(ids.add(row[0]), is(true));
+                Integer value = (Integer) row[1];
+                if (!first && value != null) {
+                    assertThat(lastValue, anyOf(nullValue(), greaterThanOrEqualTo(value)));
+                }
+                assertThat(lastValue == null || value != null || first, is(true));
+                lastValue = value;
+                first = false;
+            }
+            if (response.rowCount() < 10) {
+                break;
+            }
+        }
+        assertThat(ids.size(), is(45));
+        execute("fetch 10 from c");
+        assertThat(response.rowCount(), is(0L));
+        execute("close c");
+    }
+
+    @Test
+    public void testFetchWithPrimaryKeyOrder() throws Exception {
+        execute("create table t2 (id integer primary key, name string) with (number_of_replicas=0)");
+        ensureYellow();
+        execute("insert into t2 (id, name) values (1, 'a'), (2, 'b'), (3, 'c'), (4, 'd'), (5, 'e')");
+        refresh();
+
+        execute("declare c2 cursor for select id from t2 order by id");
+        execute("fetch 2 from c2");
+        assertThat((Integer) response.rows()[0][0], is(1));
+        assertThat((Integer) response.rows()[1][0], is(2));
+        execute("fetch 2 from c2");
+        assertThat((Integer) response.rows()[0][0], is(3));
+        assertThat((Integer) response.rows()[1][0], is(4));
+        execute("fetch from c2");
+        assertThat(response.rowCount(), is(1L));
+        assertThat((Integer) response.rows()[0][0], is(5));
+        execute("close c2");
+    }
+
+    @Test
+    public void testFetchOrderedByNonUniqueColumnOfTableWithPrimaryKey() throws Exception {
+        execute("create table t3 (id integer primary key, v integer) with (number_of_replicas=0)");
+        ensureYellow();
+        Object[][] bulkArgs = new Object[20][];
+        for (int i = 0; i < bulkArgs.length; i++) {
+            bulkArgs[i] = new Object[]{i, i % 2};
+        }
+        execute("insert into t3 (id, v) values (?, ?)", bulkArgs);
+        refresh();
+
+        // the primary key breaks the ties of v
+        execute("declare c6 cursor for select id, v from t3 order by v");
+        List<Integer> ids = new ArrayList<>();
+        for (int page = 0; page < 5; page++) {
+            execute("fetch 3 from c6");
+            for (Object[] row : response.rows()) {
+                ids.add((Integer) row[0]);
+            }
+        }
+        execute("close c6");
+        assertThat(ids, contains(0, 2, 4, 6, 8, 10, 12, 14, 16, 18, 1, 3, 5, 7, 9));
+    }
+
+    private SQLResponse executeInSession(String session, String stmt) {
+        SQLRequest request = new SQLRequest(stmt);
+        request.session(session);
+        return client().execute(SQLAction.INSTANCE, request).actionGet();
+    }
+
+    @Test
+    public void testCursorsAreScopedBySession() throws Exception {
+        createTable(3);
+        executeInSession("s1", "declare c7 cursor for select id from t order by id");
+        // the same name can be used by another session
+        executeInSession("s2", "declare c7 cursor for select id from t where id > 0 order by id");
+
+        assertThat((Integer) executeInSession("s1", "fetch from c7").rows()[0][0], is(0));
+        assertThat((Integer) executeInSession("s2", "fetch from c7").rows()[0][0], is(1));
+        executeInSession("s1", "close c7");
+        executeInSession("s2", "close c7");
+
+        executeInSession("s1", "declare c8 cursor for select id from t");
+        try {
+            expectedException.expect(SQLActionException.class);
+            expectedException.expectMessage("Cursor 'c8' unknown");
+            execute("fetch from c8");
+        } finally {
+            executeInSession("s1", "close c8");
+        }
+    }
+
+    @Test
+    public void testCursorAlreadyExists() throws Exception {
+        createTable(1);
+        execute("declare c3 cursor for select id from t");
+        try {
+            expectedException.expect(SQLActionException.class);
+            expectedException.expectMessage("The cursor 'c3' already exists.");
+            execute("declare c3 cursor for select id from t");
+        } finally {
+            execute("close c3");
+        }
+    }
+
+    @Test
+    public void testFetchFromUnknownCursor() throws Exception {
+        expectedException.expect(SQLActionException.class);
+        expectedException.expectMessage("Cursor 'unknown' unknown");
+        execute("fetch 10 from unknown");
+    }
+
+    @Test
+    public void testCloseUnknownCursor() throws Exception {
+        expectedException.expect(SQLActionException.class);
+        expectedException.expectMessage("Cursor 'unknown' unknown");
+        execute("close unknown");
+    }
+
+    @Test
+    public void testCursorOnSystemTable() throws Exception {
+        expectedException.expect(SQLActionException.class);
+        expectedException.expectMessage("Cursors are not supported for queries on the system table 'sys.nodes'");
+        execute("declare c4 cursor for select name from sys.nodes");
+    }
+
+    @Test
+    public void testCursorWithAggregation() throws Exception {
+        createTable(1);
+        expectedException.expect(SQLActionException.class);
+        expectedException.expectMessage("Aggregations are not supported in the query of a cursor");
+        execute("declare c5 cursor for select count(*) from t");
+    }
+}
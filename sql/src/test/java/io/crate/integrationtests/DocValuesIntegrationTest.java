@@ -0,0 +1,118 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.integrationtests;
+
+import io.crate.test.integration.CrateIntegrationTest;
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.TEST, numNodes = 2)
+public class DocValuesIntegrationTest extends SQLTransportIntegrationTest {
+
+    @Before
+    public void prepare() throws Exception {
+        execute("create table t (" +
+                "  l long," +
+                "  d double," +
+                "  f float," +
+                "  i integer," +
+                "  s string," +
+                "  ip ip," +
+                "  tags array(string)" +
+                ") clustered into 2 shards with (number_of_replicas=0)");
+        ensureYellow();
+        execute("insert into t (l, d, f, i, s, ip, tags) values (?, ?, ?, ?, ?, ?, ?)", new Object[][]{
+                new Object[]{1L, 1.5d, 0.5f, 10, "Arthur", "127.0.0.1", new String[]{"a", "b"}},
+                new Object[]{2L, -2.25d, -0.25f, 20, "Trillian", "10.0.0.1", new String[]{"b"}},
+                new Object[]{3L, 3.0d, 1.0f, 30, "Arthur", "192.168.0.1", null},
+                new Object[]{null, null, null, null, null, null, null}
+        });
+        refresh();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> columnMapping(String column) throws Exception {
+        GetMappingsResponse response = client().admin().indices().prepareGetMappings("t").execute().actionGet();
+        MappingMetaData mappingMetaData = response.mappings().get("t").valuesIt().next();
+        Map<String, Object> properties = (Map<String, Object>) mappingMetaData.sourceAsMap().get("properties");
+        return (Map<String, Object>) properties.get(column);
+    }
+
+    private long fieldDataMemory() {
+        NodesStatsResponse response = client().admin().cluster().prepareNodesStats()
+                .setIndices(true).execute().actionGet();
+        long size = 0L;
+        for (NodeStats nodeStats : response.getNodes()) {
+            size += nodeStats.getIndices().getFieldData().getMemorySizeInBytes();
+        }
+        return size;
+    }
+
+    @Test
+    public void testColumnsAreMappedWithDocValues() throws Exception {
+        for (String column : new String[]{"l", "d", "f", "i", "s", "ip", "tags"}) {
+            assertThat(column, columnMapping(column).get("doc_values"), is((Object) true));
+        }
+    }
+
+    @Test
+    public void testSelectColumnsWithDocValues() throws Exception {
+        execute("select l, d, f, i, s, ip from t where l is not null order by l");
+        assertThat(response.rowCount(), is(3L));
+        assertThat(response.rows()[0], is(new Object[]{1L, 1.5d, 0.5f, 10, "Arthur", "127.0.0.1"}));
+        assertThat(response.rows()[1], is(new Object[]{2L, -2.25d, -0.25f, 20, "Trillian", "10.0.0.1"}));
+        assertThat(response.rows()[2], is(new Object[]{3L, 3.0d, 1.0f, 30, "Arthur", "192.168.0.1"}));
+
+        execute("select l, d, f, i, s, ip from t where l is null");
+        assertThat(response.rows()[0], is(new Object[]{null, null, null, null, null, null}));
+    }
+
+    @Test
+    public void testGroupByColumnsWithDocValues() throws Exception {
+        execute("select s, count(*), sum(l), min(d), max(f) from t where s is not null group by s order by s");
+        assertThat(response.rowCount(), is(2L));
+        assertThat(response.rows()[0], is(new Object[]{"Arthur", 2L, 4.0d, 1.5d, 1.0f}));
+        assertThat(response.rows()[1], is(new Object[]{"Trillian", 1L, 2.0d, -2.25d, -0.25f}));
+
+        execute("select f, count(*) from t where f is not null group by f order by f");
+        assertThat(response.rowCount(), is(3L));
+        assertThat((Float) response.rows()[0][0], is(-0.25f));
+        assertThat((Float) response.rows()[2][0], is(1.0f));
+    }
+
+    @Test
+    public void testColumnsWithDocValuesDontUseFieldDataMemory() throws Exception {
+        execute("select s, sum(l), avg(d), max(f), min(i) from t group by s");
+        execute("select ip, count(*) from t group by ip");
+        execute("select l, d, f, i, s, ip from t where l > 0 order by s, d desc");
+        assertThat(fieldDataMemory(), is(0L));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.integrationtests;
+
+import io.crate.Constants;
+import io.crate.operation.projectors.ExternalSortProjector;
+import io.crate.test.integration.CrateIntegrationTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.TEST, numNodes = 2)
+public class ExternalSortIntegrationTest extends SQLTransportIntegrationTest {
+
+    // more rows than the default select limit
+    private static final int NUM_ROWS = Constants.DEFAULT_SELECT_LIMIT + 1013;
+
+    private static final Path SORT_DIR;
+
+    static {
+        try {
+            SORT_DIR = Files.createTempDirectory("external_sort");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                // every shard spills several runs
+                .put(ExternalSortProjector.SETTING_RUN_SIZE, "64kb")
+                .put(ExternalSortProjector.SETTING_PATH, SORT_DIR.toString())
+                .build();
+    }
+
+    @Before
+    public void prepare() throws Exception {
+        execute("create table t (id integer, name string) clustered into 3 shards " +
+                "with (number_of_replicas=0)");
+        ensureGreen();
+        // all ids in shuffled order, NUM_ROWS must not be a multiple of 17
+        Object[][] bulkArgs = new Object[NUM_ROWS][];
+        for (int i = 0; i < NUM_ROWS; i++) {
+            int id = (i * 17) % NUM_ROWS;
+            bulkArgs[i] = new Object[]{id, "name " + id};
+        }
+        execute("insert into t (id, name) values (?, ?)", bulkArgs);
+        refresh();
+    }
+
+    @Test
+    public void testSortedSelectWithoutLimitReturnsAllRows() throws Exception {
+        execute("select name from t order by id");
+        assertThat(response.rowCount(), is((long) NUM_ROWS));
+        for (int i = 0; i < NUM_ROWS; i++) {
+            assertThat((String) response.rows()[i][0], is("name " + i));
+        }
+        assertThat(SORT_DIR.toFile().list(), emptyArray());
+    }
+
+    @Test
+    public void testSortedSelectWithLargeLimitAndOffset() throws Exception {
+        execute("select id from t order by id desc limit 200000 offset 100");
+        assertThat(response.rowCount(), is((long) NUM_ROWS - 100));
+        for (int i = 0; i < NUM_ROWS - 100; i++) {
+            assertThat((Integer) response.rows()[i][0], is(NUM_ROWS - 101 - i));
+        }
+        assertThat(SORT_DIR.toFile().list(), emptyArray());
+    }
+
+    @Test
+    public void testSortedSelectWithSmallLimitIsNotAffected() throws Exception {
+        execute("select id from t order by id limit 10 offset 5");
+        assertThat(response.rowCount(), is(10L));
+        assertThat((Integer) response.rows()[0][0], is(5));
+        assertThat((Integer) response.rows()[9][0], is(14));
+    }
+}
@@ -24,6 +24,7 @@ package io.crate.integrationtests;
 import io.crate.action.sql.SQLActionException;
 import io.crate.breaker.CrateCircuitBreakerService;
 import io.crate.breaker.RamAccountingContext;
+import io.crate.operation.projectors.GroupingProjector;
 import io.crate.test.integration.CrateIntegrationTest;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
@@ -53,6 +54,8 @@ public class GroupByAggregateBreakerTest extends SQLTransportIntegrationTest {
         RamAccountingContext.FLUSH_BUFFER_SIZE = 24;
         return ImmutableSettings.builder()
                 .put(CrateCircuitBreakerService.QUERY_CIRCUIT_BREAKER_LIMIT_SETTING, 512)
+                // groups would be spilled to disk instead of breaking
+                .put(GroupingProjector.SETTING_SPILL_SIZE, "0b")
                 .build();
     }
 
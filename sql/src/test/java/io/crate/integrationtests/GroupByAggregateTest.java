@@ -1090,6 +1090,72 @@ public class GroupByAggregateTest extends SQLTransportIntegrationTest {
         assertThat((Double) response.rows()[0][5], is(33.025558284456d));
     }
 
+    private void setUpPercentileNumbers() {
+        execute("create table numbers (x long, half string) clustered into 3 shards with (number_of_replicas=0)");
+        ensureYellow();
+        Object[][] bulkArgs = new Object[1000][];
+        for (int i = 0; i < bulkArgs.length; i++) {
+            long x = i + 1;
+            bulkArgs[i] = new Object[]{x, x <= 500 ? "lower" : "upper"};
+        }
+        execute("insert into numbers (x, half) values (?, ?)", bulkArgs);
+        execute("refresh table numbers");
+    }
+
+    @Test
+    public void testGlobalPercentile() throws Exception {
+        setUpPercentileNumbers();
+
+        execute("select percentile(x, 0.5) from numbers");
+        assertEquals(1L, response.rowCount());
+        assertThat((Double) response.rows()[0][0], closeTo(500.0d, 10.0d));
+    }
+
+    @Test
+    public void testGlobalPercentileMultipleFractions() throws Exception {
+        setUpPercentileNumbers();
+
+        execute("select percentile(x, [0.25, 0.75]) from numbers");
+        assertEquals(1L, response.rowCount());
+        Object[] percentiles = (Object[]) response.rows()[0][0];
+        assertThat(percentiles.length, is(2));
+        assertThat((Double) percentiles[0], closeTo(250.0d, 10.0d));
+        assertThat((Double) percentiles[1], closeTo(750.0d, 10.0d));
+    }
+
+    @Test
+    public void testGroupByPercentile() throws Exception {
+        // half isn't the routing column, so the states of the shards are merged on the reducers
+        setUpPercentileNumbers();
+
+        execute("select half, percentile(x, 0.5) from numbers group by half order by half");
+        assertEquals(2L, response.rowCount());
+        assertEquals("lower", response.rows()[0][0]);
+        assertThat((Double) response.rows()[0][1], closeTo(250.0d, 10.0d));
+        assertEquals("upper", response.rows()[1][0]);
+        assertThat((Double) response.rows()[1][1], closeTo(750.0d, 10.0d));
+    }
+
+    @Test
+    public void testGroupByPercentileMultipleFractions() throws Exception {
+        setUpPercentileNumbers();
+
+        execute("select half, percentile(x, [0.25, 0.75]) from numbers group by half order by half");
+        assertEquals(2L, response.rowCount());
+
+        assertEquals("lower", response.rows()[0][0]);
+        Object[] percentiles = (Object[]) response.rows()[0][1];
+        assertThat(percentiles.length, is(2));
+        assertThat((Double) percentiles[0], closeTo(125.0d, 10.0d));
+        assertThat((Double) percentiles[1], closeTo(375.0d, 10.0d));
+
+        assertEquals("upper", response.rows()[1][0]);
+        percentiles = (Object[]) response.rows()[1][1];
+        assertThat(percentiles.length, is(2));
+        assertThat((Double) percentiles[0], closeTo(625.0d, 10.0d));
+        assertThat((Double) percentiles[1], closeTo(875.0d, 10.0d));
+    }
+
     @Test
     public void testGroupByOnClusteredByColumnPartitioned() throws Exception {
         execute("CREATE TABLE tickets ( " +
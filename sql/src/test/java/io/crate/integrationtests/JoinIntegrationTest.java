@@ -0,0 +1,126 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.integrationtests;
+
+import io.crate.test.integration.CrateIntegrationTest;
+import io.crate.testing.TestingHelpers;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.TEST, numNodes = 2)
+public class JoinIntegrationTest extends SQLTransportIntegrationTest {
+
+    @Before
+    public void prepare() throws Exception {
+        execute("create table users (id integer, name string) clustered into 3 shards " +
+                "with (number_of_replicas=0)");
+        execute("create table addresses (user_id integer, city string) clustered into 2 shards " +
+                "with (number_of_replicas=0)");
+        ensureYellow();
+        execute("insert into users (id, name) values (?, ?)", new Object[][]{
+                new Object[]{1, "Arthur"},
+                new Object[]{2, "Trillian"},
+                new Object[]{3, "Marvin"},
+        });
+        execute("insert into addresses (user_id, city) values (?, ?)", new Object[][]{
+                new Object[]{1, "Cottington"},
+                new Object[]{1, "Islington"},
+                new Object[]{2, "Islington"},
+                new Object[]{4, "Magrathea"},
+        });
+        refresh();
+    }
+
+    @Test
+    public void testJoinOfTwoTables() throws Exception {
+        execute("select u.name, a.city from users u, addresses a where u.id = a.user_id order by u.name, a.city");
+        assertThat(TestingHelpers.printedTable(response.rows()), is(
+                "Arthur| Cottington\n" +
+                "Arthur| Islington\n" +
+                "Trillian| Islington\n"));
+    }
+
+    @Test
+    public void testJoinWithPushedDownAndPostJoinConditions() throws Exception {
+        execute("select u.name, a.city from users u join addresses a on u.id = a.user_id " +
+                "where a.city = 'Islington' and u.id + a.user_id > 2 order by u.name limit 1");
+        assertThat(TestingHelpers.printedTable(response.rows()), is("Trillian| Islington\n"));
+    }
+
+    @Test
+    public void testJoinOfRowsPartitionedToAllNodes() throws Exception {
+        execute("create table orders (id integer, user_id integer) clustered into 4 shards " +
+                "with (number_of_replicas=0)");
+        ensureYellow();
+        Object[][] bulkArgs = new Object[500][];
+        for (int i = 0; i < bulkArgs.length; i++) {
+            // every user but Marvin has orders, the orders of other users don't match
+            bulkArgs[i] = new Object[]{i, i % 5};
+        }
+        execute("insert into orders (id, user_id) values (?, ?)", bulkArgs);
+        refresh();
+
+        execute("select u.name, o.id from orders o join users u on o.user_id = u.id where u.id != 3");
+        assertThat(response.rowCount(), is(200L));
+        for (Object[] row : response.rows()) {
+            assertThat(((Integer) row[1]) % 5, isOneOf(1, 2));
+        }
+
+        execute("select o.id, u.name from orders o join users u on o.user_id = u.id order by o.id desc limit 3");
+        assertThat(TestingHelpers.printedTable(response.rows()), is(
+                "498| Marvin\n" +
+                "497| Trillian\n" +
+                "496| Arthur\n"));
+    }
+
+    @Test
+    public void testSidesOfJoinAreOperationsOfTheStatementJob() throws Exception {
+        execute("set global stats.enabled = true");
+        try {
+            String stmt = "select u.name, a.city from users u, addresses a where u.id = a.user_id";
+            execute(stmt);
+            assertThat(response.rowCount(), is(3L));
+
+            execute("select id from sys.jobs_log where stmt = ?", new Object[]{stmt});
+            assertThat(response.rowCount(), is(1L));
+            Object jobId = response.rows()[0][0];
+
+            waitNoPendingTasksOnAll();
+            execute("select name from sys.operations_log where job_id = ?", new Object[]{jobId});
+            Set<Object> names = new HashSet<>();
+            for (Object[] row : response.rows()) {
+                names.add(row[0]);
+            }
+            // the collects of both tables, the joins on the nodes and the merge on the handler
+            assertThat(names, containsInAnyOrder((Object) "collect", "hash join", "localMerge"));
+            assertThat(response.rowCount(), greaterThanOrEqualTo(5L));
+        } finally {
+            execute("reset global stats.enabled");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.integrationtests;
+
+import io.crate.operation.collect.ShardCollectService;
+import io.crate.test.integration.CrateIntegrationTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.is;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.TEST, numNodes = 1)
+public class ParallelCollectIntegrationTest extends SQLTransportIntegrationTest {
+
+    private static final int NUM_SEGMENTS = 4;
+    private static final int NUM_IDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(ShardCollectService.MAX_PARALLELISM_PER_SHARD, 4)
+                .build();
+    }
+
+    @Before
+    public void prepare() throws Exception {
+        execute("create table t (id integer, name string) clustered by (id) into 1 shards " +
+                "with (number_of_replicas=0)");
+        ensureYellow();
+        // every refresh creates a new segment, so every id is contained in every segment
+        for (int segment = 0; segment < NUM_SEGMENTS; segment++) {
+            Object[][] bulkArgs = new Object[NUM_IDS][];
+            for (int id = 0; id < NUM_IDS; id++) {
+                bulkArgs[id] = new Object[]{id, "name" + segment};
+            }
+            execute("insert into t (id, name) values (?, ?)", bulkArgs);
+            refresh();
+        }
+    }
+
+    @Test
+    public void testGroupByRoutingColumnWithHavingOnMultipleSegments() throws Exception {
+        // grouping on the routing column is done completely on the shard
+        execute("select id, count(*) from t group by id having count(*) = ? order by id",
+                new Object[]{NUM_SEGMENTS});
+        assertThat(response.rowCount(), is((long) NUM_IDS));
+        for (int i = 0; i < NUM_IDS; i++) {
+            assertThat((Integer) response.rows()[i][0], is(i));
+            assertThat((Long) response.rows()[i][1], is((long) NUM_SEGMENTS));
+        }
+    }
+
+    @Test
+    public void testCopyToOnMultipleSegments() throws Exception {
+        File exportDir = folder.newFolder("export");
+        execute("copy t to directory ?", new Object[]{exportDir.getAbsolutePath()});
+        assertThat(response.rowCount(), is((long) NUM_SEGMENTS * NUM_IDS));
+
+        int numLines = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(exportDir.toPath())) {
+            for (Path file : files) {
+                numLines += Files.readAllLines(file, StandardCharsets.UTF_8).size();
+            }
+        }
+        assertThat(numLines, is(NUM_SEGMENTS * NUM_IDS));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.integrationtests;
+
+import io.crate.test.integration.CrateIntegrationTest;
+import io.crate.testing.TestingHelpers;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.TEST, numNodes = 2)
+public class PlanTemplateCacheIntegrationTest extends SQLTransportIntegrationTest {
+
+    @Before
+    public void prepare() throws Exception {
+        execute("create table t (id integer primary key, region string primary key, name string, counter long) " +
+                "clustered by (region) into 2 shards with (number_of_replicas=0)");
+        ensureYellow();
+        execute("insert into t (id, region, name, counter) values (?, ?, ?, ?)", new Object[][]{
+                new Object[]{1, "north", "Arthur", 0L},
+                new Object[]{2, "north", "Trillian", 0L},
+                new Object[]{1, "south", "Ford", 0L},
+        });
+        refresh();
+    }
+
+    @Test
+    public void testRepeatedPrimaryKeyLookups() throws Exception {
+        String stmt = "select name from t where id = ? and region = ?";
+        execute(stmt, new Object[]{1, "north"});
+        assertThat((String) response.rows()[0][0], is("Arthur"));
+        execute(stmt, new Object[]{2, "north"});
+        assertThat((String) response.rows()[0][0], is("Trillian"));
+        // converted to the type of the primary key column
+        execute(stmt, new Object[]{"1", "south"});
+        assertThat((String) response.rows()[0][0], is("Ford"));
+        execute(stmt, new Object[]{3, "south"});
+        assertThat(response.rowCount(), is(0L));
+        execute(stmt, new Object[]{null, "south"});
+        assertThat(response.rowCount(), is(0L));
+        execute(stmt, new Object[]{2, "north"});
+        assertThat((String) response.rows()[0][0], is("Trillian"));
+    }
+
+    @Test
+    public void testRepeatedUpdatesAndDeletesByPrimaryKey() throws Exception {
+        String update = "update t set name = ?, counter = counter + 1 where region = ? and id = ?";
+        execute(update, new Object[]{"Zaphod", "north", 1});
+        assertThat(response.rowCount(), is(1L));
+        execute(update, new Object[]{"Marvin", "south", 1});
+        assertThat(response.rowCount(), is(1L));
+        execute(update, new Object[]{"Marvin", "south", 1});
+        assertThat(response.rowCount(), is(1L));
+        execute(update, new Object[]{"Slartibartfast", "south", 4});
+        assertThat(response.rowCount(), is(0L));
+        refresh();
+        execute("select id, region, name, counter from t order by region, id");
+        assertThat(TestingHelpers.printedTable(response.rows()),
+                is("1| north| Zaphod| 1\n" +
+                   "2| north| Trillian| 0\n" +
+                   "1| south| Marvin| 2\n"));
+
+        String delete = "delete from t where id = ? and region = ?";
+        execute(delete, new Object[]{1, "north"});
+        assertThat(response.rowCount(), is(1L));
+        execute(delete, new Object[]{1, "south"});
+        assertThat(response.rowCount(), is(1L));
+        execute(delete, new Object[]{1, "south"});
+        assertThat(response.rowCount(), is(0L));
+        refresh();
+        execute("select id, region from t");
+        assertThat(TestingHelpers.printedTable(response.rows()), is("2| north\n"));
+    }
+
+    @Test
+    public void testTemplateIsNotUsedAfterSchemaChange() throws Exception {
+        String stmt = "select * from t where id = ? and region = ?";
+        execute(stmt, new Object[]{1, "north"});
+        assertThat(response.cols().length, is(4));
+
+        execute("alter table t add column nickname string");
+        execute("update t set nickname = ? where id = ? and region = ?", new Object[]{"Monkeyman", 1, "north"});
+        execute(stmt, new Object[]{1, "north"});
+        assertThat(response.cols().length, is(5));
+        int nicknameIdx = Arrays.asList(response.cols()).indexOf("nickname");
+        assertThat((String) response.rows()[0][nicknameIdx], is("Monkeyman"));
+        execute(stmt, new Object[]{2, "north"});
+        assertThat(response.rows()[0][nicknameIdx], nullValue());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.integrationtests;
+
+import io.crate.action.sql.cache.QueryResultCache;
+import io.crate.test.integration.CrateIntegrationTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.TEST, numNodes = 2)
+public class QueryResultCacheIntegrationTest extends SQLTransportIntegrationTest {
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(QueryResultCache.ENABLED_SETTING, true)
+                .build();
+    }
+
+    @Before
+    public void prepare() throws Exception {
+        execute("create table t (id integer, name string) clustered into 2 shards with (number_of_replicas=0)");
+        ensureYellow();
+        execute("insert into t (id, name) values (1, 'Arthur'), (2, 'Trillian'), (3, 'Ford')");
+        refresh();
+    }
+
+    private long cacheStat(String name) {
+        execute("select sum(result_cache['" + name + "']) from sys.nodes");
+        return ((Number) response.rows()[0][0]).longValue();
+    }
+
+    @Test
+    public void testRepeatedQueryIsServedFromCache() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            execute("select count(*) from t where id > ?", new Object[]{1});
+            assertThat((Long) response.rows()[0][0], is(2L));
+        }
+        long hits = cacheStat("hits");
+        long misses = cacheStat("misses");
+        // a miss per node the statement was sent to
+        assertThat(hits + misses, is(5L));
+        assertThat(misses <= 2L, is(true));
+        assertThat(cacheStat("entries") > 0L, is(true));
+        assertThat(cacheStat("size") > 0L, is(true));
+    }
+
+    @Test
+    public void testRefreshInvalidatesCachedResult() throws Exception {
+        execute("select id from t order by id");
+        execute("select id from t order by id");
+        assertThat(response.rowCount(), is(3L));
+
+        execute("insert into t (id, name) values (4, 'Zaphod')");
+        execute("select id from t order by id");
+        // not refreshed yet
+        assertThat(response.rowCount(), is(3L));
+
+        refresh();
+        execute("select id from t order by id");
+        assertThat(response.rowCount(), is(4L));
+        assertThat((Integer) response.rows()[3][0], is(4));
+    }
+
+    @Test
+    public void testNonDeterministicQueryIsNotCached() throws Exception {
+        execute("select random() from t");
+        execute("select random() from t");
+        execute("select id, current_timestamp from t");
+        execute("select id, current_timestamp from t");
+        assertThat(cacheStat("hits"), is(0L));
+        assertThat(cacheStat("misses"), is(0L));
+    }
+
+    @Test
+    public void testSystemTableQueryIsNotCached() throws Exception {
+        execute("select count(*) from sys.shards");
+        execute("select count(*) from sys.shards");
+        assertThat(cacheStat("hits"), is(0L));
+        assertThat(cacheStat("misses"), is(0L));
+    }
+
+    @Test
+    public void testAlterTableInvalidatesCachedResult() throws Exception {
+        execute("select * from t order by id");
+        execute("select * from t order by id");
+        assertThat(response.cols().length, is(2));
+
+        // doesn't change the reader versions of the shards
+        execute("alter table t add column age integer");
+        execute("select * from t order by id");
+        assertThat(response.cols().length, is(3));
+    }
+
+    @Test
+    public void testCachedResultIsLoggedAsJob() throws Exception {
+        execute("set global stats.enabled = true");
+        try {
+            String stmt = "select name from t where id = 2";
+            for (int i = 0; i < 5; i++) {
+                execute(stmt);
+            }
+            assertThat(cacheStat("hits") > 0L, is(true));
+            execute("select count(*) from sys.jobs_log where stmt = ?", new Object[]{stmt});
+            assertThat((Long) response.rows()[0][0], is(5L));
+        } finally {
+            execute("reset global stats.enabled");
+        }
+    }
+
+    @Test
+    public void testQueryOnReplicatedTableIsServedFromCache() throws Exception {
+        execute("create table r (id integer) clustered into 2 shards with (number_of_replicas=1)");
+        ensureGreen();
+        execute("insert into r (id) values (1), (2), (3)");
+        refresh();
+
+        // every execution may choose other copies of the shards
+        for (int i = 0; i < 10; i++) {
+            execute("select count(*) from r");
+            assertThat((Long) response.rows()[0][0], is(3L));
+        }
+        long misses = cacheStat("misses");
+        assertThat(cacheStat("hits") + misses, is(10L));
+        // a miss per node the statement was sent to
+        assertThat(misses <= 2L, is(true));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.integrationtests;
+
+import io.crate.test.integration.CrateIntegrationTest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.http.HttpServerTransport;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
+@CrateIntegrationTest.ClusterScope(scope = CrateIntegrationTest.Scope.GLOBAL)
+public class RestSQLStreamingIntegrationTest extends SQLHttpIntegrationTest {
+
+    private CloseableHttpResponse postStreaming(String body) throws IOException {
+        HttpServerTransport httpServerTransport = cluster().getInstance(HttpServerTransport.class);
+        InetSocketAddress address = ((InetSocketTransportAddress) httpServerTransport.boundAddress().publishAddress())
+                .address();
+        HttpPost httpPost = new HttpPost(
+                String.format("http://%s:%s/_sql?stream=true", address.getHostName(), address.getPort()));
+        httpPost.setEntity(new StringEntity(body));
+        return httpClient.execute(httpPost);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamedResult() throws Exception {
+        execute("create table t (id integer, name string) with (number_of_replicas=0)");
+        ensureYellow();
+        int numRows = 2500;
+        Object[][] bulkArgs = new Object[numRows][];
+        for (int i = 0; i < numRows; i++) {
+            bulkArgs[i] = new Object[]{i, "name" + i};
+        }
+        execute("insert into t (id, name) values (?, ?)", bulkArgs);
+        refresh();
+
+        CloseableHttpResponse response = postStreaming("{\"stmt\": \"select id, name from t\"}");
+        assertThat(response.getStatusLine().getStatusCode(), is(200));
+        assertThat(response.getFirstHeader("Transfer-Encoding").getValue(), is("chunked"));
+
+        Map<String, Object> result = XContentHelper.convertToMap(
+                EntityUtils.toByteArray(response.getEntity()), false).v2();
+        assertThat((List<String>) result.get("cols"), contains("id", "name"));
+        assertThat(((Number) result.get("rowcount")).intValue(), is(numRows));
+        List<List<Object>> rows = (List<List<Object>>) result.get("rows");
+        assertThat(rows.size(), is(numRows));
+        assertThat(rows.get(0).get(1), instanceOf(String.class));
+        assertThat(result.get("duration"), notNullValue());
+    }
+
+    @Test
+    public void testResultWhichCantBeStreamedIsSentAsRegularResponse() throws Exception {
+        execute("create table t2 (id integer primary key, name string) with (number_of_replicas=0)");
+        ensureYellow();
+        execute("insert into t2 (id, name) values (1, 'foo')");
+        refresh();
+
+        // primary key lookups don't use a merge on the handler
+        CloseableHttpResponse response = postStreaming("{\"stmt\": \"select name from t2 where id = 1\"}");
+        assertThat(response.getStatusLine().getStatusCode(), is(200));
+        assertThat(response.getFirstHeader("Content-Length"), notNullValue());
+        assertThat(EntityUtils.toString(response.getEntity()), containsString("\"rowcount\":1"));
+    }
+
+    @Test
+    public void testErrorBeforeFirstChunk() throws Exception {
+        CloseableHttpResponse response = postStreaming("{\"stmt\": \"select * from unknown_table\"}");
+        assertThat(response.getStatusLine().getStatusCode(), is(404));
+        assertThat(EntityUtils.toString(response.getEntity()), containsString("\"code\":4041"));
+    }
+}
@@ -62,7 +62,7 @@ public class ShardStatsTest extends SQLTransportIntegrationTest {
 
         execute("select * from sys.shards where table_name = 'locations' order by state, \"primary\"");
         assertEquals(6L, response.rowCount());
-        assertEquals(10, response.cols().length);
+        assertEquals(11, response.cols().length);
         assertEquals("UNASSIGNED", response.rows()[5][8]);
         assertEquals(false, response.rows()[5][5]);
     }
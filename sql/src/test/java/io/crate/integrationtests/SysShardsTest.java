@@ -141,24 +141,35 @@ public class SysShardsTest extends ClassLifecycleIntegrationTest {
         SQLResponse response = transportExecutor.exec(
             "select * from sys.shards where table_name = 'characters'");
         assertEquals(10L, response.rowCount());
-        assertEquals(10, response.cols().length);
+        assertEquals(11, response.cols().length);
     }
 
     @Test
     public void testSelectStarAllTables() throws Exception {
         SQLResponse response = transportExecutor.exec("select * from sys.shards");
         assertEquals(30L, response.rowCount());
-        assertEquals(10, response.cols().length);
-        assertEquals("schema_name, table_name, id, partition_ident, num_docs, primary, relocating_node, size, state, orphan_partition",
+        assertEquals(11, response.cols().length);
+        assertEquals("schema_name, table_name, id, partition_ident, num_docs, primary, relocating_node, size, state, orphan_partition, blob_recovery",
             Joiner.on(", ").join(response.cols()));
     }
 
+    @Test
+    public void testSelectBlobRecovery() throws Exception {
+        SQLResponse response = transportExecutor.exec(
+            "select table_name, blob_recovery['files'], blob_recovery['bytes'] from sys.shards " +
+            "where id = 0 and \"primary\" = false and table_name in ('blobs', 'characters') " +
+            "order by table_name");
+        assertThat(TestingHelpers.printedTable(response.rows()),
+                is("blobs| 0| 0\n" +
+                   "characters| NULL| NULL\n"));
+    }
+
     @Test
     public void testSelectStarLike() throws Exception {
         SQLResponse response = transportExecutor.exec(
             "select * from sys.shards where table_name like 'charact%'");
         assertEquals(10L, response.rowCount());
-        assertEquals(10, response.cols().length);
+        assertEquals(11, response.cols().length);
     }
 
     @Test
@@ -166,7 +177,7 @@ public class SysShardsTest extends ClassLifecycleIntegrationTest {
         SQLResponse response = transportExecutor.exec(
             "select * from sys.shards where table_name not like 'quotes%'");
         assertEquals(20L, response.rowCount());
-        assertEquals(10, response.cols().length);
+        assertEquals(11, response.cols().length);
     }
 
     @Test
@@ -174,7 +185,7 @@ public class SysShardsTest extends ClassLifecycleIntegrationTest {
         SQLResponse response = transportExecutor.exec(
             "select * from sys.shards where table_name in ('characters')");
         assertEquals(10L, response.rowCount());
-        assertEquals(10, response.cols().length);
+        assertEquals(11, response.cols().length);
     }
 
     @Test
@@ -0,0 +1,98 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation;
+
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.Row1;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.operation.projectors.CollectingProjector;
+import io.crate.operation.projectors.FilterProjector;
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.Test;
+
+import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class RowBatchTest extends CrateUnitTest {
+
+    private RowBatch batchOf(int... values) {
+        RowBatch batch = new RowBatch(1, values.length);
+        for (int value : values) {
+            batch.add(new Row1(value));
+        }
+        return batch;
+    }
+
+    @Test
+    public void testEmitToRowDownstream() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        RowDownstreamHandle handle = collectingProjector.registerUpstream(null);
+
+        RowBatch batch = batchOf(1, 2, 3, 4);
+        assertThat(batch.isFull(), is(true));
+        batch.selection()[1] = 3;
+        batch.selected(2);
+        assertThat(batch.emitTo(handle), is(true));
+        handle.finish();
+
+        Bucket rows = collectingProjector.result().get();
+        assertThat(rows, contains(isRow(1), isRow(4)));
+    }
+
+    @Test
+    public void testFilterNarrowsSelection() throws Exception {
+        final InputCollectExpression<Integer> input = new InputCollectExpression<>(0);
+        FilterProjector filterProjector = new FilterProjector(
+                new CollectExpression[]{input},
+                new Input<Boolean>() {
+                    @Override
+                    public Boolean value() {
+                        return input.value() % 2 == 0;
+                    }
+                });
+        CollectingProjector collectingProjector = new CollectingProjector();
+        filterProjector.downstream(collectingProjector);
+        filterProjector.registerUpstream(null);
+        filterProjector.startProjection();
+
+        RowBatch batch = batchOf(1, 2, 3, 4, 5, 6);
+        assertThat(filterProjector.setNextBatch(batch), is(true));
+        assertThat(batch.selected(), is(3));
+        filterProjector.finish();
+
+        Bucket rows = collectingProjector.result().get();
+        assertThat(rows, contains(isRow(2), isRow(4), isRow(6)));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        RowBatch batch = batchOf(1, 2);
+        batch.clear();
+        assertThat(batch.size(), is(0));
+        assertThat(batch.selected(), is(0));
+        assertThat(batch.isFull(), is(false));
+        assertNull(batch.column(0)[0]);
+    }
+}
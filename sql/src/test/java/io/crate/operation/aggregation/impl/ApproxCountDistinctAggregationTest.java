@@ -0,0 +1,98 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.aggregation.impl;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.metadata.FunctionIdent;
+import io.crate.operation.aggregation.AggregationTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+
+public class ApproxCountDistinctAggregationTest extends AggregationTest {
+
+    private ApproxCountDistinctAggregation.HllState newState(int from, int to) {
+        ApproxCountDistinctAggregation.HllState state = new ApproxCountDistinctAggregation.HllState();
+        for (int i = from; i < to; i++) {
+            state.add(ApproxCountDistinctAggregation.hash((long) i));
+        }
+        return state;
+    }
+
+    @Test
+    public void testReturnType() throws Exception {
+        FunctionIdent fi = new FunctionIdent("approx_count_distinct", ImmutableList.<DataType>of(DataTypes.INTEGER));
+        assertEquals(DataTypes.LONG, functions.get(fi).info().returnType());
+    }
+
+    @Test
+    public void testSmallCardinalityIsExact() throws Exception {
+        Object[][] result = executeAggregation("approx_count_distinct", DataTypes.STRING, new Object[][]{
+                {new BytesRef("Youri")}, {new BytesRef("Ruben")}, {new BytesRef("Youri")}, {null}});
+
+        assertThat((Long) result[0][0], is(2L));
+    }
+
+    @Test
+    public void testLargeCardinality() throws Exception {
+        Object[][] data = new Object[100000][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new Object[]{(long) (i % 50000)};
+        }
+        Object[][] result = executeAggregation("approx_count_distinct", DataTypes.LONG, data);
+
+        // the relative standard error with 2^14 registers is ~0.8%
+        assertThat((Long) result[0][0], allOf(greaterThan(48500L), lessThan(51500L)));
+    }
+
+    @Test
+    public void testReduceMergesSparseAndDenseStates() throws Exception {
+        ApproxCountDistinctAggregation.HllState sparse = newState(0, 100);
+        ApproxCountDistinctAggregation.HllState dense = newState(50, 20000);
+        sparse.merge(dense);
+        assertThat(sparse.cardinality(), allOf(greaterThan(19400L), lessThan(20600L)));
+
+        ApproxCountDistinctAggregation.HllState sparse2 = newState(0, 100);
+        sparse2.merge(newState(50, 150));
+        assertThat(sparse2.cardinality(), is(150L));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        FunctionIdent fi = new FunctionIdent("approx_count_distinct", ImmutableList.<DataType>of(DataTypes.LONG));
+        ApproxCountDistinctAggregation.HllStateType type =
+                (ApproxCountDistinctAggregation.HllStateType) ((ApproxCountDistinctAggregation) functions.get(fi)).partialType();
+        for (ApproxCountDistinctAggregation.HllState state : new ApproxCountDistinctAggregation.HllState[]{
+                newState(0, 10), newState(0, 10000)}) {
+            BytesStreamOutput out = new BytesStreamOutput();
+            type.writeValueTo(out, state);
+            ApproxCountDistinctAggregation.HllState streamed = type.readValueFrom(new BytesStreamInput(out.bytes()));
+            assertThat(streamed.cardinality(), is(state.cardinality()));
+        }
+    }
+}
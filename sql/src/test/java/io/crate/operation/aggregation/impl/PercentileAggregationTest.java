@@ -0,0 +1,131 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.aggregation.impl;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.metadata.FunctionIdent;
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.AggregationTest;
+import io.crate.planner.symbol.Literal;
+import io.crate.types.ArrayType;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+
+public class PercentileAggregationTest extends AggregationTest {
+
+    private static final DataType DOUBLE_ARRAY = new ArrayType(DataTypes.DOUBLE);
+
+    private PercentileAggregation percentile(DataType fractionType) {
+        return (PercentileAggregation) functions.get(new FunctionIdent(PercentileAggregation.NAME,
+                ImmutableList.<DataType>of(DataTypes.LONG, fractionType)));
+    }
+
+    private PercentileAggregation.PercentileState iterate(PercentileAggregation impl,
+                                                          Literal fraction,
+                                                          long from,
+                                                          long to) {
+        PercentileAggregation.PercentileState state = impl.newState(ramAccountingContext);
+        for (long i = from; i < to; i++) {
+            state = impl.iterate(ramAccountingContext, state, Literal.newLiteral(i), fraction);
+        }
+        return state;
+    }
+
+    @Test
+    public void testReturnType() throws Exception {
+        assertEquals(DataTypes.DOUBLE, percentile(DataTypes.DOUBLE).info().returnType());
+        assertEquals(DOUBLE_ARRAY, percentile(DOUBLE_ARRAY).info().returnType());
+    }
+
+    @Test
+    public void testSingleFraction() throws Exception {
+        PercentileAggregation impl = percentile(DataTypes.DOUBLE);
+        PercentileAggregation.PercentileState state = iterate(impl, Literal.newLiteral(0.5), 0, 101);
+        assertThat((Double) impl.terminatePartial(ramAccountingContext, state), closeTo(50.0, 1.0));
+    }
+
+    @Test
+    public void testMultipleFractions() throws Exception {
+        PercentileAggregation impl = percentile(DOUBLE_ARRAY);
+        Literal fractions = Literal.newLiteral(new Object[]{0.5, 0.95, 0.99}, DOUBLE_ARRAY);
+        PercentileAggregation.PercentileState state = iterate(impl, fractions, 0, 100000);
+
+        Object[] result = (Object[]) impl.terminatePartial(ramAccountingContext, state);
+        assertThat(result.length, is(3));
+        assertThat((Double) result[0], closeTo(50000.0, 500.0));
+        assertThat((Double) result[1], closeTo(95000.0, 500.0));
+        assertThat((Double) result[2], closeTo(99000.0, 200.0));
+    }
+
+    @Test
+    public void testReduceAndStreaming() throws Exception {
+        PercentileAggregation impl = percentile(DataTypes.DOUBLE);
+        PercentileAggregation.PercentileState state1 = iterate(impl, Literal.newLiteral(0.9), 0, 50000);
+        PercentileAggregation.PercentileState state2 = iterate(impl, Literal.newLiteral(0.9), 50000, 100000);
+
+        PercentileAggregation.PercentileStateType type = (PercentileAggregation.PercentileStateType) impl.partialType();
+        BytesStreamOutput out = new BytesStreamOutput();
+        type.writeValueTo(out, state2);
+        PercentileAggregation.PercentileState streamed = type.readValueFrom(new BytesStreamInput(out.bytes()));
+
+        // a state without rows, like a shard without matches, doesn't know the fractions yet
+        PercentileAggregation.PercentileState reduced = impl.reduce(ramAccountingContext,
+                impl.newState(ramAccountingContext), state1);
+        reduced = impl.reduce(ramAccountingContext, reduced, streamed);
+        assertThat((Double) impl.terminatePartial(ramAccountingContext, reduced), closeTo(90000.0, 500.0));
+    }
+
+    @Test
+    public void testNoValues() throws Exception {
+        PercentileAggregation impl = percentile(DataTypes.DOUBLE);
+        Input<Object> nullInput = new Input<Object>() {
+            @Override
+            public Object value() {
+                return null;
+            }
+        };
+        PercentileAggregation.PercentileState state = impl.newState(ramAccountingContext);
+        state = impl.iterate(ramAccountingContext, state, nullInput, Literal.newLiteral(0.5));
+        assertThat(impl.terminatePartial(ramAccountingContext, state), nullValue());
+    }
+
+    @Test
+    public void testInvalidFraction() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("fraction 1.5 of percentile must be between 0 and 1");
+        PercentileAggregation impl = percentile(DataTypes.DOUBLE);
+        iterate(impl, Literal.newLiteral(1.5), 0, 1);
+    }
+
+    @Test
+    public void testUnsupportedType() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        functions.get(new FunctionIdent(PercentileAggregation.NAME,
+                ImmutableList.<DataType>of(DataTypes.STRING, DataTypes.DOUBLE)));
+    }
+}
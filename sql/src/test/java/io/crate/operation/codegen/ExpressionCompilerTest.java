@@ -0,0 +1,265 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.codegen;
+
+import io.crate.metadata.Functions;
+import io.crate.metadata.Scalar;
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.FunctionExpression;
+import io.crate.operation.operator.*;
+import io.crate.operation.predicate.NotPredicate;
+import io.crate.operation.predicate.PredicateModule;
+import io.crate.operation.scalar.DateTruncFunction;
+import io.crate.operation.scalar.ScalarFunctionModule;
+import io.crate.operation.scalar.SubstrFunction;
+import io.crate.operation.scalar.arithmetic.*;
+import io.crate.operation.scalar.cast.ToDoubleFunction;
+import io.crate.operation.scalar.cast.ToIntFunction;
+import io.crate.operation.scalar.cast.ToTimestampFunction;
+import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Reference;
+import io.crate.planner.symbol.Symbol;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.inject.ModulesBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static io.crate.testing.TestingHelpers.createFunction;
+import static io.crate.testing.TestingHelpers.createReference;
+import static org.hamcrest.Matchers.*;
+
+public class ExpressionCompilerTest extends CrateUnitTest {
+
+    private static final Reference X = createReference("x", DataTypes.LONG);
+    private static final Reference Y = createReference("y", DataTypes.LONG);
+    private static final Reference D = createReference("d", DataTypes.DOUBLE);
+    private static final Reference S = createReference("s", DataTypes.STRING);
+    private static final Reference TS = createReference("ts", DataTypes.TIMESTAMP);
+
+    private Functions functions;
+    private ExpressionCompiler compiler;
+    private Map<Symbol, Object> values;
+
+    @Before
+    public void prepare() throws Exception {
+        functions = new ModulesBuilder()
+                .add(new ScalarFunctionModule())
+                .add(new OperatorModule())
+                .add(new PredicateModule())
+                .createInjector().getInstance(Functions.class);
+        compiler = new ExpressionCompiler(functions);
+        values = new HashMap<>();
+    }
+
+    private Input<?> compile(Function function) {
+        ExpressionCompiler.Compilation compilation = compiler.compile(function);
+        assertThat(compilation, notNullValue());
+        List<Symbol> leaves = compilation.leaves();
+        Input[] leafInputs = new Input[leaves.size()];
+        for (int i = 0; i < leafInputs.length; i++) {
+            leafInputs[i] = leafInput(leaves.get(i));
+        }
+        return compilation.newInput(leafInputs);
+    }
+
+    private Input<?> leafInput(final Symbol symbol) {
+        if (symbol instanceof Literal) {
+            return (Literal) symbol;
+        }
+        return new Input<Object>() {
+            @Override
+            public Object value() {
+                return values.get(symbol);
+            }
+        };
+    }
+
+    /**
+     * the interpreted evaluation the compiled code must match
+     */
+    @SuppressWarnings("unchecked")
+    private Input<?> interpret(Symbol symbol) {
+        if (!(symbol instanceof Function)) {
+            return leafInput(symbol);
+        }
+        Function function = (Function) symbol;
+        Scalar scalar = ((Scalar) functions.get(function.info().ident())).compile(function.arguments());
+        Input[] arguments = new Input[function.arguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = interpret(function.arguments().get(i));
+        }
+        return new FunctionExpression<>(scalar, arguments);
+    }
+
+    private void assertSameAsInterpreted(Function function, Object[] xValues, Object[] yValues) {
+        Input<?> compiled = compile(function);
+        Input<?> interpreted = interpret(function);
+        for (Object x : xValues) {
+            for (Object y : yValues) {
+                values.put(X, x);
+                values.put(Y, y);
+                assertThat("x=" + x + ", y=" + y, compiled.value(), is(interpreted.value()));
+            }
+        }
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        // (x + y) * 2 - x / 3 + x % 7
+        Function function = createFunction(AddFunction.NAME, DataTypes.LONG,
+                createFunction(SubtractFunction.NAME, DataTypes.LONG,
+                        createFunction(MultiplyFunction.NAME, DataTypes.LONG,
+                                createFunction(AddFunction.NAME, DataTypes.LONG, X, Y),
+                                Literal.newLiteral(2L)),
+                        createFunction(DivideFunction.NAME, DataTypes.LONG, X, Literal.newLiteral(3L))),
+                createFunction(ModulusFunction.NAME, DataTypes.LONG, X, Literal.newLiteral(7L)));
+        Object[] longs = new Object[]{null, -13L, 0L, 1L, 42L, Long.MAX_VALUE};
+        assertSameAsInterpreted(function, longs, longs);
+
+        values.put(X, 10L);
+        values.put(Y, 5L);
+        assertThat((Long) compile(function).value(), is(30L - 3L + 3L));
+    }
+
+    @Test
+    public void testThreeValuedLogic() throws Exception {
+        // not(x > 10 and y < 5) or x = y
+        Function function = createFunction(OrOperator.NAME, DataTypes.BOOLEAN,
+                createFunction(NotPredicate.NAME, DataTypes.BOOLEAN,
+                        createFunction(AndOperator.NAME, DataTypes.BOOLEAN,
+                                createFunction(GtOperator.NAME, DataTypes.BOOLEAN, X, Literal.newLiteral(10L)),
+                                createFunction(LtOperator.NAME, DataTypes.BOOLEAN, Y, Literal.newLiteral(5L)))),
+                createFunction(EqOperator.NAME, DataTypes.BOOLEAN, X, Y));
+        Object[] longs = new Object[]{null, 4L, 5L, 10L, 11L};
+        assertSameAsInterpreted(function, longs, longs);
+
+        Function and = createFunction(AndOperator.NAME, DataTypes.BOOLEAN,
+                createFunction(GteOperator.NAME, DataTypes.BOOLEAN, X, Y),
+                createFunction(LteOperator.NAME, DataTypes.BOOLEAN, X, Literal.newLiteral(10L)));
+        assertSameAsInterpreted(and, longs, longs);
+    }
+
+    @Test
+    public void testDoubleArithmeticWithCasts() throws Exception {
+        // to_double(x) * 1.5 >= d
+        Function function = createFunction(GteOperator.NAME, DataTypes.BOOLEAN,
+                createFunction(MultiplyFunction.NAME, DataTypes.DOUBLE,
+                        createFunction(ToDoubleFunction.NAME, DataTypes.DOUBLE, X),
+                        Literal.newLiteral(1.5d)),
+                D);
+        Input<?> compiled = compile(function);
+        Input<?> interpreted = interpret(function);
+        Random random = getRandom();
+        for (int i = 0; i < 100; i++) {
+            values.put(X, random.nextBoolean() ? null : (long) random.nextInt(100));
+            values.put(D, random.nextBoolean() ? Double.NaN : random.nextDouble() * 150);
+            assertThat(compiled.value(), is(interpreted.value()));
+        }
+    }
+
+    @Test
+    public void testCastOutOfRange() throws Exception {
+        Input<?> compiled = compile(createFunction(ToIntFunction.NAME, DataTypes.INTEGER, X));
+        values.put(X, 42L);
+        assertThat(compiled.value(), is((Object) 42));
+
+        values.put(X, Long.MAX_VALUE);
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("integer value out of range: 9223372036854775807");
+        compiled.value();
+    }
+
+    @Test
+    public void testCastDoubleToTimestamp() throws Exception {
+        Input<?> compiled = compile(createFunction(ToTimestampFunction.NAME, DataTypes.TIMESTAMP, D));
+        values.put(D, 1.5d);
+        assertThat(compiled.value(), is((Object) 1500L));
+    }
+
+    @Test
+    public void testSubstr() throws Exception {
+        Function function = createFunction(SubstrFunction.NAME, DataTypes.STRING, S,
+                Literal.newLiteral(2), createFunction(AddFunction.NAME, DataTypes.LONG, X, Literal.newLiteral(1L)));
+        Input<?> compiled = compile(function);
+        values.put(S, new BytesRef("crate.io"));
+        values.put(X, 2L);
+        assertThat(compiled.value(), is((Object) new BytesRef("rat")));
+
+        values.put(S, null);
+        assertThat(compiled.value(), nullValue());
+    }
+
+    @Test
+    public void testDateTrunc() throws Exception {
+        Function function = createFunction(DateTruncFunction.NAME, DataTypes.TIMESTAMP,
+                Literal.newLiteral("day"), TS);
+        Input<?> compiled = compile(function);
+        values.put(TS, 1401777485000L); // Tue, 03 Jun 2014 06:38:05 GMT
+        assertThat(compiled.value(), is((Object) 1401753600000L));
+
+        values.put(TS, null);
+        assertThat(compiled.value(), nullValue());
+    }
+
+    @Test
+    public void testStringComparison() throws Exception {
+        Function function = createFunction(LtOperator.NAME, DataTypes.BOOLEAN, S, Literal.newLiteral("m"));
+        Input<?> compiled = compile(function);
+        values.put(S, new BytesRef("crate"));
+        assertThat(compiled.value(), is((Object) true));
+        values.put(S, new BytesRef("zebra"));
+        assertThat(compiled.value(), is((Object) false));
+    }
+
+    @Test
+    public void testUnsupportedFunctionIsNotCompiled() throws Exception {
+        Function function = createFunction(LogFunction.LnFunction.NAME, DataTypes.DOUBLE, D);
+        assertThat(compiler.compile(function), nullValue());
+    }
+
+    @Test
+    public void testUnsupportedArgumentBecomesLeaf() throws Exception {
+        Function ln = createFunction(LogFunction.LnFunction.NAME, DataTypes.DOUBLE, D);
+        Function function = createFunction(GtOperator.NAME, DataTypes.BOOLEAN, ln, Literal.newLiteral(1.0d));
+        ExpressionCompiler.Compilation compilation = compiler.compile(function);
+        assertThat(compilation, notNullValue());
+        assertThat(compilation.leaves(), contains((Symbol) ln, Literal.newLiteral(1.0d)));
+    }
+
+    @Test
+    public void testSameStructureUsesSameClass() throws Exception {
+        Input<?> first = compile(createFunction(GtOperator.NAME, DataTypes.BOOLEAN, X, Literal.newLiteral(1L)));
+        Input<?> second = compile(createFunction(GtOperator.NAME, DataTypes.BOOLEAN, Y, Literal.newLiteral(2L)));
+        Input<?> other = compile(createFunction(LtOperator.NAME, DataTypes.BOOLEAN, Y, Literal.newLiteral(2L)));
+        assertThat(first, instanceOf(CompiledExpression.class));
+        assertSame(first.getClass(), second.getClass());
+        assertNotSame(first.getClass(), other.getClass());
+    }
+}
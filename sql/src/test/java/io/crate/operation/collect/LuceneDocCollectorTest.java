@@ -50,6 +50,8 @@ import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.shard.ShardId;
@@ -61,6 +63,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static io.crate.testing.TestingHelpers.createReference;
 import static org.hamcrest.Matchers.is;
@@ -85,6 +88,14 @@ public class LuceneDocCollectorTest extends SQLTransportIntegrationTest {
     private static final RamAccountingContext RAM_ACCOUNTING_CONTEXT =
             new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
 
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(ShardCollectService.MAX_PARALLELISM_PER_SHARD, 4)
+                .build();
+    }
+
     @Before
     public void prepare() throws Exception{
         execute("create table \""+INDEX_NAME+ "\" (" +
@@ -171,6 +182,22 @@ public class LuceneDocCollectorTest extends SQLTransportIntegrationTest {
         assertThat(collectingProjector.rows.size(), is(15));
     }
 
+    @Test
+    public void testUnorderedCollectOnMultipleSegments() throws Exception {
+        // every refresh creates a new segment, segments are collected in parallel
+        for (int i = 0; i < 3; i++) {
+            IndexRequest indexRequest = new IndexRequest(INDEX_NAME, "default", String.valueOf(NUMBER_OF_DOCS + i));
+            indexRequest.source(generateRowSource("Asia", "Country" + i, i));
+            client().index(indexRequest).actionGet();
+            refresh(client());
+        }
+        collectingProjector.rows.clear();
+        LuceneDocCollector docCollector = createDocCollector(null, null, orderBy.orderBySymbols());
+        docCollector.doCollect(RAM_ACCOUNTING_CONTEXT);
+        collectingProjector.result().get(5, TimeUnit.SECONDS);
+        assertThat(collectingProjector.rows.size(), is(NUMBER_OF_DOCS + 3));
+    }
+
     @Test
     public void testOrderedWithLimit() throws Exception{
         collectingProjector.rows.clear();
@@ -21,16 +21,24 @@
 
 package io.crate.operation.collect.files;
 
+import com.google.common.collect.Sets;
 import io.crate.blob.BlobContainer;
 import io.crate.blob.v2.BlobShard;
 import io.crate.core.collections.Bucket;
 import io.crate.operation.Input;
 import io.crate.operation.collect.blobs.BlobCollectorExpression;
+import io.crate.operation.collect.blobs.BlobDigestFilter;
 import io.crate.operation.collect.blobs.BlobDocCollector;
+import io.crate.operation.operator.*;
 import io.crate.operation.projectors.CollectingProjector;
 import io.crate.operation.reference.doc.blob.BlobDigestExpression;
 import io.crate.operation.reference.doc.blob.BlobLastModifiedExpression;
+import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Reference;
 import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataTypes;
+import io.crate.types.SetType;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.io.FileSystemUtils;
 import org.junit.After;
@@ -43,6 +51,8 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
+import static io.crate.testing.TestingHelpers.createFunction;
+import static io.crate.testing.TestingHelpers.createReference;
 import static io.crate.testing.TestingHelpers.isRow;
 import static org.hamcrest.Matchers.contains;
 import static org.mockito.Mockito.mock;
@@ -92,10 +102,73 @@ public class BlobDocCollectorTest extends CrateUnitTest {
         assertThat(result, contains(isRow(new BytesRef(digest), mtime)));
     }
 
+    @Test
+    public void testDigestFilterLooksUpBlobs() throws Exception {
+        BlobContainer container = new BlobContainer(tmpDir.toFile());
+        String digest = "417de3231e23dcd6d224ff60918024bc6c59aa58";
+        String otherDigest = "c17de3231e23dcd6d224ff60918024bc6c59aa58";
+        assertTrue(container.getFile(digest).createNewFile());
+        assertTrue(container.getFile(otherDigest).createNewFile());
+
+        Reference digestRef = createReference(BlobDigestExpression.COLUMN_NAME, DataTypes.STRING);
+        Function query = createFunction(InOperator.NAME, DataTypes.BOOLEAN,
+                digestRef, Literal.newLiteral(new SetType(DataTypes.STRING),
+                        Sets.newHashSet(new BytesRef(digest), new BytesRef("0000000000000000000000000000000000000000"))));
+        BlobDigestFilter digestFilter = BlobDigestFilter.fromQuery(query);
+        assertThat(digestFilter.digests(), contains(
+                "0000000000000000000000000000000000000000", digest));
+
+        BlobDigestExpression digestExpression = new BlobDigestExpression();
+        CollectingProjector projector = getProjector(
+                container,
+                Arrays.<Input<?>>asList(digestExpression),
+                Arrays.<BlobCollectorExpression<?>>asList(digestExpression),
+                Literal.newLiteral(true),
+                digestFilter
+        );
+        assertThat(projector.result().get(), contains(isRow(new BytesRef(digest))));
+    }
+
+    @Test
+    public void testDigestFilterFromRange() throws Exception {
+        Reference digestRef = createReference(BlobDigestExpression.COLUMN_NAME, DataTypes.STRING);
+        Function query = createFunction(AndOperator.NAME, DataTypes.BOOLEAN,
+                createFunction(GteOperator.NAME, DataTypes.BOOLEAN, digestRef, Literal.newLiteral("417d")),
+                createFunction(GtOperator.NAME, DataTypes.BOOLEAN, Literal.newLiteral("5a"), digestRef));
+        BlobDigestFilter digestFilter = BlobDigestFilter.fromQuery(query);
+
+        assertNull(digestFilter.digests());
+        assertFalse(digestFilter.matchesPrefix("40"));
+        assertTrue(digestFilter.matchesPrefix("41"));
+        assertTrue(digestFilter.matchesPrefix("59"));
+        // every digest in 5a is greater than '5a'
+        assertFalse(digestFilter.matchesPrefix("5a"));
+    }
+
+    @Test
+    public void testDigestFilterIgnoresOr() throws Exception {
+        Reference digestRef = createReference(BlobDigestExpression.COLUMN_NAME, DataTypes.STRING);
+        Function query = createFunction(OrOperator.NAME, DataTypes.BOOLEAN,
+                createFunction(EqOperator.NAME, DataTypes.BOOLEAN, digestRef, Literal.newLiteral("41")),
+                createFunction(EqOperator.NAME, DataTypes.BOOLEAN, digestRef, Literal.newLiteral("42")));
+        BlobDigestFilter digestFilter = BlobDigestFilter.fromQuery(query);
+
+        assertNull(digestFilter.digests());
+        assertTrue(digestFilter.matchesPrefix("00"));
+    }
+
     private CollectingProjector getProjector(BlobContainer container,
                                              List<Input<?>> inputs,
                                              List<BlobCollectorExpression<?>> expressions,
                                              Input<Boolean> condition) throws Exception {
+        return getProjector(container, inputs, expressions, condition, BlobDigestFilter.ALL);
+    }
+
+    private CollectingProjector getProjector(BlobContainer container,
+                                             List<Input<?>> inputs,
+                                             List<BlobCollectorExpression<?>> expressions,
+                                             Input<Boolean> condition,
+                                             BlobDigestFilter digestFilter) throws Exception {
         CollectingProjector projector = new CollectingProjector();
         BlobShard blobShard = mock(BlobShard.class);
         when(blobShard.blobContainer()).thenReturn(container);
@@ -105,6 +178,7 @@ public class BlobDocCollectorTest extends CrateUnitTest {
                 inputs,
                 expressions,
                 condition,
+                digestFilter,
                 projector
         );
 
@@ -61,4 +61,41 @@ public class InternalCountOperationTest extends SQLTransportIntegrationTest {
         }
         assertThat(errors, is(1));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCountReflectsNewAndDeletedDocs() throws Exception {
+        execute("create table t2 (name string) clustered into 1 shards with (number_of_replicas = 0)");
+        ensureYellow();
+        execute("insert into t2 (name) values ('Marvin'), ('Arthur')");
+        execute("refresh table t2");
+
+        WhereClause whereClause = TestingHelpers.whereClause(
+                EqOperator.NAME,
+                TestingHelpers.createReference("name", DataTypes.STRING),
+                Literal.newLiteral("Marvin"));
+
+        CountOperation countOperation = null;
+        for (CountOperation operation : cluster().getInstances(CountOperation.class)) {
+            try {
+                assertThat(operation.count("t2", 0, whereClause), is(1L));
+                countOperation = operation;
+            } catch (IndexMissingException e) {
+                // one node doesn't have a index/shard, that's okay
+            }
+        }
+        assertNotNull(countOperation);
+        // counted again from the cached segment counts
+        assertThat(countOperation.count("t2", 0, whereClause), is(1L));
+
+        execute("insert into t2 (name) values ('Marvin')");
+        execute("refresh table t2");
+        assertThat(countOperation.count("t2", 0, whereClause), is(2L));
+        assertThat(countOperation.count("t2", 0, WhereClause.MATCH_ALL), is(3L));
+
+        execute("delete from t2 where name = 'Marvin'");
+        execute("refresh table t2");
+        assertThat(countOperation.count("t2", 0, whereClause), is(0L));
+        assertThat(countOperation.count("t2", 0, WhereClause.MATCH_ALL), is(1L));
+        assertThat(countOperation.count("t2", 0, WhereClause.NO_MATCH), is(0L));
+    }
+}
@@ -44,6 +44,7 @@ import java.util.Locale;
 import java.util.UUID;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -112,4 +113,23 @@ public class NodeFetchOperationTest extends CrateUnitTest {
         expectedException.expectMessage(String.format(Locale.ENGLISH, "No lucene collector found for job search context id '%s'", 0));
         nodeFetchOperation.fetch(mock(SingleBucketBuilder.class));
     }
+
+    @Test
+    public void testShardDocIdsBucketSortByDocIdKeepsPositions() throws Exception {
+        NodeFetchOperation.ShardDocIdsBucket bucket = new NodeFetchOperation.ShardDocIdsBucket();
+        bucket.add(0, 42);
+        bucket.add(1, 3);
+        bucket.add(2, 17);
+        bucket.add(3, 5);
+
+        bucket.sortByDocId();
+
+        int[] expectedDocIds = new int[]{3, 5, 17, 42};
+        int[] expectedPositions = new int[]{1, 3, 2, 0};
+        assertThat(bucket.size(), is(4));
+        for (int i = 0; i < bucket.size(); i++) {
+            assertThat(bucket.docId(i), is(expectedDocIds[i]));
+            assertThat(bucket.position(i), is(expectedPositions[i]));
+        }
+    }
 }
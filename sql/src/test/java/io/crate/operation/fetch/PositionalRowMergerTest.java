@@ -184,4 +184,27 @@ public class PositionalRowMergerTest extends CrateUnitTest {
         executorService.awaitTermination(1, TimeUnit.SECONDS);
     }
 
+    @Test
+    public void testUnorderedRowsOfOneUpstream() throws Exception {
+        CollectingProjector resultProvider = new CollectingProjector();
+        PositionalRowMerger rowMerger = new PositionalRowMerger(resultProvider, 1);
+
+        RowDownstreamHandle first = rowMerger.registerUpstream(null);
+        RowDownstreamHandle second = rowMerger.registerUpstream(null);
+        for (int position : new int[]{4, 0, 2}) {
+            first.setNextRow(new PositionalRowDelegate(new RowN(new Object[]{position}), position));
+        }
+        for (int position : new int[]{3, 1}) {
+            second.setNextRow(new PositionalRowDelegate(new RowN(new Object[]{position}), position));
+        }
+        first.finish();
+        second.finish();
+
+        Bucket result = resultProvider.result().get();
+        assertThat(result.size(), is(5));
+        Iterator<Row> it = result.iterator();
+        for (int i = 0; i < 5; i++) {
+            assertThat((int) it.next().get(0), is(i));
+        }
+    }
 }
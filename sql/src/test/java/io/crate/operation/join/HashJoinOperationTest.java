@@ -0,0 +1,256 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.join;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.core.collections.ArrayBucket;
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.BucketPage;
+import io.crate.operation.PageConsumeListener;
+import io.crate.operation.PageDownstream;
+import io.crate.operation.projectors.CollectingProjector;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.*;
+
+public class HashJoinOperationTest extends CrateUnitTest {
+
+    private static final List<DataType> LEFT_TYPES = ImmutableList.<DataType>of(DataTypes.INTEGER, DataTypes.STRING);
+    private static final List<DataType> RIGHT_TYPES = ImmutableList.<DataType>of(DataTypes.INTEGER, DataTypes.LONG);
+
+    private static final Bucket LEFT = new ArrayBucket(new Object[][]{
+            new Object[]{1, new BytesRef("Arthur")},
+            new Object[]{2, new BytesRef("Trillian")},
+            new Object[]{null, new BytesRef("Marvin")},
+    });
+
+    private static final Bucket RIGHT = new ArrayBucket(new Object[][]{
+            new Object[]{1, 10L},
+            new Object[]{1, 11L},
+            new Object[]{3, 30L},
+            new Object[]{null, 40L},
+    });
+
+    private static RamAccountingContext ramAccountingContext(CircuitBreaker breaker) {
+        return new RamAccountingContext("dummy", breaker);
+    }
+
+    private static RamAccountingContext ramAccountingContext() {
+        return ramAccountingContext(new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+    }
+
+    private static HashJoinOperation operation(RamAccountingContext ramAccountingContext,
+                                               CollectingProjector collectingProjector) {
+        return new HashJoinOperation(new int[]{0}, new int[]{0}, LEFT_TYPES, RIGHT_TYPES,
+                ramAccountingContext, collectingProjector, Optional.<Executor>absent());
+    }
+
+    /**
+     * pushes every bucket as a page of the side and finishes the side once all pages have been consumed,
+     * like the {@link io.crate.jobs.PageDownstreamContext} does
+     */
+    private static void push(final PageDownstream side, final Iterator<Bucket> pages) {
+        if (!pages.hasNext()) {
+            side.finish();
+            return;
+        }
+        side.nextPage(new BucketPage(Futures.immediateFuture(pages.next())), new PageConsumeListener() {
+            @Override
+            public void needMore() {
+                push(side, pages);
+            }
+
+            @Override
+            public void finish() {
+                side.finish();
+            }
+        });
+    }
+
+    private Bucket join(List<Bucket> leftPages, List<Bucket> rightPages, RamAccountingContext ramAccountingContext)
+            throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        HashJoinOperation operation = operation(ramAccountingContext, collectingProjector);
+        // the pages of the left side are held back until the hash table is built from the right side
+        push(operation.leftSide(), leftPages.iterator());
+        push(operation.rightSide(), rightPages.iterator());
+        return collectingProjector.result().get();
+    }
+
+    private Bucket join(Bucket left, Bucket right) throws Exception {
+        return join(ImmutableList.of(left), ImmutableList.of(right), ramAccountingContext());
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        Bucket rows = join(LEFT, RIGHT);
+        assertThat(rows, containsInAnyOrder(
+                isRow(1, new BytesRef("Arthur"), 1, 10L),
+                isRow(1, new BytesRef("Arthur"), 1, 11L)));
+    }
+
+    @Test
+    public void testJoinOfMultiplePages() throws Exception {
+        Bucket rows = join(
+                ImmutableList.of(LEFT, new ArrayBucket(new Object[][]{new Object[]{3, new BytesRef("Ford")}})),
+                ImmutableList.of(new ArrayBucket(new Object[][]{new Object[]{2, 20L}}), RIGHT),
+                ramAccountingContext());
+        assertThat(rows, containsInAnyOrder(
+                isRow(1, new BytesRef("Arthur"), 1, 10L),
+                isRow(1, new BytesRef("Arthur"), 1, 11L),
+                isRow(2, new BytesRef("Trillian"), 2, 20L),
+                isRow(3, new BytesRef("Ford"), 3, 30L)));
+    }
+
+    @Test
+    public void testNullKeysDoNotMatch() throws Exception {
+        Bucket left = new ArrayBucket(new Object[][]{new Object[]{null, new BytesRef("Marvin")}});
+        Bucket right = new ArrayBucket(new Object[][]{new Object[]{null, 40L}});
+        assertThat(join(left, right).size(), is(0));
+    }
+
+    @Test
+    public void testJoinOnMultipleColumns() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        HashJoinOperation operation = new HashJoinOperation(new int[]{0, 1}, new int[]{1, 0},
+                ImmutableList.<DataType>of(DataTypes.INTEGER, DataTypes.LONG),
+                ImmutableList.<DataType>of(DataTypes.LONG, DataTypes.INTEGER),
+                ramAccountingContext(),
+                collectingProjector,
+                Optional.<Executor>absent());
+        push(operation.rightSide(), Arrays.<Bucket>asList(
+                new ArrayBucket(new Object[][]{new Object[]{11L, 1}, new Object[]{10L, 2}})).iterator());
+        push(operation.leftSide(), Arrays.<Bucket>asList(
+                new ArrayBucket(new Object[][]{new Object[]{1, 10L}, new Object[]{1, 11L}})).iterator());
+        assertThat(collectingProjector.result().get(), contains(isRow(1, 11L, 11L, 1)));
+    }
+
+    @Test
+    public void testLeftPagesAreConsumedOnceTheRightSideIsFinished() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        HashJoinOperation operation = operation(ramAccountingContext(), collectingProjector);
+        final AtomicInteger leftPagesConsumed = new AtomicInteger(0);
+        operation.leftSide().nextPage(new BucketPage(Futures.immediateFuture(LEFT)), new PageConsumeListener() {
+            @Override
+            public void needMore() {
+                leftPagesConsumed.incrementAndGet();
+            }
+
+            @Override
+            public void finish() {
+                fail("the downstream needs more rows");
+            }
+        });
+        operation.rightSide().nextPage(new BucketPage(Futures.immediateFuture(RIGHT)), new PageConsumeListener() {
+            @Override
+            public void needMore() {
+            }
+
+            @Override
+            public void finish() {
+                fail("the hash table needs more rows");
+            }
+        });
+        assertThat(leftPagesConsumed.get(), is(0));
+
+        operation.rightSide().finish();
+        assertThat(leftPagesConsumed.get(), is(1));
+        operation.leftSide().finish();
+        assertThat(collectingProjector.result().get().size(), is(2));
+    }
+
+    @Test
+    public void testFailureOfRightSideFailsJoinAndReleasesLeftPages() throws Exception {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        HashJoinOperation operation = operation(ramAccountingContext(), collectingProjector);
+        final AtomicInteger leftPagesFinished = new AtomicInteger(0);
+        operation.leftSide().nextPage(new BucketPage(Futures.immediateFuture(LEFT)), new PageConsumeListener() {
+            @Override
+            public void needMore() {
+                fail("the left side must not be consumed");
+            }
+
+            @Override
+            public void finish() {
+                leftPagesFinished.incrementAndGet();
+            }
+        });
+        operation.rightSide().fail(new IllegalStateException("collect failed"));
+        assertThat(leftPagesFinished.get(), is(1));
+
+        expectedException.expect(ExecutionException.class);
+        expectedException.expectMessage("collect failed");
+        collectingProjector.result().get();
+    }
+
+    @Test
+    public void testHashTableIsAccounted() throws Exception {
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(1), 1.0,
+                Loggers.getLogger(HashJoinOperationTest.class));
+        // exceeds the flush buffer of the ram accounting context
+        Object[][] rows = new Object[50000][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{i, (long) i};
+        }
+        try {
+            join(ImmutableList.<Bucket>of(LEFT), ImmutableList.<Bucket>of(new ArrayBucket(rows)),
+                    ramAccountingContext(breaker));
+            fail("the hash table should have tripped the circuit breaker");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(CircuitBreakingException.class));
+        }
+    }
+
+    @Test
+    public void testRowsWithNullKeysAreNotAccounted() throws Exception {
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(1), 1.0,
+                Loggers.getLogger(HashJoinOperationTest.class));
+        Object[][] rows = new Object[50000][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{null, (long) i};
+        }
+        Bucket result = join(ImmutableList.<Bucket>of(LEFT), ImmutableList.<Bucket>of(new ArrayBucket(rows)),
+                ramAccountingContext(breaker));
+        assertThat(result.size(), is(0));
+    }
+}
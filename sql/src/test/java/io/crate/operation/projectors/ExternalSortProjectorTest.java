@@ -0,0 +1,217 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.Row;
+import io.crate.core.collections.RowN;
+import io.crate.operation.Input;
+import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.*;
+
+public class ExternalSortProjectorTest extends CrateUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final InputCollectExpression<Integer> ID = new InputCollectExpression<>(0);
+    private static final InputCollectExpression<BytesRef> NAME = new InputCollectExpression<>(1);
+
+    private final RowN spare = new RowN(2);
+
+    private final RamAccountingContext ramAccountingContext =
+            new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+
+    private ExternalSortProjector projector(int limit, int offset, long runSize, boolean reverse, Path tmpDir) {
+        ExternalSortProjector projector = new ExternalSortProjector(
+                new Input<?>[]{NAME, ID},
+                new CollectExpression[]{ID, NAME},
+                ImmutableList.<DataType>of(DataTypes.STRING, DataTypes.INTEGER),
+                1,
+                new int[]{1},
+                new boolean[]{reverse},
+                new Boolean[]{null},
+                limit,
+                offset,
+                ramAccountingContext,
+                runSize,
+                tmpDir);
+        projector.registerUpstream(null);
+        projector.startProjection();
+        return projector;
+    }
+
+    private void feed(ExternalSortProjector projector, int numRows) {
+        // all ids in shuffled order: 0, 17, 34, ... (mod numRows), numRows must not be a multiple of 17
+        for (int i = 0; i < numRows; i++) {
+            int id = (i * 17) % numRows;
+            spare.cells(new Object[]{id, new BytesRef("name " + id)});
+            assertThat(projector.setNextRow(spare), is(true));
+        }
+        projector.finish();
+    }
+
+    @Test
+    public void testSortInMemory() throws Exception {
+        Path tmpDir = folder.newFolder().toPath();
+        ExternalSortProjector projector = projector(TopN.NO_LIMIT, 0, Long.MAX_VALUE, false, tmpDir);
+        feed(projector, 100);
+
+        Bucket rows = projector.result().get();
+        assertThat(rows.size(), is(100));
+        int expectedId = 0;
+        for (Row row : rows) {
+            assertThat(row, isRow(new BytesRef("name " + expectedId)));
+            expectedId++;
+        }
+        assertThat(tmpDir.toFile().list().length, is(0));
+    }
+
+    @Test
+    public void testSpilledRunsAreMerged() throws Exception {
+        File tmpDir = folder.newFolder();
+        // runs of more than one page
+        ExternalSortProjector projector = projector(TopN.NO_LIMIT, 0, 128 * 1024, true, tmpDir.toPath());
+        int numRows = 5 * ExternalSortProjector.PAGE_SIZE + 1;
+        feed(projector, numRows);
+
+        Bucket rows = projector.result().get();
+        assertThat(rows.size(), is(numRows));
+        int expectedId = numRows - 1;
+        for (Row row : rows) {
+            assertThat(row, isRow(new BytesRef("name " + expectedId)));
+            expectedId--;
+        }
+        // run files are removed
+        assertThat(tmpDir.list().length, is(0));
+    }
+
+    @Test
+    public void testLimitAndOffsetWithSpilledRuns() throws Exception {
+        ExternalSortProjector projector = projector(5, 10, 1024, false, folder.newFolder().toPath());
+        feed(projector, 1001);
+
+        Bucket rows = projector.result().get();
+        assertThat(rows, contains(
+                isRow(new BytesRef("name 10")),
+                isRow(new BytesRef("name 11")),
+                isRow(new BytesRef("name 12")),
+                isRow(new BytesRef("name 13")),
+                isRow(new BytesRef("name 14"))));
+    }
+
+    @Test
+    public void testRowsAreEmittedToDownstream() throws Exception {
+        ExternalSortProjector projector = projector(TopN.NO_LIMIT, 0, 1024, false, folder.newFolder().toPath());
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+        feed(projector, 1001);
+
+        assertThat(projector.result().get().size(), is(0));
+        Bucket rows = collectingProjector.result().get();
+        assertThat(rows.size(), is(1001));
+        Row first = rows.iterator().next();
+        assertThat(first.size(), is(1));
+        assertThat(first, isRow(new BytesRef("name 0")));
+    }
+
+    @Test
+    public void testInMemoryResultStaysAccounted() throws Exception {
+        ExternalSortProjector projector = projector(TopN.NO_LIMIT, 0, Long.MAX_VALUE, false, folder.newFolder().toPath());
+        feed(projector, 100);
+
+        assertThat(projector.result().get().size(), is(100));
+        assertThat(ramAccountingContext.usedBytes(), greaterThan(0L));
+    }
+
+    @Test
+    public void testResultIsReadFromRunFiles() throws Exception {
+        File tmpDir = folder.newFolder();
+        ExternalSortProjector projector = projector(TopN.NO_LIMIT, 3, 1024, false, tmpDir.toPath());
+        feed(projector, 1001);
+
+        Bucket rows = projector.result().get();
+        assertThat(rows, instanceOf(ExternalSortProjector.RunFilesBucket.class));
+        assertThat(rows.size(), is(998));
+        // the rows aren't materialized, all runs including the last one are on disk
+        assertThat(tmpDir.list().length, greaterThan(1));
+        assertThat(ramAccountingContext.usedBytes(), is(0L));
+
+        int expectedId = 3;
+        for (Row row : rows) {
+            assertThat(row, isRow(new BytesRef("name " + expectedId)));
+            expectedId++;
+        }
+        assertThat(expectedId, is(1001));
+        assertThat(tmpDir.list().length, is(0));
+
+        expectedException.expect(IllegalStateException.class);
+        rows.iterator();
+    }
+
+    @Test
+    public void testClosingPartiallyIteratedResultDeletesRunFiles() throws Exception {
+        File tmpDir = folder.newFolder();
+        ExternalSortProjector projector = projector(TopN.NO_LIMIT, 0, 1024, false, tmpDir.toPath());
+        feed(projector, 1001);
+
+        ExternalSortProjector.RunFilesBucket rows = (ExternalSortProjector.RunFilesBucket) projector.result().get();
+        Iterator<Row> iterator = rows.iterator();
+        assertThat(iterator.next(), isRow(new BytesRef("name 0")));
+        assertThat(tmpDir.list().length, greaterThan(1));
+
+        rows.close();
+        assertThat(tmpDir.list().length, is(0));
+    }
+
+    @Test
+    public void testClosingResultBeforeIteratingDeletesRunFiles() throws Exception {
+        File tmpDir = folder.newFolder();
+        ExternalSortProjector projector = projector(TopN.NO_LIMIT, 0, 1024, false, tmpDir.toPath());
+        feed(projector, 1001);
+
+        ExternalSortProjector.RunFilesBucket rows = (ExternalSortProjector.RunFilesBucket) projector.result().get();
+        rows.close();
+        assertThat(tmpDir.list().length, is(0));
+
+        expectedException.expect(IllegalStateException.class);
+        rows.iterator();
+    }
+}
@@ -22,11 +22,17 @@ import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.breaker.NoopCircuitBreaker;
 import org.elasticsearch.common.inject.ModulesBuilder;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 
+import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.emptyArray;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.core.Is.is;
 
@@ -35,6 +41,9 @@ public class GroupingProjectorTest extends CrateUnitTest {
     protected static final RamAccountingContext RAM_ACCOUNTING_CONTEXT =
             new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     /**
      * NOTE:
      *
@@ -83,6 +92,131 @@ public class GroupingProjectorTest extends CrateUnitTest {
         assertThat(rows.iterator().next().get(1), instanceOf(Long.class));
     }
 
+    private Bucket groupByCount(DataType keyType, Object... keys) throws ExecutionException, InterruptedException {
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+
+        GroupingProjector projector = new GroupingProjector(
+                Arrays.asList(keyType),
+                ImmutableList.<Input<?>>of(new ValuesInput(keys)),
+                new CollectExpression[0],
+                new AggregationContext[] { aggregationContext },
+                RAM_ACCOUNTING_CONTEXT
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+
+        Row emptyRow = new RowN(new Object[]{});
+        projector.startProjection();
+        for (int i = 0; i < keys.length; i++) {
+            projector.setNextRow(emptyRow);
+        }
+        projector.finish();
+        return collectingProjector.result().get();
+    }
+
+    @Test
+    public void testGroupByIntegerKeyWithNulls() throws Exception {
+        Bucket rows = groupByCount(DataTypes.INTEGER, 1, 2, null, 1, 3, null, 1);
+        assertThat(rows, containsInAnyOrder(
+                isRow(null, 2L),
+                isRow(1, 3L),
+                isRow(2, 1L),
+                isRow(3, 1L)
+        ));
+    }
+
+    @Test
+    public void testGroupByDoubleKey() throws Exception {
+        Bucket rows = groupByCount(DataTypes.DOUBLE, 1.5d, -0.5d, 1.5d, Double.NaN, Double.NaN);
+        assertThat(rows, containsInAnyOrder(
+                isRow(1.5d, 2L),
+                isRow(-0.5d, 1L),
+                isRow(Double.NaN, 2L)
+        ));
+    }
+
+    @Test
+    public void testGroupByStringKey() throws Exception {
+        Bucket rows = groupByCount(DataTypes.STRING,
+                new BytesRef("foo"), new BytesRef("bar"), new BytesRef("foo"), null);
+        assertThat(rows, containsInAnyOrder(
+                isRow(new BytesRef("foo"), 2L),
+                isRow(new BytesRef("bar"), 1L),
+                isRow(null, 1L)
+        ));
+    }
+
+    @Test
+    public void testGroupBySpillsGroupsToDisk() throws Exception {
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+
+        // every key is added 3 times, spread over several spills
+        int numKeys = 1000;
+        Object[] keys = new Object[numKeys * 3];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i % numKeys;
+        }
+        File spillDir = temporaryFolder.newFolder();
+        GroupingProjector projector = new GroupingProjector(
+                Arrays.asList(DataTypes.INTEGER),
+                ImmutableList.<Input<?>>of(new ValuesInput(keys)),
+                new CollectExpression[0],
+                new AggregationContext[] { aggregationContext },
+                RAM_ACCOUNTING_CONTEXT,
+                1024,
+                spillDir.toPath()
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+
+        Row emptyRow = new RowN(new Object[]{});
+        projector.startProjection();
+        for (int i = 0; i < keys.length; i++) {
+            projector.setNextRow(emptyRow);
+        }
+        assertThat(spillDir.list().length, is(GroupingSpillFiles.NUM_PARTITIONS));
+        projector.finish();
+
+        Bucket rows = collectingProjector.result().get();
+        assertThat(rows.size(), is(numKeys));
+        for (Row row : rows) {
+            assertThat(row.get(1), is((Object) 3L));
+        }
+        assertThat(spillDir.list(), emptyArray());
+    }
+
+    class ValuesInput implements Input<Object> {
+
+        private final Object[] values;
+        private int idx;
+
+        ValuesInput(Object... values) {
+            this.values = values;
+            this.idx = 0;
+        }
+
+        @Override
+        public Object value() {
+            return values[idx++];
+        }
+    }
+
     class DummyInput implements Input<BytesRef> {
 
         private final BytesRef[] values;
@@ -62,11 +62,14 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static io.crate.testing.TestingHelpers.isRow;
 import static io.crate.testing.TestingHelpers.printedTable;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Mockito.mock;
 
@@ -153,6 +156,28 @@ public class ProjectionToProjectorVisitorTest extends CrateUnitTest {
         assertThat(rows.iterator().next(), isRow("foo", 42));
     }
 
+    @Test
+    public void testSortingWithoutLimitUsesExternalSort() throws ExecutionException, InterruptedException {
+        TopNProjection projection = new TopNProjection(TopN.NO_LIMIT, 0,
+                Arrays.<Symbol>asList(new InputColumn(0, DataTypes.INTEGER)),
+                new boolean[]{true},
+                new Boolean[]{null}
+        );
+        projection.outputs(Arrays.<Symbol>asList(new InputColumn(1, DataTypes.INTEGER)));
+        Projector projector = visitor.process(projection, RAM_ACCOUNTING_CONTEXT);
+        RowDownstreamHandle handle = projector.registerUpstream(null);
+        assertThat(projector, instanceOf(ExternalSortProjector.class));
+
+        projector.startProjection();
+        for (int i = 0; i < 20; i++) {
+            handle.setNextRow(spare(i % 4, i));
+        }
+        handle.finish();
+        Bucket rows = ((ResultProvider) projector).result().get();
+        assertThat(rows.size(), is(20));
+        assertThat(rows.iterator().next(), isRow(3));
+    }
+
     @Test
     public void testSortingTopNProjection() throws ExecutionException, InterruptedException {
         TopNProjection projection = new TopNProjection(10, 0,
@@ -211,6 +236,235 @@ public class ProjectionToProjectorVisitorTest extends CrateUnitTest {
         assertThat(rows, contains(isRow(15.0, 2L)));
     }
 
+    @Test
+    public void testAggregationProjectorWithSeveralUpstreams() throws Exception {
+        AggregationProjection projection = new AggregationProjection();
+        projection.aggregations(Arrays.asList(
+                new Aggregation(avgInfo, Arrays.<Symbol>asList(new InputColumn(1)), Aggregation.Step.ITER, Aggregation.Step.FINAL),
+                new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.FINAL)
+        ));
+        Projector projector = visitor.process(projection, RAM_ACCOUNTING_CONTEXT);
+        RowDownstreamHandle handle1 = projector.registerUpstream(null);
+        RowDownstreamHandle handle2 = projector.registerUpstream(null);
+        assertThat(handle1, not(sameInstance(handle2)));
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+
+        projector.startProjection();
+        handle1.setNextRow(spare("foo", 10));
+        handle2.setNextRow(spare("bar", 20));
+        handle2.setNextRow(spare("baz", 30));
+        handle1.finish();
+        handle2.finish();
+        Bucket rows = collectingProjector.result().get();
+        assertThat(rows, contains(isRow(20.0, 3L)));
+    }
+
+    @Test
+    public void testGroupProjectorWithUpstreamsOnSeveralThreads() throws Exception {
+        GroupProjection projection = new GroupProjection();
+        projection.keys(Arrays.<Symbol>asList(new InputColumn(0, DataTypes.STRING)));
+        projection.values(Arrays.asList(
+                new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.FINAL)
+        ));
+        Projector projector = visitor.process(projection, RAM_ACCOUNTING_CONTEXT);
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+
+        int numUpstreams = 4;
+        final RowDownstreamHandle[] handles = new RowDownstreamHandle[numUpstreams];
+        for (int i = 0; i < numUpstreams; i++) {
+            handles[i] = projector.registerUpstream(null);
+        }
+        projector.startProjection();
+
+        Thread[] threads = new Thread[numUpstreams];
+        for (int i = 0; i < numUpstreams; i++) {
+            final RowDownstreamHandle handle = handles[i];
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    RowN row = new RowN(new Object[1]);
+                    for (int j = 0; j < 1000; j++) {
+                        row.cells(new Object[]{new BytesRef("key" + (j % 10))});
+                        handle.setNextRow(row);
+                    }
+                    handle.finish();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Bucket rows = collectingProjector.result().get();
+        assertThat(rows.size(), is(10));
+        for (Row row : rows) {
+            assertThat((Long) row.get(1), is(400L));
+        }
+    }
+
+    @Test
+    public void testGroupProjectorSwitchesOffPreAggregationExceptForHeavyHitters() throws Exception {
+        GroupProjection projection = new GroupProjection();
+        projection.keys(Arrays.<Symbol>asList(new InputColumn(0, DataTypes.STRING)));
+        projection.values(Arrays.asList(
+                new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.PARTIAL)
+        ));
+        Projector projector = visitor.process(projection, RAM_ACCOUNTING_CONTEXT);
+        RowDownstreamHandle handle = projector.registerUpstream(null);
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+        projector.startProjection();
+
+        // every third row has the hot key, all other keys occur twice, 15000 rows apart
+        BytesRef hot = new BytesRef("hot");
+        for (int i = 0; i < 30000; i++) {
+            handle.setNextRow(spare(i % 3 == 0 ? hot : new BytesRef("key" + (i % 15000))));
+        }
+        handle.finish();
+
+        Bucket rows = collectingProjector.result().get();
+        int hotRows = 0;
+        for (Row row : rows) {
+            if (hot.equals(row.get(0))) {
+                hotRows++;
+            }
+        }
+        assertThat(hotRows, is(1));
+        // the rows of the other keys are passed on without grouping after the first 10000 rows
+        assertThat(rows.size(), is(20001));
+    }
+
+    @Test
+    public void testGroupProjectorPassesRowsThroughInBatches() throws Exception {
+        GroupProjection projection = new GroupProjection();
+        projection.keys(Arrays.<Symbol>asList(new InputColumn(0, DataTypes.STRING)));
+        projection.values(Arrays.asList(
+                new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.PARTIAL)
+        ));
+        Projector projector = visitor.process(projection, RAM_ACCOUNTING_CONTEXT);
+        RowDownstreamHandle handle = projector.registerUpstream(null);
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+        projector.startProjection();
+
+        // the key is re-used for every row
+        BytesRef key = new BytesRef();
+        int numRows = GroupingProjector.SAMPLE_ROWS + GroupingProjector.PASS_THROUGH_BATCH_SIZE - 1;
+        for (int i = 0; i < numRows; i++) {
+            key.copyChars("key" + i);
+            handle.setNextRow(spare(key));
+        }
+        // the sampled rows are grouped, the following rows are buffered until a batch is complete
+        assertThat(collectingProjector.rows.size(), is(0));
+
+        key.copyChars("key" + numRows);
+        handle.setNextRow(spare(key));
+        assertThat(collectingProjector.rows.size(), is(GroupingProjector.PASS_THROUGH_BATCH_SIZE));
+        assertThat((BytesRef) collectingProjector.rows.get(0)[0],
+                is(new BytesRef("key" + GroupingProjector.SAMPLE_ROWS)));
+
+        key.copyChars("key" + (numRows + 1));
+        handle.setNextRow(spare(key));
+        handle.finish();
+        Bucket rows = collectingProjector.result().get();
+        assertThat(rows.size(), is(numRows + 2));
+    }
+
+    @Test
+    public void testGroupProjectorPassesRowsOfSeveralUpstreamsThroughOneAtATime() throws Exception {
+        GroupProjection projection = new GroupProjection();
+        projection.keys(Arrays.<Symbol>asList(new InputColumn(0, DataTypes.STRING)));
+        projection.values(Arrays.asList(
+                new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.PARTIAL)
+        ));
+        Projector projector = visitor.process(projection, RAM_ACCOUNTING_CONTEXT);
+        final AtomicBoolean concurrentCalls = new AtomicBoolean(false);
+        CollectingProjector collectingProjector = new CollectingProjector() {
+
+            private final AtomicBoolean inUse = new AtomicBoolean(false);
+
+            @Override
+            public boolean setNextRow(Row row) {
+                if (!inUse.compareAndSet(false, true)) {
+                    concurrentCalls.set(true);
+                }
+                try {
+                    Object[] cells = row.materialize();
+                    Thread.yield();
+                    if (!Arrays.equals(cells, row.materialize())) {
+                        concurrentCalls.set(true);
+                    }
+                    return super.setNextRow(row);
+                } finally {
+                    inUse.set(false);
+                }
+            }
+        };
+        projector.downstream(collectingProjector);
+
+        int numUpstreams = 4;
+        final RowDownstreamHandle[] handles = new RowDownstreamHandle[numUpstreams];
+        for (int i = 0; i < numUpstreams; i++) {
+            handles[i] = projector.registerUpstream(null);
+        }
+        projector.startProjection();
+
+        // all keys are distinct within an upstream, so every upstream switches off pre-aggregation
+        Thread[] threads = new Thread[numUpstreams];
+        for (int i = 0; i < numUpstreams; i++) {
+            final RowDownstreamHandle handle = handles[i];
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    RowN row = new RowN(new Object[1]);
+                    for (int j = 0; j < 20000; j++) {
+                        row.cells(new Object[]{new BytesRef("key" + j)});
+                        handle.setNextRow(row);
+                    }
+                    handle.finish();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Bucket rows = collectingProjector.result().get();
+        assertThat(concurrentCalls.get(), is(false));
+        // the sampled rows of all upstreams are grouped, the remaining rows are passed through
+        assertThat(rows.size(), is(10000 + numUpstreams * 10000));
+    }
+
+    @Test
+    public void testGroupProjectorStopsPassingRowsThroughIfAnUpstreamFailed() throws Exception {
+        GroupProjection projection = new GroupProjection();
+        projection.keys(Arrays.<Symbol>asList(new InputColumn(0, DataTypes.STRING)));
+        projection.values(Arrays.asList(
+                new Aggregation(countInfo, Arrays.<Symbol>asList(new InputColumn(0)), Aggregation.Step.ITER, Aggregation.Step.PARTIAL)
+        ));
+        Projector projector = visitor.process(projection, RAM_ACCOUNTING_CONTEXT);
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.downstream(collectingProjector);
+        RowDownstreamHandle handle1 = projector.registerUpstream(null);
+        RowDownstreamHandle handle2 = projector.registerUpstream(null);
+        projector.startProjection();
+
+        for (int i = 0; i < 10000; i++) {
+            handle2.setNextRow(spare(new BytesRef("key" + i)));
+        }
+        handle1.fail(new IllegalStateException("dummy"));
+        assertThat(handle2.setNextRow(spare(new BytesRef("key10000"))), is(false));
+        assertThat(collectingProjector.rows.size(), is(0));
+
+        handle2.finish();
+        expectedException.expect(ExecutionException.class);
+        collectingProjector.result().get();
+    }
+
     @Test
     public void testGroupProjector() throws ExecutionException, InterruptedException {
         //         in(0)  in(1)      in(0),      in(2)
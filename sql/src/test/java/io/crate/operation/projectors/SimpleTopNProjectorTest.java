@@ -30,6 +30,7 @@ import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.metadata.Scalar;
 import io.crate.operation.Input;
+import io.crate.operation.RowBatch;
 import io.crate.operation.aggregation.FunctionExpression;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.collect.InputCollectExpression;
@@ -43,6 +44,7 @@ import org.junit.Test;
 import java.util.Arrays;
 
 import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.emptyIterable;
 import static org.hamcrest.Matchers.is;
 
@@ -109,6 +111,25 @@ public class SimpleTopNProjectorTest extends CrateUnitTest {
 
     }
 
+    @Test
+    public void testProjectBatchWithOffsetAndLimit() throws Throwable {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        SimpleTopNProjector projector = new SimpleTopNProjector(ImmutableList.<Input<?>>of(input),
+                new CollectExpression[]{(CollectExpression)input}, 5, 3);
+        projector.downstream(collectingProjector);
+        projector.registerUpstream(null);
+        projector.startProjection();
+
+        RowBatch batch = new RowBatch(1, 10);
+        for (int i = 0; i < 10; i++) {
+            batch.add(new Row1(i));
+        }
+        assertThat(projector.setNextBatch(batch), is(false));
+        projector.finish();
+        Bucket projected = collectingProjector.result().get();
+        assertThat(projected, contains(isRow(3), isRow(4), isRow(5), isRow(6), isRow(7)));
+    }
+
     @Test
     public void testProjectLimitOnlyLessThanLimit() throws Throwable {
         CollectingProjector collectingProjector = new CollectingProjector();
@@ -241,21 +262,19 @@ public class SimpleTopNProjectorTest extends CrateUnitTest {
         projector.registerUpstream(null);
         projector.downstream(collectingProjector);
         projector.startProjection();
-        int i = 0;
-        boolean carryOn;
-        do {
-            i++;
-            carryOn = projector.setNextRow(row);
-        } while(carryOn);
-        assertThat(i, is(Constants.DEFAULT_SELECT_LIMIT));
+        // without limit all rows are emitted, not only the default select limit
+        int numRows = Constants.DEFAULT_SELECT_LIMIT + 10;
+        for (int i = 0; i < numRows; i++) {
+            assertThat(projector.setNextRow(row), is(true));
+        }
         projector.finish();
-        assertThat(collectingProjector.result().get().size(), is(Constants.DEFAULT_SELECT_LIMIT));
+        assertThat(collectingProjector.result().get().size(), is(numRows));
 
         int iterateLength = 0;
         for (Row row : collectingProjector.result().get()) {
             iterateLength++;
         }
-        assertThat(iterateLength, is(Constants.DEFAULT_SELECT_LIMIT));
+        assertThat(iterateLength, is(numRows));
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -391,20 +410,18 @@ public class SimpleTopNProjectorTest extends CrateUnitTest {
         projector.downstream(noop);
         projector.registerUpstream(null);
         projector.startProjection();
-        int i = 0;
-        boolean carryOn;
-        do {
-            i++;
-            carryOn = projector.setNextRow(row);
-        } while(carryOn);
-        assertThat(i, is(Constants.DEFAULT_SELECT_LIMIT));
+        // without limit all rows are emitted, not only the default select limit
+        int numRows = Constants.DEFAULT_SELECT_LIMIT + 10;
+        for (int i = 0; i < numRows; i++) {
+            assertThat(projector.setNextRow(row), is(true));
+        }
         projector.finish();
-        assertThat(noop.result().get().size(), is(Constants.DEFAULT_SELECT_LIMIT));
+        assertThat(noop.result().get().size(), is(numRows));
 
         int iterateLength = 0;
         for (Row row : noop.result().get()) {
             iterateLength++;
         }
-        assertThat(iterateLength, is(Constants.DEFAULT_SELECT_LIMIT));
+        assertThat(iterateLength, is(numRows));
     }
 }
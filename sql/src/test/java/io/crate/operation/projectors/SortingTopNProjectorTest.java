@@ -21,20 +21,36 @@
 
 package io.crate.operation.projectors;
 
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Row;
 import io.crate.core.collections.RowN;
+import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.Input;
+import io.crate.operation.RowDownstreamHandle;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.collect.InputCollectExpression;
+import io.crate.planner.symbol.InputColumn;
 import io.crate.planner.symbol.Literal;
 import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.hamcrest.Matcher;
 import org.junit.Test;
 
 import static io.crate.testing.TestingHelpers.isNullRow;
 import static io.crate.testing.TestingHelpers.isRow;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.core.Is.is;
 
 public class SortingTopNProjectorTest extends CrateUnitTest {
@@ -44,6 +60,17 @@ public class SortingTopNProjectorTest extends CrateUnitTest {
 
     private final RowN spare = new RowN(new Object[]{});
 
+    private static final Supplier<ImplementationSymbolVisitor.Context> UPSTREAM_INPUTS =
+            new Supplier<ImplementationSymbolVisitor.Context>() {
+                @Override
+                public ImplementationSymbolVisitor.Context get() {
+                    ImplementationSymbolVisitor.Context context = new ImplementationSymbolVisitor.Context();
+                    context.add(context.collectExpressionFor(new InputColumn(0, DataTypes.INTEGER)));
+                    context.add(context.collectExpressionFor(new InputColumn(0, DataTypes.INTEGER)));
+                    return context;
+                }
+            };
+
     private Row spare(Object... cells) {
         if (cells == null) {
             cells = new Object[]{null};
@@ -376,4 +403,54 @@ public class SortingTopNProjectorTest extends CrateUnitTest {
                 isRow(3, 3)
         ));
     }
+
+    private SortingTopNProjector projectorWithUpstreamInputs(int limit, RamAccountingContext ramAccountingContext) {
+        return new SortingTopNProjector(
+                UPSTREAM_INPUTS,
+                1,
+                new int[]{1},
+                new boolean[]{false},
+                new Boolean[]{null},
+                limit,
+                TopN.NO_OFFSET,
+                ramAccountingContext,
+                ImmutableList.<DataType>of(DataTypes.INTEGER, DataTypes.INTEGER));
+    }
+
+    @Test
+    public void testQueuesOfUpstreamsAreAccounted() throws Exception {
+        RamAccountingContext ramAccountingContext =
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+        int limit = 100000;
+        SortingTopNProjector projector = projectorWithUpstreamInputs(limit, ramAccountingContext);
+        RowDownstreamHandle first = projector.registerUpstream(null);
+        RowDownstreamHandle second = projector.registerUpstream(null);
+        projector.startProjection();
+        for (int i = 0; i < 5; i++) {
+            first.setNextRow(spare(i));
+            second.setNextRow(spare(i + 5));
+        }
+        // both upstreams allocated a queue of the full size
+        assertThat(ramAccountingContext.usedBytes(),
+                greaterThan(2L * limit * RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+        first.finish();
+        second.finish();
+        assertThat(projector.result().get(), contains(
+                isRow(0), isRow(1), isRow(2), isRow(3), isRow(4),
+                isRow(5), isRow(6), isRow(7), isRow(8), isRow(9)));
+    }
+
+    @Test
+    public void testLargeQueueTripsCircuitBreaker() throws Exception {
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(1), 1.0,
+                Loggers.getLogger(SortingTopNProjectorTest.class));
+        // the queue exceeds the flush buffer of the ram accounting context
+        SortingTopNProjector projector = projectorWithUpstreamInputs(
+                (int) RamAccountingContext.FLUSH_BUFFER_SIZE, new RamAccountingContext("dummy", breaker));
+        RowDownstreamHandle handle = projector.registerUpstream(null);
+        projector.startProjection();
+
+        expectedException.expect(CircuitBreakingException.class);
+        handle.setNextRow(spare(1));
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.reference.doc;
+
+import io.crate.operation.reference.doc.lucene.*;
+import io.crate.test.integration.CrateUnitTest;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.index.fielddata.IndexFieldDataService;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.search.internal.SearchContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class DocValuesColumnReferenceTest extends CrateUnitTest {
+
+    private IndexWriter writer;
+    private DirectoryReader reader;
+    private MapperService mapperService;
+    private IndexFieldDataService fieldDataService;
+    private CollectorContext ctx;
+
+    @Before
+    public void prepare() throws Exception {
+        writer = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, new StandardAnalyzer()));
+        Document doc = new Document();
+        doc.add(new SortedNumericDocValuesField("l", 42L));
+        doc.add(new SortedSetDocValuesField("s", new BytesRef("foo")));
+        writer.addDocument(doc);
+        writer.addDocument(new Document());
+        reader = DirectoryReader.open(writer, true);
+
+        mapperService = mock(MapperService.class);
+        fieldDataService = mock(IndexFieldDataService.class);
+        SearchContext searchContext = mock(SearchContext.class);
+        when(searchContext.mapperService()).thenReturn(mapperService);
+        when(searchContext.fieldData()).thenReturn(fieldDataService);
+        ctx = new CollectorContext().searchContext(searchContext);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        reader.close();
+        writer.close();
+        writer.getDirectory().close();
+    }
+
+    private void mapColumn(String name, boolean docValues) {
+        FieldMapper fieldMapper = mock(FieldMapper.class);
+        when(fieldMapper.names()).thenReturn(new FieldMapper.Names(name));
+        when(fieldMapper.hasDocValues()).thenReturn(docValues);
+        when(mapperService.smartNameFieldMapper(Matchers.eq(name), Matchers.<String[]>any())).thenReturn(fieldMapper);
+    }
+
+    private void assertValues(FieldCacheExpression<?, ?> expression, Object first, Object second) {
+        expression.startCollect(ctx);
+        AtomicReaderContext readerContext = reader.leaves().get(0);
+        expression.setNextReader(readerContext);
+        expression.setNextDocId(0);
+        assertThat(expression.value(), is(first));
+        expression.setNextDocId(1);
+        assertThat(expression.value(), is(second));
+    }
+
+    @Test
+    public void testReadSortedSetDocValues() throws Exception {
+        mapColumn("s", true);
+        assertValues(new BytesRefColumnReference("s"), new BytesRef("foo"), null);
+        verify(fieldDataService, never()).getForField(any(FieldMapper.class));
+    }
+
+    @Test
+    public void testMissingFieldWithDocValues() throws Exception {
+        mapColumn("unknown", true);
+        BytesRefColumnReference reference = new BytesRefColumnReference("unknown");
+        reference.startCollect(ctx);
+        reference.setNextReader(reader.leaves().get(0));
+        reference.setNextDocId(0);
+        assertThat(reference.value(), nullValue());
+        verify(fieldDataService, never()).getForField(any(FieldMapper.class));
+    }
+
+    @Test
+    public void testFieldDataIsLoadedLazily() throws Exception {
+        mapColumn("l", false);
+        LongColumnReference reference = new LongColumnReference("l");
+        reference.startCollect(ctx);
+        reference.setNextReader(reader.leaves().get(0));
+        // no document of the segment was collected, so nothing is loaded
+        verify(fieldDataService, never()).getForField(any(FieldMapper.class));
+        verify(mapperService).smartNameFieldMapper(anyString(), Matchers.<String[]>any());
+    }
+}
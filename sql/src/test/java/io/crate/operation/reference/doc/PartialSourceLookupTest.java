@@ -0,0 +1,111 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.reference.doc;
+
+import io.crate.operation.collect.LuceneDocCollector;
+import io.crate.operation.reference.doc.lucene.PartialSourceLookup;
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class PartialSourceLookupTest extends CrateUnitTest {
+
+    private LuceneDocCollector.CollectorFieldsVisitor visitor;
+    private PartialSourceLookup lookup;
+
+    @Before
+    public void prepare() throws Exception {
+        visitor = mock(LuceneDocCollector.CollectorFieldsVisitor.class);
+        lookup = new PartialSourceLookup(visitor);
+    }
+
+    private void source(String json) {
+        when(visitor.source()).thenReturn(new BytesArray(json));
+    }
+
+    @Test
+    public void testRegisterRequiresVisitor() throws Exception {
+        lookup.register("name");
+        verify(visitor).required(true);
+    }
+
+    @Test
+    public void testExtractRegisteredColumns() throws Exception {
+        lookup.register("name");
+        lookup.register("age");
+        lookup.register("details.size");
+        lookup.register("missing");
+        source("{\"name\": \"Arthur\", \"age\": 42, \"ignored\": {\"a\": [1, 2]}, " +
+               "\"details\": {\"size\": 1.5, \"other\": \"x\"}, \"flag\": true}");
+
+        assertThat((String) lookup.get("name"), is("Arthur"));
+        assertThat((Integer) lookup.get("age"), is(42));
+        assertThat((Double) lookup.get("details.size"), is(1.5));
+        assertThat(lookup.get("missing"), nullValue());
+        assertThat(lookup.get("ignored"), nullValue());
+        assertThat(lookup.get("flag"), nullValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExtractObjectAndChildColumn() throws Exception {
+        lookup.register("details");
+        lookup.register("details.size");
+        source("{\"details\": {\"size\": 1, \"tags\": [\"a\", \"b\"]}}");
+
+        Map<String, Object> details = (Map<String, Object>) lookup.get("details");
+        assertThat(details.size(), is(2));
+        assertThat((Integer) details.get("size"), is(1));
+        assertThat((Integer) lookup.get("details.size"), is(1));
+    }
+
+    @Test
+    public void testExtractColumnOfObjectArray() throws Exception {
+        lookup.register("tags.name");
+        source("{\"tags\": [{\"name\": \"a\"}, {\"name\": \"b\"}, {\"other\": 1}]}");
+
+        assertThat(lookup.get("tags.name"), is((Object) Arrays.<Object>asList("a", "b")));
+    }
+
+    @Test
+    public void testSourceIsParsedPerDocument() throws Exception {
+        lookup.register("name");
+        source("{\"name\": \"Arthur\"}");
+        assertThat((String) lookup.get("name"), is("Arthur"));
+
+        when(visitor.source()).thenReturn(XContentFactory.jsonBuilder()
+                .startObject().field("name", "Trillian").endObject().bytes());
+        assertThat((String) lookup.get("name"), is("Trillian"));
+
+        when(visitor.source()).thenReturn(null);
+        assertThat(lookup.get("name"), nullValue());
+    }
+}
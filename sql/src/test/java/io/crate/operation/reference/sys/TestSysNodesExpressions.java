@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.crate.Build;
 import io.crate.Version;
+import io.crate.action.sql.cache.QueryResultCache;
 import io.crate.metadata.GlobalReferenceResolver;
 import io.crate.metadata.ReferenceIdent;
 import io.crate.metadata.ReferenceResolver;
@@ -286,6 +287,14 @@ public class TestSysNodesExpressions extends CrateUnitTest {
 
             ThreadPool threadPool = new ThreadPool(getClass().getName());
             bind(ThreadPool.class).toInstance(threadPool);
+
+            QueryResultCache resultCache = mock(QueryResultCache.class);
+            when(resultCache.hits()).thenReturn(12L);
+            when(resultCache.misses()).thenReturn(3L);
+            when(resultCache.evictions()).thenReturn(1L);
+            when(resultCache.entries()).thenReturn(2L);
+            when(resultCache.sizeInBytes()).thenReturn(2048L);
+            bind(QueryResultCache.class).toInstance(resultCache);
         }
     }
 
@@ -532,6 +541,19 @@ public class TestSysNodesExpressions extends CrateUnitTest {
         assertEquals(1000L, (long) v.get("max_open_file_descriptors"));
     }
 
+    @Test
+    public void testResultCache() throws Exception {
+        ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, "result_cache");
+        NestedObjectExpression resultCacheRef = (NestedObjectExpression)resolver.getImplementation(ident);
+
+        Map<String, Object> v = resultCacheRef.value();
+        assertEquals(12L, (long) v.get("hits"));
+        assertEquals(3L, (long) v.get("misses"));
+        assertEquals(1L, (long) v.get("evictions"));
+        assertEquals(2L, (long) v.get("entries"));
+        assertEquals(2048L, (long) v.get("size"));
+    }
+
     @Test
     public void testNestedBytesRefExpressionsString() throws Exception {
         ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, "version");
@@ -1,5 +1,6 @@
 package io.crate.planner;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import io.crate.Constants;
 import io.crate.analyze.Analyzer;
@@ -13,6 +14,7 @@ import io.crate.exceptions.VersionInvalidException;
 import io.crate.metadata.*;
 import io.crate.metadata.blob.BlobSchemaInfo;
 import io.crate.metadata.blob.BlobTableInfo;
+import io.crate.metadata.settings.CrateSettings;
 import io.crate.metadata.doc.DocSysColumns;
 import io.crate.metadata.sys.SysClusterTableInfo;
 import io.crate.metadata.sys.SysNodesTableInfo;
@@ -23,9 +25,12 @@ import io.crate.metadata.table.SchemaInfo;
 import io.crate.metadata.table.TableInfo;
 import io.crate.metadata.table.TestingTableInfo;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.aggregation.impl.ApproxCountDistinctAggregation;
+import io.crate.operation.operator.GtOperator;
 import io.crate.operation.operator.OperatorModule;
 import io.crate.operation.predicate.PredicateModule;
 import io.crate.operation.projectors.FetchProjector;
+import io.crate.operation.projectors.TopN;
 import io.crate.operation.scalar.ScalarFunctionModule;
 import io.crate.planner.node.PlanNode;
 import io.crate.planner.node.ddl.DropTableNode;
@@ -50,6 +55,7 @@ import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.common.collect.ImmutableOpenMap;
 import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.hamcrest.Matchers;
@@ -92,6 +98,7 @@ public class PlannerTest extends CrateUnitTest {
             .map());
 
     private ClusterService clusterService;
+    private MetaData metaData;
 
     private final static String LOCAL_NODE_ID = "foo";
     private ThreadPool threadPool;
@@ -128,8 +135,9 @@ public class PlannerTest extends CrateUnitTest {
             when(localNode.id()).thenReturn(LOCAL_NODE_ID);
             when(clusterService.localNode()).thenReturn(localNode);
             ClusterState clusterState = mock(ClusterState.class);
-            MetaData metaData = mock(MetaData.class);
+            metaData = mock(MetaData.class);
             when(metaData.concreteAllOpenIndices()).thenReturn(new String[0]);
+            when(metaData.settings()).thenReturn(ImmutableSettings.EMPTY);
             when(metaData.getTemplates()).thenReturn(ImmutableOpenMap.<String, IndexTemplateMetaData>of());
             when(metaData.templates()).thenReturn(ImmutableOpenMap.<String, IndexTemplateMetaData>of());
             when(clusterState.metaData()).thenReturn(metaData);
@@ -860,6 +868,40 @@ public class PlannerTest extends CrateUnitTest {
         assertThat(orderBy, instanceOf(InputColumn.class));
 
         assertThat(orderBy.valueType(), Is.<DataType>is(DataTypes.LONG));
+        // sorted rows aren't limited by default
+        assertThat(topNProjection.limit(), is(TopN.NO_LIMIT));
+        TopNProjection reducerTopN = (TopNProjection) distributedGroupBy.reducerMergeNode().projections().get(1);
+        assertThat(reducerTopN.limit(), is(TopN.NO_LIMIT));
+    }
+
+    @Test
+    public void testSortedQueryAndFetchWithoutLimitIsNotLimited() throws Exception {
+        QueryAndFetch plan = (QueryAndFetch) plan("select id from sys.shards order by id offset 10");
+        TopNProjection collectTopN = (TopNProjection) plan.collectNode().projections().get(0);
+        assertThat(collectTopN.limit(), is(TopN.NO_LIMIT));
+        assertThat(collectTopN.offset(), is(0));
+        TopNProjection mergeTopN = (TopNProjection) plan.localMergeNode().projections().get(0);
+        assertThat(mergeTopN.limit(), is(TopN.NO_LIMIT));
+        assertThat(mergeTopN.offset(), is(10));
+    }
+
+    @Test
+    public void testSortedSelectOnDocTableWithoutLimitIsSortedExternally() throws Exception {
+        QueryAndFetch plan = (QueryAndFetch) plan("select name from users order by id");
+        TopNProjection collectTopN = (TopNProjection) plan.collectNode().projections().get(0);
+        assertThat(collectTopN.isOrdered(), is(true));
+        assertThat(collectTopN.limit(), is(TopN.NO_LIMIT));
+        TopNProjection mergeTopN = (TopNProjection) plan.localMergeNode().projections().get(0);
+        assertThat(mergeTopN.limit(), is(TopN.NO_LIMIT));
+    }
+
+    @Test
+    public void testSortedSelectOnDocTableWithLargeLimitIsSortedExternally() throws Exception {
+        QueryAndFetch plan = (QueryAndFetch) plan("select name from users order by id limit 200000 offset 10");
+        TopNProjection collectTopN = (TopNProjection) plan.collectNode().projections().get(0);
+        assertThat(collectTopN.limit(), is(200010));
+        assertThat(plan(
+                "select name from users order by id limit 10"), instanceOf(QueryThenFetch.class));
     }
 
     @Test
@@ -883,6 +925,23 @@ public class PlannerTest extends CrateUnitTest {
         assertThat(mergeNode.projections().get(1), instanceOf(TopNProjection.class));
     }
 
+    @Test
+    public void testCountDistinctIsApproximatedIfEnabled() throws Exception {
+        when(metaData.settings()).thenReturn(ImmutableSettings.builder()
+                .put(CrateSettings.QUERY_APPROXIMATE_COUNT_DISTINCT.settingName(), true).build());
+        DistributedGroupBy distributedGroupBy = (DistributedGroupBy) plan(
+                "select count(distinct id), name from users group by name order by count(distinct id)");
+
+        GroupProjection groupProjection = (GroupProjection) distributedGroupBy.collectNode().projections().get(0);
+        Aggregation aggregation = groupProjection.values().get(0);
+        assertThat(aggregation.functionIdent().name(), is(ApproxCountDistinctAggregation.NAME));
+        assertThat(aggregation.functionIdent().argumentTypes(), contains((DataType) DataTypes.LONG));
+
+        // the final count is emitted as is, there is no collection_count function on top of the aggregation
+        TopNProjection topNProjection = (TopNProjection) distributedGroupBy.reducerMergeNode().projections().get(1);
+        assertThat(topNProjection.outputs().get(0), instanceOf(InputColumn.class));
+    }
+
     @Test
     public void testCountDistinctWithGroupBy() throws Exception {
         DistributedGroupBy distributedGroupBy = (DistributedGroupBy) plan(
@@ -1877,4 +1936,67 @@ public class PlannerTest extends CrateUnitTest {
         assertThat(plan.collectNode().downstreamNodes().get(0), is(LOCAL_NODE_ID));
         assertThat(plan.collectNode().hasDistributingDownstreams(), is(true));
     }
+
+    @Test
+    public void testJoinOfTwoTables() throws Exception {
+        HashJoin plan = (HashJoin) plan("select u1.name, u2.name from users u1 join users u2 on u1.id = u2.id " +
+                                        "where u1.name = 'Arthur' and u1.date > u2.date order by u2.name limit 5");
+        HashJoinNode hashJoinNode = plan.hashJoinNode();
+        assertThat(hashJoinNode.leftKeyColumns(), is(new int[]{0}));
+        assertThat(hashJoinNode.rightKeyColumns(), is(new int[]{0}));
+        // key and selected columns are collected, the filter on u1.name is pushed down
+        assertThat(hashJoinNode.leftInputTypes(), contains((DataType) DataTypes.LONG, DataTypes.STRING, DataTypes.TIMESTAMP));
+        assertThat(hashJoinNode.rightInputTypes(), contains((DataType) DataTypes.LONG, DataTypes.STRING, DataTypes.TIMESTAMP));
+        assertThat(plan.leftCollectNode().whereClause().hasQuery(), is(true));
+        assertThat(plan.rightCollectNode().whereClause().hasQuery(), is(false));
+
+        // both sides are partitioned to the nodes of the join, each side to its own execution node id
+        assertThat(hashJoinNode.executionNodes(), contains("nodeOne", "nodeTow"));
+        assertThat(hashJoinNode.numLeftUpstreams(), is(2));
+        assertThat(hashJoinNode.numRightUpstreams(), is(2));
+        assertThat(plan.leftCollectNode().downstreamNodes(), contains("nodeOne", "nodeTow"));
+        assertThat(plan.leftCollectNode().downstreamExecutionNodeId(), is(hashJoinNode.executionNodeId()));
+        assertThat(plan.rightCollectNode().downstreamNodes(), contains("nodeOne", "nodeTow"));
+        assertThat(plan.rightCollectNode().downstreamExecutionNodeId(), is(hashJoinNode.rightExecutionNodeId()));
+        assertThat(hashJoinNode.rightExecutionNodeId(), not(hashJoinNode.executionNodeId()));
+
+        // the joined rows are filtered and limited on the join nodes
+        assertThat(hashJoinNode.projections().size(), is(2));
+        FilterProjection filterProjection = (FilterProjection) hashJoinNode.projections().get(0);
+        assertThat(filterProjection.query(), isFunction(GtOperator.NAME));
+        TopNProjection joinTopN = (TopNProjection) hashJoinNode.projections().get(1);
+        assertThat(joinTopN.limit(), is(5));
+        assertThat(joinTopN.outputs().size(), is(6));
+        assertThat(((InputColumn) joinTopN.orderBy().get(0)).index(), is(4));
+        assertThat(hashJoinNode.downstreamNodes(), contains(LOCAL_NODE_ID));
+        assertThat(hashJoinNode.downstreamExecutionNodeId(), is(plan.localMergeNode().executionNodeId()));
+
+        MergeNode localMergeNode = plan.localMergeNode();
+        assertThat(localMergeNode.numUpstreams(), is(2));
+        assertThat(localMergeNode.inputTypes().size(), is(6));
+        TopNProjection topNProjection = (TopNProjection) localMergeNode.projections().get(0);
+        assertThat(topNProjection.limit(), is(5));
+        assertThat(((InputColumn) topNProjection.outputs().get(0)).index(), is(1));
+        assertThat(((InputColumn) topNProjection.outputs().get(1)).index(), is(4));
+        assertThat(((InputColumn) topNProjection.orderBy().get(0)).index(), is(4));
+        assertThat(localMergeNode.outputTypes(), contains((DataType) DataTypes.STRING, DataTypes.STRING));
+    }
+
+    @Test
+    public void testJoinWithoutOrderByIsLimitedByDefault() throws Exception {
+        HashJoin plan = (HashJoin) plan("select u1.name, u2.name from users u1 join users u2 on u1.id = u2.id offset 10");
+        TopNProjection joinTopN = (TopNProjection) plan.hashJoinNode().projections().get(0);
+        assertThat(joinTopN.limit(), is(Constants.DEFAULT_SELECT_LIMIT + 10));
+        assertThat(joinTopN.offset(), is(0));
+        TopNProjection topNProjection = (TopNProjection) plan.localMergeNode().projections().get(0);
+        assertThat(topNProjection.limit(), is(Constants.DEFAULT_SELECT_LIMIT));
+        assertThat(topNProjection.offset(), is(10));
+    }
+
+    @Test
+    public void testJoinWithoutEqualityConditionIsNotSupported() throws Exception {
+        expectedException.expect(UnsupportedFeatureException.class);
+        expectedException.expectMessage("Joins are only supported with an equality condition between both tables");
+        plan("select u1.name from users u1, users u2 where u1.id > u2.id");
+    }
 }
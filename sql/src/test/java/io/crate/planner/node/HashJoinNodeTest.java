@@ -0,0 +1,84 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.planner.node;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import io.crate.planner.node.dql.HashJoinNode;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.projection.TopNProjection;
+import io.crate.planner.symbol.InputColumn;
+import io.crate.planner.symbol.Symbol;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.hamcrest.core.Is.is;
+
+public class HashJoinNodeTest extends CrateUnitTest {
+
+    @Test
+    public void testSerialization() throws Exception {
+        HashJoinNode node = new HashJoinNode(1, 2, "hash join", 3, 2,
+                new int[]{0, 1}, new int[]{0, 2},
+                ImmutableList.<DataType>of(DataTypes.INTEGER, DataTypes.STRING),
+                ImmutableList.<DataType>of(DataTypes.INTEGER, DataTypes.LONG, DataTypes.STRING));
+        node.jobId(UUID.randomUUID());
+        node.executionNodes(Sets.newHashSet("node1", "node2"));
+        node.downstreamNodes(Sets.newHashSet("node3"));
+        node.downstreamExecutionNodeId(3);
+        TopNProjection topNProjection = new TopNProjection(10, 0);
+        topNProjection.outputs(Arrays.<Symbol>asList(new InputColumn(1, DataTypes.STRING)));
+        node.projections(ImmutableList.<Projection>of(topNProjection));
+        node.outputTypes(ImmutableList.<DataType>of(DataTypes.STRING));
+
+        BytesStreamOutput output = new BytesStreamOutput();
+        node.writeTo(output);
+
+        BytesStreamInput input = new BytesStreamInput(output.bytes());
+        HashJoinNode node2 = new HashJoinNode();
+        node2.readFrom(input);
+
+        assertThat(node2.executionNodeId(), is(1));
+        assertThat(node2.rightExecutionNodeId(), is(2));
+        assertThat(node2.jobId(), is(node.jobId()));
+        assertThat(node2.numLeftUpstreams(), is(3));
+        assertThat(node2.numRightUpstreams(), is(2));
+        assertThat(node2.leftKeyColumns(), is(node.leftKeyColumns()));
+        assertThat(node2.rightKeyColumns(), is(node.rightKeyColumns()));
+        assertThat(node2.leftInputTypes(), is(node.leftInputTypes()));
+        assertThat(node2.rightInputTypes(), is(node.rightInputTypes()));
+        assertThat(node2.inputTypes(), is(node.inputTypes()));
+        assertThat(node2.executionNodes(), is(node.executionNodes()));
+        assertThat(node2.downstreamNodes(), is(node.downstreamNodes()));
+        assertThat(node2.downstreamExecutionNodeId(), is(3));
+        assertThat(node2.projections(), is(node.projections()));
+        assertThat(node2.outputTypes(), is(node.outputTypes()));
+    }
+}
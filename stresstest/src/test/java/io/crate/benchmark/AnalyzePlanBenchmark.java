@@ -0,0 +1,126 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.carrotsearch.junitbenchmarks.annotation.AxisRange;
+import com.carrotsearch.junitbenchmarks.annotation.BenchmarkHistoryChart;
+import com.carrotsearch.junitbenchmarks.annotation.BenchmarkMethodChart;
+import com.carrotsearch.junitbenchmarks.annotation.LabelType;
+import io.crate.analyze.Analysis;
+import io.crate.analyze.Analyzer;
+import io.crate.analyze.ParameterContext;
+import io.crate.planner.Planner;
+import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Statement;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+
+/**
+ * measures analyzing and planning of statements without executing them.
+ * The statements are parsed only once, like they are if they're served from the statement cache.
+ */
+@AxisRange(min = 0)
+@BenchmarkHistoryChart(filePrefix="benchmark-analyze-plan-history", labelWith = LabelType.CUSTOM_KEY)
+@BenchmarkMethodChart(filePrefix = "benchmark-analyze-plan")
+public class AnalyzePlanBenchmark extends BenchmarkBase {
+
+    static {
+        ClassLoader.getSystemClassLoader().setDefaultAssertionStatus(true);
+    }
+
+    @Rule
+    public TestRule benchmarkRun = RuleChain.outerRule(new BenchmarkRule()).around(super.ruleChain);
+
+    public static final int NUM_REQUESTS_PER_TEST = 10000;
+    public static final int BENCHMARK_ROUNDS = 20;
+    public static final String TABLE_NAME = "analyze_plan";
+
+    private static final Statement INSERT_STMT = SqlParser.createStatement(
+            "insert into analyze_plan (id, name, population, continent) values (?, ?, ?, ?)");
+    private static final Statement BULK_INSERT_STMT = SqlParser.createStatement(
+            "insert into analyze_plan (id, name, population, continent) values (?, ?, ?, ?), (?, ?, ?, ?)");
+    private static final Statement PK_LOOKUP_STMT = SqlParser.createStatement(
+            "select name, population from analyze_plan where id = ?");
+
+    private static final Object[][] NO_BULK_ARGS = new Object[0][];
+
+    private Analyzer analyzer;
+    private Planner planner;
+
+    @Override
+    protected String tableName() {
+        return TABLE_NAME;
+    }
+
+    @Override
+    protected void createTable() {
+        execute("create table analyze_plan (" +
+                " id string primary key," +
+                " name string," +
+                " population integer," +
+                " continent string" +
+                ") clustered into 2 shards with (number_of_replicas=0)", new Object[0], false);
+        client().admin().cluster().prepareHealth(TABLE_NAME).setWaitForGreenStatus().execute().actionGet();
+    }
+
+    @Before
+    public void loadAnalyzerAndPlanner() {
+        analyzer = cluster.getInstanceFromNode(NODE1, Analyzer.class);
+        planner = cluster.getInstanceFromNode(NODE1, Planner.class);
+    }
+
+    private void analyzeAndPlan(Statement statement, Object[] args) {
+        Analysis analysis = analyzer.analyze(statement, new ParameterContext(args, NO_BULK_ARGS, null));
+        planner.plan(analysis);
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
+    @Test
+    public void testAnalyzePlanInsert() {
+        for (int i = 0; i < NUM_REQUESTS_PER_TEST; i++) {
+            analyzeAndPlan(INSERT_STMT, new Object[]{ String.valueOf(i), "Mordor", 1000, "ME" });
+        }
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
+    @Test
+    public void testAnalyzePlanMultiValueInsert() {
+        for (int i = 0; i < NUM_REQUESTS_PER_TEST; i++) {
+            analyzeAndPlan(BULK_INSERT_STMT, new Object[]{
+                    String.valueOf(i), "Mordor", 1000, "ME",
+                    String.valueOf(-i), "Auenland", 200, "ME" });
+        }
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
+    @Test
+    public void testAnalyzePlanPrimaryKeyLookup() {
+        for (int i = 0; i < NUM_REQUESTS_PER_TEST; i++) {
+            analyzeAndPlan(PK_LOOKUP_STMT, new Object[]{ String.valueOf(i) });
+        }
+    }
+}
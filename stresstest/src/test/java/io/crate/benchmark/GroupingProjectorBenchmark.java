@@ -24,6 +24,7 @@ package io.crate.benchmark;
 import com.carrotsearch.junitbenchmarks.BenchmarkRule;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Row;
+import io.crate.core.collections.RowN;
 import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.metadata.Functions;
@@ -31,6 +32,7 @@ import io.crate.operation.AggregationContext;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.aggregation.impl.CountAggregation;
 import io.crate.operation.aggregation.impl.MinimumAggregation;
 import io.crate.operation.aggregation.impl.SumAggregation;
 import io.crate.operation.collect.CollectExpression;
@@ -152,4 +154,60 @@ public class GroupingProjectorBenchmark {
 
         groupingProjector.finish();
     }
+
+    private GroupingProjector createCountProjector(int numKeys) {
+        Functions functions = new ModulesBuilder().add(new AggregationImplModule())
+                .createInjector().getInstance(Functions.class);
+
+        List<Input<?>> keyInputs = new ArrayList<>(numKeys);
+        List<DataType> keyTypes = new ArrayList<>(numKeys);
+        CollectExpression[] collectExpressions = new CollectExpression[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            InputCollectExpression keyInput = new InputCollectExpression(i);
+            keyInputs.add(keyInput);
+            keyTypes.add(DataTypes.LONG);
+            collectExpressions[i] = keyInput;
+        }
+
+        FunctionIdent functionIdent = new FunctionIdent(CountAggregation.NAME, Arrays.<DataType>asList());
+        FunctionInfo functionInfo = new FunctionInfo(functionIdent, DataTypes.LONG, FunctionInfo.Type.AGGREGATE);
+        AggregationFunction countAgg = (AggregationFunction) functions.get(functionIdent);
+        Aggregation aggregation = new Aggregation(functionInfo,
+                Arrays.<Symbol>asList(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        AggregationContext[] aggregations = new AggregationContext[] { new AggregationContext(countAgg, aggregation) };
+        return new GroupingProjector(keyTypes, keyInputs, collectExpressions, aggregations, RAM_ACCOUNTING_CONTEXT);
+    }
+
+    private void groupByLongKeys(int numKeys) {
+        GroupingProjector groupingProjector = createCountProjector(numKeys);
+        groupingProjector.registerUpstream(null);
+        groupingProjector.startProjection();
+
+        Object[] cells = new Object[numKeys];
+        RowN row = new RowN(cells);
+        for (int i = 0; i < 20_000_000; i++) {
+            long value = i % 10_000;
+            for (int k = 0; k < numKeys; k++) {
+                cells[k] = value + k;
+            }
+            groupingProjector.setNextRow(row);
+        }
+
+        groupingProjector.finish();
+    }
+
+    @Test
+    public void testGroupByCountOneLongKey() throws Exception {
+        groupByLongKeys(1);
+    }
+
+    @Test
+    public void testGroupByCountTwoLongKeys() throws Exception {
+        groupByLongKeys(2);
+    }
+
+    @Test
+    public void testGroupByCountThreeLongKeys() throws Exception {
+        groupByLongKeys(3);
+    }
 }